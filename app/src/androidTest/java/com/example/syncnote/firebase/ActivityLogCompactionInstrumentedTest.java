@@ -0,0 +1,131 @@
+package com.example.syncnote.firebase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.syncnote.models.ActivityLogModel;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs against the Realtime Database emulator ({@code firebase emulators:start --only database}),
+ * reachable from the Android emulator at 10.0.2.2:9000.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ActivityLogCompactionInstrumentedTest {
+
+    private static final String NOTE_ID = "compactionSeedNote";
+    private static final long MINUTE = 60_000L;
+    private static final int EDIT_SESSIONS = 40;
+    private static final int EDITS_PER_SESSION = 25;
+    private static final int MAX_ENTRIES = 30;
+
+    @BeforeClass
+    public static void seedEmulator() throws Exception {
+        FirebaseDatabase.getInstance().useEmulator("10.0.2.2", 9000);
+
+        // A busy note: 40 editing sessions of 25 saves a minute apart, a day between sessions
+        await(FirebaseDatabase.getInstance().getReference("activity_logs").child(NOTE_ID).removeValue());
+        Map<String, Object> updates = new HashMap<>();
+        long time = System.currentTimeMillis() - 60L * 24 * 60 * MINUTE;
+        int seq = 0;
+        updates.put(logPath(seq++), log("owner", ActivityLogModel.ACTION_CREATED, time));
+        for (int session = 0; session < EDIT_SESSIONS; session++) {
+            time += 24 * 60 * MINUTE;
+            String userId = session % 2 == 0 ? "owner" : "collaborator";
+            for (int edit = 0; edit < EDITS_PER_SESSION; edit++) {
+                time += MINUTE;
+                updates.put(logPath(seq++), log(userId, ActivityLogModel.ACTION_EDITED, time));
+            }
+        }
+        await(FirebaseDatabase.getInstance().getReference().updateChildren(updates));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void compaction_mergesSessionsAndIsIdempotent() throws Exception {
+        ActivityLogCompactor compactor = new ActivityLogCompactor(30 * MINUTE, MAX_ENTRIES, 0);
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+
+        assertTrue(compact(firebaseManager, compactor));
+        DataSnapshot first = read();
+        // Each session merges into one entry; the newest MAX_ENTRIES are kept plus the creation entry
+        assertEquals(MAX_ENTRIES + 1, first.getChildrenCount());
+        int edits = 0;
+        for (DataSnapshot child : first.getChildren()) {
+            Map<String, Object> map = (Map<String, Object>) child.getValue();
+            ActivityLogModel log = ActivityLogModel.fromMap(child.getKey(), map);
+            if (ActivityLogModel.ACTION_EDITED.equals(log.getAction())) {
+                assertEquals(EDITS_PER_SESSION, log.getCount());
+                edits++;
+            }
+        }
+        assertEquals(MAX_ENTRIES, edits);
+
+        assertTrue(compact(firebaseManager, compactor));
+        assertEquals(first.getValue(), read().getValue());
+    }
+
+    private static String logPath(int seq) {
+        // Zero-padded keys sort like push ids, oldest first
+        return "/activity_logs/" + NOTE_ID + "/" + String.format("seed%06d", seq);
+    }
+
+    private static Map<String, Object> log(String userId, String action, long timestamp) {
+        ActivityLogModel log = new ActivityLogModel(NOTE_ID, userId, userId, action, null);
+        log.setTimestamp(timestamp);
+        return log.toMap();
+    }
+
+    private static boolean compact(FirebaseManager firebaseManager, ActivityLogCompactor compactor) throws Exception {
+        boolean[] result = {false};
+        CountDownLatch done = new CountDownLatch(1);
+        firebaseManager.compactActivityLogs(NOTE_ID, compactor, success -> {
+            result[0] = success;
+            done.countDown();
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        return result[0];
+    }
+
+    private static DataSnapshot read() throws Exception {
+        DataSnapshot[] result = new DataSnapshot[1];
+        CountDownLatch done = new CountDownLatch(1);
+        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("activity_logs").child(NOTE_ID);
+        ref.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                result[0] = snapshot;
+                done.countDown();
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertNotNull(result[0]);
+        return result[0];
+    }
+
+    private static void await(com.google.android.gms.tasks.Task<Void> task) throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        task.addOnCompleteListener(t -> done.countDown());
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertTrue(task.isSuccessful());
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.syncnote.firebase;
+
+import android.net.TrafficStats;
+import android.net.Uri;
+import android.os.Process;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.syncnote.models.NoteModel;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.FirebaseDatabase;
+
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs against the Realtime Database emulator ({@code firebase emulators:start --only database}),
+ * reachable from the Android emulator at 10.0.2.2:9000.
+ *
+ * <p>Syncs a user's note list, then edits one note over REST as another device would
+ * and counts what the listener is handed: a single CHANGED event for that note, where
+ * the value listener it replaced re-delivered the whole list on every edit.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ChildSyncInstrumentedTest {
+
+    private static final String EMULATOR = "http://10.0.2.2:9000";
+    private static final int NOTES = 200;
+    // Long enough for a stray second event to arrive before the count is taken
+    private static final long SETTLE_MS = 2_000;
+
+    // Unique per run, so data cached by an earlier run cannot hide a download
+    private static final String RUN = "child" + System.currentTimeMillis();
+    private static final String USER = RUN + "_user";
+
+    private static String namespace;
+
+    @BeforeClass
+    public static void seedNotes() throws Exception {
+        FirebaseDatabase.getInstance().useEmulator("10.0.2.2", 9000);
+        String databaseUrl = FirebaseApp.getInstance().getOptions().getDatabaseUrl();
+        namespace = Uri.parse(databaseUrl).getHost().split("\\.")[0];
+        rest("PUT", "/.settings/rules.json", "{\"rules\": {\".read\": true, \".write\": true, "
+                + "\"user_notes\": {\"$uid\": {\".indexOn\": [\"userUpdatedAt\"]}}}}");
+
+        JSONObject partition = new JSONObject();
+        for (int n = 0; n < NOTES; n++) {
+            long updatedAt = 1_600_000_000_000L + n * 1000L;
+            partition.put(note(n), new JSONObject()
+                    .put("title", "Note " + n)
+                    .put("preview", "Preview of note " + n + ", long enough to look like a real one")
+                    .put("userId", USER)
+                    .put("updatedAt", updatedAt)
+                    .put("userUpdatedAt", FirebaseManager.noteListKey(USER, updatedAt)));
+        }
+        rest("PUT", "/user_notes/" + USER + ".json", partition.toString());
+    }
+
+    @Test
+    public void remoteEditOfOneNote_deliversOneChildEvent() throws Exception {
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        List<SyncEvent<NoteModel>> events = Collections.synchronizedList(new ArrayList<>());
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch synced = new CountDownLatch(1);
+        CountDownLatch changed = new CountDownLatch(1);
+        String edited = note(NOTES / 2);
+
+        SyncRegistration registration = firebaseManager.syncNotes(USER, NOTES, new SyncListener<NoteModel>() {
+            @Override
+            public void onEvent(SyncEvent<NoteModel> event) {
+                events.add(event);
+                if (event.getType() == SyncEvent.Type.CHANGED && edited.equals(event.getKey())) {
+                    changed.countDown();
+                }
+            }
+
+            @Override
+            public void onSynced() {
+                synced.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                // Called on the main thread; asserted on the test thread below
+                errors.add(error);
+                synced.countDown();
+            }
+        });
+        try {
+            assertTrue(synced.await(30, TimeUnit.SECONDS));
+            assertEquals(Collections.emptyList(), errors);
+            assertEquals(NOTES, events.size());
+            events.clear();
+
+            long editBytes = receivedWhile(() -> {
+                rest("PATCH", "/user_notes/" + USER + "/" + edited + ".json",
+                        new JSONObject().put("title", "Edited elsewhere").toString());
+                assertTrue(changed.await(30, TimeUnit.SECONDS));
+                Thread.sleep(SETTLE_MS);
+            });
+            long listBytes = receivedWhile(() -> rest("GET", "/user_notes/" + USER + ".json", null));
+
+            android.util.Log.i("ChildSync", "one remote edit: " + events.size() + " events, "
+                    + editBytes + " bytes; the whole list of " + NOTES + " is " + listBytes + " bytes");
+            assertEquals(Collections.emptyList(), errors);
+            assertEquals(1, events.size());
+            SyncEvent<NoteModel> event = events.get(0);
+            assertEquals(SyncEvent.Type.CHANGED, event.getType());
+            assertEquals("Edited elsewhere", event.getValue().getTitle());
+            // The REST edit's own response is in editBytes too; the list is far larger
+            assertTrue("edit took " + editBytes + " bytes vs " + listBytes + " for the list",
+                    editBytes * 10 < listBytes);
+        } finally {
+            registration.remove();
+        }
+    }
+
+    private static String note(int index) {
+        return RUN + "_note" + index;
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private static long receivedWhile(Action action) throws Exception {
+        int uid = Process.myUid();
+        long before = TrafficStats.getUidRxBytes(uid);
+        assertTrue("traffic stats unsupported", before >= 0);
+        action.run();
+        return TrafficStats.getUidRxBytes(uid) - before;
+    }
+
+    private static void rest(String method, String path, String body) throws Exception {
+        URL url = new URL(EMULATOR + path + "?ns=" + namespace);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if ("PATCH".equals(method)) {
+            // HttpURLConnection has no PATCH; the database accepts the override header
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+        } else {
+            connection.setRequestMethod(method);
+        }
+        connection.setRequestProperty("Authorization", "Bearer owner");
+        try {
+            if (body != null) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            assertEquals(200, connection.getResponseCode());
+            // Drain the response so a GET's payload is received and counted
+            try (InputStream in = connection.getInputStream()) {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                    // discard
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.syncnote.firebase;
+
+import android.net.TrafficStats;
+import android.net.Uri;
+import android.os.Process;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.syncnote.models.NoteModel;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.FirebaseDatabase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs against the Realtime Database emulator ({@code firebase emulators:start --only database}),
+ * reachable from the Android emulator at 10.0.2.2:9000.
+ *
+ * <p>Saves a note with a ~200 KB body, then makes the usual edits to it (append a line,
+ * change a word mid-body, retitle) and compares the bytes sent for each against a full
+ * rewrite of the same note. Chunked bodies and field diffs should upload only what moved.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EditWriteSizeInstrumentedTest {
+
+    private static final String EMULATOR = "http://10.0.2.2:9000";
+    private static final int BODY_LENGTH = 200 * 1024;
+    private static final String[] WORDS = {
+            "meeting", "budget", "project", "review", "draft", "schedule", "client", "invoice",
+            "update", "design", "release", "summary", "follow", "agenda", "notes", "team"
+    };
+
+    // Unique per run, so data cached by an earlier run cannot hide a write
+    private static final String USER = "editSize" + System.currentTimeMillis();
+
+    private static String namespace;
+
+    @BeforeClass
+    public static void connect() throws Exception {
+        FirebaseDatabase.getInstance().useEmulator("10.0.2.2", 9000);
+        String databaseUrl = FirebaseApp.getInstance().getOptions().getDatabaseUrl();
+        namespace = Uri.parse(databaseUrl).getHost().split("\\.")[0];
+        rest("PUT", "/.settings/rules.json", "{\"rules\": {\".read\": true, \".write\": true}}");
+    }
+
+    @Test
+    public void typicalEdits_sendSmallFractionOfFullWrite() throws Exception {
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        // Warm the connection so the handshake is not counted
+        Tasks.await(DatabaseTasks.once(FirebaseDatabase.getInstance().getReference("warmup")),
+                30, TimeUnit.SECONDS);
+
+        NoteModel note = new NoteModel("Weekly notes", null);
+        note.setId(USER + "_note");
+        note.setUserId(USER);
+        setBody(note, lines(BODY_LENGTH));
+        save(firebaseManager, note, null);
+
+        long fullBytes = sentWhile(() -> save(firebaseManager, note, null));
+
+        NoteModel lastSynced = new NoteModel(note);
+        setBody(note, note.getContent() + "\nOne more line added at the end");
+        long appendBytes = sentWhile(() -> save(firebaseManager, note, lastSynced));
+
+        NoteModel afterAppend = new NoteModel(note);
+        String content = note.getContent();
+        int middle = content.indexOf(' ', content.length() / 2);
+        int wordEnd = content.indexOf(' ', middle + 1);
+        setBody(note, content.substring(0, middle + 1) + "rewritten" + content.substring(wordEnd));
+        long wordBytes = sentWhile(() -> save(firebaseManager, note, afterAppend));
+
+        NoteModel afterWord = new NoteModel(note);
+        note.setTitle("Weekly notes, renamed");
+        long titleBytes = sentWhile(() -> save(firebaseManager, note, afterWord));
+
+        android.util.Log.i("EditWriteSize", "bytes sent for a " + BODY_LENGTH + "-char note: full write "
+                + fullBytes + ", append " + appendBytes + ", word change " + wordBytes
+                + ", retitle " + titleBytes);
+        assertTrue("full write took only " + fullBytes + " bytes", fullBytes > BODY_LENGTH);
+        assertTrue("append took " + appendBytes + " bytes vs " + fullBytes, appendBytes * 10 < fullBytes);
+        assertTrue("word change took " + wordBytes + " bytes vs " + fullBytes, wordBytes * 10 < fullBytes);
+        assertTrue("retitle took " + titleBytes + " bytes vs " + fullBytes, titleBytes * 50 < fullBytes);
+    }
+
+    private static void save(FirebaseManager firebaseManager, NoteModel note, NoteModel lastSynced)
+            throws Exception {
+        CountDownLatch saved = new CountDownLatch(1);
+        boolean[] success = new boolean[1];
+        firebaseManager.updateNote(note, lastSynced, USER, "tester", result -> {
+            success[0] = result;
+            saved.countDown();
+        });
+        assertTrue(saved.await(60, TimeUnit.SECONDS));
+        assertTrue(success[0]);
+    }
+
+    // Plain text and the editor's HTML for it, one paragraph per line
+    private static void setBody(NoteModel note, String content) {
+        note.setContent(content);
+        note.setHtmlContent("<p>" + content.replace("\n", "</p><p>") + "</p>");
+    }
+
+    private static String lines(int length) {
+        Random random = new Random(1);
+        StringBuilder text = new StringBuilder(length + 100);
+        while (text.length() < length) {
+            int words = 6 + random.nextInt(10);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) text.append(' ');
+                text.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private static long sentWhile(Action action) throws Exception {
+        int uid = Process.myUid();
+        long before = TrafficStats.getUidTxBytes(uid);
+        assertTrue("traffic stats unsupported", before >= 0);
+        action.run();
+        return TrafficStats.getUidTxBytes(uid) - before;
+    }
+
+    private static void rest(String method, String path, String body) throws Exception {
+        URL url = new URL(EMULATOR + path + "?ns=" + namespace);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Authorization", "Bearer owner");
+        try {
+            if (body != null) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            assertEquals(200, connection.getResponseCode());
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
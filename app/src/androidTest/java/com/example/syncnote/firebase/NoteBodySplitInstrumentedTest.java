@@ -0,0 +1,253 @@
+package com.example.syncnote.firebase;
+
+import android.net.TrafficStats;
+import android.net.Uri;
+import android.os.Process;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.syncnote.models.NoteModel;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.FirebaseDatabase;
+
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs against the Realtime Database emulator ({@code firebase emulators:start --only database}),
+ * reachable from the Android emulator at 10.0.2.2:9000.
+ *
+ * <p>Seeds one user with 1,000 notes of 50 KB each and compares the bytes received to
+ * list them from the partition, which holds only metadata, against the flat query
+ * that returns whole notes. Opening a note should then fetch just that note's body.
+ * Edits keep the legacy node whole, and edits made there by older clients are picked up.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NoteBodySplitInstrumentedTest {
+
+    private static final String EMULATOR = "http://10.0.2.2:9000";
+    private static final int NOTES = 1_000;
+    private static final int BODY_LENGTH = 50 * 1024;
+    private static final int SEED_BATCH_NOTES = 50;
+
+    // Unique per run, so data cached by an earlier run cannot hide a download
+    private static final String USER = "bodySplit" + System.currentTimeMillis();
+
+    private static String namespace;
+
+    @BeforeClass
+    public static void seedNotes() throws Exception {
+        FirebaseDatabase.getInstance().useEmulator("10.0.2.2", 9000);
+        String databaseUrl = FirebaseApp.getInstance().getOptions().getDatabaseUrl();
+        namespace = Uri.parse(databaseUrl).getHost().split("\\.")[0];
+        rest("PUT", "/.settings/rules.json", "{\"rules\": {\".read\": true, \".write\": true, "
+                + "\"notes\": {\".indexOn\": [\"userId\", \"userUpdatedAt\"]}, "
+                + "\"user_notes\": {\"$userId\": {\".indexOn\": [\"userUpdatedAt\"]}}}}");
+
+        // Both layouts, as the dual writes leave them
+        for (int batchStart = 0; batchStart < NOTES; batchStart += SEED_BATCH_NOTES) {
+            JSONObject updates = new JSONObject();
+            for (int n = batchStart; n < Math.min(NOTES, batchStart + SEED_BATCH_NOTES); n++) {
+                long updatedAt = 1_600_000_000_000L + n * 1000L;
+                String noteId = USER + "_note" + n;
+                String content = body(n);
+                JSONObject meta = new JSONObject();
+                meta.put("title", "Note " + n);
+                meta.put("preview", content.substring(0, 200));
+                meta.put("userId", USER);
+                meta.put("updatedAt", updatedAt);
+                meta.put("userUpdatedAt", FirebaseManager.noteListKey(USER, updatedAt));
+                updates.put("user_notes/" + USER + "/" + noteId, meta);
+                updates.put("note_body/" + noteId, new JSONObject().put("content", content));
+                updates.put("notes/" + noteId, new JSONObject(meta.toString()).put("content", content));
+            }
+            rest("PATCH", "/.json", updates.toString());
+        }
+        rest("PUT", "/note_partitions/" + USER + ".json", "1600000000000");
+    }
+
+    @Test
+    public void listingNotes_downloadsMetadataOnly() throws Exception {
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        // Warm the connection so the handshake is not counted
+        Tasks.await(DatabaseTasks.once(FirebaseDatabase.getInstance().getReference("warmup")),
+                30, TimeUnit.SECONDS);
+
+        long[] listed = new long[1];
+        long listBytes = receivedWhile(() -> {
+            List<NoteModel> notes = Tasks.await(firebaseManager.loadNotesForUser(USER), 60, TimeUnit.SECONDS);
+            listed[0] = notes.size();
+            assertNull(notes.get(0).getContent());
+        });
+        long fullBytes = receivedWhile(() -> {
+            long count = Tasks.await(DatabaseTasks.once(FirebaseDatabase.getInstance().getReference("notes")
+                    .orderByChild("userId").equalTo(USER)), 300, TimeUnit.SECONDS).getChildrenCount();
+            assertEquals(NOTES, count);
+        });
+
+        android.util.Log.i("NoteBodySplit", "bytes received to list " + NOTES + " notes: metadata "
+                + listBytes + ", whole notes " + fullBytes);
+        assertEquals(NOTES, listed[0]);
+        assertTrue("listing took " + listBytes + " bytes vs " + fullBytes + " with bodies",
+                listBytes * 20 < fullBytes);
+    }
+
+    @Test
+    public void openingNote_fetchesOnlyItsBody() throws Exception {
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        String noteId = USER + "_note7";
+        NoteModel meta = Tasks.await(firebaseManager.loadNoteMeta(noteId, USER), 30, TimeUnit.SECONDS);
+        assertEquals("Note 7", meta.getTitle());
+        assertNull(meta.getContent());
+
+        NoteModel[] opened = new NoteModel[1];
+        long bodyBytes = receivedWhile(() ->
+                opened[0] = Tasks.await(firebaseManager.loadNoteBody(meta), 30, TimeUnit.SECONDS));
+        assertEquals(body(7), opened[0].getContent());
+        assertEquals(1_600_000_007_000L, opened[0].getUpdatedAt());
+        assertTrue("opening one note took " + bodyBytes + " bytes", bodyBytes < 3 * BODY_LENGTH);
+    }
+
+    @Test
+    public void editingBody_keepsWholeNoteInLegacyNode() throws Exception {
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        String noteId = USER + "_note9";
+        NoteModel meta = Tasks.await(firebaseManager.loadNoteMeta(noteId, USER), 30, TimeUnit.SECONDS);
+        NoteModel opened = Tasks.await(firebaseManager.loadNoteBody(meta), 30, TimeUnit.SECONDS);
+        NoteModel lastSynced = new NoteModel(opened);
+        opened.setContent("Edited body");
+        assertTrue(save(firebaseManager, opened, lastSynced));
+
+        JSONObject body = new JSONObject(restGet("/note_body/" + noteId + ".json"));
+        assertEquals("Edited body", body.getString("content"));
+        // Clients from before the partition still read the legacy node
+        JSONObject legacy = new JSONObject(restGet("/notes/" + noteId + ".json"));
+        assertEquals("Edited body", legacy.getString("content"));
+        JSONObject partition = new JSONObject(restGet("/user_notes/" + USER + "/" + noteId + ".json"));
+        assertFalse("partition entry holds a body", partition.has("content"));
+    }
+
+    @Test
+    public void legacyEditByOlderClient_isOpenedAndCopiedForward() throws Exception {
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        String noteId = USER + "_note11";
+        long editedAt = 1_700_000_000_000L;
+        // An older client writes only the legacy node
+        rest("PATCH", "/notes/" + noteId + ".json", new JSONObject()
+                .put("title", "Retitled elsewhere")
+                .put("content", "Edited on an old client")
+                .put("updatedAt", editedAt).toString());
+
+        NoteModel meta = Tasks.await(firebaseManager.loadNoteMeta(noteId, USER), 30, TimeUnit.SECONDS);
+        NoteModel opened = Tasks.await(firebaseManager.loadNoteBody(meta), 30, TimeUnit.SECONDS);
+        assertEquals("Edited on an old client", opened.getContent());
+        assertEquals("Retitled elsewhere", opened.getTitle());
+
+        // The copy forward is not awaited by the load
+        JSONObject body = null;
+        for (int attempt = 0; attempt < 50; attempt++) {
+            body = new JSONObject(restGet("/note_body/" + noteId + ".json"));
+            if ("Edited on an old client".equals(body.optString("content"))) break;
+            Thread.sleep(100);
+        }
+        assertEquals("Edited on an old client", body.getString("content"));
+        JSONObject partition = new JSONObject(restGet("/user_notes/" + USER + "/" + noteId + ".json"));
+        assertEquals("Retitled elsewhere", partition.getString("title"));
+        assertEquals(FirebaseManager.noteListKey(USER, editedAt), partition.getString("userUpdatedAt"));
+        assertFalse("partition entry holds a body", partition.has("content"));
+    }
+
+    private static boolean save(FirebaseManager firebaseManager, NoteModel note, NoteModel lastSynced)
+            throws Exception {
+        CountDownLatch saved = new CountDownLatch(1);
+        boolean[] success = new boolean[1];
+        firebaseManager.updateNote(note, lastSynced, USER, "tester", result -> {
+            success[0] = result;
+            saved.countDown();
+        });
+        assertTrue(saved.await(30, TimeUnit.SECONDS));
+        return success[0];
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private static long receivedWhile(Action action) throws Exception {
+        int uid = Process.myUid();
+        long before = TrafficStats.getUidRxBytes(uid);
+        assertTrue("traffic stats unsupported", before >= 0);
+        action.run();
+        return TrafficStats.getUidRxBytes(uid) - before;
+    }
+
+    // Distinct per note, so no two bodies are identical
+    private static String body(int index) {
+        StringBuilder body = new StringBuilder(BODY_LENGTH);
+        body.append("Note ").append(index).append(". ");
+        while (body.length() < BODY_LENGTH) {
+            body.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit ").append(body.length()).append(". ");
+        }
+        body.setLength(BODY_LENGTH);
+        return body.toString();
+    }
+
+    private static String restGet(String path) throws Exception {
+        URL url = new URL(EMULATOR + path + "?ns=" + namespace);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("Authorization", "Bearer owner");
+        try {
+            assertEquals(200, connection.getResponseCode());
+            try (InputStream in = connection.getInputStream()) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, read);
+                }
+                return bytes.toString("UTF-8").trim();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void rest(String method, String path, String body) throws Exception {
+        URL url = new URL(EMULATOR + path + "?ns=" + namespace);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if ("PATCH".equals(method)) {
+            // HttpURLConnection has no PATCH; the database accepts the override header
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+        } else {
+            connection.setRequestMethod(method);
+        }
+        connection.setRequestProperty("Authorization", "Bearer owner");
+        try {
+            if (body != null) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            assertEquals(200, connection.getResponseCode());
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
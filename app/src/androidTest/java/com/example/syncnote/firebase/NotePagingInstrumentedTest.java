@@ -0,0 +1,140 @@
+package com.example.syncnote.firebase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.syncnote.models.NoteModel;
+import com.google.firebase.database.FirebaseDatabase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs against the Realtime Database emulator ({@code firebase emulators:start --only database}),
+ * reachable from the Android emulator at 10.0.2.2:9000.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NotePagingInstrumentedTest {
+
+    private static final int PAGE_SIZE = 50;
+    private static final int SMALL_USER_NOTES = 100;
+    private static final int LARGE_USER_NOTES = 10_000;
+
+    private static final String SMALL_USER = "pagingSmallUser000000";
+    private static final String LARGE_USER = "pagingLargeUser000000";
+
+    @BeforeClass
+    public static void seedEmulator() throws Exception {
+        FirebaseDatabase.getInstance().useEmulator("10.0.2.2", 9000);
+        seedNotes(SMALL_USER, SMALL_USER_NOTES);
+        seedNotes(LARGE_USER, LARGE_USER_NOTES);
+    }
+
+    @Test
+    public void firstPage_isNewestFirstAndCursorContinues() throws Exception {
+        PageResult first = fetchPage(SMALL_USER, null);
+        assertEquals(PAGE_SIZE, first.notes.size());
+        assertNotNull(first.nextCursor);
+        for (int i = 1; i < first.notes.size(); i++) {
+            assertTrue(first.notes.get(i - 1).getUpdatedAt() > first.notes.get(i).getUpdatedAt());
+        }
+
+        PageResult second = fetchPage(SMALL_USER, first.nextCursor);
+        assertEquals(PAGE_SIZE, second.notes.size());
+        assertTrue(first.notes.get(PAGE_SIZE - 1).getUpdatedAt() > second.notes.get(0).getUpdatedAt());
+
+        PageResult third = fetchPage(SMALL_USER, second.nextCursor);
+        assertTrue(third.notes.isEmpty());
+        assertNull(third.nextCursor);
+    }
+
+    /**
+     * The first page for a user with 10k notes must arrive about as fast as for a
+     * user with 100: the query reads one page, not the whole collection.
+     */
+    @Test
+    public void timeToFirstPage_doesNotGrowWithNoteCount() throws Exception {
+        // Warm the connection so neither measurement pays for the handshake
+        fetchPage(SMALL_USER, null);
+
+        long smallMs = medianFirstPageMillis(SMALL_USER);
+        long largeMs = medianFirstPageMillis(LARGE_USER);
+
+        android.util.Log.i("NotePaging", "first page: " + SMALL_USER_NOTES + " notes " + smallMs
+                + " ms, " + LARGE_USER_NOTES + " notes " + largeMs + " ms");
+        assertTrue("first page took " + largeMs + " ms for " + LARGE_USER_NOTES + " notes vs "
+                + smallMs + " ms for " + SMALL_USER_NOTES, largeMs <= Math.max(3 * smallMs, smallMs + 200));
+    }
+
+    private long medianFirstPageMillis(String userId) throws Exception {
+        long[] samples = new long[5];
+        for (int i = 0; i < samples.length; i++) {
+            // Fresh queries each time; goOffline/goOnline drops the client's cached views
+            FirebaseDatabase.getInstance().goOffline();
+            FirebaseDatabase.getInstance().goOnline();
+            long start = System.nanoTime();
+            PageResult page = fetchPage(userId, null);
+            samples[i] = (System.nanoTime() - start) / 1_000_000;
+            assertEquals(PAGE_SIZE, page.notes.size());
+        }
+        java.util.Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+
+    private static void seedNotes(String userId, int count) throws Exception {
+        Map<String, Object> updates = new HashMap<>();
+        long base = 1_600_000_000_000L;
+        for (int i = 0; i < count; i++) {
+            NoteModel note = new NoteModel("Note " + i, "Seeded body " + i);
+            String noteId = userId + "_note" + i;
+            note.setId(noteId);
+            note.setUserId(userId);
+            note.setUpdatedAt(base + i * 1000L);
+            Map<String, Object> stored = note.toMap();
+            stored.put("userUpdatedAt", FirebaseManager.noteListKey(userId, note.getUpdatedAt()));
+            updates.put("/user_notes/" + userId + "/" + noteId, stored);
+        }
+
+        CountDownLatch done = new CountDownLatch(1);
+        FirebaseDatabase.getInstance().getReference().updateChildren(updates)
+                .addOnCompleteListener(task -> done.countDown());
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+    }
+
+    private static PageResult fetchPage(String userId, String cursor) throws Exception {
+        PageResult result = new PageResult();
+        CountDownLatch done = new CountDownLatch(1);
+        FirebaseManager.getInstance().getNotesPage(userId, cursor, PAGE_SIZE, new FirebaseManager.NotesPageCallback() {
+            @Override
+            public void onSuccess(List<NoteModel> notes, String nextCursor) {
+                result.notes = notes;
+                result.nextCursor = nextCursor;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                result.error = error;
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertNull(result.error);
+        return result;
+    }
+
+    private static class PageResult {
+        List<NoteModel> notes = new ArrayList<>();
+        String nextCursor;
+        String error;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.syncnote.firebase;
+
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.syncnote.models.NoteModel;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.FirebaseDatabase;
+
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs against the Realtime Database emulator ({@code firebase emulators:start --only database}),
+ * reachable from the Android emulator at 10.0.2.2:9000.
+ *
+ * <p>Loading one user's notes from their partition should cost the same with 10
+ * users in the database as with 1,000. The flat query over all notes is timed
+ * alongside for comparison.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NotePartitionInstrumentedTest {
+
+    private static final String EMULATOR = "http://10.0.2.2:9000";
+    private static final int FEW_USERS = 10;
+    private static final int MANY_USERS = 1_000;
+    private static final int NOTES_PER_USER = 20;
+    private static final int SEED_BATCH_USERS = 100;
+
+    private static final String MEASURED_USER = "partitionUser0000";
+    private static final String LEGACY_USER = "partitionLegacyUser";
+    private static final String LARGE_LEGACY_USER = "partitionLargeLegacyUser";
+    // Several megabytes in all, more than one migration write may carry
+    private static final int LARGE_NOTES = 40;
+    private static final int LARGE_BODY_LENGTH = 100 * 1024;
+
+    private static String namespace;
+
+    @BeforeClass
+    public static void useEmulator() throws Exception {
+        FirebaseDatabase.getInstance().useEmulator("10.0.2.2", 9000);
+        String databaseUrl = FirebaseApp.getInstance().getOptions().getDatabaseUrl();
+        namespace = Uri.parse(databaseUrl).getHost().split("\\.")[0];
+        rest("DELETE", "/.json", null);
+        rest("PUT", "/.settings/rules.json", "{\"rules\": {\".read\": true, \".write\": true, "
+                + "\"notes\": {\".indexOn\": [\"userId\", \"userUpdatedAt\"]}, "
+                + "\"user_notes\": {\"$userId\": {\".indexOn\": [\"userUpdatedAt\"]}}}}");
+    }
+
+    @Test
+    public void loadingOneUsersNotes_doesNotGrowWithUserCount() throws Exception {
+        seedUsers(0, FEW_USERS);
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        // Warm the connection so neither measurement pays for the handshake
+        Tasks.await(firebaseManager.loadNotesForUser(MEASURED_USER), 30, TimeUnit.SECONDS);
+
+        long fewMs = medianLoadMillis(firebaseManager);
+        long fewLegacyMs = medianLegacyQueryMillis();
+
+        seedUsers(FEW_USERS, MANY_USERS);
+        long manyMs = medianLoadMillis(firebaseManager);
+        long manyLegacyMs = medianLegacyQueryMillis();
+
+        android.util.Log.i("NotePartition", "one user's notes: partition " + fewMs + " ms with " + FEW_USERS
+                + " users, " + manyMs + " ms with " + MANY_USERS + "; flat query " + fewLegacyMs + " ms, "
+                + manyLegacyMs + " ms");
+        assertTrue("partition load took " + manyMs + " ms with " + MANY_USERS + " users vs " + fewMs
+                + " ms with " + FEW_USERS, manyMs <= Math.max(3 * fewMs, fewMs + 200));
+    }
+
+    @Test
+    public void migration_copiesLegacyNotesOnceAndMarksTheUser() throws Exception {
+        JSONObject legacy = new JSONObject();
+        for (int n = 0; n < NOTES_PER_USER; n++) {
+            JSONObject note = new JSONObject();
+            note.put("title", "Legacy " + n);
+            note.put("content", "Written before the partition");
+            note.put("userId", LEGACY_USER);
+            note.put("updatedAt", 1_600_000_000_000L + n * 1000L);
+            legacy.put(LEGACY_USER + "_note" + n, note);
+        }
+        rest("PATCH", "/notes.json", legacy.toString());
+        // A note dual-written after the update is newer than its legacy copy and is kept
+        rest("PUT", "/user_notes/" + LEGACY_USER + "/" + LEGACY_USER + "_note0.json",
+                "{\"title\": \"Edited\", \"userId\": \"" + LEGACY_USER + "\", \"updatedAt\": 1700000000000}");
+
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        int copied = Tasks.await(firebaseManager.migrateNotesToPartition(LEGACY_USER), 60, TimeUnit.SECONDS);
+        assertEquals(NOTES_PER_USER - 1, copied);
+        assertNotEquals("null", rest("GET", "/note_partitions/" + LEGACY_USER + ".json", null));
+
+        List<NoteModel> notes = Tasks.await(firebaseManager.loadNotesForUser(LEGACY_USER), 30, TimeUnit.SECONDS);
+        assertEquals(NOTES_PER_USER, notes.size());
+        assertEquals("Edited", notes.get(0).getTitle());
+        // Copied notes gain the list key, so the partition can be paged
+        JSONObject copiedNote = new JSONObject(rest("GET",
+                "/user_notes/" + LEGACY_USER + "/" + LEGACY_USER + "_note1.json", null));
+        assertEquals(FirebaseManager.noteListKey(LEGACY_USER, 1_600_000_001_000L),
+                copiedNote.getString("userUpdatedAt"));
+        // and leave their body in note_body
+        assertFalse(copiedNote.has("content"));
+        assertEquals("\"Written before the partition\"",
+                rest("GET", "/note_body/" + LEGACY_USER + "_note1/content.json", null));
+
+        assertEquals(0, (int) Tasks.await(firebaseManager.migrateNotesToPartition(LEGACY_USER),
+                30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void migrationOfManyLargeNotes_writesInBatchesThenMarks() throws Exception {
+        StringBuilder body = new StringBuilder(LARGE_BODY_LENGTH);
+        while (body.length() < LARGE_BODY_LENGTH) {
+            body.append("A long paragraph written before the partition existed. ");
+        }
+        for (int n = 0; n < LARGE_NOTES; n++) {
+            JSONObject note = new JSONObject();
+            note.put("title", "Large " + n);
+            note.put("content", body.toString());
+            note.put("userId", LARGE_LEGACY_USER);
+            note.put("updatedAt", 1_600_000_000_000L + n * 1000L);
+            rest("PUT", "/notes/" + LARGE_LEGACY_USER + "_note" + n + ".json", note.toString());
+        }
+
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        int copied = Tasks.await(firebaseManager.migrateNotesToPartition(LARGE_LEGACY_USER),
+                120, TimeUnit.SECONDS);
+        assertEquals(LARGE_NOTES, copied);
+        assertNotEquals("null", rest("GET", "/note_partitions/" + LARGE_LEGACY_USER + ".json", null));
+
+        // Partition entries hold no body, so the whole partition is small
+        JSONObject partition = new JSONObject(rest("GET", "/user_notes/" + LARGE_LEGACY_USER + ".json", null));
+        assertEquals(LARGE_NOTES, partition.length());
+        assertEquals(body.length() + 2, rest("GET", "/note_body/" + LARGE_LEGACY_USER + "_note"
+                + (LARGE_NOTES - 1) + "/content.json", null).length());
+    }
+
+    private static String user(int index) {
+        return String.format("partitionUser%04d", index);
+    }
+
+    private long medianLoadMillis(FirebaseManager firebaseManager) throws Exception {
+        long[] samples = new long[5];
+        for (int i = 0; i < samples.length; i++) {
+            // Fresh reads each time; goOffline/goOnline drops the client's cached views
+            FirebaseDatabase.getInstance().goOffline();
+            FirebaseDatabase.getInstance().goOnline();
+            long start = System.nanoTime();
+            List<NoteModel> notes = Tasks.await(firebaseManager.loadNotesForUser(MEASURED_USER), 30, TimeUnit.SECONDS);
+            samples[i] = (System.nanoTime() - start) / 1_000_000;
+            assertEquals(NOTES_PER_USER, notes.size());
+        }
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+
+    private long medianLegacyQueryMillis() throws Exception {
+        long[] samples = new long[5];
+        for (int i = 0; i < samples.length; i++) {
+            FirebaseDatabase.getInstance().goOffline();
+            FirebaseDatabase.getInstance().goOnline();
+            long start = System.nanoTime();
+            long count = Tasks.await(DatabaseTasks.once(FirebaseDatabase.getInstance().getReference("notes")
+                    .orderByChild("userId").equalTo(MEASURED_USER)), 60, TimeUnit.SECONDS).getChildrenCount();
+            samples[i] = (System.nanoTime() - start) / 1_000_000;
+            assertEquals(NOTES_PER_USER, count);
+        }
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+
+    // Both layouts, as the dual writes leave them, over REST so nothing is cached locally
+    private static void seedUsers(int from, int to) throws Exception {
+        for (int batchStart = from; batchStart < to; batchStart += SEED_BATCH_USERS) {
+            JSONObject updates = new JSONObject();
+            for (int u = batchStart; u < Math.min(to, batchStart + SEED_BATCH_USERS); u++) {
+                String userId = user(u);
+                for (int n = 0; n < NOTES_PER_USER; n++) {
+                    long updatedAt = 1_600_000_000_000L + n * 1000L;
+                    String noteId = userId + "_note" + n;
+                    JSONObject note = new JSONObject();
+                    note.put("title", "Note " + n);
+                    note.put("preview", "Seeded body " + n);
+                    note.put("userId", userId);
+                    note.put("updatedAt", updatedAt);
+                    note.put("userUpdatedAt", FirebaseManager.noteListKey(userId, updatedAt));
+                    updates.put("notes/" + noteId, note);
+                    updates.put("user_notes/" + userId + "/" + noteId, note);
+                }
+                updates.put("note_partitions/" + userId, 1_600_000_000_000L);
+            }
+            rest("PATCH", "/.json", updates.toString());
+        }
+    }
+
+    private static String rest(String method, String path, String body) throws Exception {
+        URL url = new URL(EMULATOR + path + "?ns=" + namespace);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if ("PATCH".equals(method)) {
+            // HttpURLConnection has no PATCH; the database accepts the override header
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+        } else {
+            connection.setRequestMethod(method);
+        }
+        connection.setRequestProperty("Authorization", "Bearer owner");
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString("UTF-8").trim();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.syncnote.firebase;
+
+import android.net.TrafficStats;
+import android.net.Uri;
+import android.os.Process;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.syncnote.models.SharedNoteModel;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.FirebaseDatabase;
+
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs against the Realtime Database emulator ({@code firebase emulators:start --only database}),
+ * reachable from the Android emulator at 10.0.2.2:9000.
+ *
+ * <p>Looks up one note's shares with 1,000 unrelated rows in shared_notes, then again
+ * for a like note after growing the tree to 10,000 rows. Reading the note_shares index
+ * keeps the bytes received per lookup flat; the old full scan grew with the tree.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ShareLookupInstrumentedTest {
+
+    private static final String EMULATOR = "http://10.0.2.2:9000";
+    private static final int SHARES_PER_NOTE = 3;
+    private static final int SMALL_TREE = 1_000;
+    private static final int LARGE_TREE = 10_000;
+    private static final int SEED_BATCH_ROWS = 1_000;
+
+    // Unique per run, so data cached by an earlier run cannot hide a download
+    private static final String RUN = "lookup" + System.currentTimeMillis();
+
+    private static String namespace;
+
+    @BeforeClass
+    public static void connect() throws Exception {
+        FirebaseDatabase.getInstance().useEmulator("10.0.2.2", 9000);
+        String databaseUrl = FirebaseApp.getInstance().getOptions().getDatabaseUrl();
+        namespace = Uri.parse(databaseUrl).getHost().split("\\.")[0];
+        rest("PUT", "/.settings/rules.json", "{\"rules\": {\".read\": true, \".write\": true}}");
+        // Starts from an empty tree, so the row counts below are the whole of it
+        rest("PUT", "/shared_notes.json", "null");
+    }
+
+    @Test
+    public void bytesPerLookup_stayFlatAsSharedNotesGrows() throws Exception {
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        // Warm the connection so the handshake is not counted
+        Tasks.await(DatabaseTasks.once(FirebaseDatabase.getInstance().getReference("warmup")),
+                30, TimeUnit.SECONDS);
+
+        seedFiller(0, SMALL_TREE);
+        String smallNote = seedSharedNote("small");
+        long smallBytes = receivedWhile(() -> {
+            List<SharedNoteModel> shares = Tasks.await(firebaseManager.loadSharedUsersForNote(smallNote),
+                    30, TimeUnit.SECONDS);
+            assertEquals(SHARES_PER_NOTE, shares.size());
+        });
+
+        seedFiller(SMALL_TREE, LARGE_TREE);
+        String largeNote = seedSharedNote("large");
+        long largeBytes = receivedWhile(() -> {
+            List<SharedNoteModel> shares = Tasks.await(firebaseManager.loadSharedUsersForNote(largeNote),
+                    30, TimeUnit.SECONDS);
+            assertEquals(SHARES_PER_NOTE, shares.size());
+        });
+        long scanBytes = receivedWhile(() -> Tasks.await(
+                DatabaseTasks.once(FirebaseDatabase.getInstance().getReference("shared_notes")),
+                120, TimeUnit.SECONDS));
+
+        android.util.Log.i("ShareLookup", "bytes per lookup: " + smallBytes + " with " + SMALL_TREE
+                + " rows, " + largeBytes + " with " + LARGE_TREE + " rows; full scan " + scanBytes);
+        // Ten times the rows; allow for noise from other traffic, not for growth
+        assertTrue("lookup took " + smallBytes + " then " + largeBytes + " bytes",
+                largeBytes < smallBytes * 2);
+        assertTrue("lookup took " + largeBytes + " bytes vs " + scanBytes + " for a scan",
+                largeBytes * 20 < scanBytes);
+    }
+
+    // Shares of other notes with other users, as the rest of the tree holds
+    private static void seedFiller(int from, int to) throws Exception {
+        for (int batchStart = from; batchStart < to; batchStart += SEED_BATCH_ROWS) {
+            JSONObject updates = new JSONObject();
+            for (int i = batchStart; i < Math.min(to, batchStart + SEED_BATCH_ROWS); i++) {
+                String noteId = RUN + "_filler" + (i / 4);
+                String userId = RUN + "_fillerUser" + i;
+                updates.put("shared_notes/" + FirebaseManager.shareKey(noteId, userId), share(noteId, userId, i));
+            }
+            rest("PATCH", "/.json", updates.toString());
+        }
+    }
+
+    // A note shared with SHARES_PER_NOTE users who have profiles, returning its id
+    private static String seedSharedNote(String name) throws Exception {
+        String noteId = RUN + "_" + name;
+        JSONObject updates = new JSONObject();
+        for (int u = 0; u < SHARES_PER_NOTE; u++) {
+            String userId = noteId + "_user" + u;
+            String shareId = FirebaseManager.shareKey(noteId, userId);
+            updates.put("shared_notes/" + shareId, share(noteId, userId, u));
+            updates.put("note_shares/" + noteId + "/" + userId, shareId);
+            updates.put("user_profiles/" + userId, new JSONObject().put("username", name + u));
+        }
+        rest("PATCH", "/.json", updates.toString());
+        return noteId;
+    }
+
+    private static JSONObject share(String noteId, String userId, int index) throws Exception {
+        return new JSONObject()
+                .put("noteId", noteId)
+                .put("ownerId", RUN + "_owner")
+                .put("sharedWithUserId", userId)
+                .put("permission", "view")
+                .put("sharedAt", 1_600_000_000_000L + index);
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private static long receivedWhile(Action action) throws Exception {
+        int uid = Process.myUid();
+        long before = TrafficStats.getUidRxBytes(uid);
+        assertTrue("traffic stats unsupported", before >= 0);
+        action.run();
+        return TrafficStats.getUidRxBytes(uid) - before;
+    }
+
+    private static void rest(String method, String path, String body) throws Exception {
+        URL url = new URL(EMULATOR + path + "?ns=" + namespace);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if ("PATCH".equals(method)) {
+            // HttpURLConnection has no PATCH; the database accepts the override header
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+        } else {
+            connection.setRequestMethod(method);
+        }
+        connection.setRequestProperty("Authorization", "Bearer owner");
+        try {
+            if (body != null) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            assertEquals(200, connection.getResponseCode());
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.syncnote.firebase;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.syncnote.models.ActivityLogModel;
+import com.example.syncnote.models.SharedNoteModel;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs against the Realtime Database emulator ({@code firebase emulators:start --only database}),
+ * reachable from the Android emulator at 10.0.2.2:9000.
+ *
+ * <p>Client reads are denied by the rules while each share operation runs, so an
+ * operation that looked anything up first would fail; only the share re-key marker
+ * is readable. Results are read back over REST with the owner credential, which
+ * bypasses the rules.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ShareMutationInstrumentedTest {
+
+    private static final String EMULATOR = "http://10.0.2.2:9000";
+    private static final String NOTE_ID = "shareTestNote";
+    private static final String OWNER_ID = "shareTestOwner";
+    private static final String RECIPIENT_ID = "shareTestRecipient";
+
+    private static String namespace;
+
+    @BeforeClass
+    public static void useEmulator() {
+        FirebaseDatabase.getInstance().useEmulator("10.0.2.2", 9000);
+        String databaseUrl = FirebaseApp.getInstance().getOptions().getDatabaseUrl();
+        namespace = Uri.parse(databaseUrl).getHost().split("\\.")[0];
+    }
+
+    @Before
+    public void denyClientReads() throws Exception {
+        rest("DELETE", "/.json", null);
+        rest("PUT", "/.settings/rules.json", "{\"rules\": {\".read\": false, \".write\": true, "
+                + "\"data_migrations\": {\".read\": true}}}");
+        rest("PUT", "/data_migrations/share_keys.json", "1600000000000");
+        awaitShareKeysMarker(true);
+    }
+
+    @After
+    public void restoreRules() throws Exception {
+        rest("PUT", "/.settings/rules.json", "{\"rules\": {\".read\": true, \".write\": true}}");
+    }
+
+    @Test
+    public void share_updatePermission_unshare_eachWriteWithoutReading() throws Exception {
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        String shareId = FirebaseManager.shareKey(NOTE_ID, RECIPIENT_ID);
+
+        assertTrue(run(callback -> firebaseManager.shareNote(NOTE_ID, OWNER_ID, RECIPIENT_ID, "view",
+                log(ActivityLogModel.ACTION_SHARED), callback)));
+        JSONObject share = new JSONObject(rest("GET", "/shared_notes/" + shareId + ".json", null));
+        assertEquals("view", share.getString("permission"));
+        assertEquals(NOTE_ID, share.getString("noteId"));
+        assertEquals("\"" + shareId + "\"", rest("GET", "/note_shares/" + NOTE_ID + "/" + RECIPIENT_ID + ".json", null));
+        assertEquals(1, new JSONObject(rest("GET", "/activity_logs/" + NOTE_ID + ".json", null)).length());
+
+        assertTrue(run(callback -> firebaseManager.updateSharePermission(NOTE_ID, RECIPIENT_ID, "edit",
+                log(ActivityLogModel.ACTION_PERMISSION_CHANGED), callback)));
+        assertEquals("\"edit\"", rest("GET", "/shared_notes/" + shareId + "/permission.json", null));
+        assertEquals(2, new JSONObject(rest("GET", "/activity_logs/" + NOTE_ID + ".json", null)).length());
+
+        assertTrue(run(callback -> firebaseManager.unshareNote(NOTE_ID, RECIPIENT_ID,
+                log(ActivityLogModel.ACTION_UNSHARED), callback)));
+        assertEquals("null", rest("GET", "/shared_notes/" + shareId + ".json", null));
+        assertEquals("null", rest("GET", "/note_shares/" + NOTE_ID + ".json", null));
+        assertEquals(3, new JSONObject(rest("GET", "/activity_logs/" + NOTE_ID + ".json", null)).length());
+    }
+
+    @Test
+    public void reshare_overwritesTheSameKey() throws Exception {
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        assertTrue(run(callback -> firebaseManager.shareNote(NOTE_ID, OWNER_ID, RECIPIENT_ID, "view", null, callback)));
+        assertTrue(run(callback -> firebaseManager.shareNote(NOTE_ID, OWNER_ID, RECIPIENT_ID, "edit", null, callback)));
+
+        JSONObject shares = new JSONObject(rest("GET", "/shared_notes.json", null));
+        assertEquals(1, shares.length());
+        assertEquals("edit", shares.getJSONObject(FirebaseManager.shareKey(NOTE_ID, RECIPIENT_ID)).getString("permission"));
+    }
+
+    @Test
+    public void pushKeyedShare_isFoundThroughTheIndexUntilReKeyed() throws Exception {
+        rest("PUT", "/.settings/rules.json", "{\"rules\": {\".read\": true, \".write\": true}}");
+        rest("DELETE", "/data_migrations.json", null);
+        awaitShareKeysMarker(false);
+        // As shareNote wrote it before shares were keyed by note and recipient
+        String pushId = "-legacyShare";
+        rest("PUT", "/shared_notes/" + pushId + ".json", new JSONObject()
+                .put("noteId", NOTE_ID)
+                .put("ownerId", OWNER_ID)
+                .put("sharedWithUserId", RECIPIENT_ID)
+                .put("permission", "view")
+                .put("sharedAt", 1_600_000_000_000L).toString());
+        rest("PUT", "/note_shares/" + NOTE_ID + "/" + RECIPIENT_ID + ".json", "\"" + pushId + "\"");
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+
+        assertTrue(run(callback -> firebaseManager.updateSharePermission(NOTE_ID, RECIPIENT_ID, "edit",
+                null, callback)));
+        assertEquals("\"edit\"", rest("GET", "/shared_notes/" + pushId + "/permission.json", null));
+        SharedNoteModel[] found = new SharedNoteModel[1];
+        CountDownLatch read = new CountDownLatch(1);
+        firebaseManager.getSharePermission(NOTE_ID, RECIPIENT_ID, share -> {
+            found[0] = share;
+            read.countDown();
+        }, e -> read.countDown());
+        assertTrue(read.await(30, TimeUnit.SECONDS));
+        assertEquals("edit", found[0].getPermission());
+
+        assertTrue(run(callback -> firebaseManager.shareNote(NOTE_ID, OWNER_ID, RECIPIENT_ID, "view", null, callback)));
+        assertEquals(1, new JSONObject(rest("GET", "/shared_notes.json", null)).length());
+
+        Tasks.await(firebaseManager.runDataMigrations(), 60, TimeUnit.SECONDS);
+        String shareId = FirebaseManager.shareKey(NOTE_ID, RECIPIENT_ID);
+        JSONObject shares = new JSONObject(rest("GET", "/shared_notes.json", null));
+        assertEquals(1, shares.length());
+        assertEquals("view", shares.getJSONObject(shareId).getString("permission"));
+        assertEquals("\"" + shareId + "\"", rest("GET", "/note_shares/" + NOTE_ID + "/" + RECIPIENT_ID + ".json", null));
+
+        awaitShareKeysMarker(true);
+        assertTrue(run(callback -> firebaseManager.unshareNote(NOTE_ID, RECIPIENT_ID, null, callback)));
+        assertEquals("null", rest("GET", "/shared_notes.json", null));
+    }
+
+    // Watches the marker alongside FirebaseManager, so both have seen the change on return
+    private static void awaitShareKeysMarker(boolean exists) throws Exception {
+        DatabaseReference marker = FirebaseDatabase.getInstance().getReference("data_migrations/share_keys");
+        CountDownLatch seen = new CountDownLatch(1);
+        ValueEventListener listener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                if (snapshot.exists() == exists) seen.countDown();
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+            }
+        };
+        marker.addValueEventListener(listener);
+        try {
+            assertTrue(seen.await(30, TimeUnit.SECONDS));
+        } finally {
+            marker.removeEventListener(listener);
+        }
+    }
+
+    private interface Operation {
+        void start(FirebaseManager.BooleanCallback callback);
+    }
+
+    private static boolean run(Operation operation) throws Exception {
+        boolean[] result = {false};
+        CountDownLatch done = new CountDownLatch(1);
+        operation.start(success -> {
+            result[0] = success;
+            done.countDown();
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        return result[0];
+    }
+
+    private static ActivityLogModel log(String action) {
+        return new ActivityLogModel(NOTE_ID, OWNER_ID, "owner", action, null);
+    }
+
+    private static String rest(String method, String path, String body) throws Exception {
+        URL url = new URL(EMULATOR + path + "?ns=" + namespace);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Authorization", "Bearer owner");
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString("UTF-8").trim();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
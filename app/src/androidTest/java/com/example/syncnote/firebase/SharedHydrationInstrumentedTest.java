@@ -0,0 +1,126 @@
+package com.example.syncnote.firebase;
+
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.syncnote.models.SharedNoteModel;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.FirebaseDatabase;
+
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs against the Realtime Database emulator ({@code firebase emulators:start --only database}),
+ * reachable from the Android emulator at 10.0.2.2:9000.
+ *
+ * <p>Seeds 300 shares from 5 owners and counts the reads it takes to load the Shared
+ * tab: one for the shares, one per note and one per distinct owner, where the nested
+ * lookups used to read the note and then its owner for every share.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SharedHydrationInstrumentedTest {
+
+    private static final String EMULATOR = "http://10.0.2.2:9000";
+    private static final int SHARES = 300;
+    private static final int OWNERS = 5;
+
+    // Unique per run, so profiles cached by an earlier run cannot hide a read
+    private static final String RUN = "hydrate" + System.currentTimeMillis();
+    private static final String RECIPIENT = RUN + "_recipient";
+
+    private static String namespace;
+
+    @BeforeClass
+    public static void seedShares() throws Exception {
+        FirebaseDatabase.getInstance().useEmulator("10.0.2.2", 9000);
+        String databaseUrl = FirebaseApp.getInstance().getOptions().getDatabaseUrl();
+        namespace = Uri.parse(databaseUrl).getHost().split("\\.")[0];
+        rest("PUT", "/.settings/rules.json", "{\"rules\": {\".read\": true, \".write\": true, "
+                + "\"shared_notes\": {\".indexOn\": [\"sharedWithUserId\"]}}}");
+
+        JSONObject updates = new JSONObject();
+        for (int o = 0; o < OWNERS; o++) {
+            updates.put("user_profiles/" + owner(o), new JSONObject().put("username", "owner" + o));
+        }
+        for (int s = 0; s < SHARES; s++) {
+            String ownerId = owner(s % OWNERS);
+            String noteId = RUN + "_note" + s;
+            long updatedAt = 1_600_000_000_000L + s * 1000L;
+            updates.put("user_notes/" + ownerId + "/" + noteId, new JSONObject()
+                    .put("title", "Shared " + s)
+                    .put("preview", "Preview of note " + s)
+                    .put("userId", ownerId)
+                    .put("updatedAt", updatedAt));
+            updates.put("shared_notes/" + FirebaseManager.shareKey(noteId, RECIPIENT), new JSONObject()
+                    .put("noteId", noteId)
+                    .put("ownerId", ownerId)
+                    .put("sharedWithUserId", RECIPIENT)
+                    .put("permission", "view")
+                    .put("sharedAt", updatedAt));
+        }
+        rest("PATCH", "/.json", updates.toString());
+    }
+
+    @Test
+    public void sharedTab_readsEachNoteAndEachDistinctOwnerOnce() throws Exception {
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+
+        int before = DatabaseTasks.readsStarted();
+        long start = System.nanoTime();
+        List<SharedNoteModel> shares = Tasks.await(firebaseManager.loadSharedNotesForUser(RECIPIENT),
+                60, TimeUnit.SECONDS);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        int reads = DatabaseTasks.readsStarted() - before;
+
+        android.util.Log.i("SharedHydration", SHARES + " shares from " + OWNERS + " owners: "
+                + reads + " reads in " + elapsedMs + " ms; per-share lookups took " + 2 * SHARES);
+        assertEquals(SHARES, shares.size());
+        for (SharedNoteModel share : shares) {
+            assertNotNull(share.getNoteTitle());
+            assertTrue(share.getOwnerUsername().startsWith("owner"));
+        }
+        assertEquals(1 + SHARES + OWNERS, reads);
+    }
+
+    private static String owner(int index) {
+        return RUN + "_owner" + index;
+    }
+
+    private static void rest(String method, String path, String body) throws Exception {
+        URL url = new URL(EMULATOR + path + "?ns=" + namespace);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if ("PATCH".equals(method)) {
+            // HttpURLConnection has no PATCH; the database accepts the override header
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+        } else {
+            connection.setRequestMethod(method);
+        }
+        connection.setRequestProperty("Authorization", "Bearer owner");
+        try {
+            if (body != null) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            assertEquals(200, connection.getResponseCode());
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
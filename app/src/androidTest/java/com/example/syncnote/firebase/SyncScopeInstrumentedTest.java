@@ -0,0 +1,220 @@
+package com.example.syncnote.firebase;
+
+import android.content.Context;
+import android.net.TrafficStats;
+import android.net.Uri;
+import android.os.Process;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.syncnote.utils.SessionManager;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs against the Realtime Database emulator ({@code firebase emulators:start --only database}),
+ * reachable from the Android emulator at 10.0.2.2:9000.
+ *
+ * <p>Seeds many users over REST, so nothing is in the local cache, then compares the
+ * bytes received to sync one signed-in user against syncing the whole notes and
+ * categories trees, as the app did before.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncScopeInstrumentedTest {
+
+    private static final String EMULATOR = "http://10.0.2.2:9000";
+    private static final int USERS = 500;
+    private static final int NOTES_PER_USER = 10;
+
+    // Unique per run, so data cached by an earlier run cannot hide a download
+    private static final String RUN = "scope" + System.currentTimeMillis();
+
+    private static String namespace;
+
+    @BeforeClass
+    public static void seedUsers() throws Exception {
+        FirebaseDatabase.getInstance().useEmulator("10.0.2.2", 9000);
+        String databaseUrl = FirebaseApp.getInstance().getOptions().getDatabaseUrl();
+        namespace = Uri.parse(databaseUrl).getHost().split("\\.")[0];
+
+        StringBuilder body = new StringBuilder(200);
+        for (int i = 0; i < 10; i++) {
+            body.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor. ");
+        }
+        JSONObject notes = new JSONObject();
+        JSONObject userNotes = new JSONObject();
+        JSONObject partitions = new JSONObject();
+        JSONObject categories = new JSONObject();
+        JSONObject shares = new JSONObject();
+        for (int u = 0; u < USERS; u++) {
+            String userId = user(u);
+            JSONObject partition = new JSONObject();
+            for (int n = 0; n < NOTES_PER_USER; n++) {
+                long updatedAt = 1_600_000_000_000L + n * 1000L;
+                JSONObject note = new JSONObject();
+                note.put("title", "Note " + n);
+                note.put("content", body.toString());
+                note.put("userId", userId);
+                note.put("updatedAt", updatedAt);
+                note.put("userUpdatedAt", FirebaseManager.noteListKey(userId, updatedAt));
+                notes.put(userId + "_note" + n, note);
+                partition.put(userId + "_note" + n, note);
+            }
+            userNotes.put(userId, partition);
+            partitions.put(userId, 1_600_000_000_000L);
+            categories.put(userId + "_cat", new JSONObject().put("name", "Work").put("userId", userId));
+            String shareId = FirebaseManager.shareKey(user((u + 1) % USERS) + "_note0", userId);
+            shares.put(shareId, new JSONObject()
+                    .put("noteId", user((u + 1) % USERS) + "_note0")
+                    .put("ownerId", user((u + 1) % USERS))
+                    .put("sharedWithUserId", userId)
+                    .put("permission", "view"));
+        }
+        JSONObject root = new JSONObject()
+                .put("notes", notes)
+                .put("user_notes", userNotes)
+                .put("note_partitions", partitions)
+                .put("categories", categories)
+                .put("shared_notes", shares);
+        rest("PUT", "/.json", root.toString());
+    }
+
+    @After
+    public void logout() {
+        onMain(() -> session().logout());
+    }
+
+    @Test
+    public void signedInUser_syncsOnlyTheirData() throws Exception {
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        onMain(() -> firebaseManager.attachSession(session()));
+        // Warm the connection so the handshake is not counted
+        Tasks.await(DatabaseTasks.once(root().child("warmup")), 30, TimeUnit.SECONDS);
+
+        long firstUser = receivedWhile(() -> {
+            onMain(() -> session().login(user(0), "user0", "user0@example.com"));
+            awaitUserSynced(user(0));
+        });
+        // A login as someone else re-scopes instead of adding to what is synced
+        long secondUser = receivedWhile(() -> {
+            onMain(() -> session().login(user(1), "user1", "user1@example.com"));
+            awaitUserSynced(user(1));
+        });
+        long wholeTrees = receivedWhile(() -> {
+            root().child("notes").keepSynced(true);
+            root().child("categories").keepSynced(true);
+            Tasks.await(DatabaseTasks.once(root().child("notes")), 60, TimeUnit.SECONDS);
+            Tasks.await(DatabaseTasks.once(root().child("categories")), 60, TimeUnit.SECONDS);
+        });
+        root().child("notes").keepSynced(false);
+        root().child("categories").keepSynced(false);
+
+        android.util.Log.i("SyncScope", "bytes received: first user " + firstUser + ", second user "
+                + secondUser + ", whole trees for " + USERS + " users " + wholeTrees);
+        assertTrue("one user took " + firstUser + " bytes vs " + wholeTrees + " for all",
+                firstUser * 20 < wholeTrees);
+        assertTrue("second user took " + secondUser + " bytes vs " + wholeTrees + " for all",
+                secondUser * 20 < wholeTrees);
+    }
+
+    @Test
+    public void syncedUser_readsOwnDataOffline() throws Exception {
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        onMain(() -> firebaseManager.attachSession(session()));
+        onMain(() -> session().login(user(2), "user2", "user2@example.com"));
+        awaitUserSynced(user(2));
+
+        FirebaseDatabase.getInstance().goOffline();
+        try {
+            DataSnapshot notes = Tasks.await(DatabaseTasks.once(ownedNotes(user(2))), 10, TimeUnit.SECONDS);
+            assertEquals(NOTES_PER_USER, notes.getChildrenCount());
+            DataSnapshot shares = Tasks.await(DatabaseTasks.once(shares(user(2))), 10, TimeUnit.SECONDS);
+            assertEquals(1, shares.getChildrenCount());
+        } finally {
+            FirebaseDatabase.getInstance().goOnline();
+        }
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private static long receivedWhile(Action action) throws Exception {
+        int uid = Process.myUid();
+        long before = TrafficStats.getUidRxBytes(uid);
+        assertTrue("traffic stats unsupported", before >= 0);
+        action.run();
+        return TrafficStats.getUidRxBytes(uid) - before;
+    }
+
+    // Same locations setSyncedUser keeps synced; a listener on them completes once they are loaded
+    private static void awaitUserSynced(String userId) throws Exception {
+        Tasks.await(DatabaseTasks.once(ownedNotes(userId)), 30, TimeUnit.SECONDS);
+        Tasks.await(DatabaseTasks.once(root().child("note_partitions").child(userId)), 30, TimeUnit.SECONDS);
+        Tasks.await(DatabaseTasks.once(shares(userId)), 30, TimeUnit.SECONDS);
+        Tasks.await(DatabaseTasks.once(root().child("categories").orderByChild("userId").equalTo(userId)),
+                30, TimeUnit.SECONDS);
+    }
+
+    private static Query ownedNotes(String userId) {
+        return root().child("user_notes").child(userId);
+    }
+
+    private static Query shares(String userId) {
+        return root().child("shared_notes").orderByChild("sharedWithUserId").equalTo(userId);
+    }
+
+    private static DatabaseReference root() {
+        return FirebaseDatabase.getInstance().getReference();
+    }
+
+    private static String user(int index) {
+        return RUN + "User" + index;
+    }
+
+    private static SessionManager session() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        return SessionManager.getInstance(context);
+    }
+
+    private static void onMain(Runnable action) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(action);
+    }
+
+    private static void rest(String method, String path, String body) throws Exception {
+        URL url = new URL(EMULATOR + path + "?ns=" + namespace);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Authorization", "Bearer owner");
+        try {
+            if (body != null) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            assertEquals(200, connection.getResponseCode());
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.syncnote.firebase;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs against the Realtime Database emulator ({@code firebase emulators:start --only database}),
+ * reachable from the Android emulator at 10.0.2.2:9000.
+ *
+ * <p>Takes the client offline, makes a burst of colour changes to one note and
+ * checks that each is saved locally at once, that they collapse into a single held
+ * write that the client's cache shows while still offline, and that only the last
+ * colour reaches the server after reconnecting.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WriteQueueInstrumentedTest {
+
+    private static final String EMULATOR = "http://10.0.2.2:9000";
+    private static final String NOTE_ID = "writeQueueTestNote";
+    private static final String OWNER_ID = "writeQueueTestOwner";
+    private static final String[] COLORS = {"#FFCDD2", "#F8BBD9", "#E1BEE7", "#C5CAE9", "#BBDEFB", "#C8E6C9"};
+
+    private static String namespace;
+
+    @BeforeClass
+    public static void useEmulator() {
+        FirebaseDatabase.getInstance().useEmulator("10.0.2.2", 9000);
+        String databaseUrl = FirebaseApp.getInstance().getOptions().getDatabaseUrl();
+        namespace = Uri.parse(databaseUrl).getHost().split("\\.")[0];
+    }
+
+    @Before
+    public void seedNote() throws Exception {
+        rest("DELETE", "/.json", null);
+        String note = "{\"title\": \"Queued\", \"userId\": \"" + OWNER_ID + "\", \"color\": \"#FFFFFF\"}";
+        rest("PUT", "/notes/" + NOTE_ID + ".json", note);
+        rest("PUT", "/user_notes/" + OWNER_ID + "/" + NOTE_ID + ".json", note);
+    }
+
+    @After
+    public void goOnline() {
+        FirebaseDatabase.getInstance().goOnline();
+    }
+
+    @Test
+    public void offlineColorChanges_coalesceAndReplayOnReconnect() throws Exception {
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        awaitConnected(true);
+        WriteQueue.Stats before = firebaseManager.getWriteQueueStats();
+
+        FirebaseDatabase.getInstance().goOffline();
+        awaitConnected(false);
+
+        AtomicInteger synced = new AtomicInteger();
+        CountDownLatch allSynced = new CountDownLatch(COLORS.length);
+        for (String color : COLORS) {
+            onMain(() -> firebaseManager.updateNoteColor(NOTE_ID, OWNER_ID, color, success -> {
+                if (success) synced.incrementAndGet();
+                allSynced.countDown();
+            }));
+        }
+
+        // Every change is accepted on the device; only one write is held, covering the
+        // flat node and the owner's partition
+        WriteQueue.Stats held = stats(firebaseManager);
+        assertEquals(before.depth + 1, held.depth);
+        assertEquals(before.coalescedPaths + 2 * (COLORS.length - 1), held.coalescedPaths);
+        assertEquals("\"#FFFFFF\"", rest("GET", "/notes/" + NOTE_ID + "/color.json", null));
+
+        // Once the hold passes the write is handed to the client, which applies it offline
+        awaitCachedColor(COLORS[COLORS.length - 1]);
+        assertEquals("\"#FFFFFF\"", rest("GET", "/notes/" + NOTE_ID + "/color.json", null));
+
+        FirebaseDatabase.getInstance().goOnline();
+        assertTrue(allSynced.await(30, TimeUnit.SECONDS));
+        assertEquals(COLORS.length, synced.get());
+
+        assertEquals("\"" + COLORS[COLORS.length - 1] + "\"",
+                rest("GET", "/notes/" + NOTE_ID + "/color.json", null));
+        assertEquals("\"" + COLORS[COLORS.length - 1] + "\"",
+                rest("GET", "/user_notes/" + OWNER_ID + "/" + NOTE_ID + "/color.json", null));
+        WriteQueue.Stats after = stats(firebaseManager);
+        assertEquals(before.depth, after.depth);
+        assertEquals(before.replayed + 1, after.replayed);
+        System.out.println("After reconnect: " + after);
+    }
+
+    private static void awaitCachedColor(String color) throws Exception {
+        CountDownLatch shown = new CountDownLatch(1);
+        DatabaseReference ref = FirebaseDatabase.getInstance()
+                .getReference("user_notes").child(OWNER_ID).child(NOTE_ID).child("color");
+        ValueEventListener listener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                if (color.equals(snapshot.getValue(String.class))) {
+                    shown.countDown();
+                }
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+            }
+        };
+        ref.addValueEventListener(listener);
+        try {
+            assertTrue(shown.await(30, TimeUnit.SECONDS));
+        } finally {
+            ref.removeEventListener(listener);
+        }
+    }
+
+    private static WriteQueue.Stats stats(FirebaseManager firebaseManager) {
+        WriteQueue.Stats[] stats = new WriteQueue.Stats[1];
+        onMain(() -> stats[0] = firebaseManager.getWriteQueueStats());
+        return stats[0];
+    }
+
+    private static void onMain(Runnable action) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(action);
+    }
+
+    // Listeners fire in the order they were added, so the queue has already heard the change
+    private static void awaitConnected(boolean connected) throws Exception {
+        CountDownLatch reached = new CountDownLatch(1);
+        DatabaseReference info = FirebaseDatabase.getInstance().getReference(".info/connected");
+        ValueEventListener listener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                if (Boolean.valueOf(connected).equals(snapshot.getValue(Boolean.class))) {
+                    reached.countDown();
+                }
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+            }
+        };
+        info.addValueEventListener(listener);
+        try {
+            assertTrue(reached.await(30, TimeUnit.SECONDS));
+        } finally {
+            info.removeEventListener(listener);
+        }
+        // Let anything the same event posted run first
+        onMain(() -> { });
+    }
+
+    private static String rest(String method, String path, String body) throws Exception {
+        URL url = new URL(EMULATOR + path + "?ns=" + namespace);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Authorization", "Bearer owner");
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString("UTF-8").trim();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -28,17 +28,27 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.syncnote.adapters.NotesAdapter;
 import com.example.syncnote.adapters.SharedNotesAdapter;
 import com.example.syncnote.firebase.FirebaseManager;
+import com.example.syncnote.local.LocalNoteStore;
+import com.example.syncnote.local.LocalStoreSync;
+import com.example.syncnote.local.OptimisticNoteMutator;
 import com.example.syncnote.models.ActivityLogModel;
 import com.example.syncnote.models.NoteModel;
 import com.example.syncnote.models.SharedNoteModel;
+import com.example.syncnote.utils.NotePreviews;
+import com.example.syncnote.utils.SearchIndex;
 import com.example.syncnote.utils.SessionManager;
+import com.example.syncnote.work.ActivityLogCompactionWorker;
+import com.example.syncnote.work.DataMigrationWorker;
+import com.example.syncnote.work.NotePartitionMigrationWorker;
 import com.google.android.material.floatingactionbutton.ExtendedFloatingActionButton;
 import com.google.android.material.tabs.TabLayout;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import it.xabaras.android.recyclerview.swipedecorator.RecyclerViewSwipeDecorator;
 
@@ -52,6 +62,9 @@ public class HomeActivity extends AppCompatActivity implements
     public static final int SORT_TITLE_ZA = 3;
     
     private int currentSortOption = SORT_DATE_MODIFIED;
+
+    // Start fetching the next page this many cards before the end of the list
+    private static final int LOAD_MORE_THRESHOLD = 10;
     
     // Predefined colors for notes
     private final String[] NOTE_COLORS = {
@@ -73,9 +86,21 @@ public class HomeActivity extends AppCompatActivity implements
     private SharedNotesAdapter sharedNotesAdapter;
     private FirebaseManager firebaseManager;
     private SessionManager sessionManager;
+    private LocalNoteStore localNoteStore;
+    private LocalStoreSync localStoreSync;
+    private OptimisticNoteMutator noteMutator;
 
     private List<NoteModel> allNotes = new ArrayList<>();
+    // allNotes in display order as of the last repaint; searches filter this
+    private List<NoteModel> sortedNotes = new ArrayList<>();
     private List<SharedNoteModel> allSharedNotes = new ArrayList<>();
+    private final SearchIndex noteSearchIndex = new SearchIndex();
+    private final SearchIndex sharedSearchIndex = new SearchIndex();
+    // Notes whose body, cached in the local store, matches bodyMatchQuery
+    private Set<String> bodyMatches = Collections.emptySet();
+    private String bodyMatchQuery;
+    // Set when the notes changed since bodyMatches was looked up
+    private boolean bodyMatchesStale = false;
     private boolean isShowingMyNotes = true;
 
     @Override
@@ -85,6 +110,25 @@ public class HomeActivity extends AppCompatActivity implements
 
         firebaseManager = FirebaseManager.getInstance();
         sessionManager = SessionManager.getInstance(this);
+        firebaseManager.attachSession(sessionManager);
+        localNoteStore = LocalNoteStore.getInstance(this);
+        firebaseManager.attachWriteStore(localNoteStore);
+        localStoreSync = new LocalStoreSync(firebaseManager, localNoteStore);
+        noteMutator = new OptimisticNoteMutator(new OptimisticNoteMutator.Display() {
+            @Override
+            public NoteModel find(String noteId) {
+                return findNote(noteId);
+            }
+
+            @Override
+            public void show(NoteModel note) {
+                replaceNote(note);
+                updateUI();
+            }
+        });
+        ActivityLogCompactionWorker.schedule(this);
+        NotePartitionMigrationWorker.schedule(this);
+        DataMigrationWorker.schedule(this);
 
         initViews();
         setupToolbar();
@@ -100,6 +144,19 @@ public class HomeActivity extends AppCompatActivity implements
         loadData();
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Buffered activity entries would be lost if the process dies in the background
+        firebaseManager.flushActivityLogs();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        localStoreSync.stop();
+    }
+
     private void initViews() {
         notesRecyclerView = findViewById(R.id.notesRecyclerView);
         emptyState = findViewById(R.id.emptyState);
@@ -124,6 +181,14 @@ public class HomeActivity extends AppCompatActivity implements
         sharedNotesAdapter = new SharedNotesAdapter(this, this);
         notesRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         notesRecyclerView.setAdapter(notesAdapter);
+        notesRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0) {
+                    maybeLoadMoreNotes();
+                }
+            }
+        });
         
         // Setup swipe actions
         setupSwipeActions();
@@ -231,61 +296,53 @@ public class HomeActivity extends AppCompatActivity implements
     }
 
     private void loadData() {
-        showLoading(true);
-
-        String userId = sessionManager.getCurrentUserId();
-
-        // Load user's own notes
-        firebaseManager.getNotesForUser(userId, new FirebaseManager.NotesCallback() {
-            @Override
-            public void onSuccess(List<NoteModel> notes) {
-                runOnUiThread(() -> {
-                    allNotes = notes;
-                    if (isShowingMyNotes) {
-                        updateUI();
-                    }
-                });
-            }
-
-            @Override
-            public void onError(String error) {
-                runOnUiThread(() -> {
-                    showLoading(false);
-                    Toast.makeText(HomeActivity.this, "Error loading notes: " + error, Toast.LENGTH_SHORT).show();
-                });
-            }
-        });
-
-        // Load shared notes
-        firebaseManager.getSharedNotesForUser(userId, new FirebaseManager.SharedNotesCallback() {
-            @Override
-            public void onSuccess(List<SharedNoteModel> sharedNotes) {
-                runOnUiThread(() -> {
-                    showLoading(false);
-                    allSharedNotes = sharedNotes;
-                    if (!isShowingMyNotes) {
-                        updateUI();
-                    }
-                });
-            }
+        if (allNotes.isEmpty() && allSharedNotes.isEmpty()) {
+            showLoading(true);
+        }
 
-            @Override
-            public void onError(String error) {
-                runOnUiThread(() -> {
-                    showLoading(false);
-                });
-            }
-        });
+        // Models are seeded from disk and then kept current by Firebase child events
+        localStoreSync.start(sessionManager.getCurrentUserId(), this::onLocalDataChanged);
+        localStoreSync.refreshSharedNotes();
+    }
+
+    private void onLocalDataChanged() {
+        showLoading(false);
+        // Changes still being written stay visible over the refreshed list
+        allNotes = noteMutator.overlay(localStoreSync.getNotes());
+        NotePreviews.prefetch(allNotes);
+        allSharedNotes = localStoreSync.getSharedNotes();
+        reindexNotes();
+        reindexSharedNotes();
+        // Cached bodies may have changed too; the old matches show until the new arrive
+        bodyMatchesStale = true;
+        updateUI();
+        // A page that only refreshed cached notes does not grow the list; keep going
+        maybeLoadMoreNotes();
+    }
+
+    /**
+     * Requests the next page of older notes once the list is scrolled close to its end.
+     */
+    private void maybeLoadMoreNotes() {
+        if (!isShowingMyNotes || !localStoreSync.hasMoreNotes()) return;
+        LinearLayoutManager layoutManager = (LinearLayoutManager) notesRecyclerView.getLayoutManager();
+        if (layoutManager == null) return;
+        int lastVisible = layoutManager.findLastVisibleItemPosition();
+        if (lastVisible >= notesAdapter.getItemCount() - LOAD_MORE_THRESHOLD) {
+            localStoreSync.loadMoreNotes();
+        }
     }
 
     private void updateUI() {
         if (isShowingMyNotes) {
             fabNewNote.setVisibility(View.VISIBLE);
-            notesRecyclerView.setAdapter(notesAdapter);
+            showAdapter(notesAdapter);
             
-            // Sort and display notes (pinned first)
-            List<NoteModel> sortedNotes = sortNotes(allNotes);
-            notesAdapter.setNotes(sortedNotes);
+            // Sort and display notes (pinned first), keeping any active search
+            sortedNotes = sortNotes(allNotes);
+            String query = searchInput.getText().toString();
+            notesAdapter.setNotes(applySearch(sortedNotes, query));
+            searchCachedBodies(query);
 
             if (allNotes.isEmpty()) {
                 showEmptyState("No notes yet", "Tap the + button to create your first note");
@@ -295,8 +352,8 @@ public class HomeActivity extends AppCompatActivity implements
             }
         } else {
             fabNewNote.setVisibility(View.GONE);
-            notesRecyclerView.setAdapter(sharedNotesAdapter);
-            sharedNotesAdapter.setSharedNotes(allSharedNotes);
+            showAdapter(sharedNotesAdapter);
+            sharedNotesAdapter.setSharedNotes(applySharedSearch(allSharedNotes, searchInput.getText().toString()));
 
             if (allSharedNotes.isEmpty()) {
                 showEmptyState("No shared notes", "Notes shared with you will appear here");
@@ -307,14 +364,21 @@ public class HomeActivity extends AppCompatActivity implements
         }
     }
     
+    // Setting an adapter, even the current one, rebinds the whole list; only a tab switch should
+    private void showAdapter(RecyclerView.Adapter<?> adapter) {
+        if (notesRecyclerView.getAdapter() != adapter) {
+            notesRecyclerView.setAdapter(adapter);
+        }
+    }
+
     private List<NoteModel> sortNotes(List<NoteModel> notes) {
-        List<NoteModel> sortedNotes = new ArrayList<>(notes);
+        List<NoteModel> ordered = new ArrayList<>(notes);
         
         // First separate pinned and unpinned notes
         List<NoteModel> pinnedNotes = new ArrayList<>();
         List<NoteModel> unpinnedNotes = new ArrayList<>();
         
-        for (NoteModel note : sortedNotes) {
+        for (NoteModel note : ordered) {
             if (note.isPinned()) {
                 pinnedNotes.add(note);
             } else {
@@ -328,11 +392,11 @@ public class HomeActivity extends AppCompatActivity implements
         Collections.sort(unpinnedNotes, comparator);
         
         // Combine: pinned first, then unpinned
-        sortedNotes.clear();
-        sortedNotes.addAll(pinnedNotes);
-        sortedNotes.addAll(unpinnedNotes);
+        ordered.clear();
+        ordered.addAll(pinnedNotes);
+        ordered.addAll(unpinnedNotes);
         
-        return sortedNotes;
+        return ordered;
     }
     
     private Comparator<NoteModel> getComparator() {
@@ -378,24 +442,86 @@ public class HomeActivity extends AppCompatActivity implements
 
     private void filterNotes(String query) {
         if (isShowingMyNotes) {
-            List<NoteModel> filtered = new ArrayList<>();
-            for (NoteModel note : allNotes) {
-                if (note.getTitle().toLowerCase().contains(query.toLowerCase()) ||
-                        note.getContent().toLowerCase().contains(query.toLowerCase())) {
-                    filtered.add(note);
-                }
-            }
-            notesAdapter.setNotes(filtered);
+            notesAdapter.setNotes(applySearch(sortedNotes, query));
+            searchCachedBodies(query);
         } else {
-            List<SharedNoteModel> filtered = new ArrayList<>();
-            for (SharedNoteModel note : allSharedNotes) {
-                if (note.getNoteTitle().toLowerCase().contains(query.toLowerCase()) ||
-                        note.getNoteContent().toLowerCase().contains(query.toLowerCase())) {
-                    filtered.add(note);
-                }
+            sharedNotesAdapter.setSharedNotes(applySharedSearch(allSharedNotes, query));
+        }
+    }
+
+    private List<NoteModel> applySearch(List<NoteModel> notes, String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return notes;
+        }
+        Set<String> matches = noteSearchIndex.query(query);
+        Set<String> inBodies = query.equals(bodyMatchQuery) ? bodyMatches : Collections.emptySet();
+        List<NoteModel> filtered = new ArrayList<>();
+        for (NoteModel note : notes) {
+            if (matches.contains(note.getId()) || inBodies.contains(note.getId())) {
+                filtered.add(note);
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Looks the query up in the local store's full-text index, which covers the
+     * bodies cached on this device, and repaints with those matches added.
+     */
+    private void searchCachedBodies(String query) {
+        if (query.trim().isEmpty() || (query.equals(bodyMatchQuery) && !bodyMatchesStale)) return;
+        localNoteStore.searchNotes(sessionManager.getCurrentUserId(), query, notes -> {
+            // A later keystroke has its own lookup
+            if (!query.equals(searchInput.getText().toString())) return;
+            Set<String> ids = new HashSet<>();
+            for (NoteModel note : notes) {
+                ids.add(note.getId());
+            }
+            bodyMatches = ids;
+            bodyMatchQuery = query;
+            bodyMatchesStale = false;
+            if (isShowingMyNotes) {
+                notesAdapter.setNotes(applySearch(sortedNotes, query));
+            }
+        });
+    }
+
+    private List<SharedNoteModel> applySharedSearch(List<SharedNoteModel> sharedNotes, String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return sharedNotes;
+        }
+        Set<String> matches = sharedSearchIndex.query(query);
+        List<SharedNoteModel> filtered = new ArrayList<>();
+        for (SharedNoteModel sharedNote : sharedNotes) {
+            if (matches.contains(sharedNote.getId())) {
+                filtered.add(sharedNote);
             }
-            sharedNotesAdapter.setSharedNotes(filtered);
         }
+        return filtered;
+    }
+
+    // Only notes whose updatedAt moved are re-tokenized. Listed notes carry no body, so
+    // this covers title and preview; searchCachedBodies adds matches in cached bodies
+    private void reindexNotes() {
+        Set<String> ids = new HashSet<>();
+        for (NoteModel note : allNotes) {
+            ids.add(note.getId());
+            String text = note.getContent() != null ? note.getContent() : note.getPreview();
+            noteSearchIndex.put(note.getId(), note.getUpdatedAt(), note.getTitle(), text);
+        }
+        noteSearchIndex.retainAll(ids);
+    }
+
+    private void reindexSharedNotes() {
+        Set<String> ids = new HashSet<>();
+        for (SharedNoteModel sharedNote : allSharedNotes) {
+            ids.add(sharedNote.getId());
+            String title = sharedNote.getNoteTitle();
+            String content = sharedNote.getNoteContent();
+            long version = 31L * (title != null ? title.hashCode() : 0) + (content != null ? content.hashCode() : 0);
+            sharedSearchIndex.put(sharedNote.getId(), version, title, content);
+        }
+        sharedSearchIndex.retainAll(ids);
     }
 
     private void showEmptyState(String title, String subtitle) {
@@ -414,6 +540,7 @@ public class HomeActivity extends AppCompatActivity implements
     public void onNoteClick(NoteModel note) {
         Intent intent = new Intent(this, NoteViewerActivity.class);
         intent.putExtra("noteId", note.getId());
+        intent.putExtra("ownerId", note.getUserId());
         startActivity(intent);
     }
 
@@ -421,6 +548,7 @@ public class HomeActivity extends AppCompatActivity implements
     public void onEditClick(NoteModel note) {
         Intent intent = new Intent(this, NoteEditorActivity.class);
         intent.putExtra("noteId", note.getId());
+        intent.putExtra("ownerId", note.getUserId());
         startActivity(intent);
     }
 
@@ -544,14 +672,12 @@ public class HomeActivity extends AppCompatActivity implements
     }
     
     private void changeUserPermission(NoteModel note, SharedNoteModel sharedNote, String newPermission, String displayName) {
-        firebaseManager.updateSharePermission(note.getId(), sharedNote.getSharedWithUserId(), newPermission, success -> {
+        ActivityLogModel log = new ActivityLogModel(note.getId(), sessionManager.getCurrentUserId(),
+                sessionManager.getCurrentUsername(), ActivityLogModel.ACTION_PERMISSION_CHANGED,
+                "Changed " + displayName + "'s permission to " + newPermission.toUpperCase());
+        firebaseManager.updateSharePermission(note.getId(), sharedNote.getSharedWithUserId(), newPermission, log, success -> {
             runOnUiThread(() -> {
                 if (success) {
-                    // Log activity
-                    firebaseManager.addActivityLog(note.getId(), sessionManager.getCurrentUserId(),
-                            sessionManager.getCurrentUsername(), ActivityLogModel.ACTION_PERMISSION_CHANGED, 
-                            "Changed " + displayName + "'s permission to " + newPermission.toUpperCase());
-                    
                     Toast.makeText(this, displayName + "'s permission changed to " + newPermission.toUpperCase(), Toast.LENGTH_SHORT).show();
                 } else {
                     Toast.makeText(this, "Failed to change permission", Toast.LENGTH_SHORT).show();
@@ -574,14 +700,12 @@ public class HomeActivity extends AppCompatActivity implements
                         return;
                     }
                     
-                    firebaseManager.unshareNote(note.getId(), sharedUserId, result -> {
+                    ActivityLogModel log = new ActivityLogModel(note.getId(), sessionManager.getCurrentUserId(),
+                            sessionManager.getCurrentUsername(), ActivityLogModel.ACTION_UNSHARED,
+                            "Removed access for " + displayName);
+                    firebaseManager.unshareNote(note.getId(), sharedUserId, log, result -> {
                         runOnUiThread(() -> {
                             if (result) {
-                                // Log activity
-                                firebaseManager.addActivityLog(note.getId(), sessionManager.getCurrentUserId(),
-                                        sessionManager.getCurrentUsername(), ActivityLogModel.ACTION_UNSHARED, 
-                                        "Removed access for " + displayName);
-                                
                                 Toast.makeText(this, "Access removed for " + displayName, Toast.LENGTH_SHORT).show();
                             } else {
                                 Toast.makeText(this, "Failed to remove access", Toast.LENGTH_SHORT).show();
@@ -595,26 +719,48 @@ public class HomeActivity extends AppCompatActivity implements
     
     private void togglePinNote(NoteModel note) {
         boolean newPinState = !note.isPinned();
-        firebaseManager.toggleNotePin(note.getId(), newPinState, success -> {
-            runOnUiThread(() -> {
-                if (success) {
-                    note.setPinned(newPinState);
-                    
-                    // Log activity
-                    firebaseManager.addActivityLog(note.getId(), sessionManager.getCurrentUserId(),
-                            sessionManager.getCurrentUsername(), 
-                            newPinState ? ActivityLogModel.ACTION_PINNED : ActivityLogModel.ACTION_UNPINNED, 
-                            null);
-                    
-                    Toast.makeText(this, newPinState ? "Note pinned" : "Note unpinned", Toast.LENGTH_SHORT).show();
-                    updateUI();
-                } else {
-                    Toast.makeText(this, "Failed to update pin status", Toast.LENGTH_SHORT).show();
-                }
-            });
-        });
+        String noteId = note.getId();
+        String ownerId = note.getUserId();
+        noteMutator.mutate(noteId, OptimisticNoteMutator.Field.PINNED, newPinState,
+                (value, result) -> firebaseManager.toggleNotePin(noteId, ownerId, (Boolean) value, result::onResult),
+                new OptimisticNoteMutator.Callback() {
+                    @Override
+                    public void onStored() {
+                        firebaseManager.addActivityLog(noteId, sessionManager.getCurrentUserId(),
+                                sessionManager.getCurrentUsername(),
+                                newPinState ? ActivityLogModel.ACTION_PINNED : ActivityLogModel.ACTION_UNPINNED,
+                                null);
+                    }
+
+                    @Override
+                    public void onFailed() {
+                        Toast.makeText(HomeActivity.this, "Failed to update pin status", Toast.LENGTH_SHORT).show();
+                    }
+                });
+        Toast.makeText(this, newPinState ? "Note pinned" : "Note unpinned", Toast.LENGTH_SHORT).show();
     }
     
+    // The adapter diffs by value, so changed notes are swapped for copies rather than mutated
+    private void replaceNote(NoteModel updated) {
+        List<NoteModel> notes = new ArrayList<>(allNotes);
+        for (int i = 0; i < notes.size(); i++) {
+            if (notes.get(i).getId().equals(updated.getId())) {
+                notes.set(i, updated);
+                break;
+            }
+        }
+        allNotes = notes;
+    }
+
+    private NoteModel findNote(String noteId) {
+        for (NoteModel note : allNotes) {
+            if (note.getId().equals(noteId)) {
+                return note;
+            }
+        }
+        return null;
+    }
+
     private void showColorPicker(NoteModel note) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Select Note Color");
@@ -642,23 +788,7 @@ public class HomeActivity extends AppCompatActivity implements
             final String color = NOTE_COLORS[i];
             final AlertDialog[] dialog = new AlertDialog[1];
             colorView.setOnClickListener(v -> {
-                firebaseManager.updateNoteColor(note.getId(), color, success -> {
-                    runOnUiThread(() -> {
-                        if (success) {
-                            note.setColor(color);
-                            
-                            // Log activity
-                            firebaseManager.addActivityLog(note.getId(), sessionManager.getCurrentUserId(),
-                                    sessionManager.getCurrentUsername(), ActivityLogModel.ACTION_COLOR_CHANGED, 
-                                    "Changed color to " + color);
-                            
-                            Toast.makeText(this, "Color updated", Toast.LENGTH_SHORT).show();
-                            notesAdapter.notifyDataSetChanged();
-                        } else {
-                            Toast.makeText(this, "Failed to update color", Toast.LENGTH_SHORT).show();
-                        }
-                    });
-                });
+                updateNoteColor(note.getId(), note.getUserId(), color);
                 if (dialog[0] != null) {
                     dialog[0].dismiss();
                 }
@@ -675,11 +805,31 @@ public class HomeActivity extends AppCompatActivity implements
         alertDialog.show();
     }
 
+    private void updateNoteColor(String noteId, String ownerId, String color) {
+        noteMutator.mutate(noteId, OptimisticNoteMutator.Field.COLOR, color,
+                (value, result) -> firebaseManager.updateNoteColor(noteId, ownerId, (String) value, result::onResult),
+                new OptimisticNoteMutator.Callback() {
+                    @Override
+                    public void onStored() {
+                        firebaseManager.addActivityLog(noteId, sessionManager.getCurrentUserId(),
+                                sessionManager.getCurrentUsername(), ActivityLogModel.ACTION_COLOR_CHANGED,
+                                "Changed color to " + color);
+                    }
+
+                    @Override
+                    public void onFailed() {
+                        Toast.makeText(HomeActivity.this, "Failed to update color", Toast.LENGTH_SHORT).show();
+                    }
+                });
+        Toast.makeText(this, "Color updated", Toast.LENGTH_SHORT).show();
+    }
+
     // SharedNotesAdapter callbacks
     @Override
     public void onSharedNoteClick(SharedNoteModel sharedNote) {
         Intent intent = new Intent(this, NoteViewerActivity.class);
         intent.putExtra("noteId", sharedNote.getNoteId());
+        intent.putExtra("ownerId", sharedNote.getOwnerId());
         intent.putExtra("isShared", true);
         intent.putExtra("canEdit", sharedNote.canEdit());
         intent.putExtra("ownerUsername", sharedNote.getOwnerUsername());
@@ -719,11 +869,14 @@ public class HomeActivity extends AppCompatActivity implements
             return;
         }
 
-        firebaseManager.getUserByUsername(username, new FirebaseManager.UserCallback() {
+        firebaseManager.getProfileByUsername(username, new FirebaseManager.UserCallback() {
             @Override
             public void onSuccess(com.example.syncnote.models.UserModel user) {
+                ActivityLogModel log = new ActivityLogModel(note.getId(), sessionManager.getCurrentUserId(),
+                        sessionManager.getCurrentUsername(), ActivityLogModel.ACTION_SHARED,
+                        "Shared with @" + user.getUsername() + " (" + permission + " permission)");
                 firebaseManager.shareNote(note.getId(), sessionManager.getCurrentUserId(),
-                        user.getId(), permission, result -> {
+                        user.getId(), permission, log, result -> {
                             runOnUiThread(() -> {
                                 if (result) {
                                     Toast.makeText(HomeActivity.this,
@@ -757,7 +910,7 @@ public class HomeActivity extends AppCompatActivity implements
     }
 
     private void deleteNote(NoteModel note) {
-        firebaseManager.deleteNote(note.getId(), result -> {
+        firebaseManager.deleteNote(note.getId(), note.getUserId(), result -> {
             runOnUiThread(() -> {
                 if (result) {
                     Toast.makeText(this, "Note deleted", Toast.LENGTH_SHORT).show();
@@ -797,6 +950,8 @@ public class HomeActivity extends AppCompatActivity implements
                 .setTitle("Logout")
                 .setMessage("Are you sure you want to logout?")
                 .setPositiveButton("Logout", (dialog, which) -> {
+                    localStoreSync.stop();
+                    localNoteStore.clearAll();
                     sessionManager.logout();
                     Intent intent = new Intent(this, LoginActivity.class);
                     intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
@@ -31,6 +31,7 @@ public class LoginActivity extends AppCompatActivity {
 
         firebaseManager = FirebaseManager.getInstance();
         sessionManager = SessionManager.getInstance(this);
+        firebaseManager.attachSession(sessionManager);
 
         initViews();
         setupClickListeners();
@@ -2,6 +2,9 @@ package com.example.syncnote;
 
 import android.graphics.Color;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Html;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.View;
@@ -20,21 +23,75 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 
+import com.example.syncnote.crdt.NoteCollabSession;
 import com.example.syncnote.firebase.FirebaseManager;
+import com.example.syncnote.firebase.WriteQueue;
+import com.example.syncnote.local.LocalNoteStore;
 import com.example.syncnote.models.ActivityLogModel;
 import com.example.syncnote.models.CategoryModel;
 import com.example.syncnote.models.NoteModel;
+import com.example.syncnote.utils.AutoSaver;
 import com.example.syncnote.utils.DateUtils;
+import com.example.syncnote.utils.DraftJournal;
+import com.example.syncnote.utils.MainThreadClock;
+import com.example.syncnote.utils.NotePreviews;
 import com.example.syncnote.utils.SessionManager;
 import com.google.android.material.button.MaterialButton;
 
+import org.json.JSONObject;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import jp.wasabeef.richeditor.RichEditor;
 
 public class NoteEditorActivity extends AppCompatActivity {
 
+    private static final long AUTOSAVE_DEBOUNCE_MS = 2000;
+    private static final long AUTOSAVE_MAX_DELAY_MS = 10000;
+    private static final long DRAFT_JOURNAL_DELAY_MS = 500;
+
+    // Replaces the editor's html if it still matches the reported text, keeping the
+    // caret's place in the text: a change wholly before the caret shifts it, a change
+    // around it pulls it to the start of the change
+    private static final String SWAP_HTML_SCRIPT = "function(reported, merged) {"
+            + "  var editor = RE.editor;"
+            + "  if (editor.innerHTML.replace(/\\+/g, ' ') !== reported) return false;"
+            + "  var before = editor.textContent, caret = -1, selection = window.getSelection();"
+            + "  if (selection.rangeCount > 0 && editor.contains(selection.anchorNode)) {"
+            + "    var range = document.createRange();"
+            + "    range.selectNodeContents(editor);"
+            + "    range.setEnd(selection.anchorNode, selection.anchorOffset);"
+            + "    caret = range.toString().length;"
+            + "  }"
+            + "  editor.innerHTML = merged;"
+            + "  if (caret >= 0) {"
+            + "    var after = editor.textContent, prefix = 0, suffix = 0;"
+            + "    while (prefix < before.length && prefix < after.length"
+            + "        && before[prefix] === after[prefix]) prefix++;"
+            + "    while (suffix < before.length - prefix && suffix < after.length - prefix"
+            + "        && before[before.length - 1 - suffix] === after[after.length - 1 - suffix]) suffix++;"
+            + "    if (caret > before.length - suffix) caret += after.length - before.length;"
+            + "    else if (caret > prefix) caret = prefix;"
+            + "    var walker = document.createTreeWalker(editor, NodeFilter.SHOW_TEXT, null, false), node;"
+            + "    while ((node = walker.nextNode())) {"
+            + "      if (caret <= node.length) {"
+            + "        var at = document.createRange();"
+            + "        at.setStart(node, caret);"
+            + "        at.collapse(true);"
+            + "        selection.removeAllRanges();"
+            + "        selection.addRange(at);"
+            + "        break;"
+            + "      }"
+            + "      caret -= node.length;"
+            + "    }"
+            + "  }"
+            + "  RE.callback();"
+            + "  return true;"
+            + "}";
+
     private EditText titleInput;
     private RichEditor richEditor;
     private TextView statusLabel, lastSavedLabel;
@@ -53,10 +110,31 @@ public class NoteEditorActivity extends AppCompatActivity {
 
     private FirebaseManager firebaseManager;
     private SessionManager sessionManager;
+    private DraftJournal draftJournal;
+    private AutoSaver autoSaver;
+    // Merges body edits with other editors while a shared note is open
+    private NoteCollabSession collabSession;
+    // Merged text being swapped into the editor, until the editor reports it back
+    private String swappingHtml;
+    // Remote edits arrived while the editor could not take them
+    private boolean remoteTextWaiting = false;
+    // Html-to-text conversion for saves runs here, off the main thread
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
+    private final Handler journalHandler = new Handler(Looper.getMainLooper());
+    private final Runnable journalTask = this::writeDraft;
 
     private NoteModel currentNote;
+    // The note as last read from or queued for Firebase; saves send only the difference
+    private NoteModel lastSyncedNote;
+    // The note as the server last confirmed it; null until a new note's first write lands
+    private NoteModel acknowledgedNote;
     private String noteId;
+    // Owner's partition to read the note from; null when not known
+    private String ownerId;
     private boolean isModified = false;
+    private boolean editLogged = false;
+    // Set while the editor is populated from a loaded note or draft
+    private boolean applyingContent = false;
     private List<CategoryModel> categories = new ArrayList<>();
     private String selectedCategory = "Uncategorized";
     private String selectedColor = "#FFFFFF";
@@ -76,7 +154,13 @@ public class NoteEditorActivity extends AppCompatActivity {
         setContentView(R.layout.activity_note_editor);
 
         firebaseManager = FirebaseManager.getInstance();
+        // After process death the editor can be restored before the home screen is
+        firebaseManager.attachWriteStore(LocalNoteStore.getInstance(this));
         sessionManager = SessionManager.getInstance(this);
+        firebaseManager.attachSession(sessionManager);
+        draftJournal = DraftJournal.getInstance(this);
+        autoSaver = new AutoSaver(new MainThreadClock(), AUTOSAVE_DEBOUNCE_MS,
+                AUTOSAVE_MAX_DELAY_MS, this::performSave, this::onAutoSaveStatusChanged);
 
         initViews();
         setupToolbar();
@@ -86,11 +170,13 @@ public class NoteEditorActivity extends AppCompatActivity {
         loadCategories();
 
         noteId = getIntent().getStringExtra("noteId");
+        ownerId = getIntent().getStringExtra("ownerId");
         if (noteId != null) {
             loadNote(noteId);
         } else {
             statusLabel.setText("New");
             currentNote = new NoteModel();
+            restoreDraft(DraftJournal.NEW_NOTE_KEY, 0);
         }
     }
 
@@ -141,10 +227,28 @@ public class NoteEditorActivity extends AppCompatActivity {
         richEditor.setPlaceholder("Start writing your note...");
 
         richEditor.setOnTextChangeListener(text -> {
-            if (!isModified && text != null && !text.isEmpty()) {
-                isModified = true;
-                statusLabel.setText("Modified");
+            if (applyingContent || text == null || currentNote == null) return;
+            if (collabSession != null) {
+                boolean echo = swappingHtml != null && text.equals(asReported(swappingHtml));
+                if (echo) {
+                    collabSession.onShown(swappingHtml);
+                    swappingHtml = null;
+                } else {
+                    collabSession.onLocalText(text);
+                }
+                if (remoteTextWaiting && swappingHtml == null) {
+                    remoteTextWaiting = false;
+                    showMergedText();
+                }
+                if (echo) {
+                    // Keep the stored note body in step with the merged text
+                    onContentChanged();
+                    return;
+                }
             }
+            // The editor echoes content set programmatically; only real edits count
+            if (lastSyncedNote != null && text.equals(lastSyncedNote.getHtmlContent())) return;
+            onContentChanged();
         });
     }
 
@@ -174,9 +278,8 @@ public class NoteEditorActivity extends AppCompatActivity {
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                if (!isModified) {
-                    isModified = true;
-                    statusLabel.setText("Modified");
+                if (!applyingContent && currentNote != null) {
+                    onContentChanged();
                 }
             }
 
@@ -228,10 +331,11 @@ public class NoteEditorActivity extends AppCompatActivity {
         categorySpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int pos, long id) {
-                selectedCategory = categoryNames.get(pos);
-                if (!isModified && currentNote != null) {
-                    isModified = true;
-                    statusLabel.setText("Modified");
+                String category = categoryNames.get(pos);
+                if (category.equals(selectedCategory)) return;
+                selectedCategory = category;
+                if (currentNote != null) {
+                    onContentChanged();
                 }
             }
 
@@ -267,8 +371,7 @@ public class NoteEditorActivity extends AppCompatActivity {
             colorView.setOnClickListener(v -> {
                 selectedColor = color;
                 colorIndicator.setBackgroundColor(Color.parseColor(color));
-                isModified = true;
-                statusLabel.setText("Modified");
+                onContentChanged();
             });
 
             if (row != null) {
@@ -284,8 +387,7 @@ public class NoteEditorActivity extends AppCompatActivity {
     private void togglePin() {
         isPinned = !isPinned;
         updatePinButton();
-        isModified = true;
-        statusLabel.setText("Modified");
+        onContentChanged();
         Toast.makeText(this, isPinned ? "Note will be pinned" : "Note unpinned", Toast.LENGTH_SHORT).show();
     }
 
@@ -296,21 +398,16 @@ public class NoteEditorActivity extends AppCompatActivity {
     private void loadNote(String noteId) {
         showLoading(true);
 
-        firebaseManager.getNoteById(noteId, new FirebaseManager.NoteCallback() {
+        // The metadata read is small, so the title and colour show while the body loads.
+        // currentNote stays null until then, which keeps edits from being saved.
+        firebaseManager.getNoteMeta(noteId, ownerId, new FirebaseManager.NoteCallback() {
             @Override
             public void onSuccess(NoteModel note) {
                 runOnUiThread(() -> {
-                    showLoading(false);
-                    currentNote = note;
+                    applyingContent = true;
                     titleInput.setText(note.getTitle());
-                    
-                    // Load HTML content if available, otherwise plain text
-                    if (note.getHtmlContent() != null && !note.getHtmlContent().isEmpty()) {
-                        richEditor.setHtml(note.getHtmlContent());
-                    } else {
-                        richEditor.setHtml(note.getContent());
-                    }
-                    
+                    applyingContent = false;
+
                     // Load other properties
                     selectedCategory = note.getCategory() != null ? note.getCategory() : "Uncategorized";
                     selectedColor = note.getColor() != null ? note.getColor() : "#FFFFFF";
@@ -319,95 +416,328 @@ public class NoteEditorActivity extends AppCompatActivity {
                     colorIndicator.setBackgroundColor(Color.parseColor(selectedColor));
                     updatePinButton();
                     setupCategorySpinner();
-                    
-                    statusLabel.setText("Loaded");
-                    lastSavedLabel.setText("Last saved: " + DateUtils.formatDateTime(note.getUpdatedAt()));
-                    isModified = false;
+
+                    statusLabel.setText("Loading...");
+                    loadBody(note);
                 });
             }
 
             @Override
             public void onError(String error) {
+                runOnUiThread(() -> onLoadError(error));
+            }
+        });
+    }
+
+    private void loadBody(NoteModel meta) {
+        firebaseManager.getNoteBody(meta, new FirebaseManager.NoteCallback() {
+            @Override
+            public void onSuccess(NoteModel note) {
                 runOnUiThread(() -> {
                     showLoading(false);
-                    Toast.makeText(NoteEditorActivity.this, "Error loading note: " + error, Toast.LENGTH_SHORT).show();
-                    finish();
+                    currentNote = note;
+                    lastSyncedNote = new NoteModel(note);
+                    acknowledgedNote = lastSyncedNote;
+                    cacheBody(lastSyncedNote);
+                    applyingContent = true;
+                    // Load HTML content if available, otherwise plain text
+                    if (note.getHtmlContent() != null && !note.getHtmlContent().isEmpty()) {
+                        richEditor.setHtml(note.getHtmlContent());
+                    } else {
+                        richEditor.setHtml(note.getContent());
+                    }
+                    applyingContent = false;
+
+                    statusLabel.setText("Loaded");
+                    lastSavedLabel.setText("Last saved: " + DateUtils.formatDateTime(note.getUpdatedAt()));
+                    isModified = false;
+
+                    restoreDraft(note.getId(), note.getUpdatedAt());
+                    startCollabSessionIfShared();
                 });
             }
+
+            @Override
+            public void onError(String error) {
+                runOnUiThread(() -> onLoadError(error));
+            }
         });
     }
 
-    private void saveNote() {
-        String title = titleInput.getText().toString().trim();
-        String htmlContent = richEditor.getHtml();
-        String plainContent = android.text.Html.fromHtml(htmlContent != null ? htmlContent : "").toString().trim();
+    private void onLoadError(String error) {
+        showLoading(false);
+        Toast.makeText(this, "Error loading note: " + error, Toast.LENGTH_SHORT).show();
+        finish();
+    }
+
+    private void onContentChanged() {
+        isModified = true;
+        autoSaver.notifyChanged();
+        journalHandler.removeCallbacks(journalTask);
+        journalHandler.postDelayed(journalTask, DRAFT_JOURNAL_DELAY_MS);
+    }
+
+    private void onAutoSaveStatusChanged(AutoSaver.Status status) {
+        switch (status) {
+            case PENDING:
+                statusLabel.setText("Modified");
+                break;
+            case SAVING:
+                statusLabel.setText("Saving...");
+                break;
+            case SAVED:
+                // Queued on the device; NoteWriteCallback reports when the server has it
+                statusLabel.setText("Saved on device");
+                isModified = false;
+                lastSavedLabel.setText("Last saved: " + DateUtils.formatDateTime(currentNote.getUpdatedAt()));
+                break;
+            case FAILED:
+                statusLabel.setText("Not saved");
+                break;
+            default:
+                break;
+        }
+    }
+
+    private String draftKey() {
+        return noteId != null ? noteId : DraftJournal.NEW_NOTE_KEY;
+    }
+
+    private void writeDraft() {
+        journalHandler.removeCallbacks(journalTask);
+        if (!isModified) return;
+        draftJournal.saveDraft(draftKey(), titleInput.getText().toString(), richEditor.getHtml());
+    }
+
+    /**
+     * Puts back a journaled draft left by a process that died before its autosave
+     * landed, if it is newer than what the server has.
+     */
+    private void restoreDraft(String key, long serverUpdatedAt) {
+        DraftJournal.Draft draft = draftJournal.getDraft(key);
+        if (draft == null) return;
+        if (draft.savedAt <= serverUpdatedAt) {
+            draftJournal.clearDraft(key);
+            return;
+        }
+
+        applyingContent = true;
+        titleInput.setText(draft.title);
+        richEditor.setHtml(draft.htmlContent);
+        applyingContent = false;
+        onContentChanged();
+        Toast.makeText(this, "Restored unsaved changes", Toast.LENGTH_SHORT).show();
+    }
 
-        if (title.isEmpty()) {
-            title = "Untitled Note";
+    private void startCollabSessionIfShared() {
+        firebaseManager.isNoteShared(noteId, shared -> {
+            if (!shared) return;
+            runOnUiThread(() -> {
+                if (isFinishing() || collabSession != null) return;
+                collabSession = new NoteCollabSession(firebaseManager, noteId, new NoteCollabSession.Listener() {
+                    @Override
+                    public void onReady(String text) {
+                        if (isModified) {
+                            // Edits made while the history loaded merge in as one local edit
+                            collabSession.onLocalText(richEditor.getHtml());
+                        }
+                        showMergedText();
+                    }
+
+                    @Override
+                    public void onRemoteText(String text) {
+                        showMergedText();
+                    }
+                });
+                String html = lastSyncedNote.getHtmlContent();
+                collabSession.start(html != null && !html.isEmpty() ? html : lastSyncedNote.getContent());
+            });
+        });
+    }
+
+    /**
+     * Shows the session's merged text without disturbing typing. setHtml would move
+     * the caret to the start and overwrite keystrokes the editor has not reported
+     * yet, so the swap runs in the page instead: it only goes ahead if the page still
+     * holds the last reported text, and it keeps the caret on the same character. A
+     * refused swap is retried once the page has reported its text and any typing in
+     * it has been read into the session.
+     */
+    private void showMergedText() {
+        if (collabSession == null || isFinishing()) return;
+        if (swappingHtml != null) {
+            remoteTextWaiting = true;
+            return;
+        }
+        String merged = collabSession.getText();
+        String shown = richEditor.getHtml();
+        if (merged == null) return;
+        if (merged.equals(shown)) {
+            collabSession.onShown(merged);
+            return;
         }
 
+        swappingHtml = merged;
+        richEditor.evaluateJavascript("(" + SWAP_HTML_SCRIPT + ")("
+                + JSONObject.quote(shown != null ? shown : "") + ", "
+                + JSONObject.quote(merged) + ")", result -> {
+            // The editor's report of the new text finishes the swap
+            if ("true".equals(result)) return;
+            // Have the page report what it holds; the listener reads it in and retries
+            swappingHtml = null;
+            remoteTextWaiting = true;
+            richEditor.evaluateJavascript("RE.callback();", null);
+        });
+    }
+
+    // The editor reports its text through a URL that is decoded as a form value, so
+    // every '+' comes back as a space
+    private static String asReported(String html) {
+        return html.replace('+', ' ');
+    }
+
+    private void saveNote() {
+        String htmlContent = richEditor.getHtml();
+        String plainContent = Html.fromHtml(htmlContent != null ? htmlContent : "").toString().trim();
+
         if (plainContent.isEmpty()) {
             Toast.makeText(this, "Note content is empty!", Toast.LENGTH_SHORT).show();
             return;
         }
 
         showLoading(true);
+        boolean isNewNote = (currentNote.getId() == null || currentNote.getId().isEmpty());
+        if (isNewNote) {
+            // An untouched new note has nothing pending; make sure it still gets written
+            autoSaver.notifyChanged();
+        }
+
+        autoSaver.flush(success -> {
+            showLoading(false);
+            if (success) {
+                Toast.makeText(this, isNewNote ? "Note saved successfully!" : "Note updated successfully!",
+                        Toast.LENGTH_SHORT).show();
+                finish();
+            } else {
+                Toast.makeText(this, isNewNote ? "Failed to save note!" : "Failed to update note!",
+                        Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    /**
+     * Autosave write: snapshots the editor on the main thread, converts the HTML off
+     * it, then creates the note or sends the delta against the last synced version.
+     */
+    private void performSave(AutoSaver.Completion completion) {
+        String title = titleInput.getText().toString().trim();
+        String htmlContent = richEditor.getHtml();
+        String category = selectedCategory;
+        String color = selectedColor;
+        boolean pinned = isPinned;
+
+        saveExecutor.execute(() -> {
+            String plainContent = Html.fromHtml(htmlContent != null ? htmlContent : "").toString().trim();
+            String preview = NotePreviews.build(plainContent);
+            runOnUiThread(() -> writeNote(title.isEmpty() ? "Untitled Note" : title, htmlContent,
+                    plainContent, preview, category, color, pinned, completion));
+        });
+    }
+
+    private void writeNote(String title, String htmlContent, String plainContent, String preview,
+                           String category, String color, boolean pinned, AutoSaver.Completion completion) {
+        if (plainContent.isEmpty()) {
+            // Never autosave an empty body over a note, or create an empty one
+            completion.onComplete(true);
+            return;
+        }
 
         boolean isNewNote = (currentNote.getId() == null || currentNote.getId().isEmpty());
 
         currentNote.setTitle(title);
         currentNote.setContent(plainContent);
         currentNote.setHtmlContent(htmlContent);
-        currentNote.setCategory(selectedCategory);
-        currentNote.setColor(selectedColor);
-        currentNote.setPinned(isPinned);
+        currentNote.setPreview(preview);
+        currentNote.setCategory(category);
+        currentNote.setColor(color);
+        currentNote.setPinned(pinned);
         currentNote.setLastUpdatedBy(sessionManager.getCurrentUserId());
         currentNote.setLastUpdatedByUsername(sessionManager.getCurrentUsername());
 
         if (isNewNote) {
             currentNote.setUserId(sessionManager.getCurrentUserId());
-            
-            firebaseManager.saveNote(currentNote, new FirebaseManager.SaveNoteCallback() {
-                @Override
-                public void onSuccess(String noteId) {
-                    // Add activity log
-                    firebaseManager.addActivityLog(noteId, sessionManager.getCurrentUserId(),
-                            sessionManager.getCurrentUsername(), ActivityLogModel.ACTION_CREATED, null);
-                    
-                    runOnUiThread(() -> {
-                        showLoading(false);
-                        Toast.makeText(NoteEditorActivity.this, "Note saved successfully!", Toast.LENGTH_SHORT).show();
-                        finish();
-                    });
-                }
 
+            // Reported once the write is queued on the device, so saving works offline
+            String savedNoteId = firebaseManager.saveNote(currentNote, new NoteWriteCallback(completion) {
                 @Override
-                public void onError(String error) {
-                    runOnUiThread(() -> {
-                        showLoading(false);
-                        Toast.makeText(NoteEditorActivity.this, "Failed to save note: " + error, Toast.LENGTH_SHORT).show();
-                    });
+                public void onSavedLocally() {
+                    noteId = currentNote.getId();
+                    super.onSavedLocally();
                 }
             });
+            if (savedNoteId == null) {
+                completion.onComplete(false);
+            }
         } else {
-            firebaseManager.updateNote(currentNote, sessionManager.getCurrentUserId(),
-                    sessionManager.getCurrentUsername(), result -> {
-                        if (result) {
-                            // Add activity log
-                            firebaseManager.addActivityLog(currentNote.getId(), sessionManager.getCurrentUserId(),
-                                    sessionManager.getCurrentUsername(), ActivityLogModel.ACTION_EDITED, null);
-                        }
-                        
-                        runOnUiThread(() -> {
-                            showLoading(false);
-                            if (result) {
-                                Toast.makeText(this, "Note updated successfully!", Toast.LENGTH_SHORT).show();
-                                finish();
-                            } else {
-                                Toast.makeText(this, "Failed to update note!", Toast.LENGTH_SHORT).show();
-                            }
-                        });
-                    });
+            // Null while a new note's first write has not landed, so it is written whole
+            firebaseManager.updateNote(currentNote, lastSyncedNote, sessionManager.getCurrentUserId(),
+                    sessionManager.getCurrentUsername(), new NoteWriteCallback(completion));
+        }
+    }
+
+    // Home search reads bodies from the local store, as synced notes arrive without one
+    private void cacheBody(NoteModel note) {
+        if (note.getUserId() == null || !note.getUserId().equals(sessionManager.getCurrentUserId())) return;
+        LocalNoteStore store = LocalNoteStore.getInstance(this);
+        store.execute(() -> store.upsertNote(note));
+    }
+
+    /**
+     * Tracks one autosave write from the device queue to the server. Later diffs are
+     * taken against what is queued; if the server rejects a write, they are taken
+     * against the last copy it confirmed instead, so the rejected fields are sent again.
+     */
+    private class NoteWriteCallback implements WriteQueue.WriteCallback {
+        private final AutoSaver.Completion completion;
+        private NoteModel queued;
+
+        NoteWriteCallback(AutoSaver.Completion completion) {
+            this.completion = completion;
+        }
+
+        @Override
+        public void onSavedLocally() {
+            queued = new NoteModel(currentNote);
+            lastSyncedNote = queued;
+            cacheBody(queued);
+            completion.onComplete(true);
+        }
+
+        @Override
+        public void onSynced(boolean success) {
+            if (!success) {
+                lastSyncedNote = acknowledgedNote;
+                isModified = true;
+                statusLabel.setText("Not saved");
+                return;
+            }
+
+            String savedNoteId = queued.getId();
+            boolean created = acknowledgedNote == null;
+            acknowledgedNote = queued;
+            if (created || !editLogged) {
+                // One entry per editing session, not one per autosave
+                editLogged = true;
+                firebaseManager.addActivityLog(savedNoteId, sessionManager.getCurrentUserId(),
+                        sessionManager.getCurrentUsername(),
+                        created ? ActivityLogModel.ACTION_CREATED : ActivityLogModel.ACTION_EDITED, null);
+            }
+            // The journal covers the edit until the server has it
+            if (created) draftJournal.clearDraft(DraftJournal.NEW_NOTE_KEY);
+            draftJournal.clearDraft(savedNoteId);
+            if (queued == lastSyncedNote && !isModified) {
+                statusLabel.setText("Synced");
+            }
         }
     }
 
@@ -416,14 +746,38 @@ public class NoteEditorActivity extends AppCompatActivity {
         saveButton.setEnabled(!show);
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Journal right away in case the process is killed while in the background
+        writeDraft();
+        firebaseManager.flushActivityLogs();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        journalHandler.removeCallbacks(journalTask);
+        if (collabSession != null) {
+            collabSession.stop();
+        }
+        // Let the pending save land; the journal covers it if the process dies first.
+        // A follow-up save still needs the executor, so it is shut down only after.
+        autoSaver.flush(success -> saveExecutor.shutdown());
+    }
+
     @Override
     public void onBackPressed() {
-        if (isModified) {
+        if (autoSaver.hasUnsavedChanges()) {
             new AlertDialog.Builder(this)
                     .setTitle("Unsaved Changes")
                     .setMessage("You have unsaved changes. Do you want to save before leaving?")
                     .setPositiveButton("Save", (dialog, which) -> saveNote())
-                    .setNegativeButton("Discard", (dialog, which) -> super.onBackPressed())
+                    .setNegativeButton("Discard", (dialog, which) -> {
+                        autoSaver.cancel();
+                        draftJournal.clearDraft(draftKey());
+                        super.onBackPressed();
+                    })
                     .setNeutralButton("Cancel", null)
                     .show();
         } else {
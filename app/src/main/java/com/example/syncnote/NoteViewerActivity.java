@@ -25,6 +25,7 @@ import com.example.syncnote.utils.DateUtils;
 import com.example.syncnote.utils.SessionManager;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class NoteViewerActivity extends AppCompatActivity {
@@ -38,6 +39,8 @@ public class NoteViewerActivity extends AppCompatActivity {
     private SessionManager sessionManager;
 
     private String noteId;
+    // Owner's partition to read the note from; null when not known
+    private String ownerId;
     private NoteModel currentNote;
     private boolean isShared = false;
     private boolean canEdit = false;
@@ -51,9 +54,11 @@ public class NoteViewerActivity extends AppCompatActivity {
 
         firebaseManager = FirebaseManager.getInstance();
         sessionManager = SessionManager.getInstance(this);
+        firebaseManager.attachSession(sessionManager);
 
         // Get intent extras
         noteId = getIntent().getStringExtra("noteId");
+        ownerId = getIntent().getStringExtra("ownerId");
         isShared = getIntent().getBooleanExtra("isShared", false);
         canEdit = getIntent().getBooleanExtra("canEdit", false);
         ownerUsername = getIntent().getStringExtra("ownerUsername");
@@ -94,25 +99,50 @@ public class NoteViewerActivity extends AppCompatActivity {
             return;
         }
 
-        firebaseManager.getNoteById(noteId, new FirebaseManager.NoteCallback() {
+        // Title and details come from the small metadata read; the body follows
+        firebaseManager.getNoteMeta(noteId, ownerId, new FirebaseManager.NoteCallback() {
             @Override
             public void onSuccess(NoteModel note) {
                 runOnUiThread(() -> {
+                    boolean firstLoad = currentNote == null;
                     currentNote = note;
                     displayNote(note);
+                    if (firstLoad) {
+                        noteContent.setText("Loading...");
+                    }
+                    loadBody(note);
                 });
             }
 
             @Override
             public void onError(String error) {
+                runOnUiThread(() -> onLoadError(error));
+            }
+        });
+    }
+
+    private void loadBody(NoteModel note) {
+        firebaseManager.getNoteBody(note, new FirebaseManager.NoteCallback() {
+            @Override
+            public void onSuccess(NoteModel loaded) {
                 runOnUiThread(() -> {
-                    Toast.makeText(NoteViewerActivity.this, "Error loading note: " + error, Toast.LENGTH_SHORT).show();
-                    finish();
+                    currentNote = loaded;
+                    displayContent(loaded);
                 });
             }
+
+            @Override
+            public void onError(String error) {
+                runOnUiThread(() -> onLoadError(error));
+            }
         });
     }
 
+    private void onLoadError(String error) {
+        Toast.makeText(this, "Error loading note: " + error, Toast.LENGTH_SHORT).show();
+        finish();
+    }
+
     private void displayNote(NoteModel note) {
         String title = note.getTitle();
         if (title == null || title.isEmpty()) {
@@ -136,12 +166,6 @@ public class NoteViewerActivity extends AppCompatActivity {
             lastUpdatedBy.setVisibility(View.GONE);
         }
 
-        String content = note.getContent();
-        if (content == null || content.isEmpty()) {
-            content = "No content";
-        }
-        noteContent.setText(content);
-
         // Handle shared note info
         if (isShared) {
             sharedNoteInfo.setVisibility(View.VISIBLE);
@@ -167,9 +191,23 @@ public class NoteViewerActivity extends AppCompatActivity {
         }
     }
 
+    private void displayContent(NoteModel note) {
+        String content = note.getContent();
+        if (content == null || content.isEmpty()) {
+            content = "No content";
+        }
+        noteContent.setText(content);
+    }
+
+    // A share link does not carry the owner; the loaded note does
+    private String noteOwnerId() {
+        return currentNote != null ? currentNote.getUserId() : ownerId;
+    }
+
     private void openEditor() {
         Intent intent = new Intent(this, NoteEditorActivity.class);
         intent.putExtra("noteId", noteId);
+        intent.putExtra("ownerId", noteOwnerId());
         startActivity(intent);
     }
 
@@ -181,6 +219,12 @@ public class NoteViewerActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        firebaseManager.flushActivityLogs();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Only show menu for owner or users with edit permission
@@ -224,18 +268,28 @@ public class NoteViewerActivity extends AppCompatActivity {
     }
     
     private void showActivityLog() {
-        firebaseManager.getActivityLogsForNote(noteId, new FirebaseManager.ActivityLogsCallback() {
+        showActivityLog(null, new ArrayList<>());
+    }
+
+    /**
+     * Shows the newest page of activity; "Show older" fetches the next page and
+     * reopens the dialog with both.
+     */
+    private void showActivityLog(String cursor, List<ActivityLogModel> shown) {
+        firebaseManager.getActivityLogsPage(noteId, cursor, FirebaseManager.ACTIVITY_LOG_PAGE_SIZE,
+                new FirebaseManager.ActivityLogsPageCallback() {
             @Override
-            public void onSuccess(List<ActivityLogModel> logs) {
+            public void onSuccess(List<ActivityLogModel> logs, String nextCursor) {
                 runOnUiThread(() -> {
-                    if (logs.isEmpty()) {
+                    shown.addAll(logs);
+                    if (shown.isEmpty()) {
                         Toast.makeText(NoteViewerActivity.this, "No activity recorded for this note", Toast.LENGTH_SHORT).show();
                         return;
                     }
                     
                     // Build log display
                     StringBuilder logBuilder = new StringBuilder();
-                    for (ActivityLogModel log : logs) {
+                    for (ActivityLogModel log : shown) {
                         logBuilder.append("• ")
                                 .append(log.getUsername())
                                 .append(" ")
@@ -249,11 +303,14 @@ public class NoteViewerActivity extends AppCompatActivity {
                         logBuilder.append("\n\n");
                     }
                     
-                    new AlertDialog.Builder(NoteViewerActivity.this)
+                    AlertDialog.Builder builder = new AlertDialog.Builder(NoteViewerActivity.this)
                             .setTitle("Activity Log")
                             .setMessage(logBuilder.toString().trim())
-                            .setPositiveButton("Close", null)
-                            .show();
+                            .setPositiveButton("Close", null);
+                    if (nextCursor != null) {
+                        builder.setNeutralButton("Show older", (dialog, which) -> showActivityLog(nextCursor, shown));
+                    }
+                    builder.show();
                 });
             }
 
@@ -295,11 +352,14 @@ public class NoteViewerActivity extends AppCompatActivity {
             return;
         }
 
-        firebaseManager.getUserByUsername(username, new FirebaseManager.UserCallback() {
+        firebaseManager.getProfileByUsername(username, new FirebaseManager.UserCallback() {
             @Override
             public void onSuccess(com.example.syncnote.models.UserModel user) {
+                ActivityLogModel log = new ActivityLogModel(currentNote.getId(), sessionManager.getCurrentUserId(),
+                        sessionManager.getCurrentUsername(), ActivityLogModel.ACTION_SHARED,
+                        "Shared with @" + user.getUsername() + " (" + permission + " permission)");
                 firebaseManager.shareNote(currentNote.getId(), sessionManager.getCurrentUserId(),
-                        user.getId(), permission, result -> {
+                        user.getId(), permission, log, result -> {
                             runOnUiThread(() -> {
                                 if (result) {
                                     Toast.makeText(NoteViewerActivity.this,
@@ -396,14 +456,12 @@ public class NoteViewerActivity extends AppCompatActivity {
     }
     
     private void changeUserPermission(SharedNoteModel sharedNote, String newPermission, String displayName) {
-        firebaseManager.updateSharePermission(noteId, sharedNote.getSharedWithUserId(), newPermission, success -> {
+        ActivityLogModel log = new ActivityLogModel(noteId, sessionManager.getCurrentUserId(),
+                sessionManager.getCurrentUsername(), ActivityLogModel.ACTION_PERMISSION_CHANGED,
+                "Changed " + displayName + "'s permission to " + newPermission.toUpperCase());
+        firebaseManager.updateSharePermission(noteId, sharedNote.getSharedWithUserId(), newPermission, log, success -> {
             runOnUiThread(() -> {
                 if (success) {
-                    // Log activity
-                    firebaseManager.addActivityLog(noteId, sessionManager.getCurrentUserId(),
-                            sessionManager.getCurrentUsername(), ActivityLogModel.ACTION_PERMISSION_CHANGED, 
-                            "Changed " + displayName + "'s permission to " + newPermission.toUpperCase());
-                    
                     Toast.makeText(this, displayName + "'s permission changed to " + newPermission.toUpperCase(), Toast.LENGTH_SHORT).show();
                 } else {
                     Toast.makeText(this, "Failed to change permission", Toast.LENGTH_SHORT).show();
@@ -421,14 +479,12 @@ public class NoteViewerActivity extends AppCompatActivity {
                 .setTitle("Remove Access")
                 .setMessage("Remove access for " + finalDisplayName + "?")
                 .setPositiveButton("Remove", (dialog, which) -> {
-                    firebaseManager.unshareNote(noteId, sharedNote.getSharedWithUserId(), result -> {
+                    ActivityLogModel log = new ActivityLogModel(noteId, sessionManager.getCurrentUserId(),
+                            sessionManager.getCurrentUsername(), ActivityLogModel.ACTION_UNSHARED,
+                            "Removed access for " + finalDisplayName);
+                    firebaseManager.unshareNote(noteId, sharedNote.getSharedWithUserId(), log, result -> {
                         runOnUiThread(() -> {
                             if (result) {
-                                // Log activity
-                                firebaseManager.addActivityLog(noteId, sessionManager.getCurrentUserId(),
-                                        sessionManager.getCurrentUsername(), ActivityLogModel.ACTION_UNSHARED, 
-                                        "Removed access for " + finalDisplayName);
-                                
                                 Toast.makeText(this, "Access removed for " + finalDisplayName, Toast.LENGTH_SHORT).show();
                             } else {
                                 Toast.makeText(this, "Failed to remove access", Toast.LENGTH_SHORT).show();
@@ -445,7 +501,7 @@ public class NoteViewerActivity extends AppCompatActivity {
                 .setTitle("Delete Note")
                 .setMessage("Are you sure you want to delete this note? This action cannot be undone.")
                 .setPositiveButton("Delete", (dialog, which) -> {
-                    firebaseManager.deleteNote(noteId, result -> {
+                    firebaseManager.deleteNote(noteId, noteOwnerId(), result -> {
                         runOnUiThread(() -> {
                             if (result) {
                                 Toast.makeText(this, "Note deleted", Toast.LENGTH_SHORT).show();
@@ -22,6 +22,8 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.syncnote.firebase.FirebaseManager;
+import com.example.syncnote.firebase.ProfileCache;
+import com.example.syncnote.firebase.WriteQueue;
 import com.example.syncnote.models.CategoryModel;
 import com.example.syncnote.utils.SessionManager;
 import com.google.android.material.card.MaterialCardView;
@@ -52,6 +54,10 @@ public class SettingsActivity extends AppCompatActivity {
     private CategoriesAdapter categoriesAdapter;
     private List<CategoryModel> categories = new ArrayList<>();
 
+    // Sync Diagnostics Views
+    private TextView writeQueueStatsText;
+    private TextView profileCacheStatsText;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -59,6 +65,7 @@ public class SettingsActivity extends AppCompatActivity {
         
         firebaseManager = FirebaseManager.getInstance();
         sessionManager = SessionManager.getInstance(this);
+        firebaseManager.attachSession(sessionManager);
         
         setupToolbar();
         initViews();
@@ -92,6 +99,10 @@ public class SettingsActivity extends AppCompatActivity {
         categoriesRecyclerView = findViewById(R.id.categoriesRecyclerView);
         noCategoriesText = findViewById(R.id.noCategoriesText);
         addCategoryButton = findViewById(R.id.addCategoryButton);
+
+        // Diagnostics
+        writeQueueStatsText = findViewById(R.id.writeQueueStatsText);
+        profileCacheStatsText = findViewById(R.id.profileCacheStatsText);
         
         // Setup categories RecyclerView
         categoriesAdapter = new CategoriesAdapter();
@@ -111,6 +122,24 @@ public class SettingsActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showDiagnostics();
+    }
+
+    // Counters since the app started, refreshed whenever the screen is shown
+    private void showDiagnostics() {
+        WriteQueue.Stats writes = firebaseManager.getWriteQueueStats();
+        writeQueueStatsText.setText(writes.depth + " waiting to sync, " + writes.synced + " synced, "
+                + writes.failed + " rejected; offline edits reached the server after "
+                + Math.round(writes.averageReplayMillis()) + " ms on average");
+        ProfileCache.Stats profiles = firebaseManager.getProfileCacheStats();
+        profileCacheStatsText.setText(profiles.size + " profiles cached, "
+                + Math.round(profiles.hitRate() * 100) + "% served from cache, "
+                + Math.round(profiles.averageFetchMillis()) + " ms per fetch");
+    }
+
     private void setupClickListeners() {
         changePasswordButton.setOnClickListener(v -> validateAndChangePassword());
         addCategoryButton.setOnClickListener(v -> showAddCategoryDialog());
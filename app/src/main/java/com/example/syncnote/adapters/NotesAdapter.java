@@ -2,7 +2,8 @@ package com.example.syncnote.adapters;
 
 import android.content.Context;
 import android.graphics.Color;
-import android.text.Html;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -13,22 +14,51 @@ import android.widget.PopupMenu;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.syncnote.R;
 import com.example.syncnote.models.NoteModel;
 import com.example.syncnote.utils.DateUtils;
+import com.example.syncnote.utils.NotePreviews;
 
 import com.google.android.material.card.MaterialCardView;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHolder> {
 
-    private List<NoteModel> notes = new ArrayList<>();
+    private final AsyncListDiffer<NoteModel> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    // Note ids are strings; RecyclerView needs a stable long per item
+    private final Map<String, Long> stableIds = new HashMap<>();
     private final Context context;
     private final OnNoteClickListener listener;
+    private final Handler tickHandler = new Handler(Looper.getMainLooper());
+    private final Runnable tickTask = this::onMinuteTick;
+    private RecyclerView recyclerView;
+
+    private static final DiffUtil.ItemCallback<NoteModel> DIFF_CALLBACK = new DiffUtil.ItemCallback<NoteModel>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull NoteModel oldNote, @NonNull NoteModel newNote) {
+            return Objects.equals(oldNote.getId(), newNote.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull NoteModel oldNote, @NonNull NoteModel newNote) {
+            // Content edits always bump updatedAt, so the body itself is not compared
+            return oldNote.getUpdatedAt() == newNote.getUpdatedAt()
+                    && oldNote.isPinned() == newNote.isPinned()
+                    && Objects.equals(oldNote.getTitle(), newNote.getTitle())
+                    && Objects.equals(oldNote.getColor(), newNote.getColor())
+                    && Objects.equals(oldNote.getCategory(), newNote.getCategory())
+                    && Objects.equals(oldNote.getLastUpdatedByUsername(), newNote.getLastUpdatedByUsername());
+        }
+    };
 
     public interface OnNoteClickListener {
         void onNoteClick(NoteModel note);
@@ -43,20 +73,73 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
     public NotesAdapter(Context context, OnNoteClickListener listener) {
         this.context = context;
         this.listener = listener;
+        setHasStableIds(true);
     }
 
+    /**
+     * Diffs against the current list on a background thread and dispatches only the
+     * resulting range updates. Pass a new list instance; notes must not be mutated in place.
+     */
     public void setNotes(List<NoteModel> notes) {
-        this.notes = notes != null ? notes : new ArrayList<>();
-        notifyDataSetChanged();
+        differ.submitList(notes != null ? notes : new ArrayList<>());
     }
     
     public NoteModel getNoteAtPosition(int position) {
+        List<NoteModel> notes = differ.getCurrentList();
         if (position >= 0 && position < notes.size()) {
             return notes.get(position);
         }
         return null;
     }
 
+    @Override
+    public long getItemId(int position) {
+        String noteId = differ.getCurrentList().get(position).getId();
+        Long stableId = stableIds.get(noteId);
+        if (stableId == null) {
+            stableId = (long) stableIds.size();
+            stableIds.put(noteId, stableId);
+        }
+        return stableId;
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        this.recyclerView = recyclerView;
+        scheduleTick();
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        tickHandler.removeCallbacks(tickTask);
+        this.recyclerView = null;
+    }
+
+    /**
+     * Once a minute, refreshes the relative-time label of the cards on screen only;
+     * nothing is rebound.
+     */
+    private void onMinuteTick() {
+        if (recyclerView == null) return;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            RecyclerView.ViewHolder holder = recyclerView.getChildViewHolder(recyclerView.getChildAt(i));
+            if (holder instanceof NoteViewHolder) {
+                ((NoteViewHolder) holder).updateDate(now);
+            }
+        }
+        scheduleTick();
+    }
+
+    private void scheduleTick() {
+        tickHandler.removeCallbacks(tickTask);
+        long now = System.currentTimeMillis();
+        // Fire just after the minute boundary so labels roll over together
+        tickHandler.postDelayed(tickTask, DateUtils.MINUTE_MILLIS - now % DateUtils.MINUTE_MILLIS + 50);
+    }
+
     @NonNull
     @Override
     public NoteViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -66,13 +149,13 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
 
     @Override
     public void onBindViewHolder(@NonNull NoteViewHolder holder, int position) {
-        NoteModel note = notes.get(position);
+        NoteModel note = differ.getCurrentList().get(position);
         holder.bind(note);
     }
 
     @Override
     public int getItemCount() {
-        return notes.size();
+        return differ.getCurrentList().size();
     }
 
     class NoteViewHolder extends RecyclerView.ViewHolder {
@@ -86,6 +169,8 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
         private final TextView sharedBadgeText;
         private final ImageView pinIcon;
         private final TextView categoryBadge;
+        private long boundUpdatedAt;
+        private String shownRelativeTime;
 
         NoteViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -108,20 +193,16 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
             }
             noteTitle.setText(title);
 
-            // Handle HTML content from RichEditor
-            String content = note.getContent();
-            if (content == null || content.isEmpty()) {
+            // Previews are plain text built once per note version; no HTML parsing here
+            String content = NotePreviews.get(note);
+            if (content.isEmpty()) {
                 content = "No content";
-            } else {
-                // Strip HTML tags for preview
-                content = Html.fromHtml(content, Html.FROM_HTML_MODE_COMPACT).toString().trim();
-                if (content.isEmpty()) {
-                    content = "No content";
-                }
             }
             noteContent.setText(content);
 
-            noteDate.setText("Updated " + DateUtils.getRelativeTime(note.getUpdatedAt()));
+            boundUpdatedAt = note.getUpdatedAt();
+            shownRelativeTime = null;
+            updateDate(System.currentTimeMillis());
 
             // Show last updated by if different from owner
             if (note.getLastUpdatedByUsername() != null && !note.getLastUpdatedByUsername().isEmpty()) {
@@ -169,6 +250,15 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
             moreButton.setOnClickListener(v -> showPopupMenu(v, note));
         }
 
+        void updateDate(long now) {
+            String relativeTime = DateUtils.getRelativeTime(boundUpdatedAt, now);
+            // Labels are shared instances, so an unchanged label is the same reference
+            if (relativeTime != shownRelativeTime) {
+                shownRelativeTime = relativeTime;
+                noteDate.setText("Updated " + relativeTime);
+            }
+        }
+
         private void showPopupMenu(View anchor, NoteModel note) {
             PopupMenu popup = new PopupMenu(context, anchor);
             popup.getMenuInflater().inflate(R.menu.menu_note_item, popup.getMenu());
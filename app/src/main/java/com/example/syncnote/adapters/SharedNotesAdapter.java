@@ -7,6 +7,8 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.syncnote.R;
@@ -14,14 +16,36 @@ import com.example.syncnote.models.SharedNoteModel;
 import com.example.syncnote.utils.DateUtils;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 public class SharedNotesAdapter extends RecyclerView.Adapter<SharedNotesAdapter.SharedNoteViewHolder> {
 
-    private List<SharedNoteModel> sharedNotes = new ArrayList<>();
+    private final AsyncListDiffer<SharedNoteModel> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    // Share ids are strings; RecyclerView needs a stable long per item
+    private final Map<String, Long> stableIds = new HashMap<>();
     private final Context context;
     private final OnSharedNoteClickListener listener;
 
+    private static final DiffUtil.ItemCallback<SharedNoteModel> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<SharedNoteModel>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull SharedNoteModel oldShare, @NonNull SharedNoteModel newShare) {
+            return Objects.equals(oldShare.getId(), newShare.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull SharedNoteModel oldShare, @NonNull SharedNoteModel newShare) {
+            return oldShare.getSharedAt() == newShare.getSharedAt()
+                    && Objects.equals(oldShare.getPermission(), newShare.getPermission())
+                    && Objects.equals(oldShare.getOwnerUsername(), newShare.getOwnerUsername())
+                    && Objects.equals(oldShare.getNoteTitle(), newShare.getNoteTitle())
+                    && Objects.equals(oldShare.getNoteContent(), newShare.getNoteContent());
+        }
+    };
+
     public interface OnSharedNoteClickListener {
         void onSharedNoteClick(SharedNoteModel sharedNote);
     }
@@ -29,11 +53,26 @@ public class SharedNotesAdapter extends RecyclerView.Adapter<SharedNotesAdapter.
     public SharedNotesAdapter(Context context, OnSharedNoteClickListener listener) {
         this.context = context;
         this.listener = listener;
+        setHasStableIds(true);
     }
 
+    /**
+     * Diffs against the current list on a background thread and dispatches only the
+     * resulting range updates.
+     */
     public void setSharedNotes(List<SharedNoteModel> sharedNotes) {
-        this.sharedNotes = sharedNotes != null ? sharedNotes : new ArrayList<>();
-        notifyDataSetChanged();
+        differ.submitList(sharedNotes != null ? sharedNotes : new ArrayList<>());
+    }
+
+    @Override
+    public long getItemId(int position) {
+        String shareId = differ.getCurrentList().get(position).getId();
+        Long stableId = stableIds.get(shareId);
+        if (stableId == null) {
+            stableId = (long) stableIds.size();
+            stableIds.put(shareId, stableId);
+        }
+        return stableId;
     }
 
     @NonNull
@@ -45,13 +84,13 @@ public class SharedNotesAdapter extends RecyclerView.Adapter<SharedNotesAdapter.
 
     @Override
     public void onBindViewHolder(@NonNull SharedNoteViewHolder holder, int position) {
-        SharedNoteModel sharedNote = sharedNotes.get(position);
+        SharedNoteModel sharedNote = differ.getCurrentList().get(position);
         holder.bind(sharedNote);
     }
 
     @Override
     public int getItemCount() {
-        return sharedNotes.size();
+        return differ.getCurrentList().size();
     }
 
     class SharedNoteViewHolder extends RecyclerView.ViewHolder {
@@ -0,0 +1,209 @@
+package com.example.syncnote.crdt;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.syncnote.firebase.FirebaseManager;
+import com.example.syncnote.firebase.SyncEvent;
+import com.example.syncnote.firebase.SyncListener;
+import com.example.syncnote.firebase.SyncRegistration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Keeps one editor's copy of a note's text merged with every other editor's. Local
+ * edits become ops that are batched onto the note's log; ops from the log are merged
+ * as they arrive. Every few hundred ops this replica writes a snapshot so new
+ * sessions replay only the tail of the log. All methods run on the main thread.
+ */
+public class NoteCollabSession {
+
+    public interface Listener {
+        /**
+         * The replica has caught up with the log; {@code text} is the merged text.
+         */
+        void onReady(String text);
+
+        /**
+         * Ops from another editor changed the text.
+         */
+        void onRemoteText(String text);
+    }
+
+    private static final long FLUSH_DELAY_MS = 300;
+    private static final long RETRY_DELAY_MS = 5_000;
+    private static final int SNAPSHOT_INTERVAL = 200;
+    // Replay starts this far before the snapshot. Ops are idempotent, so the overlap
+    // only costs the download, and it covers ops committed before one whose commit
+    // time was a local estimate when the snapshot was taken
+    private static final long REPLAY_OVERLAP_MS = 60_000;
+
+    private final FirebaseManager firebaseManager;
+    private final String noteId;
+    private final Listener listener;
+    private final String site = UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushTask = this::flush;
+    private final Runnable remoteTextTask = this::deliverRemoteText;
+    private final List<RgaOp> unsentOps = new ArrayList<>();
+
+    private RgaDocument document;
+    // The text the editor shows; local edits are read against it
+    private RgaDocument.View shown;
+    // The text last handed to the editor, until it confirms showing it
+    private RgaDocument.View offered;
+    private SyncRegistration registration;
+    private boolean ready = false;
+    private boolean stopped = false;
+    private boolean sending = false;
+    private int opsSinceSnapshot = 0;
+
+    public NoteCollabSession(FirebaseManager firebaseManager, String noteId, Listener listener) {
+        this.firebaseManager = firebaseManager;
+        this.noteId = noteId;
+        this.listener = listener;
+    }
+
+    /**
+     * @param seedText the note's current text, used only if the note has no history yet
+     */
+    public void start(String seedText) {
+        firebaseManager.loadNoteCrdt(noteId, site, seedText, new FirebaseManager.NoteCrdtCallback() {
+            @Override
+            public void onSuccess(RgaDocument loaded) {
+                handler.post(() -> attach(loaded));
+            }
+
+            @Override
+            public void onError(String error) {
+                // Editing falls back to whole-note saves
+            }
+        });
+    }
+
+    private void attach(RgaDocument loaded) {
+        if (stopped) return;
+        document = loaded;
+        long replayFrom = Math.max(0, loaded.getLastAppliedAt() - REPLAY_OVERLAP_MS);
+        registration = firebaseManager.syncNoteOps(noteId, replayFrom, new SyncListener<RgaOp>() {
+            @Override
+            public void onEvent(SyncEvent<RgaOp> event) {
+                if (event.getType() == SyncEvent.Type.REMOVED || stopped) return;
+                if (document.apply(event.getValue()) && ready) {
+                    // Coalesce a burst of remote ops into one editor refresh
+                    handler.removeCallbacks(remoteTextTask);
+                    handler.post(remoteTextTask);
+                }
+            }
+
+            @Override
+            public void onSynced() {
+                if (stopped || ready) return;
+                ready = true;
+                shown = document.view();
+                listener.onReady(getText());
+            }
+
+            @Override
+            public void onError(String error) {
+                // Remote edits stop arriving; local ops are still written
+            }
+        });
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Records the editor's new text as a local edit of the text it showed before.
+     * Ignored until the session is ready; the caller replays its text from
+     * {@link Listener#onReady}.
+     */
+    public void onLocalText(String text) {
+        if (!ready || stopped || text == null) return;
+        List<RgaOp> ops = document.applyLocalText(shown, text);
+        if (ops.isEmpty()) return;
+        unsentOps.addAll(ops);
+        handler.removeCallbacks(flushTask);
+        handler.postDelayed(flushTask, FLUSH_DELAY_MS);
+    }
+
+    /**
+     * The merged text. Once the editor shows it, report that with {@link #onShown}.
+     */
+    public String getText() {
+        if (document == null) return null;
+        offered = document.view();
+        return offered.getText();
+    }
+
+    /**
+     * The editor now shows {@code text}, as returned by {@link #getText()}. Until this
+     * is called, local edits keep being read against the text shown before, so
+     * remote edits the editor has not displayed yet are not taken for deletions.
+     */
+    public void onShown(String text) {
+        if (offered != null && offered.getText().equals(text)) {
+            shown = offered;
+            offered = null;
+        }
+    }
+
+    /**
+     * Sends unsent ops and detaches from the log. Ops still unsent keep being retried
+     * after this returns.
+     */
+    public void stop() {
+        flush();
+        stopped = true;
+        handler.removeCallbacks(remoteTextTask);
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+    }
+
+    private void deliverRemoteText() {
+        if (!stopped) {
+            listener.onRemoteText(getText());
+        }
+    }
+
+    /**
+     * Sends the unsent ops as one batch, one batch at a time. The local replica has
+     * already applied them and later local ops reference their ids, so a failed batch
+     * goes back to the front of the queue; dropping it would leave every other
+     * replica holding the later ops as pending for good. That holds after stop() too,
+     * or the last edits before closing the editor would never reach the log.
+     */
+    private void flush() {
+        handler.removeCallbacks(flushTask);
+        send();
+    }
+
+    private void send() {
+        if (unsentOps.isEmpty() || sending) return;
+
+        List<RgaOp> batch = new ArrayList<>(unsentOps);
+        unsentOps.clear();
+        sending = true;
+        firebaseManager.appendNoteOps(noteId, batch, success -> {
+            sending = false;
+            if (!success) {
+                unsentOps.addAll(0, batch);
+                handler.postDelayed(flushTask, RETRY_DELAY_MS);
+                return;
+            }
+            // Ops recorded while the batch was out, including any left by stop()
+            send();
+            opsSinceSnapshot += batch.size();
+            if (opsSinceSnapshot >= SNAPSHOT_INTERVAL) {
+                opsSinceSnapshot = 0;
+                firebaseManager.saveNoteCrdtSnapshot(noteId, document, result -> {});
+            }
+        });
+    }
+}
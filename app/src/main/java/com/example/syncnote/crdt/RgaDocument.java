@@ -0,0 +1,433 @@
+package com.example.syncnote.crdt;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replicated growable array holding a note's text. Every replica that has applied
+ * the same set of ops holds the same text, whatever order the ops arrived in.
+ *
+ * <p>Characters live in a linked list with an id index, and deleted characters stay
+ * as tombstones so later ops can still refer to them. A remote op costs a hash lookup
+ * for its reference character plus a skip over characters inserted concurrently at the
+ * same spot, independent of document size. Local edits address characters by visible
+ * index and walk the list once.
+ */
+public class RgaDocument {
+
+    // Site id used for the text a note already had when collaborative editing began
+    public static final String SEED_SITE = "seed";
+
+    private static final class Node {
+        final RgaId id;
+        final char value;
+        boolean deleted;
+        Node next;
+
+        Node(RgaId id, char value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Text as an editor shows it, with the id of each character.
+     */
+    public static final class View {
+        private String text;
+        private List<RgaId> ids;
+
+        View(String text, List<RgaId> ids) {
+            this.text = text;
+            this.ids = ids;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    private final String site;
+    private final Node head = new Node(null, '\0');
+    private final Map<RgaId, Node> nodes = new HashMap<>();
+    // Ops waiting for the character they reference, keyed by that character's id
+    private final Map<RgaId, List<RgaOp>> pending = new HashMap<>();
+    private long clock = 0;
+    private long lastAppliedAt = 0;
+    private int visibleLength = 0;
+
+    /**
+     * @param site id unique to this replica; must not contain '@', ',' or '*'
+     */
+    public RgaDocument(String site) {
+        this.site = site;
+    }
+
+    /**
+     * A document holding {@code text} under deterministic seed ids, so replicas that
+     * seed the same text independently agree on it.
+     */
+    public static RgaDocument seeded(String site, String text) {
+        RgaDocument document = new RgaDocument(site);
+        if (text != null && !text.isEmpty()) {
+            document.apply(RgaOp.insert(new RgaId(1, SEED_SITE), null, text));
+        }
+        return document;
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    public int length() {
+        return visibleLength;
+    }
+
+    /**
+     * Highest server commit time among the applied ops.
+     */
+    public long getLastAppliedAt() {
+        return lastAppliedAt;
+    }
+
+    /**
+     * Commit time up to which every op received has been integrated: the highest
+     * applied commit time, kept below the oldest op still waiting for its reference.
+     * Snapshots record this, so replaying the log from it cannot skip a held op.
+     */
+    public long getIntegratedAt() {
+        long at = lastAppliedAt;
+        for (List<RgaOp> ops : pending.values()) {
+            for (RgaOp op : ops) {
+                if (op.at > 0 && op.at <= at) at = op.at - 1;
+            }
+        }
+        return at;
+    }
+
+    public int pendingCount() {
+        int count = 0;
+        for (List<RgaOp> ops : pending.values()) {
+            count += ops.size();
+        }
+        return count;
+    }
+
+    public String getText() {
+        StringBuilder text = new StringBuilder(visibleLength);
+        for (Node node = head.next; node != null; node = node.next) {
+            if (!node.deleted) text.append(node.value);
+        }
+        return text.toString();
+    }
+
+    // ===================== LOCAL EDITS =====================
+
+    /**
+     * The visible text with the id of each character, for an editor to read its
+     * edits against.
+     */
+    public View view() {
+        List<RgaId> ids = new ArrayList<>(visibleLength);
+        StringBuilder text = new StringBuilder(visibleLength);
+        for (Node node = head.next; node != null; node = node.next) {
+            if (!node.deleted) {
+                ids.add(node.id);
+                text.append(node.value);
+            }
+        }
+        return new View(text.toString(), ids);
+    }
+
+    /**
+     * Turns the edit that produced {@code newText} from the current text into ops,
+     * applies them and returns them for broadcast.
+     */
+    public List<RgaOp> applyLocalText(String newText) {
+        return applyLocalText(view(), newText);
+    }
+
+    /**
+     * Turns the edit that produced {@code newText} from {@code base} into ops, applies
+     * them and returns them for broadcast; {@code base} then describes {@code newText}.
+     * The edit is taken to be the span between the common prefix and common suffix,
+     * which matches a single typing, paste or cut. Because the edit is addressed by
+     * the ids in {@code base}, remote ops merged since {@code base} was taken are kept
+     * rather than read as local deletions.
+     *
+     * <p>The text is the editor's HTML, so the span is widened to whole tags and
+     * character entities. An edit inside a tag then replaces the tag, and an edit
+     * made concurrently by another editor can never land between its characters and
+     * leave broken markup behind.
+     */
+    public List<RgaOp> applyLocalText(View base, String newText) {
+        String oldText = base.text;
+        if (oldText.equals(newText)) {
+            return Collections.emptyList();
+        }
+
+        int prefix = 0;
+        int maxPrefix = Math.min(oldText.length(), newText.length());
+        while (prefix < maxPrefix && oldText.charAt(prefix) == newText.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        int maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix
+                && oldText.charAt(oldText.length() - 1 - suffix) == newText.charAt(newText.length() - 1 - suffix)) {
+            suffix++;
+        }
+        // Widening one side can move the other side's boundary into a token
+        while (true) {
+            int start = Math.min(tokenStart(oldText, prefix), tokenStart(newText, prefix));
+            int end = Math.min(oldText.length() - tokenEnd(oldText, oldText.length() - suffix),
+                    newText.length() - tokenEnd(newText, newText.length() - suffix));
+            if (start == prefix && end == suffix) break;
+            prefix = start;
+            suffix = end;
+        }
+
+        List<RgaOp> ops = new ArrayList<>(2);
+        int deletedEnd = oldText.length() - suffix;
+        if (deletedEnd > prefix) {
+            RgaOp delete = RgaOp.delete(new ArrayList<>(base.ids.subList(prefix, deletedEnd)));
+            apply(delete);
+            ops.add(delete);
+        }
+        String inserted = newText.substring(prefix, newText.length() - suffix);
+        List<RgaId> ids = new ArrayList<>(newText.length());
+        ids.addAll(base.ids.subList(0, prefix));
+        if (!inserted.isEmpty()) {
+            RgaOp insert = RgaOp.insert(new RgaId(clock + 1, site),
+                    prefix == 0 ? null : base.ids.get(prefix - 1), inserted);
+            apply(insert);
+            ops.add(insert);
+            for (int k = 0; k < inserted.length(); k++) {
+                ids.add(insert.id.next(k));
+            }
+        }
+        ids.addAll(base.ids.subList(deletedEnd, oldText.length()));
+        base.text = newText;
+        base.ids = ids;
+        return ops;
+    }
+
+    /**
+     * Start of the tag or entity that {@code index} falls inside, or {@code index}
+     * if it sits between tokens.
+     */
+    private static int tokenStart(String text, int index) {
+        boolean entity = true;
+        for (int i = index - 1; i >= 0; i--) {
+            char c = text.charAt(i);
+            if (c == '>') return index;
+            if (c == '<') return i;
+            if (c == '&' && entity) return i;
+            entity &= Character.isLetterOrDigit(c) || c == '#';
+        }
+        return index;
+    }
+
+    /**
+     * End of the tag or entity that {@code index} falls inside, or {@code index} if it
+     * sits between tokens.
+     */
+    private static int tokenEnd(String text, int index) {
+        int start = tokenStart(text, index);
+        if (start == index) return index;
+        int end = text.indexOf(text.charAt(start) == '<' ? '>' : ';', index);
+        return end < 0 ? text.length() : end + 1;
+    }
+
+    public RgaOp insert(int index, String text) {
+        if (index < 0 || index > visibleLength) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + visibleLength);
+        }
+        RgaId ref = index == 0 ? null : visibleNodeAt(index - 1).id;
+        RgaOp op = RgaOp.insert(new RgaId(clock + 1, site), ref, text);
+        apply(op);
+        return op;
+    }
+
+    public RgaOp delete(int index, int length) {
+        if (index < 0 || length < 0 || index + length > visibleLength) {
+            throw new IndexOutOfBoundsException("range " + index + "+" + length + ", length " + visibleLength);
+        }
+        List<RgaId> targets = new ArrayList<>(length);
+        Node node = length > 0 ? visibleNodeAt(index) : null;
+        while (targets.size() < length && node != null) {
+            if (!node.deleted) targets.add(node.id);
+            node = node.next;
+        }
+        RgaOp op = RgaOp.delete(targets);
+        apply(op);
+        return op;
+    }
+
+    private Node visibleNodeAt(int index) {
+        int seen = 0;
+        for (Node node = head.next; node != null; node = node.next) {
+            if (!node.deleted) {
+                if (seen == index) return node;
+                seen++;
+            }
+        }
+        throw new IndexOutOfBoundsException("index " + index);
+    }
+
+    // ===================== MERGE =====================
+
+    /**
+     * Merges an op from any replica. Applying an op twice is a no-op, and an op whose
+     * reference has not arrived yet is held until it does.
+     *
+     * @return whether the visible text changed
+     */
+    public boolean apply(RgaOp op) {
+        if (op.at > lastAppliedAt) {
+            lastAppliedAt = op.at;
+        }
+
+        boolean changed = false;
+        Deque<RgaOp> queue = new ArrayDeque<>();
+        queue.add(op);
+        while (!queue.isEmpty()) {
+            RgaOp next = queue.poll();
+            if (next.isInsert()) {
+                changed |= integrateInsert(next, queue);
+            } else {
+                changed |= integrateDelete(next);
+            }
+        }
+        return changed;
+    }
+
+    private boolean integrateInsert(RgaOp op, Deque<RgaOp> released) {
+        if (nodes.containsKey(op.id)) {
+            return false;
+        }
+        Node prev = head;
+        if (op.ref != null) {
+            prev = nodes.get(op.ref);
+            if (prev == null) {
+                hold(op.ref, op);
+                return false;
+            }
+        }
+
+        int length = op.text.length();
+        for (int k = 0; k < length; k++) {
+            RgaId id = op.id.next(k);
+            // Skip characters inserted concurrently after prev with a higher id; their
+            // own successors always carry higher counters, so this skips whole subtrees
+            Node next = prev.next;
+            while (next != null && next.id.compareTo(id) > 0) {
+                prev = next;
+                next = next.next;
+            }
+            Node node = new Node(id, op.text.charAt(k));
+            node.next = next;
+            prev.next = node;
+            nodes.put(id, node);
+            prev = node;
+
+            if (!pending.isEmpty()) {
+                List<RgaOp> waiting = pending.remove(id);
+                if (waiting != null) released.addAll(waiting);
+            }
+        }
+        visibleLength += length;
+        clock = Math.max(clock, op.id.counter + length - 1);
+        return true;
+    }
+
+    private boolean integrateDelete(RgaOp op) {
+        boolean changed = false;
+        for (RgaId target : op.targets) {
+            Node node = nodes.get(target);
+            if (node == null) {
+                hold(target, op.withTargets(Collections.singletonList(target)));
+            } else if (!node.deleted) {
+                node.deleted = true;
+                visibleLength--;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void hold(RgaId missing, RgaOp op) {
+        List<RgaOp> waiting = pending.get(missing);
+        if (waiting == null) {
+            waiting = new ArrayList<>(1);
+            pending.put(missing, waiting);
+        }
+        waiting.add(op);
+    }
+
+    // ===================== SNAPSHOTS =====================
+
+    /**
+     * Full state including tombstones: ids as runs, every character's value, a '0'/'1'
+     * deleted flag per character, the clock and {@link #getIntegratedAt()}. Ops still
+     * held for a missing reference are not included.
+     */
+    public Map<String, Object> toSnapshot() {
+        List<RgaId> ids = new ArrayList<>(nodes.size());
+        StringBuilder text = new StringBuilder(nodes.size());
+        StringBuilder deleted = new StringBuilder(nodes.size());
+        for (Node node = head.next; node != null; node = node.next) {
+            ids.add(node.id);
+            text.append(node.value);
+            deleted.append(node.deleted ? '1' : '0');
+        }
+
+        Map<String, Object> snapshot = new HashMap<>(8);
+        snapshot.put("ids", RgaOp.encodeRuns(ids));
+        snapshot.put("text", text.toString());
+        snapshot.put("deleted", deleted.toString());
+        snapshot.put("clock", clock);
+        snapshot.put("at", getIntegratedAt());
+        return snapshot;
+    }
+
+    /**
+     * Rebuilds a replica from {@link #toSnapshot()} output, or returns null if the
+     * snapshot is malformed.
+     */
+    public static RgaDocument fromSnapshot(String site, Map<String, Object> snapshot) {
+        if (snapshot == null) return null;
+        try {
+            List<RgaId> ids = RgaOp.decodeRuns((String) snapshot.get("ids"));
+            String text = (String) snapshot.get("text");
+            String deleted = (String) snapshot.get("deleted");
+            if (text == null || deleted == null
+                    || ids.size() != text.length() || ids.size() != deleted.length()) {
+                return null;
+            }
+
+            RgaDocument document = new RgaDocument(site);
+            Node tail = document.head;
+            for (int i = 0; i < ids.size(); i++) {
+                Node node = new Node(ids.get(i), text.charAt(i));
+                node.deleted = deleted.charAt(i) == '1';
+                if (!node.deleted) document.visibleLength++;
+                tail.next = node;
+                tail = node;
+                document.nodes.put(node.id, node);
+            }
+            Object clock = snapshot.get("clock");
+            Object at = snapshot.get("at");
+            document.clock = clock instanceof Number ? ((Number) clock).longValue() : 0;
+            document.lastAppliedAt = at instanceof Number ? ((Number) at).longValue() : 0;
+            return document;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
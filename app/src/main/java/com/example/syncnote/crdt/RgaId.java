@@ -0,0 +1,54 @@
+package com.example.syncnote.crdt;
+
+/**
+ * Identity of one character in an {@link RgaDocument}: a Lamport counter plus the
+ * id of the site that inserted it. Ordered by counter, ties broken by site.
+ */
+public final class RgaId implements Comparable<RgaId> {
+
+    public final long counter;
+    public final String site;
+
+    public RgaId(long counter, String site) {
+        this.counter = counter;
+        this.site = site;
+    }
+
+    public RgaId next(int offset) {
+        return new RgaId(counter + offset, site);
+    }
+
+    @Override
+    public int compareTo(RgaId other) {
+        if (counter != other.counter) {
+            return counter < other.counter ? -1 : 1;
+        }
+        return site.compareTo(other.site);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RgaId)) return false;
+        RgaId other = (RgaId) o;
+        return counter == other.counter && site.equals(other.site);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (int) (counter ^ (counter >>> 32)) + site.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return counter + "@" + site;
+    }
+
+    public static RgaId parse(String value) {
+        int at = value.indexOf('@');
+        if (at <= 0) {
+            throw new IllegalArgumentException("Invalid id: " + value);
+        }
+        return new RgaId(Long.parseLong(value.substring(0, at)), value.substring(at + 1));
+    }
+}
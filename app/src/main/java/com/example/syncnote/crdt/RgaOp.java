@@ -0,0 +1,142 @@
+package com.example.syncnote.crdt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One entry of a note's operation log. An insert places a run of characters after
+ * {@code ref}; character k of the run gets id {@code id + k} and sits after
+ * character k - 1. A delete tombstones a set of characters.
+ */
+public final class RgaOp {
+
+    public static final String TYPE_INSERT = "insert";
+    public static final String TYPE_DELETE = "delete";
+
+    public final String type;
+    public final RgaId id;
+    public final RgaId ref;
+    public final String text;
+    public final List<RgaId> targets;
+    // Server commit time, 0 until the op has round-tripped through the database
+    public final long at;
+
+    private RgaOp(String type, RgaId id, RgaId ref, String text, List<RgaId> targets, long at) {
+        this.type = type;
+        this.id = id;
+        this.ref = ref;
+        this.text = text;
+        this.targets = targets;
+        this.at = at;
+    }
+
+    public static RgaOp insert(RgaId id, RgaId ref, String text) {
+        return new RgaOp(TYPE_INSERT, id, ref, text, Collections.<RgaId>emptyList(), 0);
+    }
+
+    public static RgaOp delete(List<RgaId> targets) {
+        return new RgaOp(TYPE_DELETE, null, null, null, targets, 0);
+    }
+
+    /**
+     * This delete narrowed to {@code targets}, keeping its commit time.
+     */
+    RgaOp withTargets(List<RgaId> targets) {
+        return new RgaOp(TYPE_DELETE, null, null, null, targets, at);
+    }
+
+    public boolean isInsert() {
+        return TYPE_INSERT.equals(type);
+    }
+
+    /**
+     * Database form, without the commit time; the writer adds that as a server value.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>(4);
+        map.put("type", type);
+        if (isInsert()) {
+            map.put("id", id.toString());
+            if (ref != null) {
+                map.put("ref", ref.toString());
+            }
+            map.put("text", text);
+        } else {
+            map.put("targets", encodeRuns(targets));
+        }
+        return map;
+    }
+
+    /**
+     * Returns null for entries that are not a well-formed op.
+     */
+    public static RgaOp fromMap(Map<String, Object> map) {
+        if (map == null) return null;
+        try {
+            Object type = map.get("type");
+            Object at = map.get("at");
+            long commitTime = at instanceof Number ? ((Number) at).longValue() : 0;
+
+            if (TYPE_INSERT.equals(type)) {
+                Object ref = map.get("ref");
+                Object text = map.get("text");
+                if (!(text instanceof String) || ((String) text).isEmpty()) return null;
+                return new RgaOp(TYPE_INSERT, RgaId.parse((String) map.get("id")),
+                        ref instanceof String ? RgaId.parse((String) ref) : null,
+                        (String) text, Collections.<RgaId>emptyList(), commitTime);
+            } else if (TYPE_DELETE.equals(type)) {
+                Object targets = map.get("targets");
+                if (!(targets instanceof String)) return null;
+                return new RgaOp(TYPE_DELETE, null, null, null, decodeRuns((String) targets), commitTime);
+            }
+        } catch (RuntimeException e) {
+            // Malformed entry
+        }
+        return null;
+    }
+
+    /**
+     * Encodes ids as comma-separated runs {@code counter@site*length}. Typed text is
+     * one run per burst, so this stays close to one entry per edit.
+     */
+    static String encodeRuns(List<RgaId> ids) {
+        StringBuilder out = new StringBuilder();
+        int i = 0;
+        while (i < ids.size()) {
+            RgaId start = ids.get(i);
+            int length = 1;
+            while (i + length < ids.size()) {
+                RgaId candidate = ids.get(i + length);
+                if (candidate.counter != start.counter + length || !candidate.site.equals(start.site)) break;
+                length++;
+            }
+            if (out.length() > 0) out.append(',');
+            out.append(start);
+            if (length > 1) out.append('*').append(length);
+            i += length;
+        }
+        return out.toString();
+    }
+
+    static List<RgaId> decodeRuns(String encoded) {
+        List<RgaId> ids = new ArrayList<>();
+        if (encoded.isEmpty()) return ids;
+        for (String run : encoded.split(",")) {
+            int star = run.lastIndexOf('*');
+            int length = 1;
+            String startId = run;
+            if (star > run.indexOf('@')) {
+                length = Integer.parseInt(run.substring(star + 1));
+                startId = run.substring(0, star);
+            }
+            RgaId start = RgaId.parse(startId);
+            for (int k = 0; k < length; k++) {
+                ids.add(start.next(k));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.syncnote.firebase;
+
+import com.example.syncnote.models.ActivityLogModel;
+import com.example.syncnote.utils.Clock;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Buffers activity log entries and hands them to the database as one multi-path
+ * update. Entries are flushed at most {@code flushDelayMs} after the first one is
+ * buffered, or straight away once {@code maxBatch} are waiting. A pin, colour or
+ * category change replaces a still-buffered change of the same kind by the same
+ * user on the same note, so rapid toggling records only the final state.
+ */
+final class ActivityLogBatcher {
+
+    interface Sink {
+        void write(Map<String, Object> updates);
+    }
+
+    private final Clock clock;
+    private final long flushDelayMs;
+    private final int maxBatch;
+    private final Sink sink;
+
+    // Path -> log map, in the order entries were added
+    private final LinkedHashMap<String, Object> pending = new LinkedHashMap<>();
+    // Coalescing key -> path of the buffered entry it would replace
+    private final Map<String, String> supersedable = new HashMap<>();
+    private boolean flushScheduled;
+
+    private final Runnable flushTask = this::flush;
+
+    ActivityLogBatcher(Clock clock, long flushDelayMs, int maxBatch, Sink sink) {
+        this.clock = clock;
+        this.flushDelayMs = flushDelayMs;
+        this.maxBatch = maxBatch;
+        this.sink = sink;
+    }
+
+    void add(String path, ActivityLogModel log) {
+        boolean flushNow;
+        synchronized (this) {
+            String key = coalescingKey(log);
+            if (key != null) {
+                String replaced = supersedable.put(key, path);
+                if (replaced != null) {
+                    pending.remove(replaced);
+                }
+            }
+            pending.put(path, log.toMap());
+
+            flushNow = pending.size() >= maxBatch;
+            if (!flushNow && !flushScheduled) {
+                flushScheduled = true;
+                clock.schedule(flushTask, flushDelayMs);
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    void flush() {
+        Map<String, Object> updates;
+        synchronized (this) {
+            if (flushScheduled) {
+                flushScheduled = false;
+                clock.cancel(flushTask);
+            }
+            if (pending.isEmpty()) return;
+            updates = new HashMap<>(pending);
+            pending.clear();
+            supersedable.clear();
+        }
+        sink.write(updates);
+    }
+
+    /**
+     * Drops buffered entries whose path starts with {@code prefix}, e.g. for a note
+     * that is being deleted.
+     */
+    synchronized void discard(String prefix) {
+        for (Iterator<String> it = pending.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+        for (Iterator<String> it = supersedable.values().iterator(); it.hasNext(); ) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    private static String coalescingKey(ActivityLogModel log) {
+        String kind;
+        String action = log.getAction();
+        if (ActivityLogModel.ACTION_PINNED.equals(action) || ActivityLogModel.ACTION_UNPINNED.equals(action)) {
+            kind = "pin";
+        } else if (ActivityLogModel.ACTION_COLOR_CHANGED.equals(action)) {
+            kind = "color";
+        } else if (ActivityLogModel.ACTION_CATEGORY_CHANGED.equals(action)) {
+            kind = "category";
+        } else {
+            // Shares, edits and creation are distinct events; batch them but keep each one
+            return null;
+        }
+        return log.getNoteId() + "/" + log.getUserId() + "/" + kind;
+    }
+}
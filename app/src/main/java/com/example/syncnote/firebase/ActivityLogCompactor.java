@@ -0,0 +1,100 @@
+package com.example.syncnote.firebase;
+
+import com.example.syncnote.models.ActivityLogModel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans the compaction of one note's activity log:
+ * <ul>
+ *   <li>Consecutive edits by the same user, each within {@code editMergeWindowMs} of
+ *   the previous one, collapse into the newest entry of the run with a count.</li>
+ *   <li>Only the newest {@code maxEntries} entries are kept, and entries older than
+ *   {@code maxAgeMs} are dropped (0 disables either limit). The "created" entry is
+ *   always kept.</li>
+ * </ul>
+ * The plan depends only on the entries and {@code now}, and compacting an already
+ * compacted log changes nothing, so the job can safely run again or overlap itself.
+ */
+public final class ActivityLogCompactor {
+
+    private final long editMergeWindowMs;
+    private final int maxEntries;
+    private final long maxAgeMs;
+
+    public ActivityLogCompactor(long editMergeWindowMs, int maxEntries, long maxAgeMs) {
+        this.editMergeWindowMs = editMergeWindowMs;
+        this.maxEntries = maxEntries;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * @param basePath path of the note's log, e.g. "/activity_logs/{noteId}"
+     * @param logs     the note's entries, oldest first (push-id order)
+     * @return multi-path update that compacts the log; empty if nothing changes
+     */
+    public Map<String, Object> plan(String basePath, List<ActivityLogModel> logs, long now) {
+        Map<String, Object> updates = new HashMap<>();
+
+        // Merge runs of edits, keeping the newest entry of each run
+        List<ActivityLogModel> kept = new ArrayList<>(logs.size());
+        ActivityLogModel run = null;
+        int runCount = 0;
+        long runSince = 0;
+        boolean runMerged = false;
+        for (ActivityLogModel log : logs) {
+            if (run != null && continuesRun(run, log)) {
+                updates.put(basePath + "/" + run.getId(), null);
+                kept.set(kept.size() - 1, log);
+                runCount += log.getCount();
+                runMerged = true;
+                run = log;
+                continue;
+            }
+            closeRun(basePath, run, runCount, runSince, runMerged, updates);
+            kept.add(log);
+            boolean isEdit = ActivityLogModel.ACTION_EDITED.equals(log.getAction());
+            run = isEdit ? log : null;
+            runCount = isEdit ? log.getCount() : 0;
+            runSince = isEdit ? log.getSince() : 0;
+            runMerged = false;
+        }
+        closeRun(basePath, run, runCount, runSince, runMerged, updates);
+
+        // Retention, newest entries first
+        long cutoff = maxAgeMs > 0 ? now - maxAgeMs : Long.MIN_VALUE;
+        int retained = 0;
+        for (int i = kept.size() - 1; i >= 0; i--) {
+            ActivityLogModel log = kept.get(i);
+            if (ActivityLogModel.ACTION_CREATED.equals(log.getAction())) {
+                continue;
+            }
+            boolean overCount = maxEntries > 0 && retained >= maxEntries;
+            if (overCount || log.getTimestamp() < cutoff) {
+                updates.put(basePath + "/" + log.getId(), null);
+            } else {
+                retained++;
+            }
+        }
+        return updates;
+    }
+
+    private boolean continuesRun(ActivityLogModel run, ActivityLogModel next) {
+        return ActivityLogModel.ACTION_EDITED.equals(next.getAction())
+                && run.getUserId() != null
+                && run.getUserId().equals(next.getUserId())
+                && next.getSince() - run.getTimestamp() <= editMergeWindowMs;
+    }
+
+    private static void closeRun(String basePath, ActivityLogModel run, int count, long since,
+                                 boolean merged, Map<String, Object> updates) {
+        if (run == null || !merged) return;
+        ActivityLogModel compacted = ActivityLogModel.fromMap(run.getId(), run.toMap());
+        compacted.setCount(count);
+        compacted.setSince(since);
+        updates.put(basePath + "/" + run.getId(), compacted.toMap());
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.syncnote.firebase;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads for work on database results. Firebase delivers every snapshot on the
+ * main thread; decoding, sorting and joining happen on {@link #DECODE}, and only
+ * the finished result is handed back through {@link #MAIN}.
+ */
+final class DatabaseExecutors {
+
+    private static final int DECODE_THREADS = 2;
+
+    private DatabaseExecutors() {
+    }
+
+    /**
+     * Pool for snapshot decoding and post-processing. Its queue is unbounded: tasks
+     * are submitted from the main thread, which must never end up running one, and
+     * a queued task holds only a snapshot that is already in memory.
+     */
+    public static final Executor DECODE = createDecodePool();
+
+    public static final Executor MAIN = new Executor() {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    };
+
+    /**
+     * Executor that runs its tasks one at a time, in submission order, on {@link #DECODE}.
+     * Used where results must keep the order Firebase delivered them in.
+     */
+    static Executor serial() {
+        return new SerialExecutor(DECODE);
+    }
+
+    private static Executor createDecodePool() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "db-decode-" + count.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(DECODE_THREADS, DECODE_THREADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static final class SerialExecutor implements Executor {
+        private final Executor target;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private Runnable active;
+
+        SerialExecutor(Executor target) {
+            this.target = target;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            Runnable next;
+            synchronized (this) {
+                tasks.add(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                });
+                if (active != null) return;
+                next = active = tasks.poll();
+            }
+            target.execute(next);
+        }
+
+        // Hands over outside the lock, so submitters never wait on the target
+        private void scheduleNext() {
+            Runnable next;
+            synchronized (this) {
+                next = active = tasks.poll();
+            }
+            if (next != null) {
+                target.execute(next);
+            }
+        }
+    }
+}
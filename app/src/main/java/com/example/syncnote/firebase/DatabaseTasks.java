@@ -0,0 +1,109 @@
+package com.example.syncnote.firebase;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Database reads as {@link Task}s, so multi-step loads compose with
+ * continueWith/whenAll instead of nested listeners and shared counters.
+ */
+final class DatabaseTasks {
+
+    // Reads started since launch; instrumented tests compare it around a load
+    private static final AtomicInteger readsStarted = new AtomicInteger();
+
+    private DatabaseTasks() {
+    }
+
+    static int readsStarted() {
+        return readsStarted.get();
+    }
+
+    /**
+     * Counts a read made outside {@link #once}, such as a profile watch, so
+     * {@link #readsStarted()} covers it too.
+     */
+    static void countRead() {
+        readsStarted.incrementAndGet();
+    }
+
+    /**
+     * A single-value read; fails with the DatabaseError's exception.
+     */
+    static Task<DataSnapshot> once(Query query) {
+        readsStarted.incrementAndGet();
+        TaskCompletionSource<DataSnapshot> source = new TaskCompletionSource<>();
+        query.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                source.setResult(snapshot);
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                source.setException(error.toException());
+            }
+        });
+        return source.getTask();
+    }
+
+    /**
+     * Reads {@code parent/key} for every key with at most {@code maxParallel} reads
+     * outstanding: the keys are split into that many lanes, each read one after
+     * another. Missing or failed children are left out of the result.
+     */
+    static Task<Map<String, DataSnapshot>> onceEach(DatabaseReference parent, Collection<String> keys,
+                                                    int maxParallel) {
+        List<String> all = new ArrayList<>(keys);
+        int laneCount = Math.min(maxParallel, all.size());
+        List<Task<List<DataSnapshot>>> lanes = new ArrayList<>(laneCount);
+        for (int lane = 0; lane < laneCount; lane++) {
+            List<DataSnapshot> found = new ArrayList<>();
+            Task<Void> chain = Tasks.forResult(null);
+            for (int i = lane; i < all.size(); i += laneCount) {
+                String key = all.get(i);
+                chain = chain.continueWithTask(previous -> once(parent.child(key)))
+                        .continueWith(read -> {
+                            if (read.isSuccessful() && read.getResult().exists()) {
+                                found.add(read.getResult());
+                            }
+                            return null;
+                        });
+            }
+            lanes.add(chain.continueWith(done -> found));
+        }
+
+        return Tasks.whenAllSuccess(lanes).continueWith(DatabaseExecutors.DECODE, done -> {
+            Map<String, DataSnapshot> results = new HashMap<>();
+            for (Object lane : done.getResult()) {
+                for (Object snapshot : (List<?>) lane) {
+                    results.put(((DataSnapshot) snapshot).getKey(), (DataSnapshot) snapshot);
+                }
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Message for a failed task, for the String-based error callbacks.
+     */
+    static String errorMessage(Task<?> task) {
+        Exception e = task.getException();
+        return e != null && e.getMessage() != null ? e.getMessage() : "Request failed";
+    }
+}
@@ -2,24 +2,45 @@ package com.example.syncnote.firebase;
 
 import androidx.annotation.NonNull;
 
+import com.example.syncnote.crdt.RgaDocument;
+import com.example.syncnote.crdt.RgaOp;
 import com.example.syncnote.models.ActivityLogModel;
 import com.example.syncnote.models.CategoryModel;
 import com.example.syncnote.models.NoteModel;
 import com.example.syncnote.models.SharedNoteModel;
 import com.example.syncnote.models.UserModel;
+import com.example.syncnote.models.UserProfileModel;
+import com.example.syncnote.utils.ContentChunker;
+import com.example.syncnote.utils.MainThreadClock;
 import com.example.syncnote.utils.PasswordUtils;
+import com.example.syncnote.utils.SessionManager;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.MutableData;
 import com.google.firebase.database.Query;
+import com.google.firebase.database.ServerValue;
+import com.google.firebase.database.Transaction;
 import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class FirebaseManager {
     private static FirebaseManager instance;
@@ -27,13 +48,51 @@ public class FirebaseManager {
     private static boolean offlineEnabled = false;
 
     private static final String USERS_REF = "users";
-    private static final String NOTES_REF = "notes";
-    private static final String SHARED_NOTES_REF = "shared_notes";
+    private static final String USER_PROFILES_REF = "user_profiles";  // public projection of users
+    private static final String NOTES_REF = "notes";  // legacy flat layout, still written during migration
+    private static final String USER_NOTES_REF = "user_notes";  // user_notes/{userId}/{noteId}, the owner's partition
+    private static final String NOTE_PARTITIONS_REF = "note_partitions";  // note_partitions/{userId} -> migratedAt
+    private static final String NOTE_BODY_REF = "note_body";  // note_body/{noteId}, read when a note is opened
+    private static final String SHARED_NOTES_REF = "shared_notes";  // shared_notes/{noteId}_{userId}
+    private static final String NOTE_SHARES_REF = "note_shares";  // note_shares/{noteId}/{userId} -> shareId
     private static final String USERNAMES_REF = "usernames";
     private static final String EMAILS_REF = "emails";
     private static final String CATEGORIES_REF = "categories";
-    private static final String ACTIVITY_LOGS_REF = "activity_logs";
+    private static final String ACTIVITY_LOGS_REF = "activity_logs";  // activity_logs/{noteId}/{logId}
     private static final String SHARE_LINKS_REF = "share_links";
+    private static final String NOTE_CHUNKS_REF = "note_chunks";  // note_chunks/{noteId}/{chunkId} -> text
+    private static final String NOTE_CRDT_REF = "note_crdt";  // note_crdt/{noteId}/{ops,snapshot}
+    private static final String DATA_MIGRATIONS_REF = "data_migrations";  // data_migrations/{name} -> completedAt
+
+    // Kept in note_body rather than in the partition, so list reads carry only metadata
+    private static final List<String> BODY_FIELDS = Collections.unmodifiableList(Arrays.asList(
+            "content", "htmlContent", "contentChunks", "htmlContentChunks"));
+
+    // Upper bound on concurrent single-child reads issued by batch lookups
+    private static final int MAX_PARALLEL_READS = 8;
+
+    // Rough size of one multi-path write in a migration, well under the client's limit
+    private static final int MIGRATION_BATCH_CHARS = 1024 * 1024;
+
+    private static final String USER_PROFILES_MIGRATION = "user_profiles";
+    private static final String ACTIVITY_LOGS_MIGRATION = "activity_logs";
+    private static final String NOTE_SHARE_INDEX_MIGRATION = "note_share_index";
+    private static final String SHARE_KEYS_MIGRATION = "share_keys";
+
+    // Offline, note writes wait this long to coalesce before the client caches them
+    private static final long OFFLINE_WRITE_HOLD_MS = 3000;
+
+    private static final long PROFILE_CACHE_TTL_MS = 10 * 60 * 1000L;
+    private static final int PROFILE_CACHE_MAX_ENTRIES = 200;
+
+    private final ProfileCache profileCache;
+    private final WriteQueue writeQueue;
+    // Kept synced for the signed-in user; see setSyncedUser
+    private final List<Query> syncedQueries = new ArrayList<>(4);
+    private String syncedUserId;
+    // Whether every share is keyed by shareKey; see shareKeysMigrated()
+    private Task<Boolean> shareKeysMigrated;
+    private boolean sessionAttached;
 
     private FirebaseManager() {
         FirebaseDatabase firebaseDatabase = FirebaseDatabase.getInstance();
@@ -45,10 +104,21 @@ public class FirebaseManager {
         }
         
         database = firebaseDatabase.getReference();
-        
-        // Keep important data synced
-        database.child(NOTES_REF).keepSynced(true);
-        database.child(CATEGORIES_REF).keepSynced(true);
+        profileCache = new ProfileCache(new MainThreadClock(), this::watchProfile,
+                PROFILE_CACHE_TTL_MS, PROFILE_CACHE_MAX_ENTRIES);
+        writeQueue = new WriteQueue(new MainThreadClock(), (updates, result) ->
+                database.updateChildren(updates).addOnCompleteListener(task -> result.onResult(task.isSuccessful())),
+                OFFLINE_WRITE_HOLD_MS);
+        firebaseDatabase.getReference(".info/connected").addValueEventListener(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                writeQueue.setConnected(Boolean.TRUE.equals(snapshot.getValue(Boolean.class)));
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+            }
+        });
     }
 
     public static synchronized FirebaseManager getInstance() {
@@ -58,6 +128,69 @@ public class FirebaseManager {
         return instance;
     }
 
+    /**
+     * Keeps queued note writes in {@code store} so they survive a restart. Call before
+     * the first write; later calls are ignored.
+     */
+    public void attachWriteStore(WriteQueue.Store store) {
+        writeQueue.attachStore(store);
+    }
+
+    /**
+     * Keeps the signed-in user's data synced, following logins and logouts on
+     * {@code sessionManager}. Later calls are ignored.
+     */
+    public void attachSession(SessionManager sessionManager) {
+        if (sessionAttached) return;
+        sessionAttached = true;
+        sessionManager.addSessionListener(this::setSyncedUser);
+    }
+
+    /**
+     * Mirrors only this user's notes, shares and categories on the device, so startup
+     * transfer and cache size follow one user's data rather than every user's. Pass
+     * null to stop after logout.
+     */
+    void setSyncedUser(String userId) {
+        if (userId == null ? syncedUserId == null : userId.equals(syncedUserId)) return;
+        if (syncedUserId != null) {
+            // Writes still held for the previous user must not go out under the next one
+            writeQueue.discard("/");
+        }
+        for (Query query : syncedQueries) {
+            query.keepSynced(false);
+        }
+        syncedQueries.clear();
+        syncedUserId = userId;
+        if (userId == null) return;
+
+        syncedQueries.add(database.child(USER_NOTES_REF).child(userId));
+        syncedQueries.add(database.child(NOTE_PARTITIONS_REF).child(userId));
+        syncedQueries.add(database.child(SHARED_NOTES_REF).orderByChild("sharedWithUserId").equalTo(userId));
+        syncedQueries.add(database.child(CATEGORIES_REF).orderByChild("userId").equalTo(userId));
+        for (Query query : syncedQueries) {
+            query.keepSynced(true);
+        }
+    }
+
+    public WriteQueue.Stats getWriteQueueStats() {
+        return writeQueue.getStats();
+    }
+
+    // For callers that only care about the server's answer
+    private static WriteQueue.WriteCallback whenSynced(BooleanCallback callback) {
+        return new WriteQueue.WriteCallback() {
+            @Override
+            public void onSavedLocally() {
+            }
+
+            @Override
+            public void onSynced(boolean success) {
+                callback.onResult(success);
+            }
+        };
+    }
+
     // ===================== USER OPERATIONS =====================
 
     public interface AuthCallback {
@@ -112,24 +245,29 @@ public class FirebaseManager {
                     return;
                 }
 
-                UserModel user = new UserModel();
-                user.setId(userId);
-                user.setUsername(username.trim().toLowerCase());
-                user.setEmail(email.trim().toLowerCase());
-                user.setPasswordHash(PasswordUtils.hashPassword(password));
-                user.setSecurityQuestion(securityQuestion);
-                user.setSecurityAnswerHash(PasswordUtils.hashPassword(securityAnswer.toLowerCase().trim()));
-                user.setCreatedAt(System.currentTimeMillis());
-
-                // Create atomic update
-                Map<String, Object> updates = new HashMap<>();
-                updates.put("/" + USERS_REF + "/" + userId, user.toMap());
-                updates.put("/" + USERNAMES_REF + "/" + username.trim().toLowerCase(), userId);
-                updates.put("/" + EMAILS_REF + "/" + email.trim().toLowerCase().replace(".", ","), userId);
-
-                database.updateChildren(updates)
-                        .addOnSuccessListener(aVoid -> callback.onSuccess(userId))
-                        .addOnFailureListener(e -> callback.onError(e.getMessage()));
+                PasswordUtils.hashPasswordAsync(password, passwordHash ->
+                        PasswordUtils.hashPasswordAsync(securityAnswer.toLowerCase().trim(), answerHash -> {
+                            UserModel user = new UserModel();
+                            user.setId(userId);
+                            user.setUsername(username.trim().toLowerCase());
+                            user.setEmail(email.trim().toLowerCase());
+                            user.setPasswordHash(passwordHash);
+                            user.setSecurityQuestion(securityQuestion);
+                            user.setSecurityAnswerHash(answerHash);
+                            user.setCreatedAt(System.currentTimeMillis());
+
+                            // Create atomic update
+                            Map<String, Object> updates = new HashMap<>();
+                            updates.put("/" + USERS_REF + "/" + userId, user.toMap());
+                            updates.put("/" + USER_PROFILES_REF + "/" + userId,
+                                    UserProfileModel.of(userId, user.getUsername()).toMap());
+                            updates.put("/" + USERNAMES_REF + "/" + username.trim().toLowerCase(), userId);
+                            updates.put("/" + EMAILS_REF + "/" + email.trim().toLowerCase().replace(".", ","), userId);
+
+                            database.updateChildren(updates)
+                                    .addOnSuccessListener(aVoid -> callback.onSuccess(userId))
+                                    .addOnFailureListener(e -> callback.onError(e.getMessage()));
+                        }));
             });
         });
     }
@@ -157,22 +295,31 @@ public class FirebaseManager {
                                 .addListenerForSingleValueEvent(new ValueEventListener() {
                                     @Override
                                     public void onDataChange(@NonNull DataSnapshot userSnapshot) {
-                                        UserModel user = userSnapshot.getValue(UserModel.class);
+                                        UserModel user = decodeUser(userSnapshot);
                                         if (user == null) {
                                             callback.onError("User not found");
                                             return;
                                         }
 
-                                        // Verify password
-                                        if (PasswordUtils.verifyPassword(password, user.getPasswordHash())) {
-                                            // Update last login
-                                            user.setLastLogin(System.currentTimeMillis());
-                                            database.child(USERS_REF).child(userId).child("lastLogin")
-                                                    .setValue(user.getLastLogin());
-                                            callback.onSuccess(user);
-                                        } else {
-                                            callback.onError("Invalid username or password");
-                                        }
+                                        // Verify password off the callback thread
+                                        PasswordUtils.verifyPasswordAsync(password, user.getPasswordHash(),
+                                                (matches, upgradedHash) -> {
+                                                    if (!matches) {
+                                                        callback.onError("Invalid username or password");
+                                                        return;
+                                                    }
+
+                                                    // Update last login, moving legacy hashes to the current format
+                                                    user.setLastLogin(System.currentTimeMillis());
+                                                    Map<String, Object> updates = new HashMap<>();
+                                                    updates.put("lastLogin", user.getLastLogin());
+                                                    if (upgradedHash != null) {
+                                                        user.setPasswordHash(upgradedHash);
+                                                        updates.put("passwordHash", upgradedHash);
+                                                    }
+                                                    database.child(USERS_REF).child(userId).updateChildren(updates);
+                                                    callback.onSuccess(user);
+                                                });
                                     }
 
                                     @Override
@@ -248,7 +395,7 @@ public class FirebaseManager {
                 .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        UserModel user = snapshot.getValue(UserModel.class);
+                        UserModel user = decodeUser(snapshot);
                         if (user != null) {
                             callback.onSuccess(user);
                         } else {
@@ -263,16 +410,118 @@ public class FirebaseManager {
                 });
     }
 
+    /**
+     * Id and username of the user with this username, for display and sharing.
+     * Served from {@link ProfileCache}; a repeat lookup costs no reads, and a new
+     * one reads only the usernames index. Use {@link #getUserByUsername} when the
+     * full record is needed.
+     */
+    public void getProfileByUsername(String username, UserCallback callback) {
+        String normalizedUsername = username.trim().toLowerCase();
+        String cachedUserId = profileCache.peekUserId(normalizedUsername);
+        if (cachedUserId != null) {
+            callback.onSuccess(profile(cachedUserId, normalizedUsername));
+            return;
+        }
+
+        database.child(USERNAMES_REF).child(normalizedUsername)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        String userId = snapshot.getValue(String.class);
+                        if (userId == null) {
+                            callback.onError("User not found");
+                            return;
+                        }
+                        profileCache.getProfile(userId, profile -> {
+                            if (profile != null && profile.getUsername() != null) {
+                                callback.onSuccess(profile(userId, profile.getUsername()));
+                            } else {
+                                callback.onError("User not found");
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError error) {
+                        callback.onError(error.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Public profile (username, colour, initials) of a user, from {@link ProfileCache}.
+     */
+    public void getUserProfile(String userId, ProfileCache.ProfileCallback callback) {
+        profileCache.getProfile(userId, callback);
+    }
+
+    public ProfileCache.Stats getProfileCacheStats() {
+        return profileCache.getStats();
+    }
+
+    private Task<Map<String, UserProfileModel>> loadProfiles(Collection<String> userIds) {
+        TaskCompletionSource<Map<String, UserProfileModel>> source = new TaskCompletionSource<>();
+        profileCache.getProfiles(userIds, source::setResult);
+        return source.getTask();
+    }
+
+    /**
+     * One-off migration that writes user_profiles/{id} for users registered before
+     * the projection existed. Safe to run more than once.
+     */
+    private Task<Void> backfillUserProfiles() {
+        return DatabaseTasks.once(database.child(USERS_REF)).onSuccessTask(DatabaseExecutors.DECODE, snapshot -> {
+            List<Map<String, Object>> profiles = new ArrayList<>();
+            for (DataSnapshot userSnapshot : snapshot.getChildren()) {
+                String username = userSnapshot.child("username").getValue(String.class);
+                if (username != null) {
+                    profiles.add(Collections.singletonMap("/" + USER_PROFILES_REF + "/" + userSnapshot.getKey(),
+                            UserProfileModel.of(userSnapshot.getKey(), username).toMap()));
+                }
+            }
+            return writeInBatches(profiles);
+        });
+    }
+
+    private static UserModel profile(String userId, String username) {
+        UserModel user = new UserModel();
+        user.setId(userId);
+        user.setUsername(username);
+        return user;
+    }
+
+    private ProfileCache.Watch watchProfile(String userId, ProfileCache.Watcher watcher) {
+        DatabaseReference ref = database.child(USER_PROFILES_REF).child(userId);
+        ValueEventListener listener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                watcher.onProfile(decodeUserProfile(snapshot));
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                watcher.onError();
+            }
+        };
+        DatabaseTasks.countRead();
+        ref.addValueEventListener(listener);
+        return () -> ref.removeEventListener(listener);
+    }
+
     public void verifySecurityAnswer(String username, String answer, BooleanCallback callback) {
         getUserByUsername(username, new UserCallback() {
             @Override
             public void onSuccess(UserModel user) {
                 if (user.getSecurityAnswerHash() != null) {
-                    boolean matches = PasswordUtils.verifyPassword(
-                            answer.toLowerCase().trim(),
-                            user.getSecurityAnswerHash()
-                    );
-                    callback.onResult(matches);
+                    PasswordUtils.verifyPasswordAsync(answer.toLowerCase().trim(), user.getSecurityAnswerHash(),
+                            (matches, upgradedHash) -> {
+                                if (upgradedHash != null) {
+                                    database.child(USERS_REF).child(user.getId()).child("securityAnswerHash")
+                                            .setValue(upgradedHash);
+                                }
+                                callback.onResult(matches);
+                            });
                 } else {
                     callback.onResult(false);
                 }
@@ -297,12 +546,11 @@ public class FirebaseManager {
                         }
 
                         String userId = snapshot.getValue(String.class);
-                        String newHash = PasswordUtils.hashPassword(newPassword);
-
-                        database.child(USERS_REF).child(userId).child("passwordHash")
-                                .setValue(newHash)
-                                .addOnSuccessListener(aVoid -> callback.onResult(true))
-                                .addOnFailureListener(e -> callback.onResult(false));
+                        PasswordUtils.hashPasswordAsync(newPassword, newHash ->
+                                database.child(USERS_REF).child(userId).child("passwordHash")
+                                        .setValue(newHash)
+                                        .addOnSuccessListener(aVoid -> callback.onResult(true))
+                                        .addOnFailureListener(e -> callback.onResult(false)));
                     }
 
                     @Override
@@ -329,366 +577,1106 @@ public class FirebaseManager {
         void onError(String error);
     }
 
-    public void saveNote(NoteModel note, SaveNoteCallback callback) {
-        String noteId;
-        if (note.getId() == null || note.getId().isEmpty()) {
-            noteId = database.child(NOTES_REF).push().getKey();
-            if (noteId == null) {
-                callback.onError("Failed to create note");
-                return;
-            }
-            note.setId(noteId);
-        } else {
-            noteId = note.getId();
+    public interface NotesPageCallback {
+        /**
+         * @param notes      newest first
+         * @param nextCursor pass to the next call for older notes; null when there are none
+         */
+        void onSuccess(List<NoteModel> notes, String nextCursor);
+        void onError(String error);
+    }
+
+    /**
+     * One page of a cursor-paged list, newest first.
+     */
+    public static final class Page<T> {
+        public final List<T> items;
+        // Pass back for the next older page; null when there are none
+        public final String nextCursor;
+
+        Page(List<T> items, String nextCursor) {
+            this.items = items;
+            this.nextCursor = nextCursor;
         }
+    }
 
-        note.setUpdatedAt(System.currentTimeMillis());
+    // Composite list key "{userId}_{updatedAt}" on every note. Within a partition it
+    // orders notes by recency and doubles as the paging cursor.
+    // Needs ".indexOn": ["userUpdatedAt"] on user_notes/$userId.
+    private static final String NOTE_LIST_KEY = "userUpdatedAt";
+
+    /**
+     * The note's list key. The timestamp is zero-padded so keys sort numerically.
+     */
+    public static String noteListKey(String userId, long updatedAt) {
+        String time = Long.toString(updatedAt);
+        StringBuilder key = new StringBuilder(userId.length() + 14).append(userId).append('_');
+        for (int i = time.length(); i < 13; i++) {
+            key.append('0');
+        }
+        return key.append(time).toString();
+    }
 
-        database.child(NOTES_REF).child(noteId).setValue(note.toMap())
-                .addOnSuccessListener(aVoid -> callback.onSuccess(noteId))
-                .addOnFailureListener(e -> callback.onError(e.getMessage()));
+    // Reads only this user's partition, so its cost does not grow with other users' notes
+    private Query notesByRecency(String userId, String endAt) {
+        Query query = database.child(USER_NOTES_REF).child(userId).orderByChild(NOTE_LIST_KEY);
+        return endAt != null ? query.endAt(endAt) : query;
     }
 
-    public void getNotesForUser(String userId, NotesCallback callback) {
-        database.child(NOTES_REF).orderByChild("userId").equalTo(userId)
+    /**
+     * One page of a user's notes, newest first. Pass null for the newest page, then
+     * the returned cursor; the cost of each page does not depend on how many notes
+     * the user has.
+     */
+    public void getNotesPage(String userId, String beforeCursor, int pageSize, NotesPageCallback callback) {
+        loadNotesPage(userId, beforeCursor, pageSize).addOnCompleteListener(task -> {
+            if (task.isSuccessful()) {
+                callback.onSuccess(task.getResult().items, task.getResult().nextCursor);
+            } else {
+                callback.onError(DatabaseTasks.errorMessage(task));
+            }
+        });
+    }
+
+    /**
+     * {@link #getNotesPage} as a task; the page is decoded off the main thread.
+     */
+    public Task<Page<NoteModel>> loadNotesPage(String userId, String beforeCursor, int pageSize) {
+        // endAt is inclusive, so ask for one extra and drop the cursor note itself
+        Query query = notesByRecency(userId, beforeCursor)
+                .limitToLast(beforeCursor != null ? pageSize + 1 : pageSize);
+        return DatabaseTasks.once(query).continueWith(DatabaseExecutors.DECODE, read -> {
+            List<NoteModel> notes = new ArrayList<>(pageSize);
+            String oldestKey = null;
+            for (DataSnapshot noteSnapshot : read.getResult().getChildren()) {
+                String listKey = noteSnapshot.child(NOTE_LIST_KEY).getValue(String.class);
+                if (listKey == null || listKey.equals(beforeCursor)) continue;
+                NoteModel note = decodeNote(noteSnapshot);
+                if (note != null) {
+                    if (oldestKey == null) oldestKey = listKey;
+                    notes.add(note);
+                }
+            }
+            // Children arrive oldest first
+            Collections.reverse(notes);
+            return new Page<>(notes, notes.size() >= pageSize ? oldestKey : null);
+        });
+    }
+
+    public void noteExists(String ownerId, String noteId, BooleanCallback callback) {
+        database.child(USER_NOTES_REF).child(ownerId).child(noteId).child("userId")
                 .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        List<NoteModel> notes = new ArrayList<>();
-                        for (DataSnapshot noteSnapshot : snapshot.getChildren()) {
-                            NoteModel note = noteSnapshot.getValue(NoteModel.class);
-                            if (note != null) {
-                                // IMPORTANT: Set the ID from the snapshot key
-                                note.setId(noteSnapshot.getKey());
-                                notes.add(note);
-                            }
-                        }
-                        // Sort by updatedAt descending
-                        notes.sort((n1, n2) -> Long.compare(n2.getUpdatedAt(), n1.getUpdatedAt()));
-                        callback.onSuccess(notes);
+                        callback.onResult(snapshot.exists());
                     }
 
                     @Override
                     public void onCancelled(@NonNull DatabaseError error) {
-                        callback.onError(error.getMessage());
+                        // Assume it exists; dropping a live note is worse than keeping a stale one
+                        callback.onResult(true);
                     }
                 });
     }
 
-    public void getNoteById(String noteId, NoteCallback callback) {
-        database.child(NOTES_REF).child(noteId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        NoteModel note = snapshot.getValue(NoteModel.class);
-                        if (note != null) {
-                            // IMPORTANT: Set the ID from the snapshot key
-                            note.setId(snapshot.getKey());
-                            callback.onSuccess(note);
-                        } else {
-                            callback.onError("Note not found");
-                        }
+    /**
+     * One-off migration that writes the list key on notes saved before it existed.
+     * Safe to run more than once; notes also gain the key on their next save.
+     */
+    public void backfillNoteListKeys(BooleanCallback callback) {
+        database.child(NOTES_REF).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                Map<String, Object> updates = new HashMap<>();
+                for (DataSnapshot noteSnapshot : snapshot.getChildren()) {
+                    if (noteSnapshot.hasChild(NOTE_LIST_KEY)) continue;
+                    String userId = noteSnapshot.child("userId").getValue(String.class);
+                    Long updatedAt = noteSnapshot.child("updatedAt").getValue(Long.class);
+                    if (userId != null && updatedAt != null) {
+                        updates.put("/" + NOTES_REF + "/" + noteSnapshot.getKey() + "/" + NOTE_LIST_KEY,
+                                noteListKey(userId, updatedAt));
                     }
+                }
 
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
-                        callback.onError(error.getMessage());
-                    }
-                });
+                if (updates.isEmpty()) {
+                    callback.onResult(true);
+                    return;
+                }
+
+                database.updateChildren(updates)
+                        .addOnSuccessListener(aVoid -> callback.onResult(true))
+                        .addOnFailureListener(e -> callback.onResult(false));
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                callback.onResult(false);
+            }
+        });
     }
 
-    public void updateNote(NoteModel note, String updatedByUserId, String updatedByUsername, BooleanCallback callback) {
+    /**
+     * Copies the user's notes from the flat notes node into their partition, with the
+     * bodies split out to note_body, then marks the user as migrated. Notes already in
+     * the partition are newer, from the dual writes, and are kept. Notes are written
+     * a bounded batch at a time and the marker last, so a run that stops part way
+     * leaves the user unmarked and the next run copies only what is missing. Resolves
+     * to the number of notes copied; a user already marked is not read again.
+     */
+    public Task<Integer> migrateNotesToPartition(String userId) {
+        DatabaseReference marker = database.child(NOTE_PARTITIONS_REF).child(userId);
+        return DatabaseTasks.once(marker).onSuccessTask(markerSnapshot -> {
+            if (markerSnapshot.exists()) {
+                return Tasks.forResult(0);
+            }
+            Task<DataSnapshot> legacy = DatabaseTasks.once(
+                    database.child(NOTES_REF).orderByChild("userId").equalTo(userId));
+            Task<DataSnapshot> partition = DatabaseTasks.once(database.child(USER_NOTES_REF).child(userId));
+            return Tasks.whenAllSuccess(legacy, partition).onSuccessTask(DatabaseExecutors.DECODE, both -> {
+                List<Map<String, Object>> copies = new ArrayList<>();
+                for (DataSnapshot noteSnapshot : legacy.getResult().getChildren()) {
+                    if (partition.getResult().hasChild(noteSnapshot.getKey())) continue;
+                    Map<String, Object> copy = new HashMap<>();
+                    putPartitionCopy(copy, userId, noteSnapshot);
+                    if (!copy.isEmpty()) copies.add(copy);
+                }
+                int copied = copies.size();
+                return writeInBatches(copies)
+                        .onSuccessTask(done -> marker.setValue(ServerValue.TIMESTAMP))
+                        .onSuccessTask(done -> Tasks.forResult(copied));
+            });
+        });
+    }
+
+    /**
+     * Adds the partition entry and note_body node for a note stored whole under
+     * notes/{id}. Does nothing for a node that is not a note.
+     */
+    private static void putPartitionCopy(Map<String, Object> updates, String ownerId, DataSnapshot noteSnapshot) {
+        Object stored = noteSnapshot.getValue();
+        if (!(stored instanceof Map)) return;
+        String noteId = noteSnapshot.getKey();
+        Map<String, Object> copy = new HashMap<>();
+        for (Map.Entry<?, ?> field : ((Map<?, ?>) stored).entrySet()) {
+            copy.put(String.valueOf(field.getKey()), field.getValue());
+        }
+        updates.put("/" + NOTE_BODY_REF + "/" + noteId, splitBody(copy));
+        // Notes from before the list key, or last saved by a client that does not keep
+        // it, need it to be paged from the partition
+        Long updatedAt = noteSnapshot.child("updatedAt").getValue(Long.class);
+        if (updatedAt != null) {
+            copy.put(NOTE_LIST_KEY, noteListKey(ownerId, updatedAt));
+        }
+        updates.put("/" + USER_NOTES_REF + "/" + ownerId + "/" + noteId, copy);
+    }
+
+    /**
+     * Runs {@code onReady} on the main thread once the user's notes are in their
+     * partition; until then, partition reads would miss notes. Immediate when the
+     * marker is cached, which it is after the first run since it is kept synced.
+     */
+    public SyncRegistration whenNotesPartitioned(String userId, Runnable onReady) {
+        DatabaseReference marker = database.child(NOTE_PARTITIONS_REF).child(userId);
+        AtomicBoolean removed = new AtomicBoolean();
+        ValueEventListener markerListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                if (!snapshot.exists() || removed.getAndSet(true)) return;
+                marker.removeEventListener(this);
+                onReady.run();
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+            }
+        };
+        marker.addValueEventListener(markerListener);
+        return () -> {
+            removed.set(true);
+            marker.removeEventListener(markerListener);
+        };
+    }
+
+    public void saveNote(NoteModel note, SaveNoteCallback callback) {
+        String noteId = saveNote(note, new WriteQueue.WriteCallback() {
+            @Override
+            public void onSavedLocally() {
+            }
+
+            @Override
+            public void onSynced(boolean success) {
+                if (success) {
+                    callback.onSuccess(note.getId());
+                } else {
+                    callback.onError("Failed to save note");
+                }
+            }
+        });
+        if (noteId == null) {
+            callback.onError("Failed to create note");
+        }
+    }
+
+    /**
+     * Queues a full write of the note, assigning it an id first if it is new.
+     * Returns the id, or null if none could be created.
+     */
+    public String saveNote(NoteModel note, WriteQueue.WriteCallback callback) {
+        String noteId;
+        if (note.getId() == null || note.getId().isEmpty()) {
+            noteId = database.child(NOTES_REF).push().getKey();
+            if (noteId == null) {
+                return null;
+            }
+            note.setId(noteId);
+        } else {
+            noteId = note.getId();
+        }
+
         note.setUpdatedAt(System.currentTimeMillis());
-        note.setLastUpdatedBy(updatedByUserId);
-        note.setLastUpdatedByUsername(updatedByUsername);
 
-        database.child(NOTES_REF).child(note.getId()).setValue(note.toMap())
-                .addOnSuccessListener(aVoid -> callback.onResult(true))
-                .addOnFailureListener(e -> callback.onResult(false));
+        writeQueue.enqueue(noteId, buildFullNoteWrite(noteId, note), callback);
+        return noteId;
     }
 
-    public void deleteNote(String noteId, BooleanCallback callback) {
-        // Delete the note and all its shares
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("/" + NOTES_REF + "/" + noteId, null);
+    public void getNotesForUser(String userId, NotesCallback callback) {
+        loadNotesForUser(userId).addOnCompleteListener(task -> {
+            if (task.isSuccessful()) {
+                callback.onSuccess(task.getResult());
+            } else {
+                callback.onError(DatabaseTasks.errorMessage(task));
+            }
+        });
+    }
 
-        // Delete shared notes entries
-        database.child(SHARED_NOTES_REF).orderByChild("noteId").equalTo(noteId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        for (DataSnapshot shareSnapshot : snapshot.getChildren()) {
-                            updates.put("/" + SHARED_NOTES_REF + "/" + shareSnapshot.getKey(), null);
-                        }
+    /**
+     * All of a user's notes, newest first, decoded and sorted off the main thread.
+     */
+    public Task<List<NoteModel>> loadNotesForUser(String userId) {
+        // The whole partition is this user's notes; no query across other users
+        Task<DataSnapshot> partition = DatabaseTasks.once(database.child(USER_NOTES_REF).child(userId));
+        return partition.continueWith(DatabaseExecutors.DECODE, read -> {
+            List<NoteModel> notes = new ArrayList<>();
+            for (DataSnapshot noteSnapshot : read.getResult().getChildren()) {
+                NoteModel note = decodeNote(noteSnapshot);
+                if (note != null) {
+                    // IMPORTANT: Set the ID from the snapshot key
+                    note.setId(noteSnapshot.getKey());
+                    notes.add(note);
+                }
+            }
+            // Sort by updatedAt descending
+            notes.sort((n1, n2) -> Long.compare(n2.getUpdatedAt(), n1.getUpdatedAt()));
+            return notes;
+        });
+    }
 
-                        database.updateChildren(updates)
-                                .addOnSuccessListener(aVoid -> callback.onResult(true))
-                                .addOnFailureListener(e -> callback.onResult(false));
-                    }
+    public void getNoteById(String noteId, NoteCallback callback) {
+        getNoteById(noteId, null, callback);
+    }
 
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
-                        callback.onResult(false);
-                    }
-                });
+    /**
+     * Reads the note from its owner's partition, then its body. Pass null for
+     * {@code ownerId} when it is not known, e.g. for a share link; the legacy node is
+     * read instead.
+     */
+    public void getNoteById(String noteId, String ownerId, NoteCallback callback) {
+        deliverNote(loadNoteMeta(noteId, ownerId).onSuccessTask(this::loadNoteBody), callback);
     }
 
-    // ===================== SHARING OPERATIONS =====================
+    /**
+     * The note's metadata, enough to show it in a list or title bar: the body fields
+     * are null unless the note was stored before bodies were split out. Follow with
+     * {@link #getNoteBody}.
+     */
+    public void getNoteMeta(String noteId, String ownerId, NoteCallback callback) {
+        deliverNote(loadNoteMeta(noteId, ownerId), callback);
+    }
 
-    public interface SharedNotesCallback {
-        void onSuccess(List<SharedNoteModel> sharedNotes);
-        void onError(String error);
+    /** Fills in the body of a note read with {@link #getNoteMeta}. */
+    public void getNoteBody(NoteModel note, NoteCallback callback) {
+        deliverNote(loadNoteBody(note), callback);
     }
 
-    public void shareNote(String noteId, String ownerId, String sharedWithUserId, 
-                         String permission, BooleanCallback callback) {
-        // Check if already shared
-        database.child(SHARED_NOTES_REF).orderByChild("noteId").equalTo(noteId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        String existingShareId = null;
-                        for (DataSnapshot shareSnapshot : snapshot.getChildren()) {
-                            SharedNoteModel existing = shareSnapshot.getValue(SharedNoteModel.class);
-                            if (existing != null && sharedWithUserId.equals(existing.getSharedWithUserId())) {
-                                existingShareId = shareSnapshot.getKey();
-                                break;
-                            }
-                        }
+    public Task<NoteModel> loadNoteMeta(String noteId, String ownerId) {
+        return readNote(noteId, ownerId).onSuccessTask(DatabaseExecutors.DECODE, snapshot -> {
+            NoteModel note = decodeNote(snapshot);
+            if (note == null) {
+                throw new IllegalStateException("Note not found");
+            }
+            // IMPORTANT: Set the ID from the snapshot key
+            note.setId(snapshot.getKey());
+            return Tasks.forResult(note);
+        });
+    }
 
-                        String shareId = existingShareId != null ? existingShareId : 
-                                database.child(SHARED_NOTES_REF).push().getKey();
-                        
-                        if (shareId == null) {
-                            callback.onResult(false);
-                            return;
+    /**
+     * Reads note_body for {@code note} and joins any chunks. A note with no body node
+     * keeps the body it was read with, as notes written before the split carry it inline.
+     *
+     * <p>Clients from before the partition edit only the legacy node. When it is newer
+     * than {@code note}, the legacy note is returned instead and copied forward into
+     * the partition and note_body.
+     */
+    public Task<NoteModel> loadNoteBody(NoteModel note) {
+        DatabaseReference legacy = database.child(NOTES_REF).child(note.getId());
+        return DatabaseTasks.once(legacy.child("updatedAt"))
+                .continueWithTask(legacyStamp -> {
+                    Long legacyUpdatedAt = legacyStamp.isSuccessful()
+                            ? legacyStamp.getResult().getValue(Long.class) : null;
+                    if (legacyUpdatedAt != null && legacyUpdatedAt > note.getUpdatedAt()) {
+                        return loadNewerLegacyNote(note);
+                    }
+                    return DatabaseTasks.once(database.child(NOTE_BODY_REF).child(note.getId()))
+                            .onSuccessTask(body -> {
+                                if (body.exists()) {
+                                    long updatedAt = note.getUpdatedAt();
+                                    note.setContent(body.child("content").getValue(String.class));
+                                    note.setHtmlContent(body.child("htmlContent").getValue(String.class));
+                                    note.setContentChunks(stringList(body.child("contentChunks")));
+                                    note.setHtmlContentChunks(stringList(body.child("htmlContentChunks")));
+                                    // setContent bumps updatedAt; keep the stored value
+                                    note.setUpdatedAt(updatedAt);
+                                }
+                                return Tasks.forResult(note);
+                            });
+                })
+                .onSuccessTask(loaded -> {
+                    if (!loaded.hasChunkedBody()) {
+                        return Tasks.forResult(loaded);
+                    }
+                    TaskCompletionSource<NoteModel> joined = new TaskCompletionSource<>();
+                    loadChunkedBody(loaded, new NoteCallback() {
+                        @Override
+                        public void onSuccess(NoteModel loaded) {
+                            joined.setResult(loaded);
                         }
 
-                        SharedNoteModel sharedNote = new SharedNoteModel();
-                        sharedNote.setId(shareId);
-                        sharedNote.setNoteId(noteId);
-                        sharedNote.setOwnerId(ownerId);
-                        sharedNote.setSharedWithUserId(sharedWithUserId);
-                        sharedNote.setPermission(permission);
-                        sharedNote.setSharedAt(System.currentTimeMillis());
+                        @Override
+                        public void onError(String error) {
+                            joined.setException(new IllegalStateException(error));
+                        }
+                    });
+                    return joined.getTask();
+                });
+    }
 
-                        database.child(SHARED_NOTES_REF).child(shareId).setValue(sharedNote.toMap())
-                                .addOnSuccessListener(aVoid -> callback.onResult(true))
-                                .addOnFailureListener(e -> callback.onResult(false));
+    private Task<NoteModel> loadNewerLegacyNote(NoteModel note) {
+        return DatabaseTasks.once(database.child(NOTES_REF).child(note.getId()))
+                .onSuccessTask(DatabaseExecutors.DECODE, snapshot -> {
+                    NoteModel legacyNote = decodeNote(snapshot);
+                    if (legacyNote == null) {
+                        return Tasks.forResult(note);
                     }
-
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
-                        callback.onResult(false);
+                    legacyNote.setId(snapshot.getKey());
+                    String ownerId = legacyNote.getUserId() != null ? legacyNote.getUserId() : note.getUserId();
+                    if (ownerId != null) {
+                        Map<String, Object> updates = new HashMap<>();
+                        putPartitionCopy(updates, ownerId, snapshot);
+                        database.updateChildren(updates);
                     }
+                    return Tasks.forResult(legacyNote);
                 });
     }
 
-    public void getSharedNotesForUser(String userId, SharedNotesCallback callback) {
-        database.child(SHARED_NOTES_REF).orderByChild("sharedWithUserId").equalTo(userId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        List<SharedNoteModel> sharedNotes = new ArrayList<>();
-                        int[] pending = {(int) snapshot.getChildrenCount()};
-                        
-                        if (pending[0] == 0) {
-                            callback.onSuccess(sharedNotes);
-                            return;
-                        }
+    private static List<String> stringList(DataSnapshot snapshot) {
+        if (!snapshot.exists()) return null;
+        List<String> values = new ArrayList<>();
+        for (DataSnapshot child : snapshot.getChildren()) {
+            String value = child.getValue(String.class);
+            if (value != null) values.add(value);
+        }
+        return values;
+    }
 
-                        for (DataSnapshot shareSnapshot : snapshot.getChildren()) {
-                            SharedNoteModel sharedNote = shareSnapshot.getValue(SharedNoteModel.class);
-                            if (sharedNote != null) {
-                                // Get note details
-                                getNoteById(sharedNote.getNoteId(), new NoteCallback() {
-                                    @Override
-                                    public void onSuccess(NoteModel note) {
-                                        sharedNote.setNoteTitle(note.getTitle());
-                                        sharedNote.setNoteContent(note.getContent());
-                                        
-                                        // Get owner username
-                                        getUserById(sharedNote.getOwnerId(), new UserCallback() {
-                                            @Override
-                                            public void onSuccess(UserModel user) {
-                                                sharedNote.setOwnerUsername(user.getUsername());
-                                                sharedNotes.add(sharedNote);
-                                                pending[0]--;
-                                                if (pending[0] == 0) {
-                                                    sharedNotes.sort((s1, s2) -> 
-                                                            Long.compare(s2.getSharedAt(), s1.getSharedAt()));
-                                                    callback.onSuccess(sharedNotes);
-                                                }
-                                            }
-
-                                            @Override
-                                            public void onError(String error) {
-                                                pending[0]--;
-                                                if (pending[0] == 0) {
-                                                    callback.onSuccess(sharedNotes);
-                                                }
-                                            }
-                                        });
-                                    }
+    private static void deliverNote(Task<NoteModel> task, NoteCallback callback) {
+        task.addOnCompleteListener(done -> {
+            if (done.isSuccessful()) {
+                callback.onSuccess(done.getResult());
+            } else {
+                callback.onError(DatabaseTasks.errorMessage(done));
+            }
+        });
+    }
 
-                                    @Override
-                                    public void onError(String error) {
-                                        pending[0]--;
-                                        if (pending[0] == 0) {
-                                            callback.onSuccess(sharedNotes);
-                                        }
-                                    }
-                                });
-                            } else {
-                                pending[0]--;
-                                if (pending[0] == 0) {
-                                    callback.onSuccess(sharedNotes);
-                                }
-                            }
-                        }
-                    }
+    // Falls back to the legacy node for owners whose notes have not been migrated yet
+    private Task<DataSnapshot> readNote(String noteId, String ownerId) {
+        DatabaseReference legacy = database.child(NOTES_REF).child(noteId);
+        if (ownerId == null) {
+            return DatabaseTasks.once(legacy);
+        }
+        return DatabaseTasks.once(database.child(USER_NOTES_REF).child(ownerId).child(noteId))
+                .continueWithTask(read -> read.isSuccessful() && read.getResult().exists()
+                        ? read : DatabaseTasks.once(legacy));
+    }
 
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
-                        callback.onError(error.getMessage());
-                    }
-                });
+    public void updateNote(NoteModel note, String updatedByUserId, String updatedByUsername, BooleanCallback callback) {
+        updateNote(note, null, updatedByUserId, updatedByUsername, callback);
     }
 
-    public void getSharedUsersForNote(String noteId, SharedNotesCallback callback) {
-        // Fetch all shared_notes and filter by noteId in code (avoids index requirement)
-        database.child(SHARED_NOTES_REF).addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                List<SharedNoteModel> matchingShares = new ArrayList<>();
-                
-                // First pass: find all shares for this noteId
-                for (DataSnapshot shareSnapshot : snapshot.getChildren()) {
-                    SharedNoteModel sharedNote = shareSnapshot.getValue(SharedNoteModel.class);
-                    if (sharedNote != null && noteId.equals(sharedNote.getNoteId())) {
-                        sharedNote.setId(shareSnapshot.getKey());
-                        matchingShares.add(sharedNote);
-                    }
+    /**
+     * Writes only the fields that differ from {@code lastSynced}, the note as it was
+     * last read from or written to the database. Large bodies are stored as chunks,
+     * so an edit uploads just the chunks it touched. Pass null for a full rewrite.
+     */
+    public void updateNote(NoteModel note, NoteModel lastSynced, String updatedByUserId,
+                           String updatedByUsername, BooleanCallback callback) {
+        updateNote(note, lastSynced, updatedByUserId, updatedByUsername, whenSynced(callback));
+    }
+
+    public void updateNote(NoteModel note, NoteModel lastSynced, String updatedByUserId,
+                           String updatedByUsername, WriteQueue.WriteCallback callback) {
+        note.setUpdatedAt(System.currentTimeMillis());
+        note.setLastUpdatedBy(updatedByUserId);
+        note.setLastUpdatedByUsername(updatedByUsername);
+
+        String noteId = note.getId();
+        Map<String, Object> updates;
+        if (lastSynced == null) {
+            updates = buildFullNoteWrite(noteId, note);
+        } else {
+            Map<String, String> chunks = new HashMap<>();
+            Map<String, String> baseChunks = new HashMap<>();
+            Map<String, Object> stored = toStoredNote(note, chunks);
+            Map<String, Object> base = toStoredNote(lastSynced, baseChunks);
+
+            updates = new HashMap<>();
+            List<String> notePaths = notePaths(noteId, note.getUserId());
+            boolean bodyChanged = false;
+            for (Map.Entry<String, Object> field : stored.entrySet()) {
+                String key = field.getKey();
+                if (Objects.equals(field.getValue(), base.get(key))) continue;
+                // The legacy node keeps whole notes, as clients from before the partition
+                // still read it; the partition only the metadata
+                updates.put(notePaths.get(0) + "/" + key, field.getValue());
+                if (BODY_FIELDS.contains(key)) {
+                    bodyChanged = true;
+                } else if (notePaths.size() > 1) {
+                    updates.put(notePaths.get(1) + "/" + key, field.getValue());
                 }
-                
-                if (matchingShares.isEmpty()) {
-                    callback.onSuccess(new ArrayList<>());
-                    return;
+            }
+            if (bodyChanged) {
+                // Rewritten whole so a body node never holds half a body; the inline copy
+                // that partition entries from before the split carry is cleared
+                updates.put("/" + NOTE_BODY_REF + "/" + noteId, splitBody(new HashMap<>(stored)));
+                if (notePaths.size() > 1) {
+                    for (String field : BODY_FIELDS) {
+                        updates.put(notePaths.get(1) + "/" + field, null);
+                    }
                 }
-                
-                // Second pass: fetch usernames for each share
-                List<SharedNoteModel> sharedUsers = new ArrayList<>();
-                int[] pending = {matchingShares.size()};
-                
-                for (SharedNoteModel sharedNote : matchingShares) {
-                    String sharedWithUserId = sharedNote.getSharedWithUserId();
-                    if (sharedWithUserId == null || sharedWithUserId.isEmpty()) {
-                        sharedNote.setSharedWithUsername("Unknown User");
-                        sharedUsers.add(sharedNote);
-                        pending[0]--;
-                        if (pending[0] == 0) callback.onSuccess(sharedUsers);
-                        continue;
-                    }
-                    
-                    getUserById(sharedWithUserId, new UserCallback() {
-                        @Override
-                        public void onSuccess(UserModel user) {
-                            sharedNote.setSharedWithUsername(user.getUsername());
-                            sharedUsers.add(sharedNote);
-                            pending[0]--;
-                            if (pending[0] == 0) callback.onSuccess(sharedUsers);
-                        }
+            }
 
-                        @Override
-                        public void onError(String error) {
-                            sharedNote.setSharedWithUsername("Unknown User");
-                            sharedUsers.add(sharedNote);
-                            pending[0]--;
-                            if (pending[0] == 0) callback.onSuccess(sharedUsers);
-                        }
-                    });
+            String chunksPath = "/" + NOTE_CHUNKS_REF + "/" + noteId + "/";
+            for (Map.Entry<String, String> chunk : chunks.entrySet()) {
+                if (!baseChunks.containsKey(chunk.getKey())) {
+                    updates.put(chunksPath + chunk.getKey(), chunk.getValue());
+                }
+            }
+            for (String chunkId : baseChunks.keySet()) {
+                if (!chunks.containsKey(chunkId)) {
+                    updates.put(chunksPath + chunkId, null);
                 }
             }
+        }
 
-            @Override
-            public void onCancelled(@NonNull DatabaseError error) {
-                callback.onError(error.getMessage());
-                    }
-                });
+        writeQueue.enqueue(noteId, updates, callback);
     }
 
-    public void getSharePermission(String noteId, String userId, 
-                                   com.google.android.gms.tasks.OnSuccessListener<SharedNoteModel> onSuccess,
-                                   com.google.android.gms.tasks.OnFailureListener onFailure) {
-        database.child(SHARED_NOTES_REF).orderByChild("noteId").equalTo(noteId)
+    private Map<String, Object> buildFullNoteWrite(String noteId, NoteModel note) {
+        Map<String, String> chunks = new HashMap<>();
+        Map<String, Object> updates = new HashMap<>();
+        Map<String, Object> stored = toStoredNote(note, chunks);
+        Map<String, Object> meta = new HashMap<>(stored);
+        updates.put("/" + NOTE_BODY_REF + "/" + noteId, splitBody(meta));
+        List<String> notePaths = notePaths(noteId, note.getUserId());
+        // The legacy node keeps whole notes until the legacy read path is retired
+        updates.put(notePaths.get(0), stored);
+        if (notePaths.size() > 1) {
+            updates.put(notePaths.get(1), meta);
+        }
+        // Replacing the whole chunk node also drops chunks from earlier versions
+        updates.put("/" + NOTE_CHUNKS_REF + "/" + noteId, chunks.isEmpty() ? null : new HashMap<>(chunks));
+        return updates;
+    }
+
+    /**
+     * Where a note is written: the legacy flat node that clients from before the
+     * partition still read, then its owner's partition. Without an owner, only the former.
+     */
+    private List<String> notePaths(String noteId, String ownerId) {
+        List<String> paths = new ArrayList<>(2);
+        paths.add("/" + NOTES_REF + "/" + noteId);
+        if (ownerId != null) {
+            paths.add("/" + USER_NOTES_REF + "/" + ownerId + "/" + noteId);
+        }
+        return paths;
+    }
+
+    /** Moves the body fields out of {@code stored}, returning them as the note_body node. */
+    private static Map<String, Object> splitBody(Map<String, Object> stored) {
+        Map<String, Object> body = new HashMap<>();
+        for (String field : BODY_FIELDS) {
+            Object value = stored.remove(field);
+            if (value != null) body.put(field, value);
+        }
+        return body;
+    }
+
+    private Map<String, Object> noteFieldWrite(String noteId, String ownerId, String field, Object value) {
+        Map<String, Object> updates = new HashMap<>();
+        for (String notePath : notePaths(noteId, ownerId)) {
+            updates.put(notePath + "/" + field, value);
+        }
+        return updates;
+    }
+
+    /**
+     * The note's field map as stored: bodies over the chunking threshold are replaced
+     * by their chunk id lists, and the chunk texts are collected into {@code chunksOut}.
+     */
+    private Map<String, Object> toStoredNote(NoteModel note, Map<String, String> chunksOut) {
+        Map<String, Object> stored = note.toMap();
+        if (note.getUserId() != null) {
+            stored.put(NOTE_LIST_KEY, noteListKey(note.getUserId(), note.getUpdatedAt()));
+        }
+        storeBody(stored, "content", "contentChunks", note.getContent(), chunksOut);
+        storeBody(stored, "htmlContent", "htmlContentChunks", note.getHtmlContent(), chunksOut);
+        return stored;
+    }
+
+    private void storeBody(Map<String, Object> stored, String field, String chunksField,
+                           String body, Map<String, String> chunksOut) {
+        if (!ContentChunker.shouldChunk(body)) {
+            stored.put(field, body);
+            stored.put(chunksField, null);
+            return;
+        }
+
+        List<String> chunkIds = new ArrayList<>();
+        for (String chunk : ContentChunker.split(body)) {
+            String chunkId = ContentChunker.chunkId(chunk);
+            chunkIds.add(chunkId);
+            chunksOut.put(chunkId, chunk);
+        }
+        stored.put(field, null);
+        stored.put(chunksField, chunkIds);
+    }
+
+    private void loadChunkedBody(NoteModel note, NoteCallback callback) {
+        database.child(NOTE_CHUNKS_REF).child(note.getId())
                 .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        for (DataSnapshot shareSnapshot : snapshot.getChildren()) {
-                            SharedNoteModel sharedNote = shareSnapshot.getValue(SharedNoteModel.class);
-                            if (sharedNote != null && userId.equals(sharedNote.getSharedWithUserId())) {
-                                onSuccess.onSuccess(sharedNote);
-                                return;
-                            }
+                        long updatedAt = note.getUpdatedAt();
+                        if (note.getContentChunks() != null && !note.getContentChunks().isEmpty()) {
+                            note.setContent(joinChunks(snapshot, note.getContentChunks()));
                         }
-                        onSuccess.onSuccess(null);
+                        if (note.getHtmlContentChunks() != null && !note.getHtmlContentChunks().isEmpty()) {
+                            note.setHtmlContent(joinChunks(snapshot, note.getHtmlContentChunks()));
+                        }
+                        // setContent bumps updatedAt; keep the stored value
+                        note.setUpdatedAt(updatedAt);
+                        callback.onSuccess(note);
                     }
 
                     @Override
                     public void onCancelled(@NonNull DatabaseError error) {
-                        onFailure.onFailure(error.toException());
+                        callback.onError(error.getMessage());
                     }
                 });
     }
 
-    public void unshareNote(String noteId, String sharedWithUserId, BooleanCallback callback) {
-        database.child(SHARED_NOTES_REF).orderByChild("noteId").equalTo(noteId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        for (DataSnapshot shareSnapshot : snapshot.getChildren()) {
-                            SharedNoteModel sharedNote = shareSnapshot.getValue(SharedNoteModel.class);
-                            if (sharedNote != null && sharedWithUserId.equals(sharedNote.getSharedWithUserId())) {
-                                shareSnapshot.getRef().removeValue()
-                                        .addOnSuccessListener(aVoid -> callback.onResult(true))
-                                        .addOnFailureListener(e -> callback.onResult(false));
-                                return;
+    private String joinChunks(DataSnapshot chunksSnapshot, List<String> chunkIds) {
+        StringBuilder body = new StringBuilder();
+        for (String chunkId : chunkIds) {
+            String chunk = chunksSnapshot.child(chunkId).getValue(String.class);
+            if (chunk != null) {
+                body.append(chunk);
+            }
+        }
+        return body.toString();
+    }
+
+    public void deleteNote(String noteId, String ownerId, BooleanCallback callback) {
+        // Delete the note and all its shares
+        Map<String, Object> updates = new HashMap<>();
+        List<String> notePaths = notePaths(noteId, ownerId);
+        for (String notePath : notePaths) {
+            updates.put(notePath, null);
+        }
+        updates.put("/" + NOTE_SHARES_REF + "/" + noteId, null);
+        updates.put("/" + NOTE_BODY_REF + "/" + noteId, null);
+        updates.put("/" + NOTE_CHUNKS_REF + "/" + noteId, null);
+        updates.put("/" + NOTE_CRDT_REF + "/" + noteId, null);
+        updates.put("/" + ACTIVITY_LOGS_REF + "/" + noteId, null);
+        activityLogBatcher().discard("/" + ACTIVITY_LOGS_REF + "/" + noteId + "/");
+        // Held edits would recreate part of the note once they are sent
+        for (String notePath : notePaths) {
+            writeQueue.discard(notePath);
+        }
+        writeQueue.discard("/" + NOTE_BODY_REF + "/" + noteId);
+        writeQueue.discard("/" + NOTE_CHUNKS_REF + "/" + noteId);
+
+        loadShareIds(noteId).onSuccessTask(shareIds -> {
+            for (String shareId : shareIds.values()) {
+                updates.put("/" + SHARED_NOTES_REF + "/" + shareId, null);
+            }
+            return database.updateChildren(updates);
+        })
+                .addOnSuccessListener(aVoid -> callback.onResult(true))
+                .addOnFailureListener(e -> callback.onResult(false));
+    }
+
+    // ===================== SHARING OPERATIONS =====================
+
+    public interface SharedNotesCallback {
+        void onSuccess(List<SharedNoteModel> sharedNotes);
+        void onError(String error);
+    }
+
+    /**
+     * Shares are keyed by note and recipient, so once older shares are re-keyed every
+     * share mutation knows its paths up front and is a single write with no lookup.
+     */
+    public static String shareKey(String noteId, String sharedWithUserId) {
+        return noteId + "_" + sharedWithUserId;
+    }
+
+    /**
+     * Id of the share of {@code noteId} with {@code sharedWithUserId}. Until the shares
+     * are re-keyed (see {@link #runDataMigrations}), an older share keeps its push id,
+     * found through {@link #loadShareIds}; {@link #shareKey} is used when there is none.
+     */
+    private Task<String> resolveShareId(String noteId, String sharedWithUserId) {
+        String derived = shareKey(noteId, sharedWithUserId);
+        return shareKeysMigrated().onSuccessTask(migrated -> {
+            if (migrated) {
+                return Tasks.forResult(derived);
+            }
+            return loadShareIds(noteId).onSuccessTask(shareIds -> {
+                String shareId = shareIds.get(sharedWithUserId);
+                return Tasks.forResult(shareId != null ? shareId : derived);
+            });
+        });
+    }
+
+    /**
+     * Ids of the note's shares by recipient, from the note_shares index. The index
+     * backfill runs before the re-key, so until the re-key marker is seen, shares
+     * written before the index existed are also looked up in shared_notes by noteId.
+     */
+    private Task<Map<String, String>> loadShareIds(String noteId) {
+        return DatabaseTasks.once(database.child(NOTE_SHARES_REF).child(noteId)).onSuccessTask(index -> {
+            Map<String, String> shareIds = new HashMap<>();
+            for (DataSnapshot indexSnapshot : index.getChildren()) {
+                String shareId = indexSnapshot.getValue(String.class);
+                if (shareId != null) {
+                    shareIds.put(indexSnapshot.getKey(), shareId);
+                }
+            }
+            return shareKeysMigrated().onSuccessTask(migrated -> {
+                if (migrated) {
+                    return Tasks.forResult(shareIds);
+                }
+                return DatabaseTasks.once(database.child(SHARED_NOTES_REF).orderByChild("noteId").equalTo(noteId))
+                        .onSuccessTask(shares -> {
+                            for (DataSnapshot shareSnapshot : shares.getChildren()) {
+                                String sharedWithUserId = shareSnapshot.child("sharedWithUserId").getValue(String.class);
+                                if (sharedWithUserId != null && !shareIds.containsKey(sharedWithUserId)) {
+                                    shareIds.put(sharedWithUserId, shareSnapshot.getKey());
+                                }
                             }
+                            return Tasks.forResult(shareIds);
+                        });
+            });
+        });
+    }
+
+    /**
+     * The share re-key marker, watched from the first share operation on; once it
+     * is seen, share operations make no reads.
+     */
+    private synchronized Task<Boolean> shareKeysMigrated() {
+        if (shareKeysMigrated == null) {
+            TaskCompletionSource<Boolean> first = new TaskCompletionSource<>();
+            shareKeysMigrated = first.getTask();
+            DatabaseReference marker = database.child(DATA_MIGRATIONS_REF).child(SHARE_KEYS_MIGRATION);
+            marker.addValueEventListener(new ValueEventListener() {
+                @Override
+                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                    synchronized (FirebaseManager.this) {
+                        shareKeysMigrated = Tasks.forResult(snapshot.exists());
+                    }
+                    first.trySetResult(snapshot.exists());
+                }
+
+                @Override
+                public void onCancelled(@NonNull DatabaseError error) {
+                    // Watched again by the next share operation
+                    synchronized (FirebaseManager.this) {
+                        shareKeysMigrated = null;
+                    }
+                    first.trySetException(error.toException());
+                }
+            });
+        }
+        return shareKeysMigrated;
+    }
+
+    /**
+     * Creates or replaces the share, its index entry and {@code log} (may be null)
+     * in one atomic write.
+     */
+    public void shareNote(String noteId, String ownerId, String sharedWithUserId, 
+                         String permission, ActivityLogModel log, BooleanCallback callback) {
+        // Re-sharing replaces an existing share instead of adding a second one
+        resolveShareId(noteId, sharedWithUserId).addOnCompleteListener(resolved -> {
+            if (!resolved.isSuccessful()) {
+                callback.onResult(false);
+                return;
+            }
+            writeShare(resolved.getResult(), noteId, ownerId, sharedWithUserId, permission, log, callback);
+        });
+    }
+
+    private void writeShare(String shareId, String noteId, String ownerId, String sharedWithUserId,
+                            String permission, ActivityLogModel log, BooleanCallback callback) {
+        SharedNoteModel sharedNote = new SharedNoteModel();
+        sharedNote.setId(shareId);
+        sharedNote.setNoteId(noteId);
+        sharedNote.setOwnerId(ownerId);
+        sharedNote.setSharedWithUserId(sharedWithUserId);
+        sharedNote.setPermission(permission);
+        sharedNote.setSharedAt(System.currentTimeMillis());
+
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("/" + SHARED_NOTES_REF + "/" + shareId, sharedNote.toMap());
+        updates.put("/" + NOTE_SHARES_REF + "/" + noteId + "/" + sharedWithUserId, shareId);
+        putActivityLog(updates, log);
+
+        database.updateChildren(updates)
+                .addOnSuccessListener(aVoid -> callback.onResult(true))
+                .addOnFailureListener(e -> callback.onResult(false));
+    }
+
+    public void getSharedNotesForUser(String userId, SharedNotesCallback callback) {
+        deliverShares(loadSharedNotesForUser(userId), callback);
+    }
+
+    public Task<List<SharedNoteModel>> loadSharedNotesForUser(String userId) {
+        Query query = database.child(SHARED_NOTES_REF).orderByChild("sharedWithUserId").equalTo(userId);
+        return DatabaseTasks.once(query)
+                .continueWith(DatabaseExecutors.DECODE, read -> {
+                    List<SharedNoteModel> shares = new ArrayList<>();
+                    for (DataSnapshot shareSnapshot : read.getResult().getChildren()) {
+                        SharedNoteModel sharedNote = decodeSharedNote(shareSnapshot);
+                        if (sharedNote != null) {
+                            sharedNote.setId(shareSnapshot.getKey());
+                            shares.add(sharedNote);
                         }
-                        callback.onResult(false);
                     }
+                    return shares;
+                })
+                .onSuccessTask(this::loadHydratedSharedNotes);
+    }
 
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
-                        callback.onResult(false);
+    /**
+     * Fills in note titles and owner names for a batch of shares. Each distinct
+     * note and owner is read once; shares whose note or owner is gone are dropped.
+     */
+    public void hydrateSharedNotes(List<SharedNoteModel> shares, SharedNotesCallback callback) {
+        deliverShares(loadHydratedSharedNotes(shares), callback);
+    }
+
+    public Task<List<SharedNoteModel>> loadHydratedSharedNotes(List<SharedNoteModel> shares) {
+        Set<String> notePaths = new LinkedHashSet<>();
+        Set<String> ownerIds = new LinkedHashSet<>();
+        for (SharedNoteModel sharedNote : shares) {
+            if (sharedNote.getNoteId() != null && sharedNote.getOwnerId() != null) {
+                // The share references the note in its owner's partition
+                notePaths.add(sharedNote.getOwnerId() + "/" + sharedNote.getNoteId());
+                ownerIds.add(sharedNote.getOwnerId());
+            }
+        }
+
+        // Fetch notes and owners concurrently, then join in a single pass
+        Task<Map<String, DataSnapshot>> notes = loadPartitionedNotes(notePaths);
+        Task<Map<String, UserProfileModel>> owners = loadProfiles(ownerIds);
+        return Tasks.whenAll(notes, owners).continueWith(DatabaseExecutors.DECODE, done -> {
+            List<SharedNoteModel> sharedNotes = new ArrayList<>(shares.size());
+            for (SharedNoteModel sharedNote : shares) {
+                DataSnapshot noteSnapshot = notes.getResult().get(sharedNote.getNoteId());
+                NoteModel note = noteSnapshot != null ? decodeNote(noteSnapshot) : null;
+                UserProfileModel owner = owners.getResult().get(sharedNote.getOwnerId());
+                String ownerUsername = owner != null ? owner.getUsername() : null;
+                if (note == null || ownerUsername == null) {
+                    continue;
+                }
+                sharedNote.setNoteTitle(note.getTitle());
+                // Bodies are not in the partition; the stored preview stands in
+                String content = note.getContent();
+                sharedNote.setNoteContent(content != null && !content.isEmpty() ? content : note.getPreview());
+                sharedNote.setOwnerUsername(ownerUsername);
+                sharedNotes.add(sharedNote);
+            }
+            sharedNotes.sort((s1, s2) -> Long.compare(s2.getSharedAt(), s1.getSharedAt()));
+            return sharedNotes;
+        });
+    }
+
+    /**
+     * Reads "{ownerId}/{noteId}" paths from the partitions, keyed by note id. Notes
+     * not found there are read from the legacy node, for owners not yet migrated.
+     */
+    private Task<Map<String, DataSnapshot>> loadPartitionedNotes(Collection<String> notePaths) {
+        return DatabaseTasks.onceEach(database.child(USER_NOTES_REF), notePaths, MAX_PARALLEL_READS)
+                .continueWithTask(partitioned -> {
+                    Map<String, DataSnapshot> found = partitioned.getResult();
+                    List<String> missing = new ArrayList<>();
+                    for (String notePath : notePaths) {
+                        String noteId = notePath.substring(notePath.indexOf('/') + 1);
+                        if (!found.containsKey(noteId)) missing.add(noteId);
                     }
+                    if (missing.isEmpty()) return partitioned;
+                    return DatabaseTasks.onceEach(database.child(NOTES_REF), missing, MAX_PARALLEL_READS)
+                            .continueWith(legacy -> {
+                                found.putAll(legacy.getResult());
+                                return found;
+                            });
                 });
     }
-    
-    public void updateSharePermission(String noteId, String sharedWithUserId, String newPermission, BooleanCallback callback) {
-        database.child(SHARED_NOTES_REF).orderByChild("noteId").equalTo(noteId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        for (DataSnapshot shareSnapshot : snapshot.getChildren()) {
-                            SharedNoteModel sharedNote = shareSnapshot.getValue(SharedNoteModel.class);
-                            if (sharedNote != null && sharedWithUserId.equals(sharedNote.getSharedWithUserId())) {
-                                shareSnapshot.getRef().child("permission").setValue(newPermission)
-                                        .addOnSuccessListener(aVoid -> callback.onResult(true))
-                                        .addOnFailureListener(e -> callback.onResult(false));
-                                return;
-                            }
+
+    public void getSharedUsersForNote(String noteId, SharedNotesCallback callback) {
+        deliverShares(loadSharedUsersForNote(noteId), callback);
+    }
+
+    public Task<List<SharedNoteModel>> loadSharedUsersForNote(String noteId) {
+        // The note_shares index lists exactly this note's shares
+        return loadShareIds(noteId)
+                .onSuccessTask(shareIds -> DatabaseTasks.onceEach(database.child(SHARED_NOTES_REF),
+                        new LinkedHashSet<>(shareIds.values()), MAX_PARALLEL_READS))
+                .continueWith(DatabaseExecutors.DECODE, read -> {
+                    List<SharedNoteModel> matchingShares = new ArrayList<>();
+                    for (DataSnapshot shareSnapshot : read.getResult().values()) {
+                        SharedNoteModel sharedNote = decodeSharedNote(shareSnapshot);
+                        if (sharedNote != null) {
+                            sharedNote.setId(shareSnapshot.getKey());
+                            matchingShares.add(sharedNote);
                         }
-                        callback.onResult(false);
                     }
-
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
-                        callback.onResult(false);
+                    return matchingShares;
+                })
+                .onSuccessTask(matchingShares -> {
+                    Set<String> userIds = new LinkedHashSet<>();
+                    for (SharedNoteModel sharedNote : matchingShares) {
+                        String sharedWithUserId = sharedNote.getSharedWithUserId();
+                        if (sharedWithUserId != null && !sharedWithUserId.isEmpty()) {
+                            userIds.add(sharedWithUserId);
+                        }
                     }
+                    // Usernames come from the profile cache, once per distinct user
+                    return loadProfiles(userIds).continueWith(DatabaseExecutors.DECODE, profiles -> {
+                        for (SharedNoteModel sharedNote : matchingShares) {
+                            UserProfileModel profile = profiles.getResult().get(sharedNote.getSharedWithUserId());
+                            String username = profile != null ? profile.getUsername() : null;
+                            sharedNote.setSharedWithUsername(username != null ? username : "Unknown User");
+                        }
+                        return matchingShares;
+                    });
                 });
     }
 
+    private static void deliverShares(Task<List<SharedNoteModel>> task, SharedNotesCallback callback) {
+        task.addOnCompleteListener(done -> {
+            if (done.isSuccessful()) {
+                callback.onSuccess(done.getResult());
+            } else {
+                callback.onError(DatabaseTasks.errorMessage(done));
+            }
+        });
+    }
+
+    public void getSharePermission(String noteId, String userId, 
+                                   com.google.android.gms.tasks.OnSuccessListener<SharedNoteModel> onSuccess,
+                                   com.google.android.gms.tasks.OnFailureListener onFailure) {
+        resolveShareId(noteId, userId)
+                .onSuccessTask(shareId -> DatabaseTasks.once(database.child(SHARED_NOTES_REF).child(shareId)))
+                .addOnSuccessListener(shareSnapshot -> {
+                    SharedNoteModel sharedNote = decodeSharedNote(shareSnapshot);
+                    if (sharedNote != null) {
+                        sharedNote.setId(shareSnapshot.getKey());
+                    }
+                    onSuccess.onSuccess(sharedNote);
+                })
+                .addOnFailureListener(onFailure);
+    }
+
+    /**
+     * Removes the share, its index entry and writes {@code log} (may be null) in one
+     * atomic write. Removing a share that does not exist succeeds.
+     */
+    public void unshareNote(String noteId, String sharedWithUserId, ActivityLogModel log, BooleanCallback callback) {
+        resolveShareId(noteId, sharedWithUserId).onSuccessTask(shareId -> {
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("/" + SHARED_NOTES_REF + "/" + shareId, null);
+            updates.put("/" + NOTE_SHARES_REF + "/" + noteId + "/" + sharedWithUserId, null);
+            putActivityLog(updates, log);
+            return database.updateChildren(updates);
+        })
+                .addOnSuccessListener(aVoid -> callback.onResult(true))
+                .addOnFailureListener(e -> callback.onResult(false));
+    }
+    
+    /**
+     * Sets the permission on an existing share and writes {@code log} (may be null)
+     * in one atomic write. The index is left alone, so a change that races an
+     * unshare leaves at most an unreferenced permission leaf.
+     */
+    public void updateSharePermission(String noteId, String sharedWithUserId, String newPermission,
+                                      ActivityLogModel log, BooleanCallback callback) {
+        resolveShareId(noteId, sharedWithUserId).onSuccessTask(shareId -> {
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("/" + SHARED_NOTES_REF + "/" + shareId + "/permission", newPermission);
+            putActivityLog(updates, log);
+            return database.updateChildren(updates);
+        })
+                .addOnSuccessListener(aVoid -> callback.onResult(true))
+                .addOnFailureListener(e -> callback.onResult(false));
+    }
+
+    private void putActivityLog(Map<String, Object> updates, ActivityLogModel log) {
+        if (log == null) return;
+        String logId = database.child(ACTIVITY_LOGS_REF).child(log.getNoteId()).push().getKey();
+        if (logId == null) return;
+        log.setId(logId);
+        updates.put("/" + ACTIVITY_LOGS_REF + "/" + log.getNoteId() + "/" + logId, log.toMap());
+    }
+
+    /**
+     * One-off migration that re-keys shares created with push ids to
+     * {@link #shareKey} and points the index at the new keys. Each share moves in
+     * one atomic write. Safe to run more than once.
+     */
+    private Task<Void> migrateShareKeys() {
+        return DatabaseTasks.once(database.child(SHARED_NOTES_REF)).onSuccessTask(DatabaseExecutors.DECODE, snapshot -> {
+            List<Map<String, Object>> moves = new ArrayList<>();
+            for (DataSnapshot shareSnapshot : snapshot.getChildren()) {
+                SharedNoteModel sharedNote = decodeSharedNote(shareSnapshot);
+                if (sharedNote == null || sharedNote.getNoteId() == null
+                        || sharedNote.getSharedWithUserId() == null) continue;
+                String shareId = shareKey(sharedNote.getNoteId(), sharedNote.getSharedWithUserId());
+                if (shareId.equals(shareSnapshot.getKey())) continue;
+
+                sharedNote.setId(shareId);
+                Map<String, Object> move = new HashMap<>();
+                move.put("/" + SHARED_NOTES_REF + "/" + shareId, sharedNote.toMap());
+                move.put("/" + SHARED_NOTES_REF + "/" + shareSnapshot.getKey(), null);
+                move.put("/" + NOTE_SHARES_REF + "/" + sharedNote.getNoteId() + "/"
+                        + sharedNote.getSharedWithUserId(), shareId);
+                moves.add(move);
+            }
+            return writeInBatches(moves);
+        });
+    }
+
+    /**
+     * One-off migration that builds note_shares/{noteId}/{userId} for shares
+     * written before the index existed. Safe to run more than once.
+     */
+    private Task<Void> backfillNoteShareIndex() {
+        return DatabaseTasks.once(database.child(SHARED_NOTES_REF)).onSuccessTask(DatabaseExecutors.DECODE, snapshot -> {
+            List<Map<String, Object>> entries = new ArrayList<>();
+            for (DataSnapshot shareSnapshot : snapshot.getChildren()) {
+                String noteId = shareSnapshot.child("noteId").getValue(String.class);
+                String sharedWithUserId = shareSnapshot.child("sharedWithUserId").getValue(String.class);
+                if (noteId != null && sharedWithUserId != null) {
+                    entries.add(Collections.singletonMap(
+                            "/" + NOTE_SHARES_REF + "/" + noteId + "/" + sharedWithUserId, shareSnapshot.getKey()));
+                }
+            }
+            return writeInBatches(entries);
+        });
+    }
+
+    // ===================== DATA MIGRATIONS =====================
+
+    private interface Migration {
+        Task<Void> run();
+    }
+
+    /**
+     * Runs, in order, each one-off migration of shared data that has not completed
+     * yet, and marks it done under data_migrations. Every step is safe to repeat, so
+     * a run that stops part way is simply run again.
+     */
+    public Task<Void> runDataMigrations() {
+        return runOnce(USER_PROFILES_MIGRATION, this::backfillUserProfiles)
+                .onSuccessTask(done -> runOnce(ACTIVITY_LOGS_MIGRATION, this::migrateActivityLogs))
+                .onSuccessTask(done -> runOnce(NOTE_SHARE_INDEX_MIGRATION, this::backfillNoteShareIndex))
+                // Last: shares read the index without a fallback once this marker is set
+                .onSuccessTask(done -> runOnce(SHARE_KEYS_MIGRATION, this::migrateShareKeys));
+    }
+
+    private Task<Void> runOnce(String name, Migration migration) {
+        return isMigrated(name).onSuccessTask(migrated -> migrated
+                ? Tasks.forResult(null)
+                : migration.run().onSuccessTask(done ->
+                        database.child(DATA_MIGRATIONS_REF).child(name).setValue(ServerValue.TIMESTAMP)));
+    }
+
+    private Task<Boolean> isMigrated(String name) {
+        return DatabaseTasks.once(database.child(DATA_MIGRATIONS_REF).child(name))
+                .onSuccessTask(marker -> Tasks.forResult(marker.exists()));
+    }
+
+    /**
+     * Writes {@code groups} one multi-path update at a time, packing whole groups
+     * into each; a group's paths always land in the same atomic write.
+     */
+    private Task<Void> writeInBatches(List<Map<String, Object>> groups) {
+        Task<Void> chain = Tasks.forResult(null);
+        Map<String, Object> batch = new HashMap<>();
+        int batchChars = 0;
+        for (Map<String, Object> group : groups) {
+            int groupChars = approximateChars(group);
+            if (!batch.isEmpty() && batchChars + groupChars > MIGRATION_BATCH_CHARS) {
+                Map<String, Object> full = batch;
+                chain = chain.onSuccessTask(done -> database.updateChildren(full));
+                batch = new HashMap<>();
+                batchChars = 0;
+            }
+            batch.putAll(group);
+            batchChars += groupChars;
+        }
+        if (!batch.isEmpty()) {
+            Map<String, Object> last = batch;
+            chain = chain.onSuccessTask(done -> database.updateChildren(last));
+        }
+        return chain;
+    }
+
+    // Characters of keys and string values in a write; good enough to size batches
+    private static int approximateChars(Object value) {
+        if (value instanceof String) {
+            return ((String) value).length();
+        }
+        if (value instanceof Map) {
+            int chars = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                chars += String.valueOf(entry.getKey()).length() + approximateChars(entry.getValue());
+            }
+            return chars;
+        }
+        if (value instanceof Collection) {
+            int chars = 0;
+            for (Object item : (Collection<?>) value) {
+                chars += approximateChars(item);
+            }
+            return chars;
+        }
+        return 8;
+    }
+
     // ===================== CATEGORY OPERATIONS =====================
 
     public interface CategoriesCallback {
@@ -731,25 +1719,27 @@ public class FirebaseManager {
     }
 
     public void getCategoriesForUser(String userId, CategoriesCallback callback) {
-        database.child(CATEGORIES_REF).orderByChild("userId").equalTo(userId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        List<CategoryModel> categories = new ArrayList<>();
-                        for (DataSnapshot catSnapshot : snapshot.getChildren()) {
-                            CategoryModel category = catSnapshot.getValue(CategoryModel.class);
-                            if (category != null) {
-                                categories.add(category);
-                            }
-                        }
-                        callback.onSuccess(categories);
-                    }
+        loadCategoriesForUser(userId).addOnCompleteListener(task -> {
+            if (task.isSuccessful()) {
+                callback.onSuccess(task.getResult());
+            } else {
+                callback.onError(DatabaseTasks.errorMessage(task));
+            }
+        });
+    }
 
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
-                        callback.onError(error.getMessage());
-                    }
-                });
+    public Task<List<CategoryModel>> loadCategoriesForUser(String userId) {
+        Query query = database.child(CATEGORIES_REF).orderByChild("userId").equalTo(userId);
+        return DatabaseTasks.once(query).continueWith(DatabaseExecutors.DECODE, read -> {
+            List<CategoryModel> categories = new ArrayList<>();
+            for (DataSnapshot catSnapshot : read.getResult().getChildren()) {
+                CategoryModel category = decodeCategory(catSnapshot);
+                if (category != null) {
+                    categories.add(category);
+                }
+            }
+            return categories;
+        });
     }
 
     public void updateCategory(CategoryModel category, BooleanCallback callback) {
@@ -771,41 +1761,159 @@ public class FirebaseManager {
         void onError(String error);
     }
 
+    public interface ActivityLogsPageCallback {
+        void onSuccess(List<ActivityLogModel> logs, String nextCursor);
+        void onError(String error);
+    }
+
+    public static final int ACTIVITY_LOG_PAGE_SIZE = 30;
+    private static final long ACTIVITY_LOG_FLUSH_DELAY_MS = 2000;
+    private static final int ACTIVITY_LOG_MAX_BATCH = 25;
+
+    private ActivityLogBatcher activityLogBatcher;
+
+    private synchronized ActivityLogBatcher activityLogBatcher() {
+        if (activityLogBatcher == null) {
+            activityLogBatcher = new ActivityLogBatcher(new MainThreadClock(),
+                    ACTIVITY_LOG_FLUSH_DELAY_MS, ACTIVITY_LOG_MAX_BATCH,
+                    updates -> database.updateChildren(updates));
+        }
+        return activityLogBatcher;
+    }
+
+    /**
+     * Buffers the entry under activity_logs/{noteId}/{pushId}; buffered entries are
+     * written together shortly afterwards.
+     */
     public void addActivityLog(String noteId, String userId, String username, 
                                String action, String details) {
-        String logId = database.child(ACTIVITY_LOGS_REF).push().getKey();
+        String logId = database.child(ACTIVITY_LOGS_REF).child(noteId).push().getKey();
         if (logId == null) return;
 
         ActivityLogModel log = new ActivityLogModel(noteId, userId, username, action, details);
         log.setId(logId);
 
-        database.child(ACTIVITY_LOGS_REF).child(logId).setValue(log.toMap());
+        activityLogBatcher().add("/" + ACTIVITY_LOGS_REF + "/" + noteId + "/" + logId, log);
+    }
+
+    /**
+     * Writes any buffered activity log entries now, e.g. before the app goes to the background.
+     */
+    public void flushActivityLogs() {
+        activityLogBatcher().flush();
     }
 
     public void getActivityLogsForNote(String noteId, ActivityLogsCallback callback) {
-        database.child(ACTIVITY_LOGS_REF).orderByChild("noteId").equalTo(noteId)
+        getActivityLogsPage(noteId, null, ACTIVITY_LOG_PAGE_SIZE, new ActivityLogsPageCallback() {
+            @Override
+            public void onSuccess(List<ActivityLogModel> logs, String nextCursor) {
+                callback.onSuccess(logs);
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    /**
+     * Newest-first page of a note's activity. Push ids sort by creation time, so the
+     * page is a key range: pass the returned cursor to read the next older page.
+     */
+    public void getActivityLogsPage(String noteId, String beforeLogId, int pageSize,
+                                    ActivityLogsPageCallback callback) {
+        loadActivityLogsPage(noteId, beforeLogId, pageSize).addOnCompleteListener(task -> {
+            if (task.isSuccessful()) {
+                callback.onSuccess(task.getResult().items, task.getResult().nextCursor);
+            } else {
+                callback.onError(DatabaseTasks.errorMessage(task));
+            }
+        });
+    }
+
+    public Task<Page<ActivityLogModel>> loadActivityLogsPage(String noteId, String beforeLogId, int pageSize) {
+        // Our own buffered entries should show up in the log straight away
+        flushActivityLogs();
+
+        Query query = database.child(ACTIVITY_LOGS_REF).child(noteId).orderByKey();
+        if (beforeLogId != null) {
+            query = query.endAt(beforeLogId);
+        }
+        // endAt is inclusive, so ask for one extra and drop the cursor entry itself
+        query = query.limitToLast(beforeLogId != null ? pageSize + 1 : pageSize);
+        return DatabaseTasks.once(query).continueWith(DatabaseExecutors.DECODE, read -> {
+            List<ActivityLogModel> logs = new ArrayList<>(pageSize);
+            for (DataSnapshot logSnapshot : read.getResult().getChildren()) {
+                if (logSnapshot.getKey() == null || logSnapshot.getKey().equals(beforeLogId)) continue;
+                ActivityLogModel log = decodeActivityLog(logSnapshot);
+                if (log != null) {
+                    logs.add(log);
+                }
+            }
+            // Children arrive oldest first
+            Collections.reverse(logs);
+            return new Page<>(logs, logs.size() >= pageSize ? logs.get(logs.size() - 1).getId() : null);
+        });
+    }
+
+    /**
+     * Applies {@code compactor} to one note's activity log in a single multi-path update.
+     */
+    public void compactActivityLogs(String noteId, ActivityLogCompactor compactor, BooleanCallback callback) {
+        String basePath = "/" + ACTIVITY_LOGS_REF + "/" + noteId;
+        database.child(ACTIVITY_LOGS_REF).child(noteId).orderByKey()
                 .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        List<ActivityLogModel> logs = new ArrayList<>();
+                        List<ActivityLogModel> logs = new ArrayList<>((int) snapshot.getChildrenCount());
                         for (DataSnapshot logSnapshot : snapshot.getChildren()) {
-                            ActivityLogModel log = logSnapshot.getValue(ActivityLogModel.class);
+                            ActivityLogModel log = decodeActivityLog(logSnapshot);
                             if (log != null) {
                                 logs.add(log);
                             }
                         }
-                        // Sort by timestamp descending (newest first)
-                        logs.sort((l1, l2) -> Long.compare(l2.getTimestamp(), l1.getTimestamp()));
-                        callback.onSuccess(logs);
+
+                        Map<String, Object> updates = compactor.plan(basePath, logs, System.currentTimeMillis());
+                        if (updates.isEmpty()) {
+                            callback.onResult(true);
+                            return;
+                        }
+
+                        database.updateChildren(updates)
+                                .addOnSuccessListener(aVoid -> callback.onResult(true))
+                                .addOnFailureListener(e -> callback.onResult(false));
                     }
 
                     @Override
                     public void onCancelled(@NonNull DatabaseError error) {
-                        callback.onError(error.getMessage());
+                        callback.onResult(false);
                     }
                 });
     }
 
+    /**
+     * One-off migration from the flat activity_logs/{logId} layout to
+     * activity_logs/{noteId}/{logId}. Flat entries are recognised by their noteId
+     * field; running it again finds none and does nothing.
+     */
+    private Task<Void> migrateActivityLogs() {
+        return DatabaseTasks.once(database.child(ACTIVITY_LOGS_REF)).onSuccessTask(DatabaseExecutors.DECODE, snapshot -> {
+            List<Map<String, Object>> moves = new ArrayList<>();
+            for (DataSnapshot logSnapshot : snapshot.getChildren()) {
+                String noteId = logSnapshot.child("noteId").getValue(String.class);
+                ActivityLogModel log = noteId != null ? decodeActivityLog(logSnapshot) : null;
+                if (log == null) continue;
+                // Copy and delete land in the same write, so a log is never lost or doubled
+                Map<String, Object> move = new HashMap<>();
+                move.put("/" + ACTIVITY_LOGS_REF + "/" + noteId + "/" + logSnapshot.getKey(), log.toMap());
+                move.put("/" + ACTIVITY_LOGS_REF + "/" + logSnapshot.getKey(), null);
+                moves.add(move);
+            }
+            return writeInBatches(moves);
+        });
+    }
+
     // ===================== SHARE LINK OPERATIONS =====================
 
     public interface ShareLinkCallback {
@@ -813,7 +1921,7 @@ public class FirebaseManager {
         void onError(String error);
     }
 
-    public void generateShareLink(String noteId, String permission, ShareLinkCallback callback) {
+    public void generateShareLink(String noteId, String ownerId, String permission, ShareLinkCallback callback) {
         // Generate a unique share link code
         String linkCode = UUID.randomUUID().toString().substring(0, 8).toUpperCase();
         
@@ -826,7 +1934,7 @@ public class FirebaseManager {
         database.child(SHARE_LINKS_REF).child(linkCode).setValue(linkData)
                 .addOnSuccessListener(aVoid -> {
                     // Also update the note with the share link
-                    database.child(NOTES_REF).child(noteId).child("shareLink").setValue(linkCode);
+                    database.updateChildren(noteFieldWrite(noteId, ownerId, "shareLink", linkCode));
                     callback.onSuccess(linkCode);
                 })
                 .addOnFailureListener(e -> callback.onError(e.getMessage()));
@@ -872,22 +1980,16 @@ public class FirebaseManager {
 
     // ===================== PIN AND COLOR OPERATIONS =====================
 
-    public void toggleNotePin(String noteId, boolean isPinned, BooleanCallback callback) {
-        database.child(NOTES_REF).child(noteId).child("isPinned").setValue(isPinned)
-                .addOnSuccessListener(aVoid -> callback.onResult(true))
-                .addOnFailureListener(e -> callback.onResult(false));
+    public void toggleNotePin(String noteId, String ownerId, boolean isPinned, BooleanCallback callback) {
+        writeQueue.enqueue(noteId, noteFieldWrite(noteId, ownerId, "isPinned", isPinned), whenSynced(callback));
     }
 
-    public void updateNoteColor(String noteId, String color, BooleanCallback callback) {
-        database.child(NOTES_REF).child(noteId).child("color").setValue(color)
-                .addOnSuccessListener(aVoid -> callback.onResult(true))
-                .addOnFailureListener(e -> callback.onResult(false));
+    public void updateNoteColor(String noteId, String ownerId, String color, BooleanCallback callback) {
+        writeQueue.enqueue(noteId, noteFieldWrite(noteId, ownerId, "color", color), whenSynced(callback));
     }
 
-    public void updateNoteCategory(String noteId, String category, BooleanCallback callback) {
-        database.child(NOTES_REF).child(noteId).child("category").setValue(category)
-                .addOnSuccessListener(aVoid -> callback.onResult(true))
-                .addOnFailureListener(e -> callback.onResult(false));
+    public void updateNoteCategory(String noteId, String ownerId, String category, BooleanCallback callback) {
+        writeQueue.enqueue(noteId, noteFieldWrite(noteId, ownerId, "category", category), whenSynced(callback));
     }
 
     // ===================== PASSWORD CHANGE =====================
@@ -897,17 +1999,19 @@ public class FirebaseManager {
             @Override
             public void onSuccess(UserModel user) {
                 // Verify current password
-                if (!PasswordUtils.verifyPassword(currentPassword, user.getPasswordHash())) {
-                    callback.onResult(false);
-                    return;
-                }
+                PasswordUtils.verifyPasswordAsync(currentPassword, user.getPasswordHash(), (matches, upgradedHash) -> {
+                    if (!matches) {
+                        callback.onResult(false);
+                        return;
+                    }
 
-                // Update to new password
-                String newHash = PasswordUtils.hashPassword(newPassword);
-                database.child(USERS_REF).child(userId).child("passwordHash")
-                        .setValue(newHash)
-                        .addOnSuccessListener(aVoid -> callback.onResult(true))
-                        .addOnFailureListener(e -> callback.onResult(false));
+                    // Update to new password
+                    PasswordUtils.hashPasswordAsync(newPassword, newHash ->
+                            database.child(USERS_REF).child(userId).child("passwordHash")
+                                    .setValue(newHash)
+                                    .addOnSuccessListener(aVoid -> callback.onResult(true))
+                                    .addOnFailureListener(e -> callback.onResult(false)));
+                });
             }
 
             @Override
@@ -917,15 +2021,303 @@ public class FirebaseManager {
         });
     }
 
+    // ===================== DECODING =====================
+
+    // Models are built from the raw value map by hand-written codecs; the reflective
+    // getValue(Class) bean mapper is not used for them.
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> rawMap(DataSnapshot snapshot) {
+        Object value = snapshot.getValue();
+        return value instanceof Map ? (Map<String, Object>) value : null;
+    }
+
+    private static NoteModel decodeNote(DataSnapshot snapshot) {
+        Map<String, Object> map = rawMap(snapshot);
+        return map != null ? NoteModel.fromMap(snapshot.getKey(), map) : null;
+    }
+
+    private static SharedNoteModel decodeSharedNote(DataSnapshot snapshot) {
+        Map<String, Object> map = rawMap(snapshot);
+        return map != null ? SharedNoteModel.fromMap(snapshot.getKey(), map) : null;
+    }
+
+    private static UserModel decodeUser(DataSnapshot snapshot) {
+        Map<String, Object> map = rawMap(snapshot);
+        return map != null ? UserModel.fromMap(snapshot.getKey(), map) : null;
+    }
+
+    private static UserProfileModel decodeUserProfile(DataSnapshot snapshot) {
+        Map<String, Object> map = rawMap(snapshot);
+        return map != null ? UserProfileModel.fromMap(snapshot.getKey(), map) : null;
+    }
+
+    private static CategoryModel decodeCategory(DataSnapshot snapshot) {
+        Map<String, Object> map = rawMap(snapshot);
+        return map != null ? CategoryModel.fromMap(snapshot.getKey(), map) : null;
+    }
+
+    private static ActivityLogModel decodeActivityLog(DataSnapshot snapshot) {
+        Map<String, Object> map = rawMap(snapshot);
+        return map != null ? ActivityLogModel.fromMap(snapshot.getKey(), map) : null;
+    }
+
+    // ===================== COLLABORATIVE EDITING =====================
+
+    public interface NoteCrdtCallback {
+        void onSuccess(RgaDocument document);
+        void onError(String error);
+    }
+
+    public void isNoteShared(String noteId, BooleanCallback callback) {
+        loadShareIds(noteId).addOnCompleteListener(task ->
+                callback.onResult(task.isSuccessful() && !task.getResult().isEmpty()));
+    }
+
+    /**
+     * Loads the note's latest text snapshot as a replica for {@code site}. A note
+     * without one is seeded from {@code seedText} in a transaction, so the first
+     * clients to open it agree on a single seed.
+     */
+    public void loadNoteCrdt(String noteId, String site, String seedText, NoteCrdtCallback callback) {
+        DatabaseReference snapshotRef = database.child(NOTE_CRDT_REF).child(noteId).child("snapshot");
+        snapshotRef.runTransaction(new Transaction.Handler() {
+            @NonNull
+            @Override
+            public Transaction.Result doTransaction(@NonNull MutableData currentData) {
+                if (currentData.getValue() == null) {
+                    currentData.setValue(RgaDocument.seeded(site, seedText).toSnapshot());
+                    return Transaction.success(currentData);
+                }
+                return Transaction.abort();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot currentData) {
+                if (error != null) {
+                    callback.onError(error.getMessage());
+                    return;
+                }
+                RgaDocument document = currentData != null
+                        ? RgaDocument.fromSnapshot(site, (Map<String, Object>) currentData.getValue())
+                        : null;
+                if (document == null) {
+                    callback.onError("Unreadable note history");
+                } else {
+                    callback.onSuccess(document);
+                }
+            }
+        }, false);
+    }
+
+    /**
+     * Appends ops to the note's log in one write. Each op is stamped with the server
+     * commit time, which is the order the log is replayed in.
+     */
+    public void appendNoteOps(String noteId, List<RgaOp> ops, BooleanCallback callback) {
+        DatabaseReference opsRef = database.child(NOTE_CRDT_REF).child(noteId).child("ops");
+        Map<String, Object> updates = new HashMap<>();
+        for (RgaOp op : ops) {
+            String opId = opsRef.push().getKey();
+            if (opId == null) continue;
+            Map<String, Object> value = op.toMap();
+            value.put("at", ServerValue.TIMESTAMP);
+            updates.put(opId, value);
+        }
+        if (updates.isEmpty()) {
+            callback.onResult(true);
+            return;
+        }
+
+        opsRef.updateChildren(updates)
+                .addOnSuccessListener(aVoid -> callback.onResult(true))
+                .addOnFailureListener(e -> callback.onResult(false));
+    }
+
+    /**
+     * Streams ops committed at or after {@code sinceAt}. Ops already in the replica
+     * are delivered again at the boundary and ignored by the merge.
+     */
+    @SuppressWarnings("unchecked")
+    public SyncRegistration syncNoteOps(String noteId, long sinceAt, SyncListener<RgaOp> listener) {
+        return syncQuery(database.child(NOTE_CRDT_REF).child(noteId).child("ops")
+                        .orderByChild("at").startAt(sinceAt),
+                snapshot -> snapshot.getValue() instanceof Map
+                        ? RgaOp.fromMap((Map<String, Object>) snapshot.getValue())
+                        : null,
+                listener);
+    }
+
+    /**
+     * Replaces the stored snapshot unless a newer one is already there. The snapshot's
+     * {@code at} stops short of any op the replica is still holding; readers replay
+     * with some overlap before it as well, since a replica's own ops carry a locally
+     * estimated commit time until the server's arrives.
+     */
+    public void saveNoteCrdtSnapshot(String noteId, RgaDocument document, BooleanCallback callback) {
+        Map<String, Object> snapshot = document.toSnapshot();
+        long at = ((Number) snapshot.get("at")).longValue();
+        database.child(NOTE_CRDT_REF).child(noteId).child("snapshot")
+                .runTransaction(new Transaction.Handler() {
+                    @NonNull
+                    @Override
+                    public Transaction.Result doTransaction(@NonNull MutableData currentData) {
+                        Object storedAt = currentData.child("at").getValue();
+                        if (storedAt instanceof Number && ((Number) storedAt).longValue() >= at) {
+                            return Transaction.abort();
+                        }
+                        currentData.setValue(snapshot);
+                        return Transaction.success(currentData);
+                    }
+
+                    @Override
+                    public void onComplete(DatabaseError error, boolean committed, DataSnapshot currentData) {
+                        callback.onResult(error == null);
+                    }
+                }, false);
+    }
+
     // ===================== REAL-TIME LISTENERS =====================
 
     public void addNotesListener(String userId, ValueEventListener listener) {
-        database.child(NOTES_REF).orderByChild("userId").equalTo(userId)
-                .addValueEventListener(listener);
+        database.child(USER_NOTES_REF).child(userId).addValueEventListener(listener);
     }
 
     public void removeNotesListener(String userId, ValueEventListener listener) {
-        database.child(NOTES_REF).orderByChild("userId").equalTo(userId)
-                .removeEventListener(listener);
+        database.child(USER_NOTES_REF).child(userId).removeEventListener(listener);
+    }
+
+    // ===================== INCREMENTAL SYNC =====================
+
+    private interface SnapshotDecoder<T> {
+        T decode(DataSnapshot snapshot);
+    }
+
+    /**
+     * Live events for the user's {@code limit} most recently updated notes. A note
+     * pushed out of the window by a newer one arrives as REMOVED even though it still
+     * exists; see {@link #noteExists}.
+     */
+    public SyncRegistration syncNotes(String userId, int limit, SyncListener<NoteModel> listener) {
+        return syncQuery(notesByRecency(userId, null).limitToLast(limit),
+                snapshot -> {
+                    NoteModel note = decodeNote(snapshot);
+                    if (note != null) note.setId(snapshot.getKey());
+                    return note;
+                }, listener);
+    }
+
+    /**
+     * Live events for the user's pinned notes, however old, so they stay at the top
+     * when they fall outside the {@link #syncNotes} window. A note that is unpinned
+     * arrives as REMOVED; see {@link #noteExists}.
+     * Needs ".indexOn": ["isPinned"] on user_notes/$userId.
+     */
+    public SyncRegistration syncPinnedNotes(String userId, SyncListener<NoteModel> listener) {
+        return syncQuery(database.child(USER_NOTES_REF).child(userId).orderByChild("isPinned").equalTo(true),
+                snapshot -> {
+                    NoteModel note = decodeNote(snapshot);
+                    if (note != null) note.setId(snapshot.getKey());
+                    return note;
+                }, listener);
+    }
+
+    /**
+     * Streams the raw share records for a user; use {@link #hydrateSharedNotes}
+     * to fill in titles and owner names.
+     */
+    public SyncRegistration syncSharedNotes(String userId, SyncListener<SharedNoteModel> listener) {
+        return syncQuery(database.child(SHARED_NOTES_REF).orderByChild("sharedWithUserId").equalTo(userId),
+                snapshot -> {
+                    SharedNoteModel sharedNote = decodeSharedNote(snapshot);
+                    if (sharedNote != null) sharedNote.setId(snapshot.getKey());
+                    return sharedNote;
+                }, listener);
+    }
+
+    public SyncRegistration syncCategories(String userId, SyncListener<CategoryModel> listener) {
+        return syncQuery(database.child(CATEGORIES_REF).orderByChild("userId").equalTo(userId),
+                snapshot -> {
+                    CategoryModel category = decodeCategory(snapshot);
+                    if (category != null) category.setId(snapshot.getKey());
+                    return category;
+                }, listener);
+    }
+
+    /**
+     * Delivers one typed event per child change instead of re-sending the whole
+     * result set. onSynced fires after the children present at attach time.
+     *
+     * <p>Snapshots are decoded in order on a background lane; the listener is called
+     * on the main thread, never after {@link SyncRegistration#remove()}.
+     */
+    private <T> SyncRegistration syncQuery(Query query, SnapshotDecoder<T> decoder, SyncListener<T> listener) {
+        Executor lane = DatabaseExecutors.serial();
+        AtomicBoolean removed = new AtomicBoolean();
+        ChildEventListener childListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot snapshot, String previousChildName) {
+                deliver(SyncEvent.Type.ADDED, snapshot, previousChildName);
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, String previousChildName) {
+                deliver(SyncEvent.Type.CHANGED, snapshot, previousChildName);
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, String previousChildName) {
+                deliver(SyncEvent.Type.MOVED, snapshot, previousChildName);
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                String key = snapshot.getKey();
+                dispatch(() -> listener.onEvent(new SyncEvent<>(SyncEvent.Type.REMOVED, key, null, null)));
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                dispatch(() -> listener.onError(error.getMessage()));
+            }
+
+            private void deliver(SyncEvent.Type type, DataSnapshot snapshot, String previousChildName) {
+                lane.execute(() -> {
+                    T value = decoder.decode(snapshot);
+                    if (value != null) {
+                        post(() -> listener.onEvent(new SyncEvent<>(type, snapshot.getKey(), value, previousChildName)));
+                    }
+                });
+            }
+
+            // Queued behind pending decodes so events keep their order
+            private void dispatch(Runnable event) {
+                lane.execute(() -> post(event));
+            }
+
+            private void post(Runnable event) {
+                DatabaseExecutors.MAIN.execute(() -> {
+                    if (!removed.get()) event.run();
+                });
+            }
+        };
+        query.addChildEventListener(childListener);
+
+        // Value events for a query fire after its initial child events; the data is
+        // already held by the child listener, so this does not download it again.
+        DatabaseTasks.once(query).addOnCompleteListener(lane, synced -> DatabaseExecutors.MAIN.execute(() -> {
+            if (removed.get()) return;
+            if (synced.isSuccessful()) {
+                listener.onSynced();
+            } else {
+                listener.onError(DatabaseTasks.errorMessage(synced));
+            }
+        }));
+
+        return () -> {
+            removed.set(true);
+            query.removeEventListener(childListener);
+        };
     }
 }
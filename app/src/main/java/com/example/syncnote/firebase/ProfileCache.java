@@ -0,0 +1,316 @@
+package com.example.syncnote.firebase;
+
+import com.example.syncnote.models.UserProfileModel;
+import com.example.syncnote.utils.Clock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide cache of user_profiles/{id} for display lookups (share owners,
+ * collaborators, the share dialog). Each cached user holds a listener on its
+ * profile, so a rename reaches the cache without waiting for the TTL.
+ * Concurrent lookups for a user that is still loading share one fetch. Entries
+ * expire after {@code ttlMs}, and the least recently used entry is evicted once
+ * {@code maxEntries} are cached.
+ *
+ * <p>Profiles carry no credentials, so they can be held freely. Sign-in and
+ * password flows read the user record directly.
+ */
+public final class ProfileCache {
+
+    interface Source {
+        /**
+         * Starts watching a user's profile. The watcher gets the current value
+         * (null if there is none) first and then every change.
+         */
+        Watch watch(String userId, Watcher watcher);
+    }
+
+    interface Watch {
+        void cancel();
+    }
+
+    interface Watcher {
+        void onProfile(UserProfileModel profile);
+        void onError();
+    }
+
+    public interface ProfileCallback {
+        void onResult(UserProfileModel profile);
+    }
+
+    public interface ProfilesCallback {
+        void onResult(Map<String, UserProfileModel> profiles);
+    }
+
+    public static final class Stats {
+        public final long hits;
+        public final long misses;
+        public final long coalesced;
+        public final long evictions;
+        public final long invalidations;
+        public final long fetches;
+        public final long totalFetchMillis;
+        public final int size;
+
+        Stats(long hits, long misses, long coalesced, long evictions, long invalidations,
+              long fetches, long totalFetchMillis, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.coalesced = coalesced;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.fetches = fetches;
+            this.totalFetchMillis = totalFetchMillis;
+            this.size = size;
+        }
+
+        public double hitRate() {
+            long lookups = hits + misses + coalesced;
+            return lookups == 0 ? 0 : (double) (hits + coalesced) / lookups;
+        }
+
+        public double averageFetchMillis() {
+            return fetches == 0 ? 0 : (double) totalFetchMillis / fetches;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ProfileCache{size=%d, hitRate=%.2f, hits=%d, misses=%d, coalesced=%d, "
+                            + "evictions=%d, invalidations=%d, avgFetchMs=%.1f}",
+                    size, hitRate(), hits, misses, coalesced, evictions, invalidations, averageFetchMillis());
+        }
+    }
+
+    private static final class Entry {
+        final String userId;
+        UserProfileModel profile;
+        boolean loaded;
+        long expiresAt;
+        long fetchStartedAt;
+        Watch watch;
+        List<ProfileCallback> waiters = new ArrayList<>();
+
+        Entry(String userId) {
+            this.userId = userId;
+        }
+
+        String username() {
+            return profile != null ? profile.getUsername() : null;
+        }
+    }
+
+    private final Clock clock;
+    private final Source source;
+    private final long ttlMs;
+    private final int maxEntries;
+
+    // Access order, so the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, String> userIdsByUsername = new HashMap<>();
+
+    private long hits;
+    private long misses;
+    private long coalesced;
+    private long evictions;
+    private long invalidations;
+    private long fetches;
+    private long totalFetchMillis;
+
+    ProfileCache(Clock clock, Source source, long ttlMs, int maxEntries) {
+        this.clock = clock;
+        this.source = source;
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Delivers the user's profile, or null if there is none or the read failed.
+     */
+    public void getProfile(String userId, ProfileCallback callback) {
+        UserProfileModel cached;
+        Entry fetch = null;
+        synchronized (this) {
+            Entry entry = entries.get(userId);
+            if (entry != null && entry.loaded && clock.now() >= entry.expiresAt) {
+                remove(entry);
+                entry = null;
+            }
+
+            if (entry != null && entry.loaded) {
+                hits++;
+                cached = entry.profile;
+            } else if (entry != null) {
+                coalesced++;
+                entry.waiters.add(callback);
+                return;
+            } else {
+                misses++;
+                entry = new Entry(userId);
+                entry.waiters.add(callback);
+                entry.fetchStartedAt = clock.now();
+                entries.put(userId, entry);
+                evictOverflow();
+                fetch = entry;
+                cached = null;
+            }
+        }
+
+        if (fetch != null) {
+            Entry started = fetch;
+            Watch watch = source.watch(userId, new Watcher() {
+                @Override
+                public void onProfile(UserProfileModel profile) {
+                    onValue(started, profile);
+                }
+
+                @Override
+                public void onError() {
+                    onFailure(started);
+                }
+            });
+            synchronized (this) {
+                if (entries.get(userId) == started) {
+                    started.watch = watch;
+                    return;
+                }
+            }
+            // Dropped while the watch was being set up
+            watch.cancel();
+            return;
+        }
+        callback.onResult(cached);
+    }
+
+    /**
+     * Looks up several users at once; users without a profile are left out of the result.
+     */
+    public void getProfiles(Collection<String> userIds, ProfilesCallback callback) {
+        Map<String, UserProfileModel> results = new HashMap<>();
+        if (userIds.isEmpty()) {
+            callback.onResult(results);
+            return;
+        }
+        int[] remaining = {userIds.size()};
+        for (String userId : userIds) {
+            getProfile(userId, profile -> {
+                if (profile != null) {
+                    results.put(userId, profile);
+                }
+                if (--remaining[0] == 0) {
+                    callback.onResult(results);
+                }
+            });
+        }
+    }
+
+    /**
+     * The userId for a username seen by this cache, if its entry is still live.
+     */
+    public synchronized String peekUserId(String username) {
+        String userId = userIdsByUsername.get(username);
+        if (userId == null) return null;
+        Entry entry = entries.get(userId);
+        if (entry == null || !entry.loaded || clock.now() >= entry.expiresAt
+                || !username.equals(entry.username())) {
+            return null;
+        }
+        return userId;
+    }
+
+    public synchronized void invalidate(String userId) {
+        Entry entry = entries.get(userId);
+        if (entry != null && entry.loaded) {
+            invalidations++;
+            remove(entry);
+        }
+    }
+
+    public synchronized void clear() {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.loaded && entry.watch != null) {
+                entry.watch.cancel();
+                it.remove();
+            }
+        }
+        userIdsByUsername.clear();
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, coalesced, evictions, invalidations, fetches, totalFetchMillis,
+                entries.size());
+    }
+
+    private void onValue(Entry entry, UserProfileModel profile) {
+        List<ProfileCallback> waiters;
+        synchronized (this) {
+            if (entries.get(entry.userId) != entry) return;
+            long now = clock.now();
+            if (entry.loaded) {
+                // A later change on the watched node
+                invalidations++;
+                if (entry.username() != null) userIdsByUsername.remove(entry.username());
+            } else {
+                fetches++;
+                totalFetchMillis += now - entry.fetchStartedAt;
+            }
+            entry.profile = profile;
+            entry.loaded = true;
+            entry.expiresAt = now + ttlMs;
+            if (entry.username() != null) userIdsByUsername.put(entry.username(), entry.userId);
+            waiters = entry.waiters;
+            entry.waiters = new ArrayList<>();
+        }
+        for (ProfileCallback waiter : waiters) {
+            waiter.onResult(profile);
+        }
+    }
+
+    private void onFailure(Entry entry) {
+        List<ProfileCallback> waiters;
+        synchronized (this) {
+            if (entries.get(entry.userId) != entry) return;
+            remove(entry);
+            waiters = entry.waiters;
+            entry.waiters = new ArrayList<>();
+        }
+        for (ProfileCallback waiter : waiters) {
+            waiter.onResult(null);
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.userId);
+        if (entry.username() != null && entry.userId.equals(userIdsByUsername.get(entry.username()))) {
+            userIdsByUsername.remove(entry.username());
+        }
+        if (entry.watch != null) {
+            entry.watch.cancel();
+            entry.watch = null;
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            Entry eldest = it.next();
+            // Loading entries have callers waiting on them
+            if (!eldest.loaded) continue;
+            it.remove();
+            evictions++;
+            if (eldest.username() != null && eldest.userId.equals(userIdsByUsername.get(eldest.username()))) {
+                userIdsByUsername.remove(eldest.username());
+            }
+            if (eldest.watch != null) {
+                eldest.watch.cancel();
+            }
+        }
+    }
+}
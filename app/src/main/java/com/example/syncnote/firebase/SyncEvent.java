@@ -0,0 +1,43 @@
+package com.example.syncnote.firebase;
+
+/**
+ * A single child-level change to a synced collection.
+ * {@code value} is null for {@link Type#REMOVED} events.
+ */
+public class SyncEvent<T> {
+
+    public enum Type {
+        ADDED,
+        CHANGED,
+        MOVED,
+        REMOVED
+    }
+
+    private final Type type;
+    private final String key;
+    private final T value;
+    private final String previousKey;
+
+    public SyncEvent(Type type, String key, T value, String previousKey) {
+        this.type = type;
+        this.key = key;
+        this.value = value;
+        this.previousKey = previousKey;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public String getPreviousKey() {
+        return previousKey;
+    }
+}
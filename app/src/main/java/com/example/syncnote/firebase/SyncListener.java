@@ -0,0 +1,12 @@
+package com.example.syncnote.firebase;
+
+public interface SyncListener<T> {
+    void onEvent(SyncEvent<T> event);
+
+    /**
+     * Called once every child present at attach time has been delivered.
+     */
+    void onSynced();
+
+    void onError(String error);
+}
@@ -0,0 +1,8 @@
+package com.example.syncnote.firebase;
+
+/**
+ * Handle returned by the FirebaseManager sync methods; detaches the listener.
+ */
+public interface SyncRegistration {
+    void remove();
+}
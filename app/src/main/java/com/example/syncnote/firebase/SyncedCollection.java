@@ -0,0 +1,115 @@
+package com.example.syncnote.firebase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory keyed model that applies {@link SyncEvent} deltas one child at a time.
+ * Can be seeded from a local cache; live events always win over seeded values.
+ */
+public class SyncedCollection<T> {
+    private final Map<String, T> items = new LinkedHashMap<>();
+    // Keys that a live event has touched since the last reset
+    private final Set<String> liveKeys = new HashSet<>();
+    // Scopes whose live source has completed; cached values inside them can only be stale
+    private final List<Scope<T>> syncedScopes = new ArrayList<>();
+
+    /**
+     * Which values a live source is authoritative for.
+     */
+    public interface Scope<T> {
+        boolean contains(T value);
+    }
+
+    /**
+     * Applies a delta and returns whether the collection changed.
+     */
+    public boolean apply(SyncEvent<T> event) {
+        String key = event.getKey();
+        if (key == null) return false;
+
+        liveKeys.add(key);
+        switch (event.getType()) {
+            case ADDED:
+            case CHANGED:
+                items.put(key, event.getValue());
+                return true;
+            case REMOVED:
+                return items.remove(key) != null;
+            case MOVED:
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Adds cached values for keys no live event has delivered yet, except values inside
+     * a scope whose live source has already completed.
+     */
+    public boolean seed(Map<String, T> cached) {
+        boolean changed = false;
+        for (Map.Entry<String, T> entry : cached.entrySet()) {
+            if (liveKeys.contains(entry.getKey()) || items.containsKey(entry.getKey())
+                    || inSyncedScope(entry.getValue())) continue;
+            items.put(entry.getKey(), entry.getValue());
+            changed = true;
+        }
+        return changed;
+    }
+
+    private boolean inSyncedScope(T value) {
+        for (Scope<T> scope : syncedScopes) {
+            if (scope.contains(value)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drops every key that no live event has delivered and returns the dropped keys.
+     * Used once the initial sync completes to evict entries deleted while offline.
+     */
+    public List<String> retainLive() {
+        return retainLive(value -> true);
+    }
+
+    /**
+     * Like {@link #retainLive()}, but only for values inside {@code scope}: a live
+     * source that covers part of the data says nothing about the rest.
+     */
+    public List<String> retainLive(Scope<T> scope) {
+        List<String> stale = new ArrayList<>();
+        for (Map.Entry<String, T> entry : items.entrySet()) {
+            if (!liveKeys.contains(entry.getKey()) && scope.contains(entry.getValue())) {
+                stale.add(entry.getKey());
+            }
+        }
+        for (String key : stale) {
+            items.remove(key);
+        }
+        syncedScopes.add(scope);
+        return stale;
+    }
+
+    public T get(String key) {
+        return items.get(key);
+    }
+
+    public Collection<T> values() {
+        return items.values();
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public void clear() {
+        items.clear();
+        liveKeys.clear();
+        syncedScopes.clear();
+    }
+}
@@ -0,0 +1,382 @@
+package com.example.syncnote.firebase;
+
+import com.example.syncnote.utils.Clock;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Outbound multi-path updates, kept on the device until the server has them.
+ *
+ * <p>Callers hear {@link WriteCallback#onSavedLocally()} as soon as an update is
+ * queued and {@link WriteCallback#onSynced(boolean)} once the server answers, so
+ * nothing waits on the network to move on. Updates that share a key, e.g. one
+ * note's, go out one at a time: while one is unanswered the next is held. A later
+ * update to a path drops that path (and everything below it) from held updates, so
+ * a burst of saves or toggles sends only the last value.
+ *
+ * <p>After a disconnect, updates are also held for a short while so that offline
+ * bursts coalesce, then handed to the database client, which applies them to its
+ * cache and sends them on reconnect. Until the first disconnect is seen, updates
+ * are not held for connectivity at all.
+ *
+ * <p>With a {@link Store} attached, held updates survive a restart; once handed to
+ * the client, its own persistence takes over. Call from the main thread.
+ */
+public final class WriteQueue {
+
+    public interface WriteCallback {
+        /**
+         * The update is queued on the device and will reach the server in order.
+         */
+        void onSavedLocally();
+
+        /**
+         * The server stored the update, or rejected it.
+         */
+        void onSynced(boolean success);
+    }
+
+    public interface Store {
+        /**
+         * Delivers the persisted updates, oldest first, on the main thread.
+         */
+        void loadWrites(LoadCallback callback);
+
+        /**
+         * Stores or replaces the update with this sequence number.
+         */
+        void putWrite(long seq, String key, Map<String, Object> updates, long enqueuedAt);
+
+        void deleteWrite(long seq);
+    }
+
+    public interface LoadCallback {
+        void onLoaded(List<Stored> writes);
+    }
+
+    public static final class Stored {
+        public final long seq;
+        public final String key;
+        public final Map<String, Object> updates;
+        public final long enqueuedAt;
+
+        public Stored(long seq, String key, Map<String, Object> updates, long enqueuedAt) {
+            this.seq = seq;
+            this.key = key;
+            this.updates = updates;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    interface Sink {
+        void write(Map<String, Object> updates, Result result);
+    }
+
+    interface Result {
+        void onResult(boolean success);
+    }
+
+    public static final class Stats {
+        public final int depth;
+        public final long enqueued;
+        public final long coalescedPaths;
+        public final long synced;
+        public final long failed;
+        public final long replayed;
+        public final long totalReplayMillis;
+        public final long maxReplayMillis;
+
+        Stats(int depth, long enqueued, long coalescedPaths, long synced, long failed,
+              long replayed, long totalReplayMillis, long maxReplayMillis) {
+            this.depth = depth;
+            this.enqueued = enqueued;
+            this.coalescedPaths = coalescedPaths;
+            this.synced = synced;
+            this.failed = failed;
+            this.replayed = replayed;
+            this.totalReplayMillis = totalReplayMillis;
+            this.maxReplayMillis = maxReplayMillis;
+        }
+
+        /**
+         * Mean time from reconnect until the server confirmed an update made while offline.
+         */
+        public double averageReplayMillis() {
+            return replayed == 0 ? 0 : (double) totalReplayMillis / replayed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "WriteQueue{depth=%d, enqueued=%d, coalescedPaths=%d, synced=%d, failed=%d, "
+                            + "replayed=%d, avgReplayMs=%.1f, maxReplayMs=%d}",
+                    depth, enqueued, coalescedPaths, synced, failed, replayed, averageReplayMillis(),
+                    maxReplayMillis);
+        }
+    }
+
+    private static final class Entry {
+        long seq;
+        final String key;
+        final LinkedHashMap<String, Object> updates;
+        final long enqueuedAt;
+        final List<WriteCallback> callbacks = new ArrayList<>(1);
+        boolean sent;
+        // Made or held while offline, so it reaches the server on reconnect
+        boolean replay;
+        long sentAt;
+
+        Entry(long seq, String key, LinkedHashMap<String, Object> updates, long enqueuedAt) {
+            this.seq = seq;
+            this.key = key;
+            this.updates = updates;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private final Clock clock;
+    private final Sink sink;
+    private final long offlineHoldMs;
+    private final Runnable handOffTask = this::sendReady;
+    private Store store;
+    // Oldest first; sent entries stay until the server answers
+    private final List<Entry> entries = new ArrayList<>();
+    private long nextSeq = 1;
+    // The client reports "not connected" before its first connect; that is not an outage
+    private boolean connected = true;
+    private boolean seenConnected;
+    private long connectedAt;
+    // Set while persisted entries are loading; nothing is sent before they are in place
+    private boolean restoring;
+
+    private long enqueued;
+    private long coalescedPaths;
+    private long synced;
+    private long failed;
+    private long replayed;
+    private long totalReplayMillis;
+    private long maxReplayMillis;
+
+    /**
+     * @param offlineHoldMs how long an update made while offline waits to coalesce
+     *                      with later ones before it is handed to the client
+     */
+    WriteQueue(Clock clock, Sink sink, long offlineHoldMs) {
+        this.clock = clock;
+        this.sink = sink;
+        this.offlineHoldMs = offlineHoldMs;
+    }
+
+    /**
+     * Persists the queue in {@code store} and restores what an earlier process left
+     * in it. Attach before the first write.
+     */
+    public void attachStore(Store store) {
+        if (this.store != null) return;
+        this.store = store;
+        restoring = true;
+        store.loadWrites(writes -> {
+            List<Entry> restored = new ArrayList<>(writes.size());
+            for (Stored write : writes) {
+                Entry entry = new Entry(write.seq, write.key, new LinkedHashMap<>(write.updates), write.enqueuedAt);
+                entry.replay = true;
+                restored.add(entry);
+                nextSeq = Math.max(nextSeq, write.seq + 1);
+            }
+            // Updates queued while loading are newer; they go after, and supersede
+            List<Entry> queued = new ArrayList<>(entries);
+            entries.clear();
+            entries.addAll(restored);
+            restoring = false;
+            for (Entry entry : queued) {
+                entry.seq = nextSeq++;
+                coalesce(entry);
+                entries.add(entry);
+                store.putWrite(entry.seq, entry.key, entry.updates, entry.enqueuedAt);
+            }
+            sendReady();
+        });
+    }
+
+    /**
+     * Queues a multi-path update. Paths are absolute, as for updateChildren. Updates
+     * with the same non-null {@code key} are sent one at a time, in order.
+     */
+    public void enqueue(String key, Map<String, Object> updates, WriteCallback callback) {
+        LinkedHashMap<String, Object> normalized = new LinkedHashMap<>(updates.size());
+        for (Map.Entry<String, Object> update : updates.entrySet()) {
+            normalized.put(normalize(update.getKey()), update.getValue());
+        }
+        Entry entry = new Entry(nextSeq++, key, normalized, clock.now());
+        entry.replay = !connected;
+        if (callback != null) entry.callbacks.add(callback);
+        enqueued++;
+
+        coalesce(entry);
+        entries.add(entry);
+        if (store != null && !restoring) {
+            store.putWrite(entry.seq, entry.key, entry.updates, entry.enqueuedAt);
+        }
+        if (callback != null) callback.onSavedLocally();
+        sendReady();
+    }
+
+    public void setConnected(boolean connected) {
+        if (!connected && !seenConnected) return;
+        seenConnected |= connected;
+        if (this.connected == connected) return;
+        this.connected = connected;
+        if (connected) connectedAt = clock.now();
+        sendReady();
+    }
+
+    /**
+     * Drops held updates to {@code path} and below, e.g. for a note that is being
+     * deleted. Their callbacks hear {@code onSynced(false)}.
+     */
+    public void discard(String path) {
+        String prefix = normalize(path);
+        List<WriteCallback> dropped = new ArrayList<>();
+        for (Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.sent) continue;
+            removeCovered(entry, prefix);
+            if (entry.updates.isEmpty()) {
+                it.remove();
+                dropped.addAll(entry.callbacks);
+                if (store != null) store.deleteWrite(entry.seq);
+            } else if (store != null) {
+                store.putWrite(entry.seq, entry.key, entry.updates, entry.enqueuedAt);
+            }
+        }
+        for (WriteCallback callback : dropped) {
+            callback.onSynced(false);
+        }
+    }
+
+    public int depth() {
+        return entries.size();
+    }
+
+    public Stats getStats() {
+        return new Stats(entries.size(), enqueued, coalescedPaths, synced, failed, replayed,
+                totalReplayMillis, maxReplayMillis);
+    }
+
+    /**
+     * Removes from held entries every path the new entry overwrites. The new entry
+     * is the latest write to those paths, so the earlier values can never show.
+     * An entry left empty is dropped, and its callbacks follow the new entry.
+     */
+    private void coalesce(Entry newer) {
+        for (Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+            Entry older = it.next();
+            if (older.sent) continue;
+
+            int removed = 0;
+            for (String path : newer.updates.keySet()) {
+                removed += removeCovered(older, path);
+            }
+            if (removed == 0) continue;
+
+            coalescedPaths += removed;
+            newer.replay |= older.replay;
+            if (older.updates.isEmpty()) {
+                it.remove();
+                newer.callbacks.addAll(0, older.callbacks);
+                if (store != null && !restoring) store.deleteWrite(older.seq);
+            } else if (store != null && !restoring) {
+                store.putWrite(older.seq, older.key, older.updates, older.enqueuedAt);
+            }
+        }
+    }
+
+    /**
+     * Sends what may go now, in order; the database applies one client's writes in
+     * the order it receives them. Online, an update waits while an earlier one with
+     * its key is unanswered. Offline, updates go to the client once held long enough.
+     */
+    private void sendReady() {
+        if (restoring) return;
+        clock.cancel(handOffTask);
+        long now = clock.now();
+        long nextHandOff = Long.MAX_VALUE;
+        Set<String> busyKeys = new HashSet<>();
+        for (Entry entry : entries) {
+            if (entry.sent && entry.key != null) busyKeys.add(entry.key);
+        }
+        for (Entry entry : new ArrayList<>(entries)) {
+            if (entry.sent) continue;
+            if (connected) {
+                if (entry.key != null && !busyKeys.add(entry.key)) continue;
+                send(entry);
+            } else if (now - entry.enqueuedAt >= offlineHoldMs) {
+                // Nothing is on the wire while offline, so keys do not hold this back
+                send(entry);
+            } else {
+                nextHandOff = Math.min(nextHandOff, entry.enqueuedAt + offlineHoldMs);
+            }
+        }
+        if (nextHandOff != Long.MAX_VALUE) {
+            clock.schedule(handOffTask, nextHandOff - now);
+        }
+    }
+
+    private void send(Entry entry) {
+        entry.sent = true;
+        entry.sentAt = clock.now();
+        // The client persists what it has been given, so the row would only replay it twice
+        if (store != null) store.deleteWrite(entry.seq);
+        sink.write(new LinkedHashMap<>(entry.updates), success -> onResult(entry, success));
+    }
+
+    private void onResult(Entry entry, boolean success) {
+        if (!entries.remove(entry)) return;
+
+        if (success) {
+            synced++;
+            if (entry.replay) {
+                long latency = clock.now() - Math.max(entry.sentAt, connectedAt);
+                replayed++;
+                totalReplayMillis += latency;
+                maxReplayMillis = Math.max(maxReplayMillis, latency);
+            }
+        } else {
+            failed++;
+        }
+        for (WriteCallback callback : entry.callbacks) {
+            callback.onSynced(success);
+        }
+        sendReady();
+    }
+
+    private static int removeCovered(Entry entry, String path) {
+        int removed = 0;
+        for (Iterator<String> it = entry.updates.keySet().iterator(); it.hasNext(); ) {
+            if (covers(path, it.next())) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    // True if writing {@code path} overwrites {@code key}
+    private static boolean covers(String path, String key) {
+        return key.equals(path) || key.startsWith(path.equals("/") ? "/" : path + "/");
+    }
+
+    private static String normalize(String path) {
+        String normalized = path.startsWith("/") ? path : "/" + path;
+        while (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+}
@@ -0,0 +1,508 @@
+package com.example.syncnote.local;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+
+import com.example.syncnote.firebase.WriteQueue;
+import com.example.syncnote.models.CategoryModel;
+import com.example.syncnote.models.NoteModel;
+import com.example.syncnote.models.SharedNoteModel;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On-device mirror of the user's notes, shares and categories.
+ * HomeActivity paints from here; Firebase keeps it up to date in the background.
+ */
+public class LocalNoteStore extends SQLiteOpenHelper implements WriteQueue.Store {
+    private static final String DATABASE_NAME = "syncnote_local.db";
+    private static final int DATABASE_VERSION = 4;
+
+    private static final String TABLE_NOTES = "notes";
+    private static final String TABLE_NOTES_FTS = "notes_fts";
+    private static final String TABLE_SHARED_NOTES = "shared_notes";
+    private static final String TABLE_CATEGORIES = "categories";
+    // Writes not yet confirmed by the server; unlike the tables above this is not a cache
+    private static final String TABLE_OUTBOUND_WRITES = "outbound_writes";
+
+    private static final String TAG_SEPARATOR = "\u001F";
+
+    private static LocalNoteStore instance;
+
+    // All disk access runs serially off the main thread
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public interface NotesCallback {
+        void onResult(List<NoteModel> notes);
+    }
+
+    public interface SharedNotesCallback {
+        void onResult(List<SharedNoteModel> sharedNotes);
+    }
+
+    public interface CategoriesCallback {
+        void onResult(List<CategoryModel> categories);
+    }
+
+    // Package-private so tests can open a store of their own
+    LocalNoteStore(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    public static synchronized LocalNoteStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocalNoteStore(context);
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_NOTES + " ("
+                + "id TEXT PRIMARY KEY, "
+                + "user_id TEXT, "
+                + "title TEXT, "
+                + "content TEXT, "
+                + "html_content TEXT, "
+                + "preview TEXT, "
+                + "created_at INTEGER, "
+                + "updated_at INTEGER, "
+                + "last_updated_by TEXT, "
+                + "last_updated_by_username TEXT, "
+                + "is_pinned INTEGER, "
+                + "color TEXT, "
+                + "category TEXT, "
+                + "share_link TEXT, "
+                + "tags TEXT)");
+        // Covers the home screen query: one user's notes, pinned first, newest first
+        db.execSQL("CREATE INDEX idx_notes_user_order ON " + TABLE_NOTES
+                + " (user_id, is_pinned DESC, updated_at DESC)");
+
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_NOTES_FTS
+                + " USING fts4(note_id, user_id, title, content)");
+
+        db.execSQL("CREATE TABLE " + TABLE_SHARED_NOTES + " ("
+                + "id TEXT PRIMARY KEY, "
+                + "note_id TEXT, "
+                + "owner_id TEXT, "
+                + "shared_with_user_id TEXT, "
+                + "permission TEXT, "
+                + "shared_at INTEGER, "
+                + "note_title TEXT, "
+                + "note_content TEXT, "
+                + "owner_username TEXT)");
+        db.execSQL("CREATE INDEX idx_shared_notes_user_order ON " + TABLE_SHARED_NOTES
+                + " (shared_with_user_id, shared_at DESC)");
+
+        db.execSQL("CREATE TABLE " + TABLE_CATEGORIES + " ("
+                + "id TEXT PRIMARY KEY, "
+                + "user_id TEXT, "
+                + "name TEXT, "
+                + "color TEXT, "
+                + "note_count INTEGER, "
+                + "created_at INTEGER)");
+        db.execSQL("CREATE INDEX idx_categories_user ON " + TABLE_CATEGORIES + " (user_id)");
+
+        createOutboundWrites(db);
+    }
+
+    private static void createOutboundWrites(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_OUTBOUND_WRITES + " ("
+                + "seq INTEGER PRIMARY KEY, "
+                + "write_key TEXT, "
+                + "updates TEXT, "
+                + "enqueued_at INTEGER)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The cached tables are simply rebuilt from Firebase; queued writes are kept
+        if (oldVersion == 3) {
+            db.execSQL("ALTER TABLE " + TABLE_OUTBOUND_WRITES + " ADD COLUMN write_key TEXT");
+        }
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NOTES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NOTES_FTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SHARED_NOTES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_CATEGORIES);
+        onCreate(db);
+    }
+
+    // ===================== ASYNC ACCESS =====================
+
+    public void loadNotes(String userId, NotesCallback callback) {
+        ioExecutor.execute(() -> {
+            List<NoteModel> notes = getNotesForUser(userId);
+            mainHandler.post(() -> callback.onResult(notes));
+        });
+    }
+
+    public void loadSharedNotes(String userId, SharedNotesCallback callback) {
+        ioExecutor.execute(() -> {
+            List<SharedNoteModel> sharedNotes = getSharedNotesForUser(userId);
+            mainHandler.post(() -> callback.onResult(sharedNotes));
+        });
+    }
+
+    public void loadCategories(String userId, CategoriesCallback callback) {
+        ioExecutor.execute(() -> {
+            List<CategoryModel> categories = getCategoriesForUser(userId);
+            mainHandler.post(() -> callback.onResult(categories));
+        });
+    }
+
+    public void searchNotes(String userId, String query, NotesCallback callback) {
+        ioExecutor.execute(() -> {
+            List<NoteModel> notes = queryNotesFullText(userId, query);
+            mainHandler.post(() -> callback.onResult(notes));
+        });
+    }
+
+    /**
+     * Runs a write on the store's I/O thread. Writes are applied in submission order.
+     */
+    public void execute(Runnable write) {
+        ioExecutor.execute(write);
+    }
+
+    // ===================== NOTES =====================
+
+    public List<NoteModel> getNotesForUser(String userId) {
+        List<NoteModel> notes = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_NOTES, null,
+                "user_id = ?", new String[]{userId}, null, null,
+                "is_pinned DESC, updated_at DESC")) {
+            while (cursor.moveToNext()) {
+                notes.add(readNote(cursor));
+            }
+        }
+        return notes;
+    }
+
+    public List<NoteModel> queryNotesFullText(String userId, String query) {
+        List<NoteModel> notes = new ArrayList<>();
+        String match = toMatchExpression(query);
+        if (match.isEmpty()) {
+            return getNotesForUser(userId);
+        }
+
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT n.* FROM " + TABLE_NOTES + " n JOIN " + TABLE_NOTES_FTS + " f"
+                        + " ON f.note_id = n.id"
+                        + " WHERE " + TABLE_NOTES_FTS + " MATCH ? AND f.user_id = ?"
+                        + " ORDER BY n.is_pinned DESC, n.updated_at DESC",
+                new String[]{match, userId})) {
+            while (cursor.moveToNext()) {
+                notes.add(readNote(cursor));
+            }
+        }
+        return notes;
+    }
+
+    public void upsertNote(NoteModel note) {
+        if (note == null || note.getId() == null) return;
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            writeNote(db, note);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void deleteNote(String noteId) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_NOTES, "id = ?", new String[]{noteId});
+            db.delete(TABLE_NOTES_FTS, "note_id = ?", new String[]{noteId});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void writeNote(SQLiteDatabase db, NoteModel note) {
+        boolean hasBody = note.getContent() != null || note.getHtmlContent() != null;
+        ContentValues values = new ContentValues();
+        values.put("id", note.getId());
+        values.put("user_id", note.getUserId());
+        values.put("title", note.getTitle());
+        if (hasBody) {
+            values.put("content", note.getContent());
+            values.put("html_content", note.getHtmlContent());
+        }
+        values.put("preview", note.getPreview());
+        values.put("created_at", note.getCreatedAt());
+        values.put("updated_at", note.getUpdatedAt());
+        values.put("last_updated_by", note.getLastUpdatedBy());
+        values.put("last_updated_by_username", note.getLastUpdatedByUsername());
+        values.put("is_pinned", note.isPinned() ? 1 : 0);
+        values.put("color", note.getColor());
+        values.put("category", note.getCategory());
+        values.put("share_link", note.getShareLink());
+        values.put("tags", TextUtils.join(TAG_SEPARATOR, note.getTags()));
+        // Synced notes arrive without their body; an existing row keeps the body cached
+        // when the note was last opened or saved
+        String[] idArg = {note.getId()};
+        if (hasBody || db.update(TABLE_NOTES, values, "id = ?", idArg) == 0) {
+            db.insertWithOnConflict(TABLE_NOTES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        }
+
+        db.delete(TABLE_NOTES_FTS, "note_id = ?", idArg);
+        // Indexes the cached body, or the preview when there is none
+        db.execSQL("INSERT INTO " + TABLE_NOTES_FTS + " (note_id, user_id, title, content)"
+                + " SELECT id, user_id, title, COALESCE(content, preview) FROM " + TABLE_NOTES
+                + " WHERE id = ?", idArg);
+    }
+
+    private NoteModel readNote(Cursor cursor) {
+        NoteModel note = new NoteModel();
+        note.setId(cursor.getString(cursor.getColumnIndexOrThrow("id")));
+        note.setUserId(cursor.getString(cursor.getColumnIndexOrThrow("user_id")));
+        note.setTitle(cursor.getString(cursor.getColumnIndexOrThrow("title")));
+        note.setContent(cursor.getString(cursor.getColumnIndexOrThrow("content")));
+        note.setHtmlContent(cursor.getString(cursor.getColumnIndexOrThrow("html_content")));
+        note.setPreview(cursor.getString(cursor.getColumnIndexOrThrow("preview")));
+        note.setCreatedAt(cursor.getLong(cursor.getColumnIndexOrThrow("created_at")));
+        note.setLastUpdatedBy(cursor.getString(cursor.getColumnIndexOrThrow("last_updated_by")));
+        note.setLastUpdatedByUsername(cursor.getString(cursor.getColumnIndexOrThrow("last_updated_by_username")));
+        note.setPinned(cursor.getInt(cursor.getColumnIndexOrThrow("is_pinned")) == 1);
+        note.setColor(cursor.getString(cursor.getColumnIndexOrThrow("color")));
+        note.setCategory(cursor.getString(cursor.getColumnIndexOrThrow("category")));
+        note.setShareLink(cursor.getString(cursor.getColumnIndexOrThrow("share_link")));
+        String tags = cursor.getString(cursor.getColumnIndexOrThrow("tags"));
+        note.setTags(tags == null || tags.isEmpty()
+                ? new ArrayList<>() : new ArrayList<>(Arrays.asList(tags.split(TAG_SEPARATOR))));
+        // Set last: setTitle/setContent bump updatedAt
+        note.setUpdatedAt(cursor.getLong(cursor.getColumnIndexOrThrow("updated_at")));
+        return note;
+    }
+
+    private static String toMatchExpression(String query) {
+        StringBuilder match = new StringBuilder();
+        for (String term : query.trim().split("\\s+")) {
+            String cleaned = term.replaceAll("[^\\p{L}\\p{N}]", "");
+            if (cleaned.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append(cleaned).append('*');
+        }
+        return match.toString();
+    }
+
+    // ===================== SHARED NOTES =====================
+
+    public List<SharedNoteModel> getSharedNotesForUser(String userId) {
+        List<SharedNoteModel> sharedNotes = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SHARED_NOTES, null,
+                "shared_with_user_id = ?", new String[]{userId}, null, null, "shared_at DESC")) {
+            while (cursor.moveToNext()) {
+                SharedNoteModel sharedNote = new SharedNoteModel();
+                sharedNote.setId(cursor.getString(cursor.getColumnIndexOrThrow("id")));
+                sharedNote.setNoteId(cursor.getString(cursor.getColumnIndexOrThrow("note_id")));
+                sharedNote.setOwnerId(cursor.getString(cursor.getColumnIndexOrThrow("owner_id")));
+                sharedNote.setSharedWithUserId(cursor.getString(cursor.getColumnIndexOrThrow("shared_with_user_id")));
+                sharedNote.setPermission(cursor.getString(cursor.getColumnIndexOrThrow("permission")));
+                sharedNote.setSharedAt(cursor.getLong(cursor.getColumnIndexOrThrow("shared_at")));
+                sharedNote.setNoteTitle(cursor.getString(cursor.getColumnIndexOrThrow("note_title")));
+                sharedNote.setNoteContent(cursor.getString(cursor.getColumnIndexOrThrow("note_content")));
+                sharedNote.setOwnerUsername(cursor.getString(cursor.getColumnIndexOrThrow("owner_username")));
+                sharedNotes.add(sharedNote);
+            }
+        }
+        return sharedNotes;
+    }
+
+    public void upsertSharedNote(SharedNoteModel sharedNote) {
+        if (sharedNote == null || sharedNote.getId() == null) return;
+        getWritableDatabase().insertWithOnConflict(TABLE_SHARED_NOTES, null,
+                toValues(sharedNote), SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    public void deleteSharedNote(String shareId) {
+        getWritableDatabase().delete(TABLE_SHARED_NOTES, "id = ?", new String[]{shareId});
+    }
+
+    private ContentValues toValues(SharedNoteModel sharedNote) {
+        ContentValues values = new ContentValues();
+        values.put("id", sharedNote.getId());
+        values.put("note_id", sharedNote.getNoteId());
+        values.put("owner_id", sharedNote.getOwnerId());
+        values.put("shared_with_user_id", sharedNote.getSharedWithUserId());
+        values.put("permission", sharedNote.getPermission());
+        values.put("shared_at", sharedNote.getSharedAt());
+        values.put("note_title", sharedNote.getNoteTitle());
+        values.put("note_content", sharedNote.getNoteContent());
+        values.put("owner_username", sharedNote.getOwnerUsername());
+        return values;
+    }
+
+    // ===================== CATEGORIES =====================
+
+    public List<CategoryModel> getCategoriesForUser(String userId) {
+        List<CategoryModel> categories = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_CATEGORIES, null,
+                "user_id = ?", new String[]{userId}, null, null, "created_at ASC")) {
+            while (cursor.moveToNext()) {
+                CategoryModel category = new CategoryModel();
+                category.setId(cursor.getString(cursor.getColumnIndexOrThrow("id")));
+                category.setUserId(cursor.getString(cursor.getColumnIndexOrThrow("user_id")));
+                category.setName(cursor.getString(cursor.getColumnIndexOrThrow("name")));
+                category.setColor(cursor.getString(cursor.getColumnIndexOrThrow("color")));
+                category.setNoteCount(cursor.getInt(cursor.getColumnIndexOrThrow("note_count")));
+                category.setCreatedAt(cursor.getLong(cursor.getColumnIndexOrThrow("created_at")));
+                categories.add(category);
+            }
+        }
+        return categories;
+    }
+
+    public void upsertCategory(CategoryModel category) {
+        if (category == null || category.getId() == null) return;
+
+        ContentValues values = new ContentValues();
+        values.put("id", category.getId());
+        values.put("user_id", category.getUserId());
+        values.put("name", category.getName());
+        values.put("color", category.getColor());
+        values.put("note_count", category.getNoteCount());
+        values.put("created_at", category.getCreatedAt());
+        getWritableDatabase().insertWithOnConflict(TABLE_CATEGORIES, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    public void deleteCategory(String categoryId) {
+        getWritableDatabase().delete(TABLE_CATEGORIES, "id = ?", new String[]{categoryId});
+    }
+
+    // ===================== OUTBOUND WRITES =====================
+
+    @Override
+    public void loadWrites(WriteQueue.LoadCallback callback) {
+        ioExecutor.execute(() -> {
+            List<WriteQueue.Stored> writes = new ArrayList<>();
+            try (Cursor cursor = getReadableDatabase().query(TABLE_OUTBOUND_WRITES, null,
+                    null, null, null, null, "seq ASC")) {
+                while (cursor.moveToNext()) {
+                    try {
+                        Map<String, Object> updates = fromJson(new JSONObject(
+                                cursor.getString(cursor.getColumnIndexOrThrow("updates"))));
+                        writes.add(new WriteQueue.Stored(cursor.getLong(cursor.getColumnIndexOrThrow("seq")),
+                                cursor.getString(cursor.getColumnIndexOrThrow("write_key")), updates,
+                                cursor.getLong(cursor.getColumnIndexOrThrow("enqueued_at"))));
+                    } catch (JSONException e) {
+                        // Unreadable rows are skipped; the server copy stands
+                    }
+                }
+            }
+            mainHandler.post(() -> callback.onLoaded(writes));
+        });
+    }
+
+    @Override
+    public void putWrite(long seq, String key, Map<String, Object> updates, long enqueuedAt) {
+        ContentValues values = new ContentValues();
+        values.put("seq", seq);
+        values.put("write_key", key);
+        values.put("updates", toJson(updates).toString());
+        values.put("enqueued_at", enqueuedAt);
+        ioExecutor.execute(() -> getWritableDatabase().insertWithOnConflict(TABLE_OUTBOUND_WRITES, null,
+                values, SQLiteDatabase.CONFLICT_REPLACE));
+    }
+
+    @Override
+    public void deleteWrite(long seq) {
+        ioExecutor.execute(() -> getWritableDatabase().delete(TABLE_OUTBOUND_WRITES, "seq = ?",
+                new String[]{Long.toString(seq)}));
+    }
+
+    // Explicit nulls matter here (they delete), so they are kept as JSONObject.NULL
+    @SuppressWarnings("unchecked")
+    private static Object toJson(Object value) {
+        if (value == null) return JSONObject.NULL;
+        if (value instanceof Map) {
+            JSONObject object = new JSONObject();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                try {
+                    object.put(entry.getKey(), toJson(entry.getValue()));
+                } catch (JSONException e) {
+                    throw new IllegalArgumentException("Not storable: " + entry.getKey(), e);
+                }
+            }
+            return object;
+        }
+        if (value instanceof List) {
+            JSONArray array = new JSONArray();
+            for (Object item : (List<Object>) value) {
+                array.put(toJson(item));
+            }
+            return array;
+        }
+        return value;
+    }
+
+    private static Map<String, Object> fromJson(JSONObject object) throws JSONException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (Iterator<String> keys = object.keys(); keys.hasNext(); ) {
+            String key = keys.next();
+            map.put(key, fromJsonValue(object.get(key)));
+        }
+        return map;
+    }
+
+    private static Object fromJsonValue(Object value) throws JSONException {
+        if (value == JSONObject.NULL) return null;
+        if (value instanceof JSONObject) return fromJson((JSONObject) value);
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            List<Object> list = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                list.add(fromJsonValue(array.get(i)));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    // ===================== SESSION =====================
+
+    /**
+     * Drops all cached data and queued writes, e.g. on logout.
+     */
+    public void clearAll() {
+        ioExecutor.execute(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(TABLE_NOTES, null, null);
+                db.delete(TABLE_NOTES_FTS, null, null);
+                db.delete(TABLE_SHARED_NOTES, null, null);
+                db.delete(TABLE_CATEGORIES, null, null);
+                // Another account signing in next must not replay this one's writes
+                db.delete(TABLE_OUTBOUND_WRITES, null, null);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        });
+    }
+}
@@ -0,0 +1,411 @@
+package com.example.syncnote.local;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.syncnote.firebase.FirebaseManager;
+import com.example.syncnote.firebase.SyncEvent;
+import com.example.syncnote.firebase.SyncListener;
+import com.example.syncnote.firebase.SyncRegistration;
+import com.example.syncnote.firebase.SyncedCollection;
+import com.example.syncnote.models.CategoryModel;
+import com.example.syncnote.models.NoteModel;
+import com.example.syncnote.models.SharedNoteModel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps in-memory models of one user's notes, shares and categories current from
+ * Firebase child events, and mirrors every delta into {@link LocalNoteStore}.
+ * The models are seeded from disk so the first paint does not wait on the network.
+ */
+public class LocalStoreSync {
+    // Coalesces the initial flood of child events into one repaint
+    private static final long CHANGE_NOTIFY_DELAY_MS = 150;
+    // Notes are synced live for the newest page and fetched page by page beyond it;
+    // pinned notes are synced live whatever their age
+    public static final int NOTES_PAGE_SIZE = 50;
+
+    private final FirebaseManager firebaseManager;
+    private final LocalNoteStore store;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable notifyChanged = this::dispatchChanged;
+    private final Runnable hydratePending = this::hydratePendingShares;
+
+    private final SyncedCollection<NoteModel> notes = new SyncedCollection<>();
+    private final SyncedCollection<SharedNoteModel> sharedNotes = new SyncedCollection<>();
+    private final SyncedCollection<CategoryModel> categories = new SyncedCollection<>();
+    // Raw share records waiting for a batched title/owner lookup
+    private final Map<String, SharedNoteModel> pendingShares = new LinkedHashMap<>();
+
+    private final List<SyncRegistration> registrations = new ArrayList<>();
+    private String userId;
+    private OnStoreChangedListener listener;
+    // List key of the oldest note confirmed by the server; older pages start below it
+    private String oldestLoadedKey;
+    private boolean hasMoreNotes = false;
+    private boolean loadingMoreNotes = false;
+    private int initialWindowCount = 0;
+    private boolean windowSynced = false;
+
+    public interface OnStoreChangedListener {
+        void onStoreChanged();
+    }
+
+    public LocalStoreSync(FirebaseManager firebaseManager, LocalNoteStore store) {
+        this.firebaseManager = firebaseManager;
+        this.store = store;
+    }
+
+    public void start(String userId, OnStoreChangedListener listener) {
+        this.listener = listener;
+        if (userId == null || userId.equals(this.userId)) {
+            scheduleNotify();
+            return;
+        }
+        stop();
+
+        this.userId = userId;
+        this.listener = listener;
+
+        // Seed from disk; live events that arrive first take precedence
+        store.loadNotes(userId, cached -> {
+            if (!userId.equals(this.userId)) return;
+            Map<String, NoteModel> byId = new HashMap<>();
+            for (NoteModel note : cached) byId.put(note.getId(), note);
+            notes.seed(byId);
+            scheduleNotify();
+        });
+        store.loadSharedNotes(userId, cached -> {
+            if (!userId.equals(this.userId)) return;
+            Map<String, SharedNoteModel> byId = new HashMap<>();
+            for (SharedNoteModel sharedNote : cached) byId.put(sharedNote.getId(), sharedNote);
+            sharedNotes.seed(byId);
+            scheduleNotify();
+        });
+        store.loadCategories(userId, cached -> {
+            if (!userId.equals(this.userId)) return;
+            Map<String, CategoryModel> byId = new HashMap<>();
+            for (CategoryModel category : cached) byId.put(category.getId(), category);
+            categories.seed(byId);
+            scheduleNotify();
+        });
+
+        // Notes are read from the user's partition, which is complete only once migrated;
+        // until then the list shows what is on disk
+        registrations.add(firebaseManager.whenNotesPartitioned(userId, () -> {
+            registrations.add(firebaseManager.syncNotes(userId, NOTES_PAGE_SIZE, notesListener));
+            registrations.add(firebaseManager.syncPinnedNotes(userId, pinnedNotesListener));
+        }));
+        registrations.add(firebaseManager.syncSharedNotes(userId, sharedNotesListener));
+        registrations.add(firebaseManager.syncCategories(userId, categoriesListener));
+    }
+
+    public void stop() {
+        for (SyncRegistration registration : registrations) {
+            registration.remove();
+        }
+        registrations.clear();
+        mainHandler.removeCallbacks(notifyChanged);
+        mainHandler.removeCallbacks(hydratePending);
+        pendingShares.clear();
+        oldestLoadedKey = null;
+        hasMoreNotes = false;
+        loadingMoreNotes = false;
+        initialWindowCount = 0;
+        windowSynced = false;
+        notes.clear();
+        sharedNotes.clear();
+        categories.clear();
+        userId = null;
+        listener = null;
+    }
+
+    public List<NoteModel> getNotes() {
+        return new ArrayList<>(notes.values());
+    }
+
+    public boolean hasMoreNotes() {
+        return hasMoreNotes;
+    }
+
+    /**
+     * Fetches the next page of older notes below everything loaded so far. Cached
+     * notes in that range that the server no longer returns are evicted.
+     */
+    public void loadMoreNotes() {
+        String currentUserId = userId;
+        String cursor = oldestLoadedKey;
+        if (currentUserId == null || cursor == null || !hasMoreNotes || loadingMoreNotes) return;
+
+        loadingMoreNotes = true;
+        firebaseManager.getNotesPage(currentUserId, cursor, NOTES_PAGE_SIZE, new FirebaseManager.NotesPageCallback() {
+            @Override
+            public void onSuccess(List<NoteModel> page, String nextCursor) {
+                if (!currentUserId.equals(userId)) return;
+                loadingMoreNotes = false;
+                for (NoteModel note : page) {
+                    notes.apply(new SyncEvent<>(SyncEvent.Type.ADDED, note.getId(), note, null));
+                }
+                String pageBottom = nextCursor != null ? nextCursor : "";
+                List<String> stale = notes.retainLive(note -> {
+                    String key = listKey(note);
+                    return key.compareTo(cursor) < 0 && key.compareTo(pageBottom) >= 0;
+                });
+                store.execute(() -> {
+                    for (NoteModel note : page) store.upsertNote(note);
+                    for (String noteId : stale) store.deleteNote(noteId);
+                });
+
+                hasMoreNotes = nextCursor != null;
+                if (nextCursor != null) oldestLoadedKey = nextCursor;
+                scheduleNotify();
+            }
+
+            @Override
+            public void onError(String error) {
+                loadingMoreNotes = false;
+            }
+        });
+    }
+
+    private static String listKey(NoteModel note) {
+        return FirebaseManager.noteListKey(note.getUserId() != null ? note.getUserId() : "", note.getUpdatedAt());
+    }
+
+    public List<SharedNoteModel> getSharedNotes() {
+        List<SharedNoteModel> result = new ArrayList<>(sharedNotes.size());
+        for (SharedNoteModel sharedNote : sharedNotes.values()) {
+            // Shares whose note or owner has not been resolved yet are not shown
+            if (sharedNote.getOwnerUsername() != null) {
+                result.add(sharedNote);
+            }
+        }
+        result.sort((s1, s2) -> Long.compare(s2.getSharedAt(), s1.getSharedAt()));
+        return result;
+    }
+
+    public List<CategoryModel> getCategories() {
+        return new ArrayList<>(categories.values());
+    }
+
+    /**
+     * Share events only carry the share record, and a note's title can change without
+     * touching it, so this re-hydrates every share the model holds.
+     */
+    public void refreshSharedNotes() {
+        for (SharedNoteModel sharedNote : sharedNotes.values()) {
+            pendingShares.put(sharedNote.getId(), sharedNote);
+        }
+        mainHandler.removeCallbacks(hydratePending);
+        mainHandler.post(hydratePending);
+    }
+
+    private void hydratePendingShares() {
+        String currentUserId = userId;
+        if (currentUserId == null || pendingShares.isEmpty()) return;
+
+        List<SharedNoteModel> batch = new ArrayList<>(pendingShares.values());
+        pendingShares.clear();
+        firebaseManager.hydrateSharedNotes(batch, new FirebaseManager.SharedNotesCallback() {
+            @Override
+            public void onSuccess(List<SharedNoteModel> hydrated) {
+                if (!currentUserId.equals(userId)) return;
+                for (SharedNoteModel sharedNote : hydrated) {
+                    // Skip shares that were removed while the lookup was in flight
+                    if (sharedNotes.get(sharedNote.getId()) == null) continue;
+                    sharedNotes.apply(new SyncEvent<>(SyncEvent.Type.CHANGED, sharedNote.getId(), sharedNote, null));
+                    store.execute(() -> store.upsertSharedNote(sharedNote));
+                }
+                scheduleNotify();
+            }
+
+            @Override
+            public void onError(String error) {
+                // Keep showing the cached shares
+            }
+        });
+    }
+
+    private void scheduleNotify() {
+        mainHandler.removeCallbacks(notifyChanged);
+        mainHandler.postDelayed(notifyChanged, CHANGE_NOTIFY_DELAY_MS);
+    }
+
+    private void dispatchChanged() {
+        if (listener != null) {
+            listener.onStoreChanged();
+        }
+    }
+
+    private final SyncListener<NoteModel> notesListener = new SyncListener<NoteModel>() {
+        @Override
+        public void onEvent(SyncEvent<NoteModel> event) {
+            String noteId = event.getKey();
+            if (event.getType() == SyncEvent.Type.REMOVED) {
+                // Either deleted or pushed out of the live window by a newer note
+                String currentUserId = userId;
+                firebaseManager.noteExists(currentUserId, noteId, exists -> {
+                    if (exists || !currentUserId.equals(userId)) return;
+                    if (notes.apply(event)) {
+                        store.execute(() -> store.deleteNote(noteId));
+                        scheduleNotify();
+                    }
+                });
+                return;
+            }
+            if (!notes.apply(event)) return;
+            if (!windowSynced && event.getType() == SyncEvent.Type.ADDED) {
+                initialWindowCount++;
+            }
+
+            NoteModel note = event.getValue();
+            String key = listKey(note);
+            if (oldestLoadedKey == null || key.compareTo(oldestLoadedKey) < 0) {
+                oldestLoadedKey = key;
+            }
+            store.execute(() -> store.upsertNote(note));
+            scheduleNotify();
+        }
+
+        @Override
+        public void onSynced() {
+            // A window that is not full holds every note the user has
+            windowSynced = true;
+            hasMoreNotes = initialWindowCount >= NOTES_PAGE_SIZE && oldestLoadedKey != null;
+            String windowBottom = hasMoreNotes ? oldestLoadedKey : "";
+            List<String> stale = notes.retainLive(note -> listKey(note).compareTo(windowBottom) >= 0);
+            if (stale.isEmpty()) {
+                scheduleNotify();
+                return;
+            }
+            store.execute(() -> {
+                for (String noteId : stale) store.deleteNote(noteId);
+            });
+            scheduleNotify();
+        }
+
+        @Override
+        public void onError(String error) {}
+    };
+
+    // Pinned notes can be older than anything loaded; they never move the paging cursor
+    private final SyncListener<NoteModel> pinnedNotesListener = new SyncListener<NoteModel>() {
+        @Override
+        public void onEvent(SyncEvent<NoteModel> event) {
+            String noteId = event.getKey();
+            if (event.getType() == SyncEvent.Type.REMOVED) {
+                // Either deleted or unpinned
+                String currentUserId = userId;
+                firebaseManager.noteExists(currentUserId, noteId, exists -> {
+                    if (!currentUserId.equals(userId)) return;
+                    if (!exists) {
+                        if (notes.apply(event)) {
+                            store.execute(() -> store.deleteNote(noteId));
+                            scheduleNotify();
+                        }
+                        return;
+                    }
+                    // Unpinned below the loaded pages: it comes back when its page does
+                    NoteModel note = notes.get(noteId);
+                    if (note != null && hasMoreNotes && listKey(note).compareTo(oldestLoadedKey) < 0
+                            && notes.apply(event)) {
+                        scheduleNotify();
+                    }
+                });
+                return;
+            }
+            if (!notes.apply(event)) return;
+
+            NoteModel note = event.getValue();
+            store.execute(() -> store.upsertNote(note));
+            scheduleNotify();
+        }
+
+        @Override
+        public void onSynced() {
+            // Cached pinned notes the query did not return were deleted or unpinned;
+            // the disk copy is left for the page or window that covers it
+            if (notes.retainLive(NoteModel::isPinned).isEmpty()) return;
+            scheduleNotify();
+        }
+
+        @Override
+        public void onError(String error) {}
+    };
+
+    private final SyncListener<SharedNoteModel> sharedNotesListener = new SyncListener<SharedNoteModel>() {
+        @Override
+        public void onEvent(SyncEvent<SharedNoteModel> event) {
+            String shareId = event.getKey();
+            if (event.getType() == SyncEvent.Type.REMOVED) {
+                pendingShares.remove(shareId);
+                if (sharedNotes.apply(event)) {
+                    store.execute(() -> store.deleteSharedNote(shareId));
+                    scheduleNotify();
+                }
+                return;
+            }
+            if (event.getType() == SyncEvent.Type.MOVED) return;
+
+            // Keep the hydrated display fields until the batch lookup replaces them
+            SharedNoteModel incoming = event.getValue();
+            SharedNoteModel existing = sharedNotes.get(shareId);
+            if (existing != null) {
+                incoming.setNoteTitle(existing.getNoteTitle());
+                incoming.setNoteContent(existing.getNoteContent());
+                incoming.setOwnerUsername(existing.getOwnerUsername());
+            }
+            sharedNotes.apply(event);
+            pendingShares.put(shareId, incoming);
+            mainHandler.removeCallbacks(hydratePending);
+            mainHandler.postDelayed(hydratePending, CHANGE_NOTIFY_DELAY_MS);
+        }
+
+        @Override
+        public void onSynced() {
+            List<String> stale = sharedNotes.retainLive();
+            if (stale.isEmpty()) return;
+            store.execute(() -> {
+                for (String shareId : stale) store.deleteSharedNote(shareId);
+            });
+            scheduleNotify();
+        }
+
+        @Override
+        public void onError(String error) {}
+    };
+
+    private final SyncListener<CategoryModel> categoriesListener = new SyncListener<CategoryModel>() {
+        @Override
+        public void onEvent(SyncEvent<CategoryModel> event) {
+            if (!categories.apply(event)) return;
+
+            String categoryId = event.getKey();
+            CategoryModel category = event.getValue();
+            if (event.getType() == SyncEvent.Type.REMOVED) {
+                store.execute(() -> store.deleteCategory(categoryId));
+            } else {
+                store.execute(() -> store.upsertCategory(category));
+            }
+            scheduleNotify();
+        }
+
+        @Override
+        public void onSynced() {
+            List<String> stale = categories.retainLive();
+            if (stale.isEmpty()) return;
+            store.execute(() -> {
+                for (String categoryId : stale) store.deleteCategory(categoryId);
+            });
+            scheduleNotify();
+        }
+
+        @Override
+        public void onError(String error) {}
+    };
+}
@@ -0,0 +1,210 @@
+package com.example.syncnote.local;
+
+import com.example.syncnote.models.NoteModel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Shows pin, colour and category changes as soon as they are made, writes them in
+ * the background and puts the stored value back if the write fails.
+ *
+ * <p>Each field of a note has at most one write in flight. A change made while one
+ * is running waits, replacing any change already waiting, so rapid taps write only
+ * the latest value and results for one field cannot land out of order. Call from
+ * the main thread.
+ */
+public class OptimisticNoteMutator {
+
+    public enum Field {
+        PINNED, COLOR, CATEGORY;
+
+        Object get(NoteModel note) {
+            switch (this) {
+                case PINNED: return note.isPinned();
+                case COLOR: return note.getColor();
+                default: return note.getCategory();
+            }
+        }
+
+        void set(NoteModel note, Object value) {
+            switch (this) {
+                case PINNED: note.setPinned((Boolean) value); break;
+                case COLOR: note.setColor((String) value); break;
+                default: note.setCategory((String) value); break;
+            }
+        }
+    }
+
+    public interface Display {
+        /**
+         * The note as currently listed, or null if it is not.
+         */
+        NoteModel find(String noteId);
+
+        /**
+         * Lists {@code note} in place of the note with the same id.
+         */
+        void show(NoteModel note);
+    }
+
+    public interface Write {
+        void start(Object value, Result result);
+    }
+
+    public interface Result {
+        void onResult(boolean success);
+    }
+
+    /**
+     * Changes that end up not being written, because a later change replaced them
+     * or they restore the stored value, get neither call.
+     */
+    public interface Callback {
+        void onStored();
+        void onFailed();
+    }
+
+    private static final class Change {
+        final Object value;
+        final Write write;
+        final Callback callback;
+
+        Change(Object value, Write write, Callback callback) {
+            this.value = value;
+            this.write = write;
+            this.callback = callback;
+        }
+    }
+
+    private static final class State {
+        final String noteId;
+        final Field field;
+        // Last value known to be on the server
+        Object stored;
+        Change running;
+        Change waiting;
+
+        State(String noteId, Field field, Object stored) {
+            this.noteId = noteId;
+            this.field = field;
+            this.stored = stored;
+        }
+
+        Object shown() {
+            return waiting != null ? waiting.value : running.value;
+        }
+    }
+
+    private final Display display;
+    // "{noteId}/{field}" -> state, only while a write for it is outstanding
+    private final Map<String, State> states = new HashMap<>();
+
+    public OptimisticNoteMutator(Display display) {
+        this.display = display;
+    }
+
+    public void mutate(String noteId, Field field, Object value, Write write, Callback callback) {
+        NoteModel note = display.find(noteId);
+        if (note == null) return;
+
+        String key = noteId + "/" + field;
+        State state = states.get(key);
+        if (state == null) {
+            state = new State(noteId, field, field.get(note));
+            states.put(key, state);
+        }
+        show(note, field, value);
+
+        Change change = new Change(value, write, callback);
+        if (state.running == null) {
+            start(key, state, change);
+        } else {
+            state.waiting = change;
+        }
+    }
+
+    /**
+     * Reapplies outstanding changes to a freshly loaded list, so a refresh that
+     * arrives before the server has the change does not briefly undo it.
+     */
+    public List<NoteModel> overlay(List<NoteModel> notes) {
+        if (states.isEmpty()) return notes;
+
+        Map<String, List<State>> byNote = new HashMap<>();
+        for (State state : states.values()) {
+            List<State> noteStates = byNote.get(state.noteId);
+            if (noteStates == null) {
+                noteStates = new ArrayList<>(1);
+                byNote.put(state.noteId, noteStates);
+            }
+            noteStates.add(state);
+        }
+
+        List<NoteModel> result = new ArrayList<>(notes.size());
+        for (NoteModel note : notes) {
+            List<State> noteStates = byNote.get(note.getId());
+            if (noteStates == null) {
+                result.add(note);
+                continue;
+            }
+            NoteModel shown = new NoteModel(note);
+            for (State state : noteStates) {
+                state.field.set(shown, state.shown());
+            }
+            result.add(shown);
+        }
+        return result;
+    }
+
+    public boolean hasPendingChanges() {
+        return !states.isEmpty();
+    }
+
+    private void start(String key, State state, Change change) {
+        state.running = change;
+        change.write.start(change.value, success -> finish(key, state, change, success));
+    }
+
+    private void finish(String key, State state, Change change, boolean success) {
+        if (states.get(key) != state || state.running != change) return;
+
+        state.running = null;
+        if (success) {
+            state.stored = change.value;
+        }
+
+        Change next = state.waiting;
+        state.waiting = null;
+        if (next != null && !Objects.equals(next.value, state.stored)) {
+            start(key, state, next);
+        } else {
+            states.remove(key);
+            if (next == null && !success) {
+                NoteModel note = display.find(state.noteId);
+                if (note != null) {
+                    show(note, state.field, state.stored);
+                }
+            }
+        }
+
+        if (change.callback != null) {
+            if (success) {
+                change.callback.onStored();
+            } else {
+                change.callback.onFailed();
+            }
+        }
+    }
+
+    // The adapter diffs by value, so the listed note is replaced by a changed copy
+    private void show(NoteModel note, Field field, Object value) {
+        if (Objects.equals(field.get(note), value)) return;
+        NoteModel updated = new NoteModel(note);
+        field.set(updated, value);
+        display.show(updated);
+    }
+}
@@ -26,6 +26,9 @@ public class ActivityLogModel {
     private String action;
     private String details;  // Additional details like "Shared with @john (edit permission)"
     private long timestamp;
+    // Compacted entries stand for `count` consecutive edits made from `since` to `timestamp`
+    private int count = 1;
+    private long since;
     
     public ActivityLogModel() {
         this.timestamp = System.currentTimeMillis();
@@ -96,10 +99,44 @@ public class ActivityLogModel {
     public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
     }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    /**
+     * Time of the first action a compacted entry stands for; the timestamp itself
+     * for an ordinary entry.
+     */
+    public long getSince() {
+        return since != 0 ? since : timestamp;
+    }
+
+    public void setSince(long since) {
+        this.since = since;
+    }
     
     @Exclude
+    public static ActivityLogModel fromMap(String id, Map<String, Object> map) {
+        ActivityLogModel log = new ActivityLogModel();
+        log.id = id != null ? id : Fields.string(map, "id", null);
+        log.noteId = Fields.string(map, "noteId", null);
+        log.userId = Fields.string(map, "userId", null);
+        log.username = Fields.string(map, "username", null);
+        log.action = Fields.string(map, "action", null);
+        log.details = Fields.string(map, "details", null);
+        log.timestamp = Fields.longValue(map, "timestamp", log.timestamp);
+        log.count = Fields.intValue(map, "count", 1);
+        log.since = Fields.longValue(map, "since", 0);
+        return log;
+    }
+
     public Map<String, Object> toMap() {
-        HashMap<String, Object> result = new HashMap<>();
+        HashMap<String, Object> result = new HashMap<>(Fields.capacityFor(9));
         result.put("id", id);
         result.put("noteId", noteId);
         result.put("userId", userId);
@@ -107,6 +144,10 @@ public class ActivityLogModel {
         result.put("action", action);
         result.put("details", details);
         result.put("timestamp", timestamp);
+        if (count > 1) {
+            result.put("count", count);
+            result.put("since", since);
+        }
         return result;
     }
     
@@ -116,7 +157,7 @@ public class ActivityLogModel {
             case ACTION_CREATED:
                 return "created this note";
             case ACTION_EDITED:
-                return "edited this note";
+                return count > 1 ? "edited this note " + count + " times" : "edited this note";
             case ACTION_SHARED:
                 return details != null ? details : "shared this note";
             case ACTION_UNSHARED:
@@ -79,8 +79,19 @@ public class CategoryModel {
     }
     
     @Exclude
+    public static CategoryModel fromMap(String id, Map<String, Object> map) {
+        CategoryModel category = new CategoryModel();
+        category.id = id != null ? id : Fields.string(map, "id", null);
+        category.userId = Fields.string(map, "userId", null);
+        category.name = Fields.string(map, "name", null);
+        category.color = Fields.string(map, "color", null);
+        category.noteCount = Fields.intValue(map, "noteCount", 0);
+        category.createdAt = Fields.longValue(map, "createdAt", category.createdAt);
+        return category;
+    }
+
     public Map<String, Object> toMap() {
-        HashMap<String, Object> result = new HashMap<>();
+        HashMap<String, Object> result = new HashMap<>(Fields.capacityFor(6));
         result.put("id", id);
         result.put("userId", userId);
         result.put("name", name);
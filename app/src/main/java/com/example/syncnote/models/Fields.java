@@ -0,0 +1,77 @@
+package com.example.syncnote.models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Typed reads from the raw maps the database hands back (strings, Long or Double
+ * numbers, Booleans, and lists that may arrive as index-keyed maps). Absent or
+ * mistyped values fall back to the given default, like the reflective mapper
+ * leaving a field at its constructor value.
+ */
+final class Fields {
+
+    private Fields() {
+    }
+
+    /**
+     * HashMap capacity that holds {@code entries} without rehashing.
+     */
+    static int capacityFor(int entries) {
+        return (int) (entries / 0.75f) + 1;
+    }
+
+    static String string(Map<String, Object> map, String key, String fallback) {
+        Object value = map.get(key);
+        return value instanceof String ? (String) value : fallback;
+    }
+
+    static long longValue(Map<String, Object> map, String key, long fallback) {
+        Object value = map.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : fallback;
+    }
+
+    static int intValue(Map<String, Object> map, String key, int fallback) {
+        Object value = map.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : fallback;
+    }
+
+    static boolean bool(Map<String, Object> map, String key, boolean fallback) {
+        Object value = map.get(key);
+        return value instanceof Boolean ? (Boolean) value : fallback;
+    }
+
+    static List<String> stringList(Map<String, Object> map, String key, List<String> fallback) {
+        Object value = map.get(key);
+        Iterable<?> items;
+        int size;
+        if (value instanceof List) {
+            items = (List<?>) value;
+            size = ((List<?>) value).size();
+        } else if (value instanceof Map) {
+            // Sparse arrays come back keyed by index; restore index order
+            TreeMap<Integer, Object> ordered = new TreeMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                try {
+                    ordered.put(Integer.parseInt(String.valueOf(entry.getKey())), entry.getValue());
+                } catch (NumberFormatException e) {
+                    // Not a list entry
+                }
+            }
+            items = ordered.values();
+            size = ordered.size();
+        } else {
+            return fallback;
+        }
+
+        List<String> result = new ArrayList<>(size);
+        for (Object item : items) {
+            if (item instanceof String) {
+                result.add((String) item);
+            }
+        }
+        return result;
+    }
+}
@@ -15,6 +15,10 @@ public class NoteModel {
     private String title;
     private String content;
     private String htmlContent;
+    private String preview;  // Short plain-text excerpt shown on list cards
+    // Ordered chunk ids under note_chunks/{id} when a body is too large to store inline
+    private List<String> contentChunks;
+    private List<String> htmlContentChunks;
     private long createdAt;
     private long updatedAt;
     private String lastUpdatedBy;
@@ -51,6 +55,26 @@ public class NoteModel {
         this.tags = new ArrayList<>();
     }
 
+    public NoteModel(NoteModel other) {
+        this.id = other.id;
+        this.userId = other.userId;
+        this.title = other.title;
+        this.content = other.content;
+        this.htmlContent = other.htmlContent;
+        this.preview = other.preview;
+        this.contentChunks = other.contentChunks != null ? new ArrayList<>(other.contentChunks) : null;
+        this.htmlContentChunks = other.htmlContentChunks != null ? new ArrayList<>(other.htmlContentChunks) : null;
+        this.createdAt = other.createdAt;
+        this.updatedAt = other.updatedAt;
+        this.lastUpdatedBy = other.lastUpdatedBy;
+        this.lastUpdatedByUsername = other.lastUpdatedByUsername;
+        this.isPinned = other.isPinned;
+        this.color = other.color;
+        this.category = other.category;
+        this.shareLink = other.shareLink;
+        this.tags = other.tags != null ? new ArrayList<>(other.tags) : new ArrayList<>();
+    }
+
     // Getters and Setters
     public String getId() {
         return id;
@@ -94,6 +118,36 @@ public class NoteModel {
         this.htmlContent = htmlContent;
     }
 
+    public String getPreview() {
+        return preview;
+    }
+
+    public void setPreview(String preview) {
+        this.preview = preview;
+    }
+
+    public List<String> getContentChunks() {
+        return contentChunks;
+    }
+
+    public void setContentChunks(List<String> contentChunks) {
+        this.contentChunks = contentChunks;
+    }
+
+    public List<String> getHtmlContentChunks() {
+        return htmlContentChunks;
+    }
+
+    public void setHtmlContentChunks(List<String> htmlContentChunks) {
+        this.htmlContentChunks = htmlContentChunks;
+    }
+
+    @Exclude
+    public boolean hasChunkedBody() {
+        return (contentChunks != null && !contentChunks.isEmpty())
+                || (htmlContentChunks != null && !htmlContentChunks.isEmpty());
+    }
+
     public long getCreatedAt() {
         return createdAt;
     }
@@ -182,14 +236,45 @@ public class NoteModel {
         }
     }
 
+    /**
+     * Builds a note from its raw database map without reflection. {@code isPinned} is
+     * the key toMap writes; {@code pinned} is what the reflective mapper used.
+     */
+    public static NoteModel fromMap(String id, Map<String, Object> map) {
+        NoteModel note = new NoteModel();
+        note.id = id != null ? id : Fields.string(map, "id", null);
+        note.userId = Fields.string(map, "userId", null);
+        note.title = Fields.string(map, "title", note.title);
+        // Null when absent: entries from the partition carry no body, and callers tell a
+        // note whose body has not been read from an empty one this way
+        note.content = Fields.string(map, "content", null);
+        note.htmlContent = Fields.string(map, "htmlContent", null);
+        note.preview = Fields.string(map, "preview", null);
+        note.contentChunks = Fields.stringList(map, "contentChunks", null);
+        note.htmlContentChunks = Fields.stringList(map, "htmlContentChunks", null);
+        note.createdAt = Fields.longValue(map, "createdAt", note.createdAt);
+        note.updatedAt = Fields.longValue(map, "updatedAt", note.updatedAt);
+        note.lastUpdatedBy = Fields.string(map, "lastUpdatedBy", null);
+        note.lastUpdatedByUsername = Fields.string(map, "lastUpdatedByUsername", null);
+        note.isPinned = Fields.bool(map, "isPinned", Fields.bool(map, "pinned", false));
+        note.color = Fields.string(map, "color", note.color);
+        note.category = Fields.string(map, "category", note.category);
+        note.shareLink = Fields.string(map, "shareLink", null);
+        note.tags = Fields.stringList(map, "tags", note.tags);
+        return note;
+    }
+
     @Exclude
     public Map<String, Object> toMap() {
-        HashMap<String, Object> result = new HashMap<>();
+        HashMap<String, Object> result = new HashMap<>(Fields.capacityFor(17));
         result.put("id", id);
         result.put("userId", userId);
         result.put("title", title);
         result.put("content", content);
         result.put("htmlContent", htmlContent);
+        result.put("preview", preview);
+        result.put("contentChunks", contentChunks);
+        result.put("htmlContentChunks", htmlContentChunks);
         result.put("createdAt", createdAt);
         result.put("updatedAt", updatedAt);
         result.put("lastUpdatedBy", lastUpdatedBy);
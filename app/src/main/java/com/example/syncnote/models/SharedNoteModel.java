@@ -125,8 +125,23 @@ public class SharedNoteModel {
     }
 
     @Exclude
+    public static SharedNoteModel fromMap(String id, Map<String, Object> map) {
+        SharedNoteModel sharedNote = new SharedNoteModel();
+        sharedNote.id = id != null ? id : Fields.string(map, "id", null);
+        sharedNote.noteId = Fields.string(map, "noteId", null);
+        sharedNote.ownerId = Fields.string(map, "ownerId", null);
+        sharedNote.sharedWithUserId = Fields.string(map, "sharedWithUserId", null);
+        sharedNote.permission = Fields.string(map, "permission", null);
+        sharedNote.sharedAt = Fields.longValue(map, "sharedAt", sharedNote.sharedAt);
+        sharedNote.noteTitle = Fields.string(map, "noteTitle", null);
+        sharedNote.noteContent = Fields.string(map, "noteContent", null);
+        sharedNote.ownerUsername = Fields.string(map, "ownerUsername", null);
+        sharedNote.sharedWithUsername = Fields.string(map, "sharedWithUsername", null);
+        return sharedNote;
+    }
+
     public Map<String, Object> toMap() {
-        HashMap<String, Object> result = new HashMap<>();
+        HashMap<String, Object> result = new HashMap<>(Fields.capacityFor(6));
         result.put("id", id);
         result.put("noteId", noteId);
         result.put("ownerId", ownerId);
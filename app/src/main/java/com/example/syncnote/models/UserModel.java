@@ -94,8 +94,21 @@ public class UserModel {
     }
 
     @Exclude
+    public static UserModel fromMap(String id, Map<String, Object> map) {
+        UserModel user = new UserModel();
+        user.id = id != null ? id : Fields.string(map, "id", null);
+        user.username = Fields.string(map, "username", null);
+        user.email = Fields.string(map, "email", null);
+        user.passwordHash = Fields.string(map, "passwordHash", null);
+        user.securityQuestion = Fields.string(map, "securityQuestion", null);
+        user.securityAnswerHash = Fields.string(map, "securityAnswerHash", null);
+        user.createdAt = Fields.longValue(map, "createdAt", user.createdAt);
+        user.lastLogin = Fields.longValue(map, "lastLogin", 0);
+        return user;
+    }
+
     public Map<String, Object> toMap() {
-        HashMap<String, Object> result = new HashMap<>();
+        HashMap<String, Object> result = new HashMap<>(Fields.capacityFor(8));
         result.put("id", id);
         result.put("username", username);
         result.put("email", email);
@@ -0,0 +1,101 @@
+package com.example.syncnote.models;
+
+import com.google.firebase.database.Exclude;
+import com.google.firebase.database.IgnoreExtraProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Public projection of a user stored at user_profiles/{id}: what other users need
+ * to show them, and nothing from the credential fields of {@link UserModel}.
+ */
+@IgnoreExtraProperties
+public class UserProfileModel {
+
+    // Darker Material tones, readable behind white initials
+    private static final String[] COLORS = {
+            "#E53935", "#D81B60", "#8E24AA", "#5E35B1", "#3949AB",
+            "#1E88E5", "#039BE5", "#00897B", "#43A047", "#7CB342",
+            "#F4511E", "#6D4C41", "#546E7A"
+    };
+
+    private String id;
+    private String username;
+    private String color;
+    private String initials;
+
+    public UserProfileModel() {
+    }
+
+    /**
+     * Profile for a user, with a colour picked from the id so it stays stable
+     * across renames and initials taken from the username.
+     */
+    public static UserProfileModel of(String id, String username) {
+        UserProfileModel profile = new UserProfileModel();
+        profile.id = id;
+        profile.username = username;
+        profile.color = COLORS[(id.hashCode() & 0x7fffffff) % COLORS.length];
+        profile.initials = initialsFor(username);
+        return profile;
+    }
+
+    private static String initialsFor(String username) {
+        if (username == null || username.isEmpty()) return "?";
+        String letters = username.replaceAll("[^\\p{L}\\p{N}]", "");
+        if (letters.isEmpty()) letters = username;
+        return letters.substring(0, Math.min(2, letters.length())).toUpperCase();
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public void setColor(String color) {
+        this.color = color;
+    }
+
+    public String getInitials() {
+        return initials;
+    }
+
+    public void setInitials(String initials) {
+        this.initials = initials;
+    }
+
+    @Exclude
+    public static UserProfileModel fromMap(String id, Map<String, Object> map) {
+        UserProfileModel profile = new UserProfileModel();
+        profile.id = id != null ? id : Fields.string(map, "id", null);
+        profile.username = Fields.string(map, "username", null);
+        profile.color = Fields.string(map, "color", null);
+        profile.initials = Fields.string(map, "initials", null);
+        return profile;
+    }
+
+    public Map<String, Object> toMap() {
+        HashMap<String, Object> result = new HashMap<>(Fields.capacityFor(3));
+        result.put("username", username);
+        result.put("color", color);
+        result.put("initials", initials);
+        return result;
+    }
+}
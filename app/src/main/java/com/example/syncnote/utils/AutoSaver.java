@@ -0,0 +1,158 @@
+package com.example.syncnote.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Debounced save scheduler for one note. Bursts of changes collapse into a single
+ * write, at most one write is in flight at a time, and changes made while a write
+ * is running are saved by one follow-up write once it finishes.
+ */
+public class AutoSaver {
+
+    public enum Status {
+        IDLE,
+        PENDING,
+        SAVING,
+        SAVED,
+        FAILED
+    }
+
+    public interface SaveTask {
+        void save(Completion completion);
+    }
+
+    public interface Completion {
+        void onComplete(boolean success);
+    }
+
+    public interface StatusListener {
+        void onStatusChanged(Status status);
+    }
+
+    private final Clock clock;
+    private final long debounceMs;
+    private final long maxDelayMs;
+    private final SaveTask saveTask;
+    private final StatusListener statusListener;
+    private final Runnable flushTask = this::startSave;
+    private final List<Completion> waiters = new ArrayList<>();
+
+    private boolean dirty = false;
+    private boolean inFlight = false;
+    private long firstDirtyAt = -1;
+    private Status status = Status.IDLE;
+
+    /**
+     * @param debounceMs quiet period after the last change before saving
+     * @param maxDelayMs upper bound on how long continuous typing can defer a save
+     */
+    public AutoSaver(Clock clock, long debounceMs, long maxDelayMs,
+                     SaveTask saveTask, StatusListener statusListener) {
+        this.clock = clock;
+        this.debounceMs = debounceMs;
+        this.maxDelayMs = maxDelayMs;
+        this.saveTask = saveTask;
+        this.statusListener = statusListener;
+    }
+
+    public void notifyChanged() {
+        dirty = true;
+        long now = clock.now();
+        if (firstDirtyAt < 0) {
+            firstDirtyAt = now;
+        }
+        setStatus(inFlight ? Status.SAVING : Status.PENDING);
+        if (inFlight) {
+            // The running write reschedules once it completes
+            return;
+        }
+
+        long delay = Math.min(debounceMs, Math.max(0, firstDirtyAt + maxDelayMs - now));
+        clock.cancel(flushTask);
+        clock.schedule(flushTask, delay);
+    }
+
+    /**
+     * Saves pending changes now and reports once everything changed up to this call
+     * is persisted. Completes immediately if there is nothing to save.
+     */
+    public void flush(Completion completion) {
+        waiters.add(completion);
+        if (!inFlight) {
+            startSave();
+        }
+    }
+
+    public boolean hasUnsavedChanges() {
+        return dirty || inFlight;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Drops any scheduled save. A write already in flight still completes.
+     */
+    public void cancel() {
+        clock.cancel(flushTask);
+        dirty = false;
+        firstDirtyAt = -1;
+    }
+
+    private void startSave() {
+        clock.cancel(flushTask);
+        if (inFlight) return;
+
+        if (!dirty) {
+            completeWaiters(true);
+            return;
+        }
+
+        dirty = false;
+        firstDirtyAt = -1;
+        inFlight = true;
+        setStatus(Status.SAVING);
+
+        saveTask.save(success -> {
+            inFlight = false;
+            if (!success) {
+                dirty = true;
+                setStatus(Status.FAILED);
+                completeWaiters(false);
+                return;
+            }
+
+            if (dirty) {
+                // Changes arrived mid-write: save them next, immediately if someone is waiting
+                if (!waiters.isEmpty()) {
+                    startSave();
+                } else {
+                    setStatus(Status.PENDING);
+                    clock.schedule(flushTask, debounceMs);
+                }
+            } else {
+                setStatus(Status.SAVED);
+                completeWaiters(true);
+            }
+        });
+    }
+
+    private void completeWaiters(boolean success) {
+        if (waiters.isEmpty()) return;
+        List<Completion> completions = new ArrayList<>(waiters);
+        waiters.clear();
+        for (Completion completion : completions) {
+            completion.onComplete(success);
+        }
+    }
+
+    private void setStatus(Status newStatus) {
+        if (status == newStatus) return;
+        status = newStatus;
+        if (statusListener != null) {
+            statusListener.onStatusChanged(newStatus);
+        }
+    }
+}
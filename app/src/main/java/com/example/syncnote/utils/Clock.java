@@ -0,0 +1,11 @@
+package com.example.syncnote.utils;
+
+/**
+ * Time source and scheduler for the debounced and batched helpers, so they can be
+ * driven by a virtual clock in tests. {@link MainThreadClock} is the real one.
+ */
+public interface Clock {
+    long now();
+    void schedule(Runnable task, long delayMs);
+    void cancel(Runnable task);
+}
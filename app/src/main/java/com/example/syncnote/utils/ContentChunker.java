@@ -0,0 +1,79 @@
+package com.example.syncnote.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Content-defined chunking for large note bodies. Chunk boundaries are picked by
+ * a rolling hash over the text itself, so an edit only changes the chunk(s) it
+ * touches and every other chunk keeps its id.
+ */
+public class ContentChunker {
+
+    // Bodies at or below this size are stored inline
+    public static final int CHUNKING_THRESHOLD = 32 * 1024;
+
+    private static final int MIN_CHUNK = 512;
+    private static final int MAX_CHUNK = 8 * 1024;
+    // Boundary when the top 11 bits are zero: ~2 KB average chunks. The top bits
+    // mix the last 64 characters; the low bits only see the most recent few.
+    private static final long BOUNDARY_MASK = ((1L << 11) - 1) << 53;
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed: every client must pick the same boundaries
+        long seed = 0x5DEECE66DL;
+        for (int i = 0; i < GEAR.length; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            GEAR[i] = seed;
+        }
+    }
+
+    public static boolean shouldChunk(String text) {
+        return text != null && text.length() > CHUNKING_THRESHOLD;
+    }
+
+    public static List<String> split(String text) {
+        List<String> chunks = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return chunks;
+        }
+
+        int length = text.length();
+        int start = 0;
+        long hash = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            hash = (hash << 1) + GEAR[(c ^ (c >>> 8)) & 0xFF];
+
+            int size = i - start + 1;
+            if ((size >= MIN_CHUNK && (hash & BOUNDARY_MASK) == 0) || size >= MAX_CHUNK) {
+                chunks.add(text.substring(start, i + 1));
+                start = i + 1;
+                hash = 0;
+            }
+        }
+        if (start < length) {
+            chunks.add(text.substring(start));
+        }
+        return chunks;
+    }
+
+    /**
+     * Stable id for a chunk's text: 64-bit FNV-1a, hex encoded.
+     */
+    public static String chunkId(String chunk) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < chunk.length(); i++) {
+            hash ^= chunk.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        String hex = Long.toHexString(hash);
+        StringBuilder id = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; i++) {
+            id.append('0');
+        }
+        return id.append(hex).toString();
+    }
+}
@@ -2,45 +2,112 @@ package com.example.syncnote.utils;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 
+/**
+ * Date formatting safe to call from any thread. SimpleDateFormat is not thread-safe,
+ * so each thread gets its own formatters (java.time needs API 26). Relative-time
+ * labels come from precomputed tables, so the common case allocates nothing.
+ */
 public class DateUtils {
-    
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
-    private static final SimpleDateFormat DATE_TIME_FORMAT = new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.getDefault());
-    private static final SimpleDateFormat TIME_FORMAT = new SimpleDateFormat("HH:mm", Locale.getDefault());
+
+    public static final long MINUTE_MILLIS = 60 * 1000L;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    private static final String JUST_NOW = "Just now";
+    private static final String[] MINUTES_AGO = buildLabels(60, " minute ago", " minutes ago");
+    private static final String[] HOURS_AGO = buildLabels(24, " hour ago", " hours ago");
+    private static final String[] DAYS_AGO = buildLabels(7, " day ago", " days ago");
+
+    private static final int DATE_CACHE_SIZE = 256;
+
+    // Older notes show their date; cached per minute bucket since each bucket falls in one day
+    private static final Map<Long, String> dateLabelCache =
+            new LinkedHashMap<Long, String>(DATE_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                    return size() > DATE_CACHE_SIZE;
+                }
+            };
+
+    private static final class Formatters {
+        final SimpleDateFormat date = new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
+        final SimpleDateFormat dateTime = new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.getDefault());
+        final SimpleDateFormat time = new SimpleDateFormat("HH:mm", Locale.getDefault());
+        final Date scratch = new Date();
+
+        Date at(long timestamp) {
+            scratch.setTime(timestamp);
+            return scratch;
+        }
+    }
+
+    private static final ThreadLocal<Formatters> FORMATTERS = new ThreadLocal<Formatters>() {
+        @Override
+        protected Formatters initialValue() {
+            return new Formatters();
+        }
+    };
 
     public static String formatDate(long timestamp) {
-        return DATE_FORMAT.format(new Date(timestamp));
+        Formatters formatters = FORMATTERS.get();
+        return formatters.date.format(formatters.at(timestamp));
     }
 
     public static String formatDateTime(long timestamp) {
-        return DATE_TIME_FORMAT.format(new Date(timestamp));
+        Formatters formatters = FORMATTERS.get();
+        return formatters.dateTime.format(formatters.at(timestamp));
     }
 
     public static String formatTime(long timestamp) {
-        return TIME_FORMAT.format(new Date(timestamp));
+        Formatters formatters = FORMATTERS.get();
+        return formatters.time.format(formatters.at(timestamp));
     }
 
     public static String getRelativeTime(long timestamp) {
-        long now = System.currentTimeMillis();
+        return getRelativeTime(timestamp, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the same String instance for the same label, so callers can skip
+     * redundant view updates with a reference comparison.
+     */
+    public static String getRelativeTime(long timestamp, long now) {
         long diff = now - timestamp;
-        
-        long seconds = diff / 1000;
-        long minutes = seconds / 60;
-        long hours = minutes / 60;
-        long days = hours / 24;
-        
-        if (seconds < 60) {
-            return "Just now";
-        } else if (minutes < 60) {
-            return minutes + (minutes == 1 ? " minute ago" : " minutes ago");
-        } else if (hours < 24) {
-            return hours + (hours == 1 ? " hour ago" : " hours ago");
-        } else if (days < 7) {
-            return days + (days == 1 ? " day ago" : " days ago");
+
+        if (diff < MINUTE_MILLIS) {
+            return JUST_NOW;
+        } else if (diff < HOUR_MILLIS) {
+            return MINUTES_AGO[(int) (diff / MINUTE_MILLIS)];
+        } else if (diff < DAY_MILLIS) {
+            return HOURS_AGO[(int) (diff / HOUR_MILLIS)];
+        } else if (diff < 7 * DAY_MILLIS) {
+            return DAYS_AGO[(int) (diff / DAY_MILLIS)];
         } else {
-            return formatDate(timestamp);
+            return cachedDateLabel(timestamp);
+        }
+    }
+
+    private static String cachedDateLabel(long timestamp) {
+        Long bucket = timestamp / MINUTE_MILLIS;
+        synchronized (dateLabelCache) {
+            String label = dateLabelCache.get(bucket);
+            if (label == null) {
+                label = formatDate(timestamp);
+                dateLabelCache.put(bucket, label);
+            }
+            return label;
+        }
+    }
+
+    private static String[] buildLabels(int count, String singular, String plural) {
+        String[] labels = new String[count];
+        for (int i = 1; i < count; i++) {
+            labels[i] = i + (i == 1 ? singular : plural);
         }
+        return labels;
     }
 }
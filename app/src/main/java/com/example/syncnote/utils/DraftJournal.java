@@ -0,0 +1,74 @@
+package com.example.syncnote.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Local journal of unsaved editor state, one entry per note, so edits survive
+ * process death between autosaves. Entries are cleared once a save lands.
+ */
+public class DraftJournal {
+    private static final String PREF_NAME = "SyncNoteDrafts";
+    public static final String NEW_NOTE_KEY = "__new__";
+
+    private static DraftJournal instance;
+    private SharedPreferences prefs;
+
+    public static class Draft {
+        public final String title;
+        public final String htmlContent;
+        public final long savedAt;
+
+        Draft(String title, String htmlContent, long savedAt) {
+            this.title = title;
+            this.htmlContent = htmlContent;
+            this.savedAt = savedAt;
+        }
+    }
+
+    private DraftJournal(Context context) {
+        prefs = context.getApplicationContext().getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized DraftJournal getInstance(Context context) {
+        if (instance == null) {
+            instance = new DraftJournal(context);
+        }
+        return instance;
+    }
+
+    public void saveDraft(String noteKey, String title, String htmlContent) {
+        try {
+            JSONObject draft = new JSONObject();
+            draft.put("title", title);
+            draft.put("htmlContent", htmlContent);
+            draft.put("savedAt", System.currentTimeMillis());
+            prefs.edit().putString(noteKey, draft.toString()).apply();
+        } catch (JSONException e) {
+            // Nothing useful to journal
+        }
+    }
+
+    public Draft getDraft(String noteKey) {
+        String json = prefs.getString(noteKey, null);
+        if (json == null) {
+            return null;
+        }
+        try {
+            JSONObject draft = new JSONObject(json);
+            return new Draft(draft.optString("title", ""),
+                    draft.optString("htmlContent", ""),
+                    draft.optLong("savedAt", 0));
+        } catch (JSONException e) {
+            clearDraft(noteKey);
+            return null;
+        }
+    }
+
+    public void clearDraft(String noteKey) {
+        prefs.edit().remove(noteKey).apply();
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.syncnote.utils;
+
+import android.util.LruCache;
+
+import com.example.syncnote.models.NoteModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Short plain-text previews for note cards. A preview is built once per note
+ * version (id + updatedAt), off the main thread where possible, and never
+ * involves HTML parsing so it is cheap enough to fall back to during bind.
+ */
+public class NotePreviews {
+
+    public static final int MAX_PREVIEW_LENGTH = 200;
+    private static final int CACHE_SIZE = 1000;
+
+    private static final LruCache<String, String> cache = new LruCache<>(CACHE_SIZE);
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Returns the preview for the note's current version: the persisted preview if
+     * the note has one, otherwise a cached or freshly built one.
+     */
+    public static String get(NoteModel note) {
+        String persisted = note.getPreview();
+        if (persisted != null && !persisted.isEmpty()) {
+            return persisted;
+        }
+
+        String key = cacheKey(note);
+        String preview = cache.get(key);
+        if (preview == null) {
+            preview = build(note.getContent());
+            cache.put(key, preview);
+        }
+        return preview;
+    }
+
+    /**
+     * Builds previews for notes that lack a persisted one on a background thread,
+     * so later binds are cache hits.
+     */
+    public static void prefetch(List<NoteModel> notes) {
+        List<NoteModel> missing = new ArrayList<>();
+        for (NoteModel note : notes) {
+            String persisted = note.getPreview();
+            if (persisted == null || persisted.isEmpty()) {
+                missing.add(note);
+            }
+        }
+        if (missing.isEmpty()) return;
+
+        executor.execute(() -> {
+            for (NoteModel note : missing) {
+                String key = cacheKey(note);
+                if (cache.get(key) == null) {
+                    cache.put(key, build(note.getContent()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Collapses whitespace, drops any markup and truncates to {@link #MAX_PREVIEW_LENGTH}.
+     * Stops scanning as soon as the preview is full, so cost is bounded by the preview
+     * length rather than the note length for typical notes.
+     */
+    public static String build(String content) {
+        if (content == null || content.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder preview = new StringBuilder(Math.min(content.length(), MAX_PREVIEW_LENGTH));
+        boolean inTag = false;
+        boolean pendingSpace = false;
+        int length = content.length();
+
+        for (int i = 0; i < length && preview.length() < MAX_PREVIEW_LENGTH; i++) {
+            char c = content.charAt(i);
+            if (c == '<') {
+                inTag = true;
+                pendingSpace = true;
+                continue;
+            }
+            if (inTag) {
+                if (c == '>') inTag = false;
+                continue;
+            }
+            if (c == '&') {
+                int end = content.indexOf(';', i);
+                if (end > i && end - i <= 6) {
+                    char decoded = decodeEntity(content.substring(i + 1, end));
+                    if (decoded != 0) {
+                        c = decoded;
+                        i = end;
+                    }
+                }
+            }
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace && preview.length() > 0) {
+                preview.append(' ');
+            }
+            pendingSpace = false;
+            preview.append(c);
+        }
+        return preview.toString();
+    }
+
+    private static char decodeEntity(String entity) {
+        switch (entity) {
+            case "amp": return '&';
+            case "lt": return '<';
+            case "gt": return '>';
+            case "quot": return '"';
+            case "#39":
+            case "apos": return '\'';
+            case "nbsp": return ' ';
+            default: return 0;
+        }
+    }
+
+    private static String cacheKey(NoteModel note) {
+        return note.getId() + ":" + note.getUpdatedAt();
+    }
+}
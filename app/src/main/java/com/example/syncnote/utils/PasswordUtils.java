@@ -1,32 +1,91 @@
 package com.example.syncnote.utils;
 
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.util.Base64;
+import java.security.spec.InvalidKeySpecException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
 
 public class PasswordUtils {
-    
+
     private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH_BITS = 256;
+
+    // PBKDF2 with HMAC-SHA1: the HMAC-SHA256 variant needs API 26
+    private static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA1";
+    private static final String V2_PREFIX = "v2$pbkdf2$";
+
+    public static final int DEFAULT_ITERATIONS = 20000;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // SecureRandom is thread-safe; seeding one per call is the expensive part
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    private static final ThreadLocal<SecretKeyFactory> KEY_FACTORY = new ThreadLocal<SecretKeyFactory>() {
+        @Override
+        protected SecretKeyFactory initialValue() {
+            try {
+                return SecretKeyFactory.getInstance(PBKDF2_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    // Hashing is deliberately slow; keep it off the main and database threads
+    private static final ExecutorService HASH_EXECUTOR = Executors.newFixedThreadPool(2);
+
+    private static volatile int iterations = DEFAULT_ITERATIONS;
+
+    public interface HashCallback {
+        void onResult(String hash);
+    }
+
+    public interface VerifyCallback {
+        /**
+         * @param upgradedHash a replacement hash in the current format when the password
+         *                     matched a legacy or weaker hash, otherwise null
+         */
+        void onResult(boolean matches, String upgradedHash);
+    }
+
+    /**
+     * Sets the PBKDF2 iteration count for new hashes. Existing hashes keep verifying
+     * with the count stored in them and are upgraded on next login.
+     */
+    public static void setIterations(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("iterations must be positive");
+        }
+        iterations = count;
+    }
+
+    public static int getIterations() {
+        return iterations;
+    }
 
     /**
      * Hash a password with a randomly generated salt
      * @param password The plain text password
-     * @return The hashed password in format: salt$hash
+     * @return The hashed password in format: v2$pbkdf2$iterations$salt$hash
      */
     public static String hashPassword(String password) {
+        return hashPassword(password, iterations);
+    }
+
+    public static String hashPassword(String password, int iterationCount) {
         try {
-            // Generate a random salt
-            SecureRandom random = new SecureRandom();
             byte[] salt = new byte[SALT_LENGTH];
-            random.nextBytes(salt);
-            
-            // Hash the password with the salt
+            SECURE_RANDOM.nextBytes(salt);
             String saltStr = bytesToHex(salt);
-            String hash = hashWithSalt(password, saltStr);
-            
-            // Return salt$hash
-            return saltStr + "$" + hash;
+            String hash = bytesToHex(pbkdf2(password, saltStr, iterationCount));
+            return V2_PREFIX + iterationCount + "$" + saltStr + "$" + hash;
         } catch (Exception e) {
             return null;
         }
@@ -35,31 +94,72 @@ public class PasswordUtils {
     /**
      * Verify a password against a stored hash
      * @param password The plain text password to verify
-     * @param storedHash The stored hash in format: salt$hash
+     * @param storedHash The stored hash, either v2$pbkdf2$iterations$salt$hash or legacy salt$hash
      * @return true if password matches, false otherwise
      */
     public static boolean verifyPassword(String password, String storedHash) {
         if (password == null || storedHash == null) {
             return false;
         }
-        
+
         try {
             String[] parts = storedHash.split("\\$");
-            if (parts.length != 2) {
-                return false;
+            if (parts.length == 5 && storedHash.startsWith(V2_PREFIX)) {
+                int iterationCount = Integer.parseInt(parts[2]);
+                String computedHash = bytesToHex(pbkdf2(password, parts[3], iterationCount));
+                return constantTimeEquals(parts[4], computedHash);
+            }
+            if (parts.length == 2) {
+                return constantTimeEquals(parts[1], legacyHashWithSalt(password, parts[0]));
             }
-            
-            String salt = parts[0];
-            String hash = parts[1];
-            
-            String computedHash = hashWithSalt(password, salt);
-            return hash.equals(computedHash);
+            return false;
         } catch (Exception e) {
             return false;
         }
     }
 
-    private static String hashWithSalt(String password, String salt) {
+    /**
+     * True for legacy hashes and for v2 hashes below the current iteration count.
+     */
+    public static boolean needsRehash(String storedHash) {
+        if (storedHash == null || !storedHash.startsWith(V2_PREFIX)) {
+            return true;
+        }
+        String[] parts = storedHash.split("\\$");
+        try {
+            return parts.length != 5 || Integer.parseInt(parts[2]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    public static void hashPasswordAsync(String password, HashCallback callback) {
+        HASH_EXECUTOR.execute(() -> callback.onResult(hashPassword(password)));
+    }
+
+    /**
+     * Verifies on the hashing executor and, on a match against an outdated hash, also
+     * computes its replacement. The callback runs on the hashing executor.
+     */
+    public static void verifyPasswordAsync(String password, String storedHash, VerifyCallback callback) {
+        HASH_EXECUTOR.execute(() -> {
+            boolean matches = verifyPassword(password, storedHash);
+            String upgradedHash = matches && needsRehash(storedHash) ? hashPassword(password) : null;
+            callback.onResult(matches, upgradedHash);
+        });
+    }
+
+    private static byte[] pbkdf2(String password, String salt, int iterationCount) throws InvalidKeySpecException {
+        char[] chars = password.toCharArray();
+        PBEKeySpec spec = new PBEKeySpec(chars, salt.getBytes(StandardCharsets.UTF_8), iterationCount, HASH_LENGTH_BITS);
+        try {
+            return KEY_FACTORY.get().generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static String legacyHashWithSalt(String password, String salt) {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
             md.update(salt.getBytes());
@@ -70,11 +170,29 @@ public class PasswordUtils {
         }
     }
 
+    /**
+     * Compares every character regardless of where the first mismatch is, so timing
+     * does not reveal how much of a hash was right.
+     */
+    private static boolean constantTimeEquals(String expected, String actual) {
+        if (expected == null || actual == null) {
+            return false;
+        }
+        int diff = expected.length() ^ actual.length();
+        int length = Math.min(expected.length(), actual.length());
+        for (int i = 0; i < length; i++) {
+            diff |= expected.charAt(i) ^ actual.charAt(i);
+        }
+        return diff == 0;
+    }
+
     private static String bytesToHex(byte[] bytes) {
-        StringBuilder result = new StringBuilder();
-        for (byte b : bytes) {
-            result.append(String.format("%02x", b));
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xFF;
+            result[i * 2] = HEX_DIGITS[b >>> 4];
+            result[i * 2 + 1] = HEX_DIGITS[b & 0x0F];
         }
-        return result.toString();
+        return new String(result);
     }
 }
@@ -0,0 +1,147 @@
+package com.example.syncnote.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-memory inverted index from word tokens to document ids, with prefix matching.
+ * Documents are added, replaced or removed one at a time so the index never
+ * has to be rebuilt when a single note changes.
+ */
+public class SearchIndex {
+
+    // token -> ids of documents containing it
+    private final TreeMap<String, Set<String>> postings = new TreeMap<>();
+    // id -> tokens it was indexed under, so it can be removed without rescanning
+    private final Map<String, Set<String>> documentTokens = new HashMap<>();
+    // id -> caller-supplied version, so unchanged documents are not re-tokenized
+    private final Map<String, Long> documentVersions = new HashMap<>();
+
+    /**
+     * Indexes the given text fields under {@code id}, replacing any previous entry.
+     * Does nothing if the document is already indexed at the same version.
+     */
+    public void put(String id, long version, String... fields) {
+        if (id == null) return;
+
+        Long indexedVersion = documentVersions.get(id);
+        if (indexedVersion != null && indexedVersion == version) {
+            return;
+        }
+
+        remove(id);
+
+        Set<String> tokens = new HashSet<>();
+        for (String field : fields) {
+            tokenize(field, tokens);
+        }
+        for (String token : tokens) {
+            Set<String> ids = postings.get(token);
+            if (ids == null) {
+                ids = new HashSet<>();
+                postings.put(token, ids);
+            }
+            ids.add(id);
+        }
+        documentTokens.put(id, tokens);
+        documentVersions.put(id, version);
+    }
+
+    public void remove(String id) {
+        Set<String> tokens = documentTokens.remove(id);
+        documentVersions.remove(id);
+        if (tokens == null) return;
+
+        for (String token : tokens) {
+            Set<String> ids = postings.get(token);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every document whose id is not in {@code ids}.
+     */
+    public void retainAll(Collection<String> ids) {
+        for (String id : new ArrayList<>(documentTokens.keySet())) {
+            if (!ids.contains(id)) {
+                remove(id);
+            }
+        }
+    }
+
+    public void clear() {
+        postings.clear();
+        documentTokens.clear();
+        documentVersions.clear();
+    }
+
+    public int size() {
+        return documentTokens.size();
+    }
+
+    /**
+     * Returns the ids of documents that contain, for every word in the query,
+     * a token starting with that word. An empty query matches nothing.
+     */
+    public Set<String> query(String query) {
+        Set<String> terms = new HashSet<>();
+        tokenize(query, terms);
+        if (terms.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Set<String> result = null;
+        for (String term : terms) {
+            Set<String> matches = new HashSet<>();
+            NavigableMap<String, Set<String>> range =
+                    postings.subMap(term, true, term + Character.MAX_VALUE, false);
+            for (Set<String> ids : range.values()) {
+                if (result == null) {
+                    matches.addAll(ids);
+                } else {
+                    for (String id : ids) {
+                        if (result.contains(id)) {
+                            matches.add(id);
+                        }
+                    }
+                }
+            }
+            result = matches;
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Splits text into lower-case runs of letters and digits.
+     */
+    static void tokenize(String text, Set<String> out) {
+        if (text == null) return;
+
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean wordChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                out.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+    }
+}
@@ -3,6 +3,9 @@ package com.example.syncnote.utils;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class SessionManager {
     private static final String PREF_NAME = "SyncNoteSession";
     private static final String KEY_USER_ID = "userId";
@@ -10,10 +13,18 @@ public class SessionManager {
     private static final String KEY_EMAIL = "email";
     private static final String KEY_IS_LOGGED_IN = "isLoggedIn";
 
+    public interface SessionListener {
+        /**
+         * The signed-in user changed; {@code userId} is null after logout.
+         */
+        void onUserChanged(String userId);
+    }
+
     private static SessionManager instance;
     private SharedPreferences prefs;
     private SharedPreferences.Editor editor;
     private Context context;
+    private final List<SessionListener> listeners = new ArrayList<>();
 
     private SessionManager(Context context) {
         this.context = context.getApplicationContext();
@@ -34,11 +45,27 @@ public class SessionManager {
         editor.putString(KEY_EMAIL, email);
         editor.putBoolean(KEY_IS_LOGGED_IN, true);
         editor.apply();
+        notifyUserChanged(userId);
     }
 
     public void logout() {
         editor.clear();
         editor.apply();
+        notifyUserChanged(null);
+    }
+
+    /**
+     * Calls {@code listener} now with the current user, then on every login and logout.
+     */
+    public void addSessionListener(SessionListener listener) {
+        listeners.add(listener);
+        listener.onUserChanged(getCurrentUserId());
+    }
+
+    private void notifyUserChanged(String userId) {
+        for (SessionListener listener : new ArrayList<>(listeners)) {
+            listener.onUserChanged(userId);
+        }
     }
 
     public boolean isLoggedIn() {
@@ -0,0 +1,108 @@
+package com.example.syncnote.work;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.syncnote.firebase.ActivityLogCompactor;
+import com.example.syncnote.firebase.FirebaseManager;
+import com.example.syncnote.local.LocalNoteStore;
+import com.example.syncnote.models.NoteModel;
+import com.example.syncnote.utils.SessionManager;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Daily background compaction of the activity logs of the signed-in user's notes.
+ * The notes come from the local store, so the job never lists the notes tree.
+ * Compaction is idempotent; a run that is stopped or fails part way is retried.
+ */
+public class ActivityLogCompactionWorker extends Worker {
+
+    private static final String UNIQUE_WORK_NAME = "activity_log_compaction";
+
+    public static final String KEY_EDIT_MERGE_WINDOW_MS = "editMergeWindowMs";
+    public static final String KEY_MAX_ENTRIES_PER_NOTE = "maxEntriesPerNote";
+    public static final String KEY_MAX_AGE_MS = "maxAgeMs";
+
+    private static final long DEFAULT_EDIT_MERGE_WINDOW_MS = 30 * 60 * 1000L;
+    private static final int DEFAULT_MAX_ENTRIES_PER_NOTE = 200;
+    private static final long DEFAULT_MAX_AGE_MS = 365L * 24 * 60 * 60 * 1000;
+
+    private static final long NOTE_TIMEOUT_SECONDS = 30;
+
+    public ActivityLogCompactionWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    public static void schedule(Context context) {
+        schedule(context, DEFAULT_MAX_ENTRIES_PER_NOTE);
+    }
+
+    public static void schedule(Context context, int maxEntriesPerNote) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        Data input = new Data.Builder()
+                .putInt(KEY_MAX_ENTRIES_PER_NOTE, maxEntriesPerNote)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                ActivityLogCompactionWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .setInputData(input)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(
+                UNIQUE_WORK_NAME, ExistingPeriodicWorkPolicy.UPDATE, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        String userId = SessionManager.getInstance(context).getCurrentUserId();
+        if (userId == null) {
+            return Result.success();
+        }
+
+        Data input = getInputData();
+        ActivityLogCompactor compactor = new ActivityLogCompactor(
+                input.getLong(KEY_EDIT_MERGE_WINDOW_MS, DEFAULT_EDIT_MERGE_WINDOW_MS),
+                input.getInt(KEY_MAX_ENTRIES_PER_NOTE, DEFAULT_MAX_ENTRIES_PER_NOTE),
+                input.getLong(KEY_MAX_AGE_MS, DEFAULT_MAX_AGE_MS));
+
+        FirebaseManager firebaseManager = FirebaseManager.getInstance();
+        List<NoteModel> notes = LocalNoteStore.getInstance(context).getNotesForUser(userId);
+        boolean allCompacted = true;
+        for (NoteModel note : notes) {
+            if (isStopped()) {
+                return Result.retry();
+            }
+            boolean[] compacted = {false};
+            CountDownLatch done = new CountDownLatch(1);
+            firebaseManager.compactActivityLogs(note.getId(), compactor, success -> {
+                compacted[0] = success;
+                done.countDown();
+            });
+            try {
+                if (!done.await(NOTE_TIMEOUT_SECONDS, TimeUnit.SECONDS) || !compacted[0]) {
+                    allCompacted = false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Result.retry();
+            }
+        }
+        return allCompacted ? Result.success() : Result.retry();
+    }
+}
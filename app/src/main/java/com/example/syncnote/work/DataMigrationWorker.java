@@ -0,0 +1,62 @@
+package com.example.syncnote.work;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.syncnote.firebase.FirebaseManager;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Background run of the one-off migrations of shared data, such as backfilling
+ * user profiles or re-keying shares.
+ * Each migration is idempotent and marked done once it completes, so after the
+ * first successful run on any device a run reads only the markers.
+ */
+public class DataMigrationWorker extends Worker {
+
+    private static final String UNIQUE_WORK_NAME = "data_migration";
+
+    private static final long MIGRATION_TIMEOUT_SECONDS = 300;
+
+    public DataMigrationWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(DataMigrationWorker.class)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                UNIQUE_WORK_NAME, ExistingWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        try {
+            Tasks.await(FirebaseManager.getInstance().runDataMigrations(),
+                    MIGRATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return Result.success();
+        } catch (ExecutionException | TimeoutException e) {
+            return Result.retry();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.retry();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.syncnote.work;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.syncnote.firebase.FirebaseManager;
+import com.example.syncnote.utils.SessionManager;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Background copy of the signed-in user's notes from the flat notes node into their
+ * partition under user_notes. Until it has run, the home list shows the notes on
+ * disk and does not sync them live. The copy is idempotent and retried until it
+ * succeeds; once the user is marked migrated, a run reads only the marker.
+ */
+public class NotePartitionMigrationWorker extends Worker {
+
+    private static final String UNIQUE_WORK_NAME = "note_partition_migration";
+
+    private static final long MIGRATION_TIMEOUT_SECONDS = 120;
+
+    public NotePartitionMigrationWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(NotePartitionMigrationWorker.class)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                UNIQUE_WORK_NAME, ExistingWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String userId = SessionManager.getInstance(getApplicationContext()).getCurrentUserId();
+        if (userId == null) {
+            return Result.success();
+        }
+
+        try {
+            Tasks.await(FirebaseManager.getInstance().migrateNotesToPartition(userId),
+                    MIGRATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return Result.success();
+        } catch (ExecutionException | TimeoutException e) {
+            return Result.retry();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.retry();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.syncnote.adapters;
+
+import android.os.Looper;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.syncnote.models.NoteModel;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Notifications the adapter sends for a list update. A pin toggle moves one card
+ * to the top and redraws it; nothing else in the list is touched.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NotesAdapterDiffTest {
+
+    private static final int NOTE_COUNT = 20;
+
+    /** Counts each kind of notification. */
+    private static class Recorder extends RecyclerView.AdapterDataObserver {
+        int changedAll;
+        int changed;
+        int inserted;
+        int removed;
+        int moved;
+
+        @Override
+        public void onChanged() {
+            changedAll++;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            changed += itemCount;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            inserted += itemCount;
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            removed += itemCount;
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            moved += itemCount;
+        }
+
+        int total() {
+            return changedAll + changed + inserted + removed + moved;
+        }
+    }
+
+    private NotesAdapter adapter;
+    private List<NoteModel> notes;
+
+    @Before
+    public void showList() throws Exception {
+        adapter = new NotesAdapter(ApplicationProvider.getApplicationContext(), null);
+        notes = new ArrayList<>();
+        for (int i = 0; i < NOTE_COUNT; i++) {
+            NoteModel note = new NoteModel("Note " + i, "Body " + i);
+            note.setId("n" + i);
+            note.setUpdatedAt(1_000_000L - i);
+            notes.add(note);
+        }
+        adapter.setNotes(notes);
+        awaitDiff(() -> adapter.getItemCount() == NOTE_COUNT);
+    }
+
+    @Test
+    public void pinToggle_movesAndChangesOneCard() throws Exception {
+        Recorder recorder = new Recorder();
+        adapter.registerAdapterDataObserver(recorder);
+
+        // As HomeActivity sorts: pinned first, then newest first
+        NoteModel pinned = new NoteModel(notes.get(12));
+        pinned.setPinned(true);
+        List<NoteModel> updated = new ArrayList<>(notes);
+        updated.remove(12);
+        updated.add(0, pinned);
+        adapter.setNotes(updated);
+        awaitDiff(() -> recorder.total() >= 2);
+
+        assertEquals(1, recorder.moved);
+        assertEquals(1, recorder.changed);
+        assertEquals(0, recorder.changedAll);
+        assertEquals(0, recorder.inserted + recorder.removed);
+        assertEquals("n12", adapter.getNoteAtPosition(0).getId());
+    }
+
+    @Test
+    public void repaintWithEqualNotes_sendsNothing() throws Exception {
+        Recorder recorder = new Recorder();
+        adapter.registerAdapterDataObserver(recorder);
+
+        List<NoteModel> copies = new ArrayList<>();
+        for (NoteModel note : notes) {
+            copies.add(new NoteModel(note));
+        }
+        adapter.setNotes(copies);
+        awaitDiff(() -> adapter.getNoteAtPosition(0) == copies.get(0));
+        assertEquals(0, recorder.total());
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+
+    // AsyncListDiffer diffs on a background thread and posts the result to the main looper
+    private static void awaitDiff(Condition condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            if (condition.met()) {
+                Thread.sleep(50);
+                shadowOf(Looper.getMainLooper()).idle();
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("diff did not complete");
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.syncnote.crdt;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RgaDocumentTest {
+
+    private static final String ALPHABET = "abcdefghij <>/";
+
+    @Test
+    public void concurrentEdits_converge() {
+        for (long seed = 0; seed < 200; seed++) {
+            runRandomSession(new Random(seed), 2 + (int) (seed % 4), 60);
+        }
+    }
+
+    @Test
+    public void duplicateAndReorderedDelivery_converge() {
+        Random random = new Random(42);
+        RgaDocument a = RgaDocument.seeded("a", "hello world");
+        RgaDocument b = RgaDocument.seeded("b", "hello world");
+
+        List<RgaOp> ops = new ArrayList<>();
+        ops.addAll(a.applyLocalText("hello brave world"));
+        ops.addAll(a.applyLocalText("hello brave new world"));
+        ops.addAll(a.applyLocalText("hello new world!"));
+
+        List<RgaOp> delivery = new ArrayList<>(ops);
+        delivery.addAll(ops);
+        Collections.shuffle(delivery, random);
+        for (RgaOp op : delivery) {
+            b.apply(op);
+        }
+
+        assertEquals("hello new world!", b.getText());
+        assertEquals(a.getText(), b.getText());
+        assertEquals(0, b.pendingCount());
+    }
+
+    @Test
+    public void concurrentInsertsAtSamePosition_keepBothRuns() {
+        RgaDocument a = RgaDocument.seeded("a", "ab");
+        RgaDocument b = RgaDocument.seeded("b", "ab");
+
+        RgaOp fromA = a.insert(1, "XX");
+        RgaOp fromB = b.insert(1, "YY");
+        a.apply(fromB);
+        b.apply(fromA);
+
+        assertEquals(a.getText(), b.getText());
+        assertEquals(6, a.length());
+        assertTrue(a.getText().contains("XX"));
+        assertTrue(a.getText().contains("YY"));
+    }
+
+    @Test
+    public void snapshot_roundTripsTombstonesAndClock() {
+        RgaDocument a = RgaDocument.seeded("a", "the quick fox");
+        a.applyLocalText("the quick brown fox");
+        RgaOp delete = a.delete(0, 4);
+
+        RgaDocument restored = RgaDocument.fromSnapshot("c", a.toSnapshot());
+        assertNotNull(restored);
+        assertEquals(a.getText(), restored.getText());
+
+        // A late op that references a tombstoned character still lands
+        RgaDocument b = RgaDocument.seeded("b", "the quick fox");
+        RgaOp late = b.insert(2, "!");
+        a.apply(late);
+        restored.apply(late);
+        restored.apply(delete);
+        assertEquals(a.getText(), restored.getText());
+
+        RgaOp next = restored.insert(0, "Z");
+        assertTrue(next.id.counter > late.id.counter);
+    }
+
+    @Test
+    public void snapshotWithHeldOp_replaysFromBeforeIt() {
+        // One batch shares a commit time, and its ops can arrive in any order
+        RgaDocument a = RgaDocument.seeded("a", "abc");
+        RgaOp first = committed(a.insert(3, "d"), 200);
+        RgaOp second = committed(a.insert(4, "e"), 200);
+        RgaOp third = committed(a.insert(0, "z"), 300);
+
+        // The second op arrives before the first it references, then a later op
+        RgaDocument b = RgaDocument.seeded("b", "abc");
+        b.apply(second);
+        b.apply(third);
+        assertEquals(1, b.pendingCount());
+        assertEquals(300, b.getLastAppliedAt());
+
+        Map<String, Object> snapshot = b.toSnapshot();
+        long at = ((Number) snapshot.get("at")).longValue();
+        assertTrue("snapshot at " + at + " skips the held op", at < second.at);
+
+        // Replaying the log from the snapshot's at restores the held op
+        RgaDocument restored = RgaDocument.fromSnapshot("c", snapshot);
+        for (RgaOp op : new RgaOp[] {first, second, third}) {
+            if (op.at >= at) restored.apply(op);
+        }
+        assertEquals(a.getText(), restored.getText());
+        assertEquals(0, restored.pendingCount());
+
+        b.apply(first);
+        assertEquals(300, b.getIntegratedAt());
+    }
+
+    @Test
+    public void heldDelete_keepsItsCommitTime() {
+        RgaDocument a = RgaDocument.seeded("a", "abc");
+        RgaOp insert = committed(a.insert(3, "de"), 100);
+        RgaOp delete = committed(a.delete(2, 2), 200);
+
+        RgaDocument b = RgaDocument.seeded("b", "abc");
+        b.apply(delete);
+        assertEquals(199, b.getIntegratedAt());
+        b.apply(insert);
+        assertEquals(a.getText(), b.getText());
+        assertEquals(200, b.getIntegratedAt());
+    }
+
+    @Test
+    public void op_roundTripsThroughMap() {
+        RgaDocument a = RgaDocument.seeded("a", "abcdef");
+        RgaOp insert = a.insert(3, "xyz");
+        RgaOp delete = a.delete(1, 4);
+
+        RgaDocument b = RgaDocument.seeded("b", "abcdef");
+        b.apply(RgaOp.fromMap(insert.toMap()));
+        b.apply(RgaOp.fromMap(delete.toMap()));
+        assertEquals(a.getText(), b.getText());
+    }
+
+    @Test
+    public void localEditOfAnOlderView_keepsRemoteEditsMergedSince() {
+        RgaDocument a = RgaDocument.seeded("a", "hello world");
+        RgaDocument b = RgaDocument.seeded("b", "hello world");
+        RgaDocument.View shown = a.view();
+
+        // b's edit reaches a before a's editor has shown it
+        for (RgaOp op : b.applyLocalText("hello big world")) {
+            a.apply(op);
+        }
+        List<RgaOp> ops = a.applyLocalText(shown, "hello world!");
+
+        assertEquals("hello big world!", a.getText());
+        assertEquals("hello world!", shown.getText());
+        for (RgaOp op : ops) {
+            b.apply(op);
+        }
+        assertEquals(a.getText(), b.getText());
+
+        // The view now describes the edited text, so the next edit reads against it
+        a.applyLocalText(shown, "hi world!");
+        assertEquals("hi big world!", a.getText());
+    }
+
+    @Test
+    public void localEditInsideTag_replacesWholeTag() {
+        RgaDocument a = RgaDocument.seeded("a", "<b>hi</b>");
+        List<RgaOp> ops = a.applyLocalText("<i>hi</i>");
+
+        assertEquals("<i>hi</i>", a.getText());
+        RgaDocument b = RgaDocument.seeded("b", "<b>hi</b>");
+        for (RgaOp op : ops) {
+            b.apply(op);
+        }
+        assertEquals("<i>hi</i>", b.getText());
+        // One op deletes "<b>hi</b>" and one inserts "<i>hi</i>"; neither splits a tag
+        assertEquals(2, ops.size());
+    }
+
+    @Test
+    public void concurrentEditsInsideOneTag_keepMarkupWellFormed() {
+        String seed = "<p>one</p><font color=\"red\">two</font>";
+        RgaDocument a = RgaDocument.seeded("a", seed);
+        RgaDocument b = RgaDocument.seeded("b", seed);
+
+        List<RgaOp> fromA = a.applyLocalText("<p>one</p><font color=\"blue\">two</font>");
+        List<RgaOp> fromB = b.applyLocalText("<p>one</p><font color=\"green\">two</font>");
+        for (RgaOp op : fromB) a.apply(op);
+        for (RgaOp op : fromA) b.apply(op);
+
+        assertEquals(a.getText(), b.getText());
+        assertWellFormed(a.getText());
+        assertTrue(a.getText().contains("<font color=\"blue\">"));
+        assertTrue(a.getText().contains("<font color=\"green\">"));
+    }
+
+    @Test
+    public void concurrentEditsInsideOneEntity_keepEntitiesWhole() {
+        RgaDocument a = RgaDocument.seeded("a", "x &amp; y");
+        RgaDocument b = RgaDocument.seeded("b", "x &amp; y");
+
+        List<RgaOp> fromA = a.applyLocalText("x &lt; y");
+        List<RgaOp> fromB = b.applyLocalText("x &gt; y");
+        for (RgaOp op : fromB) a.apply(op);
+        for (RgaOp op : fromA) b.apply(op);
+
+        assertEquals(a.getText(), b.getText());
+        assertTrue(a.getText().contains("&lt;"));
+        assertTrue(a.getText().contains("&gt;"));
+        assertFalse(a.getText().contains("&amp;"));
+    }
+
+    @Test
+    public void randomEditsToHtml_neverSplitATag() {
+        Random random = new Random(7);
+        String[] tags = {"<b>", "</b>", "<i>", "</i>", "<br>", "<span style=\"x\">", "&nbsp;"};
+        for (int session = 0; session < 100; session++) {
+            RgaDocument a = RgaDocument.seeded("a", "<p>start</p>");
+            RgaDocument b = RgaDocument.seeded("b", "<p>start</p>");
+            List<RgaOp> toA = new ArrayList<>();
+            List<RgaOp> toB = new ArrayList<>();
+            for (int round = 0; round < 20; round++) {
+                boolean fromA = random.nextBoolean();
+                RgaDocument editor = fromA ? a : b;
+                String text = editor.getText();
+                int index = tokenBoundary(text, random.nextInt(text.length() + 1));
+                String token = random.nextBoolean() ? tags[random.nextInt(tags.length)] : "q";
+                (fromA ? toB : toA).addAll(editor.applyLocalText(
+                        text.substring(0, index) + token + text.substring(index)));
+            }
+            for (RgaOp op : toA) a.apply(op);
+            for (RgaOp op : toB) b.apply(op);
+
+            assertEquals(a.getText(), b.getText());
+            assertWellFormed(a.getText());
+        }
+    }
+
+    // Nearest position at or before index that is not inside a tag or entity
+    private static int tokenBoundary(String text, int index) {
+        int tag = text.lastIndexOf('<', index - 1);
+        if (tag >= 0 && text.lastIndexOf('>', index - 1) < tag) return tag;
+        int entity = text.lastIndexOf('&', index - 1);
+        if (entity >= 0 && text.lastIndexOf(';', index - 1) < entity) return entity;
+        return index;
+    }
+
+    private static void assertWellFormed(String html) {
+        boolean inTag = false;
+        for (int i = 0; i < html.length(); i++) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                assertFalse("nested '<' in " + html, inTag);
+                inTag = true;
+            } else if (c == '>') {
+                assertTrue("stray '>' in " + html, inTag);
+                inTag = false;
+            }
+        }
+        assertFalse("unclosed tag in " + html, inTag);
+    }
+
+    /**
+     * Replicas edit at random while ops sit in per-replica inboxes that are delivered
+     * late, out of order and sometimes twice; after everything is delivered all
+     * replicas must hold the same text.
+     */
+    private void runRandomSession(Random random, int replicaCount, int rounds) {
+        List<RgaDocument> replicas = new ArrayList<>();
+        List<List<RgaOp>> inboxes = new ArrayList<>();
+        for (int i = 0; i < replicaCount; i++) {
+            replicas.add(RgaDocument.seeded("s" + i, "seed text"));
+            inboxes.add(new ArrayList<>());
+        }
+
+        for (int round = 0; round < rounds; round++) {
+            int origin = random.nextInt(replicaCount);
+            RgaDocument replica = replicas.get(origin);
+
+            List<RgaOp> ops = new ArrayList<>();
+            if (replica.length() > 0 && random.nextInt(3) == 0) {
+                int index = random.nextInt(replica.length());
+                int length = 1 + random.nextInt(Math.min(5, replica.length() - index));
+                ops.add(replica.delete(index, length));
+            } else {
+                ops.add(replica.insert(random.nextInt(replica.length() + 1), randomText(random)));
+            }
+
+            for (int i = 0; i < replicaCount; i++) {
+                if (i == origin) continue;
+                inboxes.get(i).addAll(ops);
+                if (random.nextInt(10) == 0) inboxes.get(i).addAll(ops);
+            }
+
+            // Deliver part of a random inbox in random order
+            int target = random.nextInt(replicaCount);
+            List<RgaOp> inbox = inboxes.get(target);
+            Collections.shuffle(inbox, random);
+            int deliver = random.nextInt(inbox.size() + 1);
+            for (int i = 0; i < deliver; i++) {
+                replicas.get(target).apply(inbox.remove(inbox.size() - 1));
+            }
+        }
+
+        for (int i = 0; i < replicaCount; i++) {
+            List<RgaOp> inbox = inboxes.get(i);
+            Collections.shuffle(inbox, random);
+            for (RgaOp op : inbox) {
+                replicas.get(i).apply(op);
+            }
+            inbox.clear();
+        }
+
+        String expected = replicas.get(0).getText();
+        for (RgaDocument replica : replicas) {
+            assertEquals(expected, replica.getText());
+            assertEquals(0, replica.pendingCount());
+
+            Map<String, Object> snapshot = replica.toSnapshot();
+            assertEquals(expected, RgaDocument.fromSnapshot("check", snapshot).getText());
+        }
+    }
+
+    // The op as read back from the log after the server stamped it
+    private static RgaOp committed(RgaOp op, long at) {
+        Map<String, Object> map = op.toMap();
+        map.put("at", at);
+        return RgaOp.fromMap(map);
+    }
+
+    private static String randomText(Random random) {
+        int length = 1 + random.nextInt(4);
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.syncnote.firebase;
+
+import com.example.syncnote.models.ActivityLogModel;
+import com.example.syncnote.utils.Clock;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ActivityLogBatcherTest {
+
+    private static class ManualClock implements Clock {
+        final List<Runnable> scheduled = new ArrayList<>();
+
+        @Override
+        public long now() {
+            return 0;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            scheduled.add(task);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            scheduled.remove(task);
+        }
+
+        void runScheduled() {
+            List<Runnable> due = new ArrayList<>(scheduled);
+            scheduled.clear();
+            for (Runnable task : due) task.run();
+        }
+    }
+
+    private final ManualClock clock = new ManualClock();
+    private final List<Map<String, Object>> writes = new ArrayList<>();
+    private final ActivityLogBatcher batcher = new ActivityLogBatcher(clock, 2000, 5, writes::add);
+    private int nextId;
+
+    private String log(String noteId, String userId, String action) {
+        String path = "/activity_logs/" + noteId + "/log" + (nextId++);
+        batcher.add(path, new ActivityLogModel(noteId, userId, "name", action, null));
+        return path;
+    }
+
+    @Test
+    public void rapidToggles_coalesceIntoOneWrite() {
+        log("n1", "u1", ActivityLogModel.ACTION_PINNED);
+        log("n1", "u1", ActivityLogModel.ACTION_UNPINNED);
+        log("n1", "u1", ActivityLogModel.ACTION_COLOR_CHANGED);
+        String lastPin = log("n1", "u1", ActivityLogModel.ACTION_PINNED);
+        String lastColor = log("n1", "u1", ActivityLogModel.ACTION_COLOR_CHANGED);
+        String share = log("n1", "u1", ActivityLogModel.ACTION_SHARED);
+        assertTrue(writes.isEmpty());
+        assertEquals(1, clock.scheduled.size());
+
+        clock.runScheduled();
+
+        assertEquals(1, writes.size());
+        Map<String, Object> update = writes.get(0);
+        assertEquals(3, update.size());
+        assertTrue(update.containsKey(lastPin));
+        assertTrue(update.containsKey(lastColor));
+        assertTrue(update.containsKey(share));
+    }
+
+    @Test
+    public void differentNotesAndUsers_areKeptApart() {
+        log("n1", "u1", ActivityLogModel.ACTION_PINNED);
+        log("n2", "u1", ActivityLogModel.ACTION_PINNED);
+        log("n1", "u2", ActivityLogModel.ACTION_PINNED);
+        batcher.flush();
+        assertEquals(3, writes.get(0).size());
+        assertTrue(clock.scheduled.isEmpty());
+    }
+
+    @Test
+    public void fullBatch_flushesImmediately() {
+        for (int i = 0; i < 5; i++) {
+            log("n1", "u1", ActivityLogModel.ACTION_EDITED);
+        }
+        assertEquals(1, writes.size());
+        assertEquals(5, writes.get(0).size());
+        assertTrue(clock.scheduled.isEmpty());
+        assertEquals(0, batcher.pendingCount());
+    }
+
+    @Test
+    public void discard_dropsOneNotesEntries() {
+        log("n1", "u1", ActivityLogModel.ACTION_PINNED);
+        String kept = log("n2", "u1", ActivityLogModel.ACTION_EDITED);
+        batcher.discard("/activity_logs/n1/");
+        // A later toggle on the discarded note must not evict anything
+        log("n1", "u1", ActivityLogModel.ACTION_UNPINNED);
+        batcher.discard("/activity_logs/n1/");
+        clock.runScheduled();
+        assertEquals(1, writes.get(0).size());
+        assertTrue(writes.get(0).containsKey(kept));
+    }
+
+    @Test
+    public void emptyFlush_writesNothing() {
+        batcher.flush();
+        assertTrue(writes.isEmpty());
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.syncnote.firebase;
+
+import com.example.syncnote.models.ActivityLogModel;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class ActivityLogCompactorTest {
+
+    private static final String BASE = "/activity_logs/n1";
+    private static final long MINUTE = 60_000L;
+    private static final long NOW = 1_700_000_000_000L;
+
+    private final ActivityLogCompactor compactor = new ActivityLogCompactor(10 * MINUTE, 0, 0);
+    private int nextId;
+
+    private ActivityLogModel entry(String userId, String action, long timestamp) {
+        ActivityLogModel log = new ActivityLogModel("n1", userId, userId, action, null);
+        log.setId(String.format("log%05d", nextId++));
+        log.setTimestamp(timestamp);
+        return log;
+    }
+
+    /** Applies a plan to the entries, like the multi-path update would. */
+    private static List<ActivityLogModel> apply(List<ActivityLogModel> logs, Map<String, Object> updates) {
+        TreeMap<String, ActivityLogModel> byId = new TreeMap<>();
+        for (ActivityLogModel log : logs) byId.put(log.getId(), log);
+        for (Map.Entry<String, Object> update : updates.entrySet()) {
+            String id = update.getKey().substring(BASE.length() + 1);
+            if (update.getValue() == null) {
+                byId.remove(id);
+            } else {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> map = (Map<String, Object>) update.getValue();
+                byId.put(id, ActivityLogModel.fromMap(id, map));
+            }
+        }
+        return new ArrayList<>(byId.values());
+    }
+
+    @Test
+    public void consecutiveEdits_mergeIntoNewestWithCount() {
+        List<ActivityLogModel> logs = new ArrayList<>();
+        logs.add(entry("u1", ActivityLogModel.ACTION_CREATED, NOW - 60 * MINUTE));
+        logs.add(entry("u1", ActivityLogModel.ACTION_EDITED, NOW - 50 * MINUTE));
+        logs.add(entry("u1", ActivityLogModel.ACTION_EDITED, NOW - 45 * MINUTE));
+        ActivityLogModel last = entry("u1", ActivityLogModel.ACTION_EDITED, NOW - 40 * MINUTE);
+        logs.add(last);
+        logs.add(entry("u2", ActivityLogModel.ACTION_EDITED, NOW - 39 * MINUTE));
+        // Same user again but after another user's edit: a new run
+        logs.add(entry("u1", ActivityLogModel.ACTION_EDITED, NOW - 38 * MINUTE));
+        // Too long after the previous edit: a new run
+        logs.add(entry("u1", ActivityLogModel.ACTION_EDITED, NOW - 10 * MINUTE));
+
+        List<ActivityLogModel> compacted = apply(logs, compactor.plan(BASE, logs, NOW));
+
+        assertEquals(5, compacted.size());
+        ActivityLogModel merged = compacted.get(1);
+        assertEquals(last.getId(), merged.getId());
+        assertEquals(3, merged.getCount());
+        assertEquals(NOW - 50 * MINUTE, merged.getSince());
+        assertEquals(NOW - 40 * MINUTE, merged.getTimestamp());
+        assertEquals("edited this note 3 times", merged.getActionDisplayText());
+    }
+
+    @Test
+    public void retention_keepsNewestEntriesAndCreation() {
+        ActivityLogCompactor capped = new ActivityLogCompactor(0, 3, 0);
+        List<ActivityLogModel> logs = new ArrayList<>();
+        ActivityLogModel created = entry("u1", ActivityLogModel.ACTION_CREATED, NOW - 100 * MINUTE);
+        logs.add(created);
+        for (int i = 0; i < 10; i++) {
+            logs.add(entry("u1", ActivityLogModel.ACTION_PINNED, NOW - (90 - i) * MINUTE));
+        }
+
+        List<ActivityLogModel> compacted = apply(logs, capped.plan(BASE, logs, NOW));
+
+        assertEquals(4, compacted.size());
+        assertEquals(created.getId(), compacted.get(0).getId());
+        assertEquals(logs.get(10).getId(), compacted.get(3).getId());
+    }
+
+    @Test
+    public void retention_dropsEntriesOlderThanMaxAge() {
+        ActivityLogCompactor aged = new ActivityLogCompactor(0, 0, 30 * MINUTE);
+        List<ActivityLogModel> logs = new ArrayList<>();
+        logs.add(entry("u1", ActivityLogModel.ACTION_SHARED, NOW - 40 * MINUTE));
+        logs.add(entry("u1", ActivityLogModel.ACTION_SHARED, NOW - 20 * MINUTE));
+
+        List<ActivityLogModel> compacted = apply(logs, aged.plan(BASE, logs, NOW));
+
+        assertEquals(1, compacted.size());
+        assertEquals(logs.get(1).getId(), compacted.get(0).getId());
+    }
+
+    @Test
+    public void compaction_isIdempotent() {
+        ActivityLogCompactor policy = new ActivityLogCompactor(5 * MINUTE, 50, 0);
+        Random random = new Random(42);
+        String[] users = {"u1", "u2", "u3"};
+        String[] actions = {ActivityLogModel.ACTION_EDITED, ActivityLogModel.ACTION_EDITED,
+                ActivityLogModel.ACTION_EDITED, ActivityLogModel.ACTION_PINNED, ActivityLogModel.ACTION_SHARED};
+
+        for (int trial = 0; trial < 50; trial++) {
+            List<ActivityLogModel> logs = new ArrayList<>();
+            long time = NOW - 1000 * MINUTE;
+            for (int i = 0; i < 300; i++) {
+                time += random.nextInt(8) * MINUTE;
+                logs.add(entry(users[random.nextInt(users.length)], actions[random.nextInt(actions.length)], time));
+            }
+
+            List<ActivityLogModel> once = apply(logs, policy.plan(BASE, logs, NOW));
+            assertTrue(once.size() <= 50);
+            assertTrue("second pass should change nothing", policy.plan(BASE, once, NOW).isEmpty());
+
+            int edits = 0;
+            for (ActivityLogModel log : logs) {
+                if (ActivityLogModel.ACTION_EDITED.equals(log.getAction())) edits++;
+            }
+            int unlimitedEdits = 0;
+            ActivityLogCompactor mergeOnly = new ActivityLogCompactor(5 * MINUTE, 0, 0);
+            for (ActivityLogModel log : apply(logs, mergeOnly.plan(BASE, logs, NOW))) {
+                if (ActivityLogModel.ACTION_EDITED.equals(log.getAction())) unlimitedEdits += log.getCount();
+            }
+            assertEquals("merging must not lose edits", edits, unlimitedEdits);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.syncnote.firebase;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * A burst of decode work from the main thread queues up rather than running on the
+ * thread that submitted it, and serial lanes keep submission order.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class DatabaseExecutorsTest {
+
+    private static final int TASKS = 2_000;
+
+    @Test
+    public void burstWhilePoolIsBusy_neverRunsOnTheSubmitter() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            DatabaseExecutors.DECODE.execute(() -> {
+                blocked.countDown();
+                awaitQuietly(release);
+            });
+        }
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        Thread submitter = Thread.currentThread();
+        List<Thread> ranOn = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(TASKS);
+        Executor lane = DatabaseExecutors.serial();
+        for (int i = 0; i < TASKS; i++) {
+            Executor executor = i % 2 == 0 ? DatabaseExecutors.DECODE : lane;
+            executor.execute(() -> {
+                ranOn.add(Thread.currentThread());
+                done.countDown();
+            });
+        }
+        // Submitting returned with both pool threads still blocked
+        assertTrue(ranOn.isEmpty());
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertFalse(ranOn.contains(submitter));
+    }
+
+    @Test
+    public void serialLane_runsTasksInSubmissionOrder() throws Exception {
+        Executor lane = DatabaseExecutors.serial();
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            int index = i;
+            lane.execute(() -> {
+                order.add(index);
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < TASKS; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
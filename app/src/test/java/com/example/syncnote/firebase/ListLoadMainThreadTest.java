@@ -0,0 +1,166 @@
+package com.example.syncnote.firebase;
+
+import android.os.Looper;
+
+import com.example.syncnote.models.NoteModel;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Main-thread time for one list load: the read completing on the main thread,
+ * decoding and sorting the notes, and handing the list to the caller. Before,
+ * the decode ran on the main thread; now it runs on {@link DatabaseExecutors#DECODE}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ListLoadMainThreadTest {
+
+    private static final int NOTE_COUNT = 5_000;
+    private static final int RUNS = 7;
+
+    private static final String BODY = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, "
+            + "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua. ";
+
+    private static List<Map<String, Object>> rawNotes() {
+        List<Map<String, Object>> raw = new ArrayList<>(NOTE_COUNT);
+        for (int i = 0; i < NOTE_COUNT; i++) {
+            NoteModel note = new NoteModel("Note " + i, BODY + BODY + i);
+            note.setId("n" + i);
+            note.setUserId("u1");
+            note.setHtmlContent("<p>" + BODY + i + "</p>");
+            note.setPreview(BODY);
+            note.setTags(new ArrayList<>(Arrays.asList("work", "todo")));
+            // Shuffled so the sort has work to do
+            note.setUpdatedAt((i * 7919L) % NOTE_COUNT);
+            raw.add(note.toMap());
+        }
+        return raw;
+    }
+
+    // What loadNotesForUser does with the snapshot's children
+    private static List<NoteModel> decode(List<Map<String, Object>> raw) {
+        List<NoteModel> notes = new ArrayList<>(raw.size());
+        for (int i = 0; i < raw.size(); i++) {
+            notes.add(NoteModel.fromMap("n" + i, raw.get(i)));
+        }
+        notes.sort((n1, n2) -> Long.compare(n2.getUpdatedAt(), n1.getUpdatedAt()));
+        return notes;
+    }
+
+    private interface Pipeline {
+        Task<List<NoteModel>> attach(Task<List<Map<String, Object>>> read);
+    }
+
+    /**
+     * Completes a read on the main thread and runs the main looper until the list
+     * is delivered. Returns the nanoseconds the main thread spent busy.
+     */
+    private static long mainThreadNanos(List<Map<String, Object>> raw, Pipeline pipeline) throws Exception {
+        TaskCompletionSource<List<Map<String, Object>>> read = new TaskCompletionSource<>();
+        List<List<NoteModel>> delivered = new ArrayList<>();
+        pipeline.attach(read.getTask()).addOnSuccessListener(delivered::add);
+
+        long busy = 0;
+        long start = System.nanoTime();
+        read.setResult(raw);
+        busy += System.nanoTime() - start;
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (delivered.isEmpty()) {
+            assertTrue("list was not delivered", System.currentTimeMillis() < deadline);
+            start = System.nanoTime();
+            shadowOf(Looper.getMainLooper()).idle();
+            busy += System.nanoTime() - start;
+            if (delivered.isEmpty()) Thread.sleep(1);
+        }
+        assertEquals(NOTE_COUNT, delivered.get(0).size());
+        assertEquals(NOTE_COUNT - 1, delivered.get(0).get(0).getUpdatedAt());
+        return busy;
+    }
+
+    private static long median(List<Map<String, Object>> raw, Pipeline pipeline) throws Exception {
+        long[] samples = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            samples[i] = mainThreadNanos(raw, pipeline);
+        }
+        Arrays.sort(samples);
+        return samples[RUNS / 2];
+    }
+
+    @Test
+    public void decodingOffMainThread_shrinksMainThreadTimePerLoad() throws Exception {
+        List<Map<String, Object>> raw = rawNotes();
+        Pipeline onMain = read -> read.continueWith(done -> decode(done.getResult()));
+        Pipeline offMain = read -> read.continueWith(DatabaseExecutors.DECODE, done -> decode(done.getResult()));
+
+        // Warm up both paths so neither pays for class loading or JIT
+        median(raw, onMain);
+        median(raw, offMain);
+
+        long before = median(raw, onMain);
+        long after = median(raw, offMain);
+        System.out.printf("Main-thread time per load of %d notes: before %.2f ms, after %.2f ms%n",
+                NOTE_COUNT, before / 1e6, after / 1e6);
+
+        assertTrue("main thread should do well under half the work, before=" + before + "ns after=" + after + "ns",
+                after * 2 < before);
+    }
+
+    @Test
+    public void serialExecutor_keepsSubmissionOrder() throws Exception {
+        List<Integer> order = new ArrayList<>();
+        TaskCompletionSource<Void> done = new TaskCompletionSource<>();
+        Executor serial = DatabaseExecutors.serial();
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            serial.execute(() -> {
+                synchronized (order) {
+                    order.add(value);
+                }
+            });
+        }
+        serial.execute(() -> done.setResult(null));
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!done.getTask().isComplete()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) expected.add(i);
+        synchronized (order) {
+            assertEquals(expected, order);
+        }
+    }
+
+    @Test
+    public void failedRead_failsTheLoadWithItsMessage() throws Exception {
+        TaskCompletionSource<List<Map<String, Object>>> read = new TaskCompletionSource<>();
+        Task<List<NoteModel>> loaded = read.getTask().continueWith(DatabaseExecutors.DECODE,
+                done -> decode(done.getResult()));
+        read.setException(new IllegalStateException("Permission denied"));
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!loaded.isComplete()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(1);
+        }
+        assertFalse(loaded.isSuccessful());
+        assertEquals("Permission denied", DatabaseTasks.errorMessage(loaded));
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.syncnote.firebase;
+
+import com.example.syncnote.models.UserProfileModel;
+import com.example.syncnote.utils.Clock;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ProfileCacheTest {
+
+    private static final long TTL = 60_000;
+
+    private long now = 1_000;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+        }
+    };
+
+    /** Watches that answer only when the test says so. */
+    private static class FakeSource implements ProfileCache.Source {
+        final Map<String, List<ProfileCache.Watcher>> watchers = new HashMap<>();
+        final List<String> cancelled = new ArrayList<>();
+        int watchCount;
+
+        @Override
+        public ProfileCache.Watch watch(String userId, ProfileCache.Watcher watcher) {
+            watchCount++;
+            watchers.computeIfAbsent(userId, id -> new ArrayList<>()).add(watcher);
+            return () -> {
+                cancelled.add(userId);
+                watchers.get(userId).remove(watcher);
+            };
+        }
+
+        void emit(String userId, String username) {
+            for (ProfileCache.Watcher watcher : new ArrayList<>(watchers.get(userId))) {
+                watcher.onProfile(username != null ? UserProfileModel.of(userId, username) : null);
+            }
+        }
+    }
+
+    private final FakeSource source = new FakeSource();
+    private final ProfileCache cache = new ProfileCache(clock, source, TTL, 2);
+
+    private String[] lookup(String userId) {
+        String[] result = {"<pending>"};
+        cache.getProfile(userId, profile -> result[0] = profile != null ? profile.getUsername() : null);
+        return result;
+    }
+
+    @Test
+    public void concurrentLookups_shareOneFetch() {
+        String[] first = lookup("u1");
+        String[] second = lookup("u1");
+        assertEquals(1, source.watchCount);
+        assertEquals("<pending>", first[0]);
+
+        now += 40;
+        source.emit("u1", "alice");
+        assertEquals("alice", first[0]);
+        assertEquals("alice", second[0]);
+
+        assertEquals("alice", lookup("u1")[0]);
+        ProfileCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.misses);
+        assertEquals(1, stats.coalesced);
+        assertEquals(1, stats.hits);
+        assertEquals(40.0, stats.averageFetchMillis(), 0.001);
+        assertEquals(2.0 / 3, stats.hitRate(), 0.001);
+    }
+
+    @Test
+    public void usernameChange_updatesCachedEntry() {
+        lookup("u1");
+        source.emit("u1", "alice");
+        assertEquals("u1", cache.peekUserId("alice"));
+
+        source.emit("u1", "alicia");
+        assertEquals("alicia", lookup("u1")[0]);
+        assertNull(cache.peekUserId("alice"));
+        assertEquals("u1", cache.peekUserId("alicia"));
+        assertEquals(1, cache.getStats().invalidations);
+        assertEquals(1, source.watchCount);
+    }
+
+    @Test
+    public void expiredEntry_isFetchedAgain() {
+        lookup("u1");
+        source.emit("u1", "alice");
+
+        now += TTL;
+        assertNull(cache.peekUserId("alice"));
+        String[] result = lookup("u1");
+        assertEquals("<pending>", result[0]);
+        assertEquals(Arrays.asList("u1"), source.cancelled);
+        assertEquals(2, source.watchCount);
+        source.emit("u1", "alice");
+        assertEquals("alice", result[0]);
+    }
+
+    @Test
+    public void leastRecentlyUsed_isEvictedAndUnwatched() {
+        lookup("u1");
+        source.emit("u1", "alice");
+        lookup("u2");
+        source.emit("u2", "bob");
+        lookup("u1");  // u2 is now the eldest
+
+        lookup("u3");
+        source.emit("u3", "carol");
+
+        assertEquals(Arrays.asList("u2"), source.cancelled);
+        assertEquals(1, cache.getStats().evictions);
+        assertEquals(2, cache.getStats().size);
+        assertNull(cache.peekUserId("bob"));
+    }
+
+    @Test
+    public void failedFetch_reportsNullAndIsNotCached() {
+        String[] result = lookup("u1");
+        for (ProfileCache.Watcher watcher : new ArrayList<>(source.watchers.get("u1"))) {
+            watcher.onError();
+        }
+        assertNull(result[0]);
+        assertEquals(0, cache.getStats().size);
+
+        lookup("u1");
+        assertEquals(2, source.watchCount);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void batchLookup_skipsMissingUsers() {
+        Map<String, UserProfileModel>[] result = new Map[1];
+        cache.getProfiles(Arrays.asList("u1", "u2"), profiles -> result[0] = profiles);
+        source.emit("u1", "alice");
+        assertNull(result[0]);
+        source.emit("u2", null);
+        assertEquals(1, result[0].size());
+        assertEquals("alice", result[0].get("u1").getUsername());
+        assertEquals("AL", result[0].get("u1").getInitials());
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.syncnote.firebase;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Several live sources can feed one collection, each complete for part of it.
+ * Cached values are dropped only where a completed source covers them.
+ */
+public class SyncedCollectionTest {
+
+    @Test
+    public void seedAfterScopedSync_keepsCachedValuesOutsideTheScope() {
+        SyncedCollection<String> items = new SyncedCollection<>();
+        items.apply(added("p1", "pinned"));
+        // The pinned source completes before the disk cache has been read
+        items.retainLive(value -> value.startsWith("pinned"));
+
+        Map<String, String> cached = new HashMap<>();
+        cached.put("p2", "pinned, unpinned since");
+        cached.put("n1", "older note");
+        assertTrue(items.seed(cached));
+
+        assertEquals(sorted("older note", "pinned"), sorted(items.values()));
+    }
+
+    @Test
+    public void seedAfterFullSync_addsNothing() {
+        SyncedCollection<String> items = new SyncedCollection<>();
+        items.apply(added("n1", "live"));
+        items.retainLive();
+
+        assertFalse(items.seed(Collections.singletonMap("n2", "deleted while offline")));
+        assertEquals(1, items.size());
+    }
+
+    @Test
+    public void seed_neverReplacesLiveValues() {
+        SyncedCollection<String> items = new SyncedCollection<>();
+        items.apply(added("n1", "live"));
+
+        assertFalse(items.seed(Collections.singletonMap("n1", "cached")));
+        assertEquals("live", items.get("n1"));
+    }
+
+    @Test
+    public void clear_forgetsCompletedScopes() {
+        SyncedCollection<String> items = new SyncedCollection<>();
+        items.retainLive();
+        items.clear();
+
+        assertTrue(items.seed(Collections.singletonMap("n1", "cached")));
+    }
+
+    private static SyncEvent<String> added(String key, String value) {
+        return new SyncEvent<>(SyncEvent.Type.ADDED, key, value, null);
+    }
+
+    private static List<String> sorted(String... values) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, values);
+        Collections.sort(list);
+        return list;
+    }
+
+    private static List<String> sorted(Iterable<String> values) {
+        List<String> list = new ArrayList<>();
+        for (String value : values) list.add(value);
+        Collections.sort(list);
+        return list;
+    }
+}
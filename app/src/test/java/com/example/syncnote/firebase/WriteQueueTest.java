@@ -0,0 +1,346 @@
+package com.example.syncnote.firebase;
+
+import com.example.syncnote.utils.Clock;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class WriteQueueTest {
+
+    private static final long HOLD_MS = 3_000;
+
+    private long now = 1_000;
+    private final List<Runnable> scheduled = new ArrayList<>();
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            scheduled.add(task);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            scheduled.remove(task);
+        }
+    };
+
+    private void runScheduled() {
+        List<Runnable> due = new ArrayList<>(scheduled);
+        scheduled.clear();
+        for (Runnable task : due) task.run();
+    }
+
+    /** Records writes; results are delivered when the test says so. */
+    private static class FakeSink implements WriteQueue.Sink {
+        final List<Map<String, Object>> writes = new ArrayList<>();
+        final List<WriteQueue.Result> results = new ArrayList<>();
+
+        @Override
+        public void write(Map<String, Object> updates, WriteQueue.Result result) {
+            writes.add(updates);
+            results.add(result);
+        }
+    }
+
+    private static class FakeStore implements WriteQueue.Store {
+        final TreeMap<Long, WriteQueue.Stored> rows = new TreeMap<>();
+        WriteQueue.LoadCallback pendingLoad;
+
+        @Override
+        public void loadWrites(WriteQueue.LoadCallback callback) {
+            pendingLoad = callback;
+        }
+
+        @Override
+        public void putWrite(long seq, String key, Map<String, Object> updates, long enqueuedAt) {
+            rows.put(seq, new WriteQueue.Stored(seq, key, new LinkedHashMap<>(updates), enqueuedAt));
+        }
+
+        @Override
+        public void deleteWrite(long seq) {
+            rows.remove(seq);
+        }
+
+        void finishLoad() {
+            pendingLoad.onLoaded(new ArrayList<>(rows.values()));
+        }
+    }
+
+    private static class Recorder implements WriteQueue.WriteCallback {
+        int savedLocally;
+        final List<Boolean> synced = new ArrayList<>();
+
+        @Override
+        public void onSavedLocally() {
+            savedLocally++;
+        }
+
+        @Override
+        public void onSynced(boolean success) {
+            synced.add(success);
+        }
+    }
+
+    private final FakeSink sink = new FakeSink();
+    private final WriteQueue queue = new WriteQueue(clock, sink, HOLD_MS);
+
+    // The queue only holds writes once it has seen a connection drop
+    private static void goOffline(WriteQueue queue) {
+        queue.setConnected(true);
+        queue.setConnected(false);
+    }
+
+    private static Map<String, Object> update(Object... pathsAndValues) {
+        Map<String, Object> updates = new LinkedHashMap<>();
+        for (int i = 0; i < pathsAndValues.length; i += 2) {
+            updates.put((String) pathsAndValues[i], pathsAndValues[i + 1]);
+        }
+        return updates;
+    }
+
+    @Test
+    public void online_sendsStraightAwayAndReportsBothStates() {
+        Recorder recorder = new Recorder();
+        queue.enqueue(null, update("/notes/n1/color", "#FFCDD2"), recorder);
+
+        assertEquals(1, recorder.savedLocally);
+        assertEquals(1, sink.writes.size());
+        assertEquals(1, queue.depth());
+
+        sink.results.get(0).onResult(true);
+        assertEquals(Collections.singletonList(true), recorder.synced);
+        assertEquals(0, queue.depth());
+        assertEquals(0, queue.getStats().replayed);
+    }
+
+    @Test
+    public void offline_reportsSavedLocallyAndHoldsWrites() {
+        goOffline(queue);
+        Recorder recorder = new Recorder();
+        queue.enqueue(null, update("/notes/n1/color", "#FFCDD2"), recorder);
+
+        assertEquals(1, recorder.savedLocally);
+        assertTrue(recorder.synced.isEmpty());
+        assertTrue(sink.writes.isEmpty());
+        assertEquals(1, queue.depth());
+    }
+
+    @Test
+    public void offlineRepeats_coalescePerPath() {
+        goOffline(queue);
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        queue.enqueue(null, update("/notes/n1/isPinned", true, "/notes/n1/color", "#FFCDD2"), first);
+        queue.enqueue(null, update("/notes/n1/isPinned", false), second);
+        queue.enqueue(null, update("/notes/n1/isPinned", true), null);
+
+        assertEquals(2, queue.depth());
+        assertEquals(2, queue.getStats().coalescedPaths);
+
+        queue.setConnected(true);
+        assertEquals(Arrays.asList(
+                update("/notes/n1/color", "#FFCDD2"),
+                update("/notes/n1/isPinned", true)), sink.writes);
+        assertEquals(2, queue.depth());
+
+        // The second write was absorbed by the third and is confirmed with it
+        sink.results.get(1).onResult(true);
+        assertEquals(Collections.singletonList(true), second.synced);
+        assertTrue(first.synced.isEmpty());
+    }
+
+    @Test
+    public void laterWriteToAncestor_dropsHeldDescendants() {
+        goOffline(queue);
+        queue.enqueue(null, update("/notes/n1/title", "Draft"), null);
+        queue.enqueue(null, update("/note_chunks/n1/c0", "text", "/notes/n1/color", "#FFFFFF"), null);
+        queue.enqueue(null, update("/notes/n1", new HashMap<>()), null);
+
+        queue.setConnected(true);
+        assertEquals(2, sink.writes.size());
+        assertEquals(update("/note_chunks/n1/c0", "text"), sink.writes.get(0));
+        assertEquals(update("/notes/n1", new HashMap<>()), sink.writes.get(1));
+    }
+
+    @Test
+    public void reconnect_replaysInOrderAndMeasuresLatency() {
+        goOffline(queue);
+        queue.enqueue(null, update("/a", 1), null);
+        queue.enqueue(null, update("/b", 2), null);
+        queue.enqueue(null, update("/c", 3), null);
+
+        now = 5_000;
+        queue.setConnected(true);
+        assertEquals(Arrays.asList(update("/a", 1), update("/b", 2), update("/c", 3)), sink.writes);
+
+        now = 5_040;
+        sink.results.get(0).onResult(true);
+        now = 5_100;
+        sink.results.get(1).onResult(true);
+        sink.results.get(2).onResult(false);
+
+        WriteQueue.Stats stats = queue.getStats();
+        assertEquals(0, stats.depth);
+        assertEquals(2, stats.replayed);
+        assertEquals(1, stats.failed);
+        assertEquals(70.0, stats.averageReplayMillis(), 0.001);
+        assertEquals(100, stats.maxReplayMillis);
+    }
+
+    @Test
+    public void sentWrites_areNotCoalescedOrResent() {
+        queue.enqueue(null, update("/notes/n1/color", "#FFCDD2"), null);
+        queue.setConnected(false);
+        queue.enqueue(null, update("/notes/n1/color", "#F8BBD9"), null);
+        queue.setConnected(true);
+
+        assertEquals(Arrays.asList(
+                update("/notes/n1/color", "#FFCDD2"),
+                update("/notes/n1/color", "#F8BBD9")), sink.writes);
+        assertEquals(0, queue.getStats().coalescedPaths);
+    }
+
+    @Test
+    public void discard_dropsHeldWritesUnderPath() {
+        goOffline(queue);
+        Recorder recorder = new Recorder();
+        queue.enqueue(null, update("/notes/n1/color", "#FFCDD2"), recorder);
+        queue.enqueue(null, update("/notes/n2/color", "#FFCDD2"), null);
+        queue.discard("/notes/n1");
+
+        assertEquals(Collections.singletonList(false), recorder.synced);
+        queue.setConnected(true);
+        assertEquals(Collections.singletonList(update("/notes/n2/color", "#FFCDD2")), sink.writes);
+    }
+
+    @Test
+    public void restart_restoresPersistedWritesAheadOfNewOnes() {
+        FakeStore store = new FakeStore();
+        WriteQueue first = new WriteQueue(clock, new FakeSink(), HOLD_MS);
+        first.attachStore(store);
+        store.finishLoad();
+        goOffline(first);
+        first.enqueue(null, update("/notes/n1/color", "#FFCDD2", "/notes/n1/title", "Old"), null);
+        first.enqueue(null, update("/notes/n2/color", "#C8E6C9"), null);
+        assertEquals(2, store.rows.size());
+
+        // A new process: a write made before the stored ones finish loading supersedes them
+        WriteQueue second = new WriteQueue(clock, sink, HOLD_MS);
+        second.attachStore(store);
+        second.setConnected(true);
+        second.enqueue(null, update("/notes/n1/title", "New"), null);
+        assertTrue(sink.writes.isEmpty());
+
+        store.finishLoad();
+        assertEquals(Arrays.asList(
+                update("/notes/n1/color", "#FFCDD2"),
+                update("/notes/n2/color", "#C8E6C9"),
+                update("/notes/n1/title", "New")), sink.writes);
+        // Once handed to the client its persistence has them; the rows would replay them twice
+        assertTrue(store.rows.isEmpty());
+        assertEquals(3, second.depth());
+    }
+
+    @Test
+    public void restart_restoresTheWriteKey() {
+        FakeStore store = new FakeStore();
+        WriteQueue first = new WriteQueue(clock, new FakeSink(), HOLD_MS);
+        first.attachStore(store);
+        store.finishLoad();
+        goOffline(first);
+        first.enqueue("n1", update("/notes/n1/color", "#FFCDD2"), null);
+        first.enqueue("n1", update("/notes/n1/title", "New"), null);
+
+        WriteQueue second = new WriteQueue(clock, sink, HOLD_MS);
+        second.attachStore(store);
+        store.finishLoad();
+        assertEquals(1, sink.writes.size());
+    }
+
+    @Test
+    public void sameKey_neverHasTwoWritesInFlight() {
+        int[] inFlight = new int[1];
+        int[] maxInFlight = new int[1];
+        List<WriteQueue.Result> answers = new ArrayList<>();
+        WriteQueue keyed = new WriteQueue(clock, (updates, result) -> {
+            maxInFlight[0] = Math.max(maxInFlight[0], ++inFlight[0]);
+            answers.add(success -> {
+                inFlight[0]--;
+                result.onResult(success);
+            });
+        }, HOLD_MS);
+
+        for (int i = 0; i < 20; i++) {
+            keyed.enqueue("n1", update("/notes/n1/title", "v" + i, "/notes/n1/updatedAt", i), null);
+            if (i % 4 == 3) answers.remove(0).onResult(true);
+        }
+        while (!answers.isEmpty()) {
+            answers.remove(0).onResult(true);
+        }
+        assertEquals(1, maxInFlight[0]);
+        assertEquals(0, keyed.depth());
+    }
+
+    @Test
+    public void heldWrites_coalesceBehindTheOneInFlight() {
+        queue.enqueue("n1", update("/notes/n1/color", "#FFCDD2"), null);
+        queue.enqueue("n1", update("/notes/n1/color", "#F8BBD9"), null);
+        queue.enqueue("n1", update("/notes/n1/color", "#E1BEE7"), null);
+        // Another note is not held back
+        queue.enqueue("n2", update("/notes/n2/color", "#C8E6C9"), null);
+
+        assertEquals(Arrays.asList(
+                update("/notes/n1/color", "#FFCDD2"),
+                update("/notes/n2/color", "#C8E6C9")), sink.writes);
+        sink.results.get(0).onResult(true);
+        assertEquals(update("/notes/n1/color", "#E1BEE7"), sink.writes.get(2));
+        assertEquals(1, queue.getStats().coalescedPaths);
+    }
+
+    @Test
+    public void beforeTheFirstConnect_writesPassThrough() {
+        // The client reports "not connected" at startup, before it has tried
+        queue.setConnected(false);
+        queue.enqueue("n1", update("/notes/n1/color", "#FFCDD2"), null);
+        assertEquals(1, sink.writes.size());
+    }
+
+    @Test
+    public void offline_handsWritesToTheClientAfterTheHold() {
+        goOffline(queue);
+        Recorder recorder = new Recorder();
+        queue.enqueue("n1", update("/notes/n1/color", "#FFCDD2"), recorder);
+        now += HOLD_MS / 2;
+        queue.enqueue("n1", update("/notes/n1/color", "#F8BBD9"), recorder);
+        assertTrue(sink.writes.isEmpty());
+
+        now += HOLD_MS;
+        runScheduled();
+        // Handed over while still offline, so the client's cache shows it
+        assertEquals(Collections.singletonList(update("/notes/n1/color", "#F8BBD9")), sink.writes);
+        assertEquals(1, queue.depth());
+
+        now += 10_000;
+        queue.setConnected(true);
+        now += 80;
+        sink.results.get(0).onResult(true);
+        assertEquals(Arrays.asList(true, true), recorder.synced);
+        assertEquals(1, queue.getStats().replayed);
+        assertEquals(80, queue.getStats().maxReplayMillis);
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.syncnote.local;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.syncnote.models.NoteModel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Synced notes arrive as metadata only; writing them must not wipe a body cached
+ * when the note was opened or saved on this device.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class LocalNoteStoreTest {
+
+    private static final String USER = "u1";
+
+    private LocalNoteStore store;
+
+    @Before
+    public void openStore() {
+        store = new LocalNoteStore(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void closeStore() {
+        store.close();
+    }
+
+    @Test
+    public void metadataOnlyWrite_keepsCachedBody() {
+        store.upsertNote(note("n1", "Groceries", "buy avocados"));
+        store.upsertNote(meta("n1", "Groceries today"));
+
+        NoteModel stored = store.getNotesForUser(USER).get(0);
+        assertEquals("Groceries today", stored.getTitle());
+        assertEquals("buy avocados", stored.getContent());
+        assertEquals("<p>buy avocados</p>", stored.getHtmlContent());
+        // The index still covers the body, not just the preview
+        assertEquals(1, store.queryNotesFullText(USER, "avocados").size());
+    }
+
+    @Test
+    public void metadataOnlyWrite_ofNewNote_indexesPreview() {
+        store.upsertNote(meta("n1", "Groceries"));
+
+        NoteModel stored = store.getNotesForUser(USER).get(0);
+        assertNull(stored.getContent());
+        assertEquals(1, store.queryNotesFullText(USER, "preview").size());
+    }
+
+    @Test
+    public void writeWithBody_replacesCachedBody() {
+        store.upsertNote(note("n1", "Groceries", "buy avocados"));
+        store.upsertNote(note("n1", "Groceries", "buy lemons"));
+
+        assertEquals("buy lemons", store.getNotesForUser(USER).get(0).getContent());
+        assertTrue(store.queryNotesFullText(USER, "avocados").isEmpty());
+    }
+
+    @Test
+    public void deleteNote_dropsItFromSearch() {
+        store.upsertNote(note("n1", "Groceries", "buy avocados"));
+        store.upsertNote(note("n2", "Gone", "deleted elsewhere"));
+
+        store.deleteNote("n2");
+
+        List<NoteModel> notes = store.getNotesForUser(USER);
+        assertEquals(1, notes.size());
+        assertEquals("buy avocados", notes.get(0).getContent());
+        assertTrue(store.queryNotesFullText(USER, "deleted").isEmpty());
+    }
+
+    /**
+     * Query time for the home screen's read of a 5,000-note account, and for a
+     * full-text search over it, against a seeded database.
+     */
+    @Test
+    public void benchmark_homeQueryOfFiveThousandNotes() {
+        int noteCount = 5_000;
+        List<NoteModel> notes = new ArrayList<>(noteCount);
+        for (int i = 0; i < noteCount; i++) {
+            NoteModel note = note("n" + i, "Note " + i, "Body of note " + i + (i % 100 == 0 ? " quarterly" : ""));
+            note.setPinned(i % 500 == 0);
+            note.setUpdatedAt(1_600_000_000_000L + i);
+            notes.add(note);
+        }
+        // One transaction around the seeding; each upsert nests inside it
+        SQLiteDatabase db = store.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (NoteModel note : notes) {
+                store.upsertNote(note);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        // Warm up the statement cache and page cache, as a second paint would find them
+        store.getNotesForUser(USER);
+        store.queryNotesFullText(USER, "quarterly");
+
+        int runs = 7;
+        long[] listNanos = new long[runs];
+        long[] searchNanos = new long[runs];
+        for (int r = 0; r < runs; r++) {
+            long start = System.nanoTime();
+            List<NoteModel> listed = store.getNotesForUser(USER);
+            listNanos[r] = System.nanoTime() - start;
+            assertEquals(noteCount, listed.size());
+            assertTrue(listed.get(0).isPinned());
+
+            start = System.nanoTime();
+            List<NoteModel> found = store.queryNotesFullText(USER, "quarterly");
+            searchNanos[r] = System.nanoTime() - start;
+            assertEquals(noteCount / 100, found.size());
+        }
+        Arrays.sort(listNanos);
+        Arrays.sort(searchNanos);
+        double listMs = listNanos[runs / 2] / 1e6;
+        double searchMs = searchNanos[runs / 2] / 1e6;
+        System.out.printf("Local store, %d notes: home query %.2f ms, full-text search %.2f ms%n",
+                noteCount, listMs, searchMs);
+
+        // Loose bounds, as Robolectric's SQLite is slower than a device's; the point is
+        // that the first screen needs one local query and no network
+        assertTrue("home query took " + listMs + " ms", listMs < 1_000);
+        assertTrue("search took " + searchMs + " ms", searchMs < 200);
+    }
+
+    private static NoteModel note(String id, String title, String content) {
+        NoteModel note = new NoteModel(title, content);
+        note.setId(id);
+        note.setUserId(USER);
+        note.setHtmlContent("<p>" + content + "</p>");
+        note.setPreview(content);
+        return note;
+    }
+
+    // As a partition entry decodes: no body fields at all
+    private static NoteModel meta(String id, String title) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("title", title);
+        map.put("userId", USER);
+        map.put("preview", "preview text");
+        map.put("updatedAt", 1_000L);
+        return NoteModel.fromMap(id, map);
+    }
+}
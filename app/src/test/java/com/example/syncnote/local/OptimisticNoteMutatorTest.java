@@ -0,0 +1,189 @@
+package com.example.syncnote.local;
+
+import com.example.syncnote.local.OptimisticNoteMutator.Field;
+import com.example.syncnote.models.NoteModel;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class OptimisticNoteMutatorTest {
+
+    /** The listed notes, and every note shown in their place. */
+    private final Map<String, NoteModel> listed = new LinkedHashMap<>();
+    private final List<NoteModel> shown = new ArrayList<>();
+
+    private final OptimisticNoteMutator mutator = new OptimisticNoteMutator(new OptimisticNoteMutator.Display() {
+        @Override
+        public NoteModel find(String noteId) {
+            return listed.get(noteId);
+        }
+
+        @Override
+        public void show(NoteModel note) {
+            listed.put(note.getId(), note);
+            shown.add(note);
+        }
+    });
+
+    /** Writes that complete only when the test says so, in any order. */
+    private static class Server {
+        final List<Object> values = new ArrayList<>();
+        final List<OptimisticNoteMutator.Result> results = new ArrayList<>();
+
+        OptimisticNoteMutator.Write write() {
+            return (value, result) -> {
+                values.add(value);
+                results.add(result);
+            };
+        }
+
+        void complete(int index, boolean success) {
+            results.get(index).onResult(success);
+        }
+    }
+
+    private static class Outcomes implements OptimisticNoteMutator.Callback {
+        int stored;
+        int failed;
+
+        @Override
+        public void onStored() {
+            stored++;
+        }
+
+        @Override
+        public void onFailed() {
+            failed++;
+        }
+    }
+
+    private final Server server = new Server();
+
+    private void list(String id) {
+        NoteModel note = new NoteModel("Title " + id, "Body");
+        note.setId(id);
+        listed.put(id, note);
+    }
+
+    private boolean pinned(String id) {
+        return listed.get(id).isPinned();
+    }
+
+    @Test
+    public void change_isShownBeforeTheWriteCompletes() {
+        list("n1");
+        mutator.mutate("n1", Field.PINNED, true, server.write(), null);
+
+        assertTrue(pinned("n1"));
+        assertEquals(1, shown.size());
+        assertEquals(Arrays.asList((Object) true), server.values);
+        assertTrue(mutator.hasPendingChanges());
+
+        server.complete(0, true);
+        assertTrue(pinned("n1"));
+        assertEquals(1, shown.size());
+        assertFalse(mutator.hasPendingChanges());
+    }
+
+    @Test
+    public void failedWrite_restoresStoredValueWithOneUpdate() {
+        list("n1");
+        Outcomes outcomes = new Outcomes();
+        mutator.mutate("n1", Field.COLOR, "#FFCDD2", server.write(), outcomes);
+        assertEquals("#FFCDD2", listed.get("n1").getColor());
+
+        server.complete(0, false);
+        assertEquals("#FFFFFF", listed.get("n1").getColor());
+        assertEquals(2, shown.size());
+        assertEquals(1, outcomes.failed);
+        assertEquals(0, outcomes.stored);
+    }
+
+    @Test
+    public void rapidChanges_writeOnlyTheLatestWaitingValue() {
+        list("n1");
+        mutator.mutate("n1", Field.COLOR, "#FFCDD2", server.write(), null);
+        Outcomes replaced = new Outcomes();
+        mutator.mutate("n1", Field.COLOR, "#F8BBD9", server.write(), replaced);
+        mutator.mutate("n1", Field.COLOR, "#E1BEE7", server.write(), null);
+        assertEquals("#E1BEE7", listed.get("n1").getColor());
+        assertEquals(1, server.values.size());
+
+        server.complete(0, true);
+        assertEquals(Arrays.asList((Object) "#FFCDD2", "#E1BEE7"), server.values);
+        server.complete(1, true);
+        assertEquals("#E1BEE7", listed.get("n1").getColor());
+        assertEquals(0, replaced.stored + replaced.failed);
+        assertFalse(mutator.hasPendingChanges());
+    }
+
+    @Test
+    public void failureWhileLaterChangeWaits_keepsLaterChangeOnScreen() {
+        list("n1");
+        mutator.mutate("n1", Field.CATEGORY, "Work", server.write(), null);
+        mutator.mutate("n1", Field.CATEGORY, "Ideas", server.write(), null);
+        int updates = shown.size();
+
+        server.complete(0, false);
+        assertEquals("Ideas", listed.get("n1").getCategory());
+        assertEquals(updates, shown.size());
+        assertEquals(Arrays.asList((Object) "Work", "Ideas"), server.values);
+
+        server.complete(1, true);
+        assertEquals("Ideas", listed.get("n1").getCategory());
+        assertFalse(mutator.hasPendingChanges());
+    }
+
+    @Test
+    public void toggleBackAfterFailure_skipsTheWrite() {
+        list("n1");
+        mutator.mutate("n1", Field.PINNED, true, server.write(), null);
+        mutator.mutate("n1", Field.PINNED, false, server.write(), null);
+
+        server.complete(0, false);
+        assertFalse(pinned("n1"));
+        assertEquals(1, server.values.size());
+        assertFalse(mutator.hasPendingChanges());
+    }
+
+    @Test
+    public void resultsArrivingOutOfOrder_settleEachNoteIndependently() {
+        list("n1");
+        list("n2");
+        mutator.mutate("n1", Field.PINNED, true, server.write(), null);
+        mutator.mutate("n2", Field.PINNED, true, server.write(), null);
+
+        server.complete(1, true);
+        server.complete(0, false);
+        assertFalse(pinned("n1"));
+        assertTrue(pinned("n2"));
+        assertFalse(mutator.hasPendingChanges());
+    }
+
+    @Test
+    public void overlay_keepsPendingChangesOverRefreshedList() {
+        list("n1");
+        list("n2");
+        mutator.mutate("n1", Field.PINNED, true, server.write(), null);
+        mutator.mutate("n1", Field.COLOR, "#C8E6C9", server.write(), null);
+
+        // A refresh that has not seen the writes yet
+        NoteModel stale1 = new NoteModel("Title n1", "Body");
+        stale1.setId("n1");
+        NoteModel stale2 = new NoteModel("Title n2", "Body");
+        stale2.setId("n2");
+        List<NoteModel> refreshed = mutator.overlay(Arrays.asList(stale1, stale2));
+
+        assertTrue(refreshed.get(0).isPinned());
+        assertEquals("#C8E6C9", refreshed.get(0).getColor());
+        assertFalse(stale1.isPinned());
+        assertSame(stale2, refreshed.get(1));
+    }
+}
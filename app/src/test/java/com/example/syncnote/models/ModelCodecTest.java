@@ -0,0 +1,134 @@
+package com.example.syncnote.models;
+
+import com.google.firebase.database.core.utilities.encoding.CustomClassMapper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ModelCodecTest {
+
+    @Test
+    public void note_roundTrips() {
+        NoteModel note = new NoteModel("Title", "Body");
+        note.setId("n1");
+        note.setUserId("u1");
+        note.setHtmlContent("<p>Body</p>");
+        note.setPreview("Body");
+        note.setPinned(true);
+        note.setColor("#FFCDD2");
+        note.setCategory("Work");
+        note.setContentChunks(Arrays.asList("c1", "c2"));
+        note.setTags(new ArrayList<>(Arrays.asList("a", "b")));
+        note.setLastUpdatedBy("u2");
+        note.setLastUpdatedByUsername("bob");
+
+        NoteModel decoded = NoteModel.fromMap("n1", note.toMap());
+        assertEquals(note.toMap(), decoded.toMap());
+    }
+
+    @Test
+    public void note_readsDatabaseShapedValues() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("title", "T");
+        map.put("updatedAt", 1234.0);  // numbers may arrive as Double
+        map.put("pinned", true);       // key written by the reflective mapper
+        Map<String, Object> sparseChunks = new HashMap<>();
+        sparseChunks.put("1", "second");
+        sparseChunks.put("0", "first");
+        map.put("contentChunks", sparseChunks);
+
+        NoteModel note = NoteModel.fromMap("key", map);
+        assertEquals("key", note.getId());
+        assertEquals(1234L, note.getUpdatedAt());
+        assertTrue(note.isPinned());
+        assertEquals(Arrays.asList("first", "second"), note.getContentChunks());
+        assertEquals("#FFFFFF", note.getColor());
+        assertEquals("Uncategorized", note.getCategory());
+        // A metadata-only entry has no body rather than an empty one
+        assertNull(note.getContent());
+        assertNull(note.getHtmlContent());
+    }
+
+    @Test
+    public void otherModels_roundTrip() {
+        SharedNoteModel share = new SharedNoteModel("n1", "u1", "u2", "edit");
+        share.setId("s1");
+        assertEquals(share.toMap(), SharedNoteModel.fromMap("s1", share.toMap()).toMap());
+
+        UserModel user = new UserModel("alice", "a@example.com", "hash");
+        user.setId("u1");
+        user.setLastLogin(99L);
+        assertEquals(user.toMap(), UserModel.fromMap("u1", user.toMap()).toMap());
+
+        CategoryModel category = new CategoryModel("u1", "Work", "#000000");
+        category.setId("c1");
+        category.setNoteCount(3);
+        assertEquals(category.toMap(), CategoryModel.fromMap("c1", category.toMap()).toMap());
+
+        UserProfileModel profile = UserProfileModel.of("u1", "alice");
+        assertEquals("AL", profile.getInitials());
+        assertTrue(profile.getColor().startsWith("#"));
+        assertEquals(profile.toMap(), UserProfileModel.fromMap("u1", profile.toMap()).toMap());
+        assertFalse(profile.toMap().containsKey("passwordHash"));
+
+        ActivityLogModel log = new ActivityLogModel("n1", "u1", "alice", ActivityLogModel.ACTION_EDITED, null);
+        log.setId("l1");
+        assertEquals(log.toMap(), ActivityLogModel.fromMap("l1", log.toMap()).toMap());
+    }
+
+    /**
+     * Decode throughput for 10k note maps, hand-written codec vs the reflective bean
+     * mapper behind DataSnapshot.getValue(Class).
+     */
+    @Test
+    public void benchmark_decodeTenThousandNotes() {
+        List<Map<String, Object>> maps = new ArrayList<>(10_000);
+        for (int i = 0; i < 10_000; i++) {
+            NoteModel note = new NoteModel("Note " + i, "Body of note " + i);
+            note.setId("id" + i);
+            note.setUserId("user" + (i % 50));
+            note.setPreview("Body of note " + i);
+            maps.add(note.toMap());
+        }
+
+        for (int warmUp = 0; warmUp < 5; warmUp++) {
+            decodeWithCodec(maps);
+            decodeReflectively(maps);
+        }
+
+        int rounds = 10;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) decodeWithCodec(maps);
+        double codecMs = (System.nanoTime() - start) / 1e6 / rounds;
+
+        start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) decodeReflectively(maps);
+        double reflectiveMs = (System.nanoTime() - start) / 1e6 / rounds;
+
+        System.out.printf("Decode 10k notes: codec %.2f ms, reflective %.2f ms (%.1fx)%n",
+                codecMs, reflectiveMs, reflectiveMs / codecMs);
+    }
+
+    private static int decodeWithCodec(List<Map<String, Object>> maps) {
+        int total = 0;
+        for (Map<String, Object> map : maps) {
+            total += NoteModel.fromMap(null, map).getTitle().length();
+        }
+        return total;
+    }
+
+    private static int decodeReflectively(List<Map<String, Object>> maps) {
+        int total = 0;
+        for (Map<String, Object> map : maps) {
+            total += CustomClassMapper.convertToCustomClass(map, NoteModel.class).getTitle().length();
+        }
+        return total;
+    }
+}
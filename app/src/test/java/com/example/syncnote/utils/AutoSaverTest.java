@@ -0,0 +1,188 @@
+package com.example.syncnote.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AutoSaverTest {
+
+    private static final long DEBOUNCE_MS = 1_000;
+    private static final long MAX_DELAY_MS = 5_000;
+
+    /** Runs scheduled tasks when virtual time passes their due time. */
+    private static class VirtualClock implements Clock {
+        private static class Scheduled {
+            final Runnable task;
+            final long dueAt;
+
+            Scheduled(Runnable task, long dueAt) {
+                this.task = task;
+                this.dueAt = dueAt;
+            }
+        }
+
+        long now;
+        final List<Scheduled> scheduled = new ArrayList<>();
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            scheduled.add(new Scheduled(task, now + delayMs));
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            for (Iterator<Scheduled> it = scheduled.iterator(); it.hasNext(); ) {
+                if (it.next().task == task) it.remove();
+            }
+        }
+
+        void advance(long ms) {
+            long until = now + ms;
+            while (true) {
+                Scheduled next = null;
+                for (Scheduled candidate : scheduled) {
+                    if (candidate.dueAt <= until && (next == null || candidate.dueAt < next.dueAt)) {
+                        next = candidate;
+                    }
+                }
+                if (next == null) break;
+                scheduled.remove(next);
+                now = next.dueAt;
+                next.task.run();
+            }
+            now = until;
+        }
+    }
+
+    /** Records saves; each completes when the test says so. */
+    private class Saves implements AutoSaver.SaveTask {
+        final List<Long> startedAt = new ArrayList<>();
+        final List<AutoSaver.Completion> pending = new ArrayList<>();
+        int maxInFlight;
+
+        @Override
+        public void save(AutoSaver.Completion completion) {
+            startedAt.add(clock.now);
+            pending.add(completion);
+            maxInFlight = Math.max(maxInFlight, pending.size());
+        }
+
+        void complete(boolean success) {
+            pending.remove(0).onComplete(success);
+        }
+    }
+
+    private final VirtualClock clock = new VirtualClock();
+    private final Saves saves = new Saves();
+    private final List<AutoSaver.Status> statuses = new ArrayList<>();
+    private final AutoSaver autoSaver = new AutoSaver(clock, DEBOUNCE_MS, MAX_DELAY_MS, saves, statuses::add);
+
+    @Test
+    public void burst_savesOnceAfterTheQuietPeriod() {
+        for (int i = 0; i < 5; i++) {
+            autoSaver.notifyChanged();
+            clock.advance(200);
+        }
+        assertTrue(saves.startedAt.isEmpty());
+
+        clock.advance(DEBOUNCE_MS);
+        assertEquals(Arrays.asList(1_800L), saves.startedAt);
+        saves.complete(true);
+        assertEquals(AutoSaver.Status.SAVED, autoSaver.getStatus());
+        assertFalse(autoSaver.hasUnsavedChanges());
+    }
+
+    @Test
+    public void continuousTyping_isSavedByTheMaxDelay() {
+        for (int i = 0; i < 30; i++) {
+            autoSaver.notifyChanged();
+            clock.advance(500);
+        }
+        // Changes never pause for the debounce, yet a save starts once the first is 5 s old
+        assertEquals(MAX_DELAY_MS, (long) saves.startedAt.get(0));
+    }
+
+    @Test
+    public void changesDuringASave_coalesceIntoOneFollowUp() {
+        autoSaver.notifyChanged();
+        clock.advance(DEBOUNCE_MS);
+        assertEquals(1, saves.startedAt.size());
+
+        for (int i = 0; i < 10; i++) {
+            autoSaver.notifyChanged();
+            clock.advance(DEBOUNCE_MS);
+        }
+        assertEquals(1, saves.startedAt.size());
+        assertEquals(AutoSaver.Status.SAVING, autoSaver.getStatus());
+
+        saves.complete(true);
+        assertEquals(AutoSaver.Status.PENDING, autoSaver.getStatus());
+        clock.advance(DEBOUNCE_MS);
+        assertEquals(2, saves.startedAt.size());
+        saves.complete(true);
+        assertFalse(autoSaver.hasUnsavedChanges());
+    }
+
+    @Test
+    public void neverMoreThanOneWriteInFlight() {
+        for (int i = 0; i < 200; i++) {
+            autoSaver.notifyChanged();
+            if (i % 7 == 0) autoSaver.flush(success -> { });
+            clock.advance(300);
+            if (i % 3 == 0 && !saves.pending.isEmpty()) saves.complete(i % 9 != 0);
+        }
+        while (!saves.pending.isEmpty()) {
+            saves.complete(true);
+            clock.advance(DEBOUNCE_MS);
+        }
+        assertEquals(1, saves.maxInFlight);
+    }
+
+    @Test
+    public void flush_waitsForTheRunningWriteAndItsFollowUp() {
+        autoSaver.notifyChanged();
+        clock.advance(DEBOUNCE_MS);
+        autoSaver.notifyChanged();
+
+        List<Boolean> flushed = new ArrayList<>();
+        autoSaver.flush(flushed::add);
+        assertTrue(flushed.isEmpty());
+
+        saves.complete(true);
+        // The follow-up starts at once rather than after the debounce
+        assertEquals(2, saves.startedAt.size());
+        assertTrue(flushed.isEmpty());
+        saves.complete(true);
+        assertEquals(Arrays.asList(true), flushed);
+    }
+
+    @Test
+    public void flush_withNothingPending_completesImmediately() {
+        List<Boolean> flushed = new ArrayList<>();
+        autoSaver.flush(flushed::add);
+        assertEquals(Arrays.asList(true), flushed);
+        assertTrue(saves.startedAt.isEmpty());
+    }
+
+    @Test
+    public void failedSave_keepsTheChangesUnsaved() {
+        autoSaver.notifyChanged();
+        clock.advance(DEBOUNCE_MS);
+        saves.complete(false);
+
+        assertEquals(AutoSaver.Status.FAILED, autoSaver.getStatus());
+        assertTrue(autoSaver.hasUnsavedChanges());
+        autoSaver.flush(success -> { });
+        assertEquals(2, saves.startedAt.size());
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.syncnote.utils;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class DateUtilsTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long MINUTE = 60_000L;
+
+    @Test
+    public void relativeTime_buckets() {
+        assertEquals("Just now", DateUtils.getRelativeTime(NOW - 59_999, NOW));
+        assertEquals("Just now", DateUtils.getRelativeTime(NOW + 5_000, NOW));
+        assertEquals("1 minute ago", DateUtils.getRelativeTime(NOW - MINUTE, NOW));
+        assertEquals("59 minutes ago", DateUtils.getRelativeTime(NOW - 60 * MINUTE + 1, NOW));
+        assertEquals("1 hour ago", DateUtils.getRelativeTime(NOW - 60 * MINUTE, NOW));
+        assertEquals("23 hours ago", DateUtils.getRelativeTime(NOW - 24 * 60 * MINUTE + 1, NOW));
+        assertEquals("1 day ago", DateUtils.getRelativeTime(NOW - 24 * 60 * MINUTE, NOW));
+        assertEquals("6 days ago", DateUtils.getRelativeTime(NOW - 7 * 24 * 60 * MINUTE + 1, NOW));
+
+        long old = NOW - 30L * 24 * 60 * MINUTE;
+        assertEquals(new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault()).format(new Date(old)),
+                DateUtils.getRelativeTime(old, NOW));
+    }
+
+    @Test
+    public void relativeTime_returnsSharedInstances() {
+        assertSame(DateUtils.getRelativeTime(NOW - 5 * MINUTE, NOW),
+                DateUtils.getRelativeTime(NOW - 5 * MINUTE - 30_000, NOW));
+    }
+
+    /**
+     * Many threads format random timestamps at once; every result must match a
+     * formatter owned by the checking thread. Shared SimpleDateFormat instances fail
+     * this with garbled or swapped output.
+     */
+    @Test
+    public void formatting_isThreadSafe() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final long seed = t;
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        SimpleDateFormat date = new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
+                        SimpleDateFormat dateTime = new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.getDefault());
+                        SimpleDateFormat time = new SimpleDateFormat("HH:mm", Locale.getDefault());
+                        Random random = new Random(seed);
+                        for (int i = 0; i < 20_000; i++) {
+                            long timestamp = Math.abs(random.nextLong() % (4_000_000_000_000L));
+                            Date expected = new Date(timestamp);
+                            if (!date.format(expected).equals(DateUtils.formatDate(timestamp))
+                                    || !dateTime.format(expected).equals(DateUtils.formatDateTime(timestamp))
+                                    || !time.format(expected).equals(DateUtils.formatTime(timestamp))
+                                    || !date.format(expected).equals(DateUtils.getRelativeTime(timestamp, timestamp + 8 * 24 * 60 * MINUTE))) {
+                                return "mismatch at " + timestamp;
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                assertNull(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Bytes allocated per call on the calling thread, where the JVM exposes it.
+     */
+    @Test
+    public void benchmark_allocationPerCall() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        long threadId = Thread.currentThread().getId();
+        int calls = 100_000;
+
+        // Warm up tables, thread-local formatters and the JIT
+        for (int i = 0; i < calls; i++) {
+            DateUtils.getRelativeTime(NOW - (i % 10_000) * MINUTE, NOW);
+            DateUtils.formatDate(NOW - i * MINUTE);
+        }
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < calls; i++) {
+            DateUtils.getRelativeTime(NOW - (i % (7 * 24 * 60)) * MINUTE, NOW);
+        }
+        long relativeBytes = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < calls; i++) {
+            DateUtils.formatDate(NOW - i * MINUTE);
+        }
+        long formatBytes = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        System.out.printf("getRelativeTime (< 7 days): %.1f bytes/call%n", (double) relativeBytes / calls);
+        System.out.printf("formatDate: %.1f bytes/call%n", (double) formatBytes / calls);
+        assertTrue("relative-time labels should not allocate", relativeBytes / calls < 8);
+    }
+}
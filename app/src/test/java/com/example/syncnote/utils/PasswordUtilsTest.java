@@ -0,0 +1,80 @@
+package com.example.syncnote.utils;
+
+import org.junit.Test;
+
+import java.security.MessageDigest;
+
+import static org.junit.Assert.*;
+
+public class PasswordUtilsTest {
+
+    @Test
+    public void v2Hash_verifiesAndRejects() {
+        String hash = PasswordUtils.hashPassword("correct horse", 1000);
+        assertTrue(hash.startsWith("v2$pbkdf2$1000$"));
+        assertEquals(5, hash.split("\\$").length);
+        assertTrue(PasswordUtils.verifyPassword("correct horse", hash));
+        assertFalse(PasswordUtils.verifyPassword("correct horsf", hash));
+        assertFalse(PasswordUtils.verifyPassword("correct horse", hash.substring(0, hash.length() - 1) + "0"));
+    }
+
+    @Test
+    public void hashes_useFreshSalts() {
+        assertNotEquals(PasswordUtils.hashPassword("secret", 1000), PasswordUtils.hashPassword("secret", 1000));
+    }
+
+    @Test
+    public void legacyHash_verifiesAndNeedsRehash() throws Exception {
+        String salt = "00112233445566778899aabbccddeeff";
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        md.update(salt.getBytes());
+        StringBuilder hex = new StringBuilder();
+        for (byte b : md.digest("legacy-pass".getBytes())) {
+            hex.append(String.format("%02x", b));
+        }
+        String legacy = salt + "$" + hex;
+
+        assertTrue(PasswordUtils.verifyPassword("legacy-pass", legacy));
+        assertFalse(PasswordUtils.verifyPassword("other", legacy));
+        assertTrue(PasswordUtils.needsRehash(legacy));
+    }
+
+    @Test
+    public void needsRehash_tracksIterationCount() {
+        int previous = PasswordUtils.getIterations();
+        try {
+            PasswordUtils.setIterations(2000);
+            assertTrue(PasswordUtils.needsRehash(PasswordUtils.hashPassword("pw", 1000)));
+            assertFalse(PasswordUtils.needsRehash(PasswordUtils.hashPassword("pw", 2000)));
+        } finally {
+            PasswordUtils.setIterations(previous);
+        }
+    }
+
+    @Test
+    public void malformedHashes_doNotVerify() {
+        assertFalse(PasswordUtils.verifyPassword("pw", "v2$pbkdf2$abc$00$00"));
+        assertFalse(PasswordUtils.verifyPassword("pw", "nonsense"));
+        assertFalse(PasswordUtils.verifyPassword("pw", null));
+    }
+
+    /**
+     * Hashes per second at a few cost settings, to pick {@link PasswordUtils#DEFAULT_ITERATIONS}.
+     * Absolute numbers are for the host JVM; expect a mid-range phone to be several times slower.
+     */
+    @Test
+    public void benchmark_throughputPerCost() {
+        int[] costs = {1000, 10000, PasswordUtils.DEFAULT_ITERATIONS, 50000};
+        PasswordUtils.hashPassword("warm-up", 1000);
+        for (int cost : costs) {
+            int rounds = Math.max(3, 200000 / cost);
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                assertNotNull(PasswordUtils.hashPassword("benchmark-password", cost));
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("PBKDF2 %6d iterations: %8.1f hashes/s (%.2f ms/hash)%n",
+                    cost, rounds / seconds, seconds * 1000 / rounds);
+        }
+    }
+}
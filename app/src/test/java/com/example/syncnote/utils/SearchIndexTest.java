@@ -0,0 +1,128 @@
+package com.example.syncnote.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+
+    private final SearchIndex index = new SearchIndex();
+
+    @Test
+    public void query_matchesWordPrefixesInAnyField() {
+        index.put("n1", 1, "Project budget", "Numbers for the third quarter");
+        index.put("n2", 1, "Groceries", "Milk, eggs, PROJECTOR bulb");
+
+        assertEquals(set("n1", "n2"), index.query("proj"));
+        assertEquals(set("n1"), index.query("budget"));
+        assertEquals(set("n1"), index.query("quart"));
+        assertTrue(index.query("udget").isEmpty());
+    }
+
+    @Test
+    public void query_requiresEveryWord() {
+        index.put("n1", 1, "Project budget", null);
+        index.put("n2", 1, "Project plan", null);
+
+        assertEquals(set("n2"), index.query("proj pl"));
+        assertTrue(index.query("budget plan").isEmpty());
+        assertTrue(index.query("  ").isEmpty());
+    }
+
+    @Test
+    public void put_replacesTheDocumentOnlyWhenItsVersionMoves() {
+        index.put("n1", 1, "Old title", null);
+        index.put("n1", 1, "Ignored title", null);
+        assertEquals(set("n1"), index.query("old"));
+        assertTrue(index.query("ignored").isEmpty());
+
+        index.put("n1", 2, "New title", null);
+        assertTrue(index.query("old").isEmpty());
+        assertEquals(set("n1"), index.query("new"));
+    }
+
+    @Test
+    public void removeAndRetainAll_dropDocuments() {
+        index.put("n1", 1, "alpha", null);
+        index.put("n2", 1, "alpha beta", null);
+        index.put("n3", 1, "alpha gamma", null);
+
+        index.remove("n1");
+        assertEquals(set("n2", "n3"), index.query("alpha"));
+
+        index.retainAll(Collections.singleton("n3"));
+        assertEquals(1, index.size());
+        assertEquals(set("n3"), index.query("alpha"));
+        assertTrue(index.query("beta").isEmpty());
+    }
+
+    /**
+     * Query latency over 10k notes for each keystroke of typical searches; the
+     * search box runs one query per keystroke.
+     */
+    @Test
+    public void benchmark_queryTenThousandNotes() {
+        Random random = new Random(1);
+        List<String> vocabulary = new ArrayList<>(3_000);
+        for (int i = 0; i < 3_000; i++) {
+            vocabulary.add(word(random));
+        }
+        vocabulary.addAll(Arrays.asList("meeting", "budget", "quarterly", "roadmap", "invoice"));
+
+        for (int n = 0; n < 10_000; n++) {
+            StringBuilder body = new StringBuilder();
+            for (int w = 0; w < 80; w++) {
+                body.append(vocabulary.get(random.nextInt(vocabulary.size()))).append(' ');
+            }
+            index.put("n" + n, 1, "Note " + n + " " + vocabulary.get(random.nextInt(vocabulary.size())),
+                    body.toString());
+        }
+
+        List<String> keystrokes = new ArrayList<>();
+        for (String search : Arrays.asList("meeting notes", "quarterly budget", "roadmap", "invoice 42")) {
+            for (int i = 2; i <= search.length(); i++) {
+                keystrokes.add(search.substring(0, i));
+            }
+        }
+
+        for (int warmUp = 0; warmUp < 20; warmUp++) {
+            for (String query : keystrokes) index.query(query);
+        }
+
+        int rounds = 10;
+        long[] nanos = new long[keystrokes.size()];
+        for (int k = 0; k < keystrokes.size(); k++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) index.query(keystrokes.get(k));
+            nanos[k] = (System.nanoTime() - start) / rounds;
+        }
+        Arrays.sort(nanos);
+        double medianMs = nanos[nanos.length / 2] / 1e6;
+        double maxMs = nanos[nanos.length - 1] / 1e6;
+        System.out.printf("Search 10k notes, %d keystrokes: median %.3f ms, max %.3f ms%n",
+                keystrokes.size(), medianMs, maxMs);
+
+        assertTrue("median query took " + medianMs + " ms", medianMs < 1);
+    }
+
+    private static String word(Random random) {
+        int length = 4 + random.nextInt(6);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+
+    private static Set<String> set(String... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+}